@@ -0,0 +1,554 @@
+package com.example.doorlock;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.bluetooth.BluetoothStatusCodes;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 基于 Android BluetoothGatt/BluetoothLeScanner 的 {@link LockTransport} 实现。
+ * 系统回调在 Binder 线程上到达，这里统一转发到调度器线程。
+ * 各个 GATT 操作记录在 {@link BleTrace} 的一条轨道上：发出请求时开始，回调到达调度器线程时结束。
+ */
+public class AndroidLockTransport implements LockTransport {
+    private static final String TAG = "AndroidLockTransport";
+    // 标准的 Client Characteristic Configuration 描述符
+    private static final UUID CLIENT_CONFIG_DESCRIPTOR = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private final Context context;
+    private final LockScheduler scheduler;
+    private final BluetoothAdapter bluetoothAdapter;
+    private Callback callback;
+    private BluetoothLeScanner bluetoothLeScanner;
+    private ScanCallback scanCallback;
+    private BluetoothGatt bluetoothGatt;
+    private int scanMode = ScanSettings.SCAN_MODE_LOW_LATENCY;
+    // 批量扫描的上报间隔（毫秒），0 表示逐条上报
+    private long reportDelay = 0;
+    // 所有实例共用的批量扫描处理线程
+    private static Handler batchHandler;
+    private int traceTrack = BleTrace.TRACK_APP;
+    // 追踪中进行中的操作，只在调度器线程上访问
+    private TraceEvent traceSpan;
+
+    public AndroidLockTransport(Context context, LockScheduler scheduler) {
+        this.context = context.getApplicationContext();
+        this.scheduler = scheduler;
+        bluetoothAdapter = WarmStart.getInstance(context).getAdapter();
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    private boolean hasPermission(String permission) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S
+                && (Manifest.permission.BLUETOOTH_SCAN.equals(permission) || Manifest.permission.BLUETOOTH_CONNECT.equals(permission))) {
+            // Android 12 以下没有这两个运行时权限
+            return true;
+        }
+        if (ActivityCompat.checkSelfPermission(context, permission) != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "缺少权限: " + permission);
+            return false;
+        }
+        return true;
+    }
+
+    // 接近检测在后台长时间扫描，使用低功耗模式（蓝牙控制器按低占空比扫描）
+    public AndroidLockTransport setLowPowerScan(boolean lowPower) {
+        scanMode = lowPower ? ScanSettings.SCAN_MODE_LOW_POWER : ScanSettings.SCAN_MODE_LOW_LATENCY;
+        return this;
+    }
+
+    // 后台长时间扫描由蓝牙控制器缓存结果、每隔 reportDelay 批量上报一次，减少应用唤醒和主线程工作；
+    // 用户发起的开锁不设置，保持逐条上报。控制器不支持批量扫描时退回逐条上报
+    public AndroidLockTransport setReportDelay(long reportDelay) {
+        this.reportDelay = reportDelay;
+        return this;
+    }
+
+    public AndroidLockTransport setTraceTrack(int traceTrack) {
+        this.traceTrack = traceTrack;
+        return this;
+    }
+
+    // 同一轨道上的区间必须嵌套，开始新的操作时结束上一个没有回调的操作
+    private void beginSpan(TraceEvent event) {
+        if (BuildConfig.BLE_TRACE) {
+            endSpan(traceSpan, -1);
+            traceSpan = event;
+            BleTrace.begin(event, traceTrack);
+        }
+    }
+
+    private void endSpan(TraceEvent event, long arg) {
+        if (BuildConfig.BLE_TRACE && event != null && event == traceSpan) {
+            traceSpan = null;
+            BleTrace.end(event, traceTrack, arg);
+        }
+    }
+
+    private static synchronized Handler getBatchHandler() {
+        if (batchHandler == null) {
+            HandlerThread thread = new HandlerThread("ScanBatch", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            batchHandler = new Handler(thread.getLooper());
+        }
+        return batchHandler;
+    }
+
+    private static int addressTypeOf(BluetoothDevice device) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.VANILLA_ICE_CREAM
+                ? device.getAddressType() : LockDeviceRecord.ADDRESS_TYPE_UNKNOWN;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return bluetoothAdapter != null && bluetoothAdapter.isEnabled();
+    }
+
+    @Override
+    public boolean startScan(LockScanMatcher matcher) {
+        if (!isEnabled() || !hasPermission(Manifest.permission.BLUETOOTH_SCAN)) {
+            return false;
+        }
+        stopScan();
+
+        bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (bluetoothLeScanner == null) {
+            Log.e(TAG, "无法获取蓝牙扫描器");
+            return false;
+        }
+
+        final ScanCallback newCallback = new ScanCallback() {
+            @Override
+            public void onScanResult(int callbackType, ScanResult result) {
+                BluetoothDevice device = result.getDevice();
+                String address = device.getAddress();
+                String name = LockScanFilters.advertisedName(result);
+                List<UUID> uuids = LockScanFilters.advertisedServiceUuids(result);
+                int rssi = result.getRssi();
+                int addressType = addressTypeOf(device);
+                BleTrace.instant(TraceEvent.SCAN_RESULT, traceTrack, rssi);
+                scheduler.post(() -> {
+                    if (scanCallback == this && callback != null) {
+                        callback.onScanResult(address, name, uuids, rssi, addressType);
+                    }
+                });
+            }
+
+            // 整批结果交给后台线程过滤、去重、排序，只把最合适的设备转发到调度器线程
+            @Override
+            public void onBatchScanResults(List<ScanResult> results) {
+                getBatchHandler().post(() -> {
+                    ScanBatch batch = new ScanBatch(matcher);
+                    for (ScanResult result : results) {
+                        BluetoothDevice device = result.getDevice();
+                        batch.add(device.getAddress(), LockScanFilters.advertisedName(result),
+                                LockScanFilters.advertisedServiceUuids(result), result.getRssi(), addressTypeOf(device));
+                    }
+                    ScanBatch.Hit best = batch.best();
+                    if (best == null) {
+                        return;
+                    }
+                    scheduler.post(() -> {
+                        if (scanCallback == this && callback != null) {
+                            callback.onScanResult(best.getAddress(), best.getName(), best.getServiceUuids(),
+                                    best.getRssi(), best.getAddressType());
+                        }
+                    });
+                });
+            }
+
+            @Override
+            public void onScanFailed(int errorCode) {
+                scheduler.post(() -> {
+                    if (scanCallback == this && callback != null) {
+                        callback.onScanFailed(errorCode);
+                    }
+                });
+            }
+        };
+
+        try {
+            ScanSettings.Builder builder = new ScanSettings.Builder().setScanMode(scanMode);
+            if (reportDelay > 0 && bluetoothAdapter.isOffloadedScanBatchingSupported()) {
+                builder.setReportDelay(reportDelay);
+            }
+            ScanSettings settings = builder.build();
+            // 由蓝牙控制器按服务UUID/名称/地址过滤，无关设备不会唤醒应用
+            bluetoothLeScanner.startScan(LockScanFilters.build(matcher), settings, newCallback);
+            scanCallback = newCallback;
+            beginSpan(TraceEvent.SCAN);
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "扫描权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void stopScan() {
+        if (scanCallback == null || bluetoothLeScanner == null) {
+            return;
+        }
+        try {
+            bluetoothLeScanner.stopScan(scanCallback);
+        } catch (SecurityException | IllegalStateException e) {
+            Log.e(TAG, "停止扫描错误: " + e.getMessage());
+        }
+        scanCallback = null;
+        endSpan(TraceEvent.SCAN, 0);
+    }
+
+    @Override
+    public boolean connect(String address, int addressType, boolean prefer2mPhy) {
+        if (!isEnabled() || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        close();
+
+        BluetoothDevice device;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                    && addressType != LockDeviceRecord.ADDRESS_TYPE_UNKNOWN) {
+                device = bluetoothAdapter.getRemoteLeDevice(address, addressType);
+            } else {
+                device = bluetoothAdapter.getRemoteDevice(address);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "无效的设备地址: " + e.getMessage());
+            return false;
+        }
+
+        try {
+            GattCallback gattCallback = new GattCallback();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                int phyMask = BluetoothDevice.PHY_LE_1M_MASK | (prefer2mPhy ? BluetoothDevice.PHY_LE_2M_MASK : 0);
+                bluetoothGatt = device.connectGatt(context, false, gattCallback, BluetoothDevice.TRANSPORT_LE, phyMask);
+            } else {
+                bluetoothGatt = device.connectGatt(context, false, gattCallback, BluetoothDevice.TRANSPORT_LE);
+            }
+            gattCallback.gatt = bluetoothGatt;
+            if (bluetoothGatt != null) {
+                beginSpan(TraceEvent.CONNECT);
+            }
+            return bluetoothGatt != null;
+        } catch (SecurityException e) {
+            Log.e(TAG, "连接权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean discoverServices() {
+        if (bluetoothGatt == null || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        try {
+            if (!bluetoothGatt.discoverServices()) {
+                return false;
+            }
+            beginSpan(TraceEvent.DISCOVER);
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "发现服务错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private BluetoothGattCharacteristic findCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        if (bluetoothGatt == null) {
+            return null;
+        }
+        BluetoothGattService service = bluetoothGatt.getService(serviceUuid);
+        return service != null ? service.getCharacteristic(characteristicUuid) : null;
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        return findCharacteristic(serviceUuid, characteristicUuid) != null;
+    }
+
+    // 不支持：Android 只能通过 BluetoothGatt 自己的服务对象写入特征，而 connect() 每次都新建 BluetoothGatt，
+    // 发现服务前没有服务对象。控制器因此总是走完整的发现流程，已绑定或支持 GATT 缓存的门锁由系统直接用缓存完成发现
+    @Override
+    public boolean restoreCharacteristic(UUID serviceUuid, UUID characteristicUuid, boolean writeWithoutResponse) {
+        return false;
+    }
+
+    @Override
+    public boolean supportsWriteWithoutResponse(UUID serviceUuid, UUID characteristicUuid) {
+        BluetoothGattCharacteristic characteristic = findCharacteristic(serviceUuid, characteristicUuid);
+        return characteristic != null
+                && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean write(UUID serviceUuid, UUID characteristicUuid, byte[] value, boolean withoutResponse) {
+        BluetoothGattCharacteristic characteristic = findCharacteristic(serviceUuid, characteristicUuid);
+        if (characteristic == null || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        int writeType = withoutResponse ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+        beginSpan(TraceEvent.WRITE);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                return bluetoothGatt.writeCharacteristic(characteristic, value, writeType) == BluetoothStatusCodes.SUCCESS;
+            }
+            characteristic.setWriteType(writeType);
+            characteristic.setValue(value);
+            return bluetoothGatt.writeCharacteristic(characteristic);
+        } catch (SecurityException e) {
+            Log.e(TAG, "写入权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean enableNotifications(UUID serviceUuid, UUID characteristicUuid) {
+        BluetoothGattCharacteristic characteristic = findCharacteristic(serviceUuid, characteristicUuid);
+        if (characteristic == null || (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) == 0
+                || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        BluetoothGattDescriptor descriptor = characteristic.getDescriptor(CLIENT_CONFIG_DESCRIPTOR);
+        if (descriptor == null) {
+            return false;
+        }
+        beginSpan(TraceEvent.SUBSCRIBE);
+        try {
+            // 本地开启通知转发，再写入门锁的 CCCD 描述符
+            if (!bluetoothGatt.setCharacteristicNotification(characteristic, true)) {
+                return false;
+            }
+            byte[] value = BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                return bluetoothGatt.writeDescriptor(descriptor, value) == BluetoothStatusCodes.SUCCESS;
+            }
+            descriptor.setValue(value);
+            return bluetoothGatt.writeDescriptor(descriptor);
+        } catch (SecurityException e) {
+            Log.e(TAG, "订阅通知权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        if (bluetoothGatt == null || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        beginSpan(TraceEvent.MTU);
+        try {
+            return bluetoothGatt.requestMtu(mtu);
+        } catch (SecurityException e) {
+            Log.e(TAG, "MTU请求权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean readRssi() {
+        if (bluetoothGatt == null || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        try {
+            return bluetoothGatt.readRemoteRssi();
+        } catch (SecurityException e) {
+            Log.e(TAG, "读取信号强度权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean readPhy() {
+        if (bluetoothGatt == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.O
+                || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        try {
+            bluetoothGatt.readPhy();
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "读取PHY权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int priority) {
+        if (bluetoothGatt == null || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        try {
+            return bluetoothGatt.requestConnectionPriority(priority);
+        } catch (SecurityException e) {
+            Log.e(TAG, "连接优先级请求权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean setPreferredPhy(int phy) {
+        if (bluetoothGatt == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.O
+                || !hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+            return false;
+        }
+        int mask = phy == PHY_LE_2M ? BluetoothDevice.PHY_LE_2M_MASK : BluetoothDevice.PHY_LE_1M_MASK;
+        try {
+            bluetoothGatt.setPreferredPhy(mask, mask, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "设置PHY权限错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (bluetoothGatt == null) {
+            return;
+        }
+        try {
+            if (hasPermission(Manifest.permission.BLUETOOTH_CONNECT)) {
+                bluetoothGatt.disconnect();
+            }
+            bluetoothGatt.close();
+        } catch (Exception e) {
+            Log.e(TAG, "断开连接错误: " + e.getMessage());
+        }
+        bluetoothGatt = null;
+        endSpan(traceSpan, -1);
+    }
+
+    // 每个连接使用独立的回调，已关闭连接的迟到回调会被丢弃
+    private class GattCallback extends BluetoothGattCallback {
+        BluetoothGatt gatt;
+
+        private void dispatch(Runnable event) {
+            scheduler.post(() -> {
+                if (gatt != null && gatt == bluetoothGatt && callback != null) {
+                    event.run();
+                }
+            });
+        }
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt g, int status, int newState) {
+            boolean connected = newState == BluetoothProfile.STATE_CONNECTED;
+            dispatch(() -> {
+                if (BuildConfig.BLE_TRACE && traceSpan == TraceEvent.CONNECT) {
+                    endSpan(TraceEvent.CONNECT, status);
+                } else if (BuildConfig.BLE_TRACE && !connected) {
+                    endSpan(traceSpan, status);
+                    BleTrace.instant(TraceEvent.DISCONNECT, traceTrack, status);
+                }
+                callback.onConnectionStateChanged(status, connected);
+            });
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt g, int status) {
+            dispatch(() -> {
+                endSpan(TraceEvent.DISCOVER, status);
+                callback.onServicesDiscovered(status);
+            });
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt g, BluetoothGattCharacteristic characteristic, int status) {
+            UUID uuid = characteristic.getUuid();
+            dispatch(() -> {
+                endSpan(TraceEvent.WRITE, status);
+                callback.onCharacteristicWritten(uuid, status);
+            });
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt g, BluetoothGattDescriptor descriptor, int status) {
+            if (CLIENT_CONFIG_DESCRIPTOR.equals(descriptor.getUuid())) {
+                UUID uuid = descriptor.getCharacteristic().getUuid();
+                dispatch(() -> {
+                    endSpan(TraceEvent.SUBSCRIBE, status);
+                    callback.onNotificationsEnabled(uuid, status);
+                });
+            }
+        }
+
+        // Android 13 起通知的值随回调传入，旧回调只在更早的系统上使用，避免重复处理
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic characteristic, byte[] value) {
+            UUID uuid = characteristic.getUuid();
+            BleTrace.instant(TraceEvent.NOTIFY, traceTrack, value.length);
+            dispatch(() -> callback.onCharacteristicChanged(uuid, value));
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic characteristic) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) {
+                // 特征的值会被下一条通知覆盖，派发到 BLE 线程前先复制
+                UUID uuid = characteristic.getUuid();
+                byte[] value = characteristic.getValue().clone();
+                BleTrace.instant(TraceEvent.NOTIFY, traceTrack, value.length);
+                dispatch(() -> callback.onCharacteristicChanged(uuid, value));
+            }
+        }
+
+        @Override
+        public void onReadRemoteRssi(BluetoothGatt g, int rssi, int status) {
+            dispatch(() -> callback.onRssiRead(rssi, status));
+        }
+
+        @Override
+        public void onPhyRead(BluetoothGatt g, int txPhy, int rxPhy, int status) {
+            dispatch(() -> callback.onPhyRead(txPhy, rxPhy, status));
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt g, int txPhy, int rxPhy, int status) {
+            dispatch(() -> callback.onPhyRead(txPhy, rxPhy, status));
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt g, int mtu, int status) {
+            dispatch(() -> {
+                endSpan(TraceEvent.MTU, status == GATT_SUCCESS ? mtu : -status);
+                callback.onMtuChanged(mtu, status);
+            });
+        }
+
+        // 系统隐藏的回调（Android 8 起由系统调用），SDK 中不可见，不能加 @Override
+        public void onConnectionUpdated(BluetoothGatt g, int interval, int latency, int timeout, int status) {
+            BleTrace.instant(TraceEvent.CONNECTION_UPDATE, traceTrack, interval);
+            dispatch(() -> callback.onConnectionUpdated(interval, latency, timeout, status));
+        }
+    }
+}
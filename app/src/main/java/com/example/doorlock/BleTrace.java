@@ -0,0 +1,115 @@
+package com.example.doorlock;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内唯一的 {@link TraceBuffer}，只在 BuildConfig.BLE_TRACE 为 true（debug 构建）时存在。
+ * 记录方法的第一句判断这个编译期常量，release 构建中方法体被编译器去掉，缓冲区也不会分配。
+ * 轨道按名称分配，名称在创建连接时登记一次，记录时只传轨道号。
+ */
+public final class BleTrace {
+    // 主线程上的服务、界面和小组件事件
+    public static final int TRACK_APP = 1;
+    private static final int CAPACITY = 4096;
+    private static final TraceBuffer buffer = BuildConfig.BLE_TRACE
+            ? new TraceBuffer(CAPACITY, SystemClock::elapsedRealtimeNanos) : null;
+    private static final Map<String, Integer> tracks = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextTrack = new AtomicInteger(TRACK_APP + 1);
+
+    private BleTrace() {
+    }
+
+    public static boolean isEnabled() {
+        return BuildConfig.BLE_TRACE;
+    }
+
+    // 按名称取得轨道号，同一名称总是同一个轨道；不要在每次记录时调用
+    public static int track(String name) {
+        if (!BuildConfig.BLE_TRACE) {
+            return TRACK_APP;
+        }
+        return tracks.computeIfAbsent(name, key -> nextTrack.getAndIncrement());
+    }
+
+    public static void begin(TraceEvent event, int track) {
+        if (BuildConfig.BLE_TRACE) {
+            buffer.begin(event, track);
+        }
+    }
+
+    public static void end(TraceEvent event, int track, long arg) {
+        if (BuildConfig.BLE_TRACE) {
+            buffer.end(event, track, arg);
+        }
+    }
+
+    public static void instant(TraceEvent event, int track, long arg) {
+        if (BuildConfig.BLE_TRACE) {
+            buffer.instant(event, track, arg);
+        }
+    }
+
+    public static void asyncBegin(TraceEvent event, int track) {
+        if (BuildConfig.BLE_TRACE) {
+            buffer.asyncBegin(event, track);
+        }
+    }
+
+    public static void asyncEnd(TraceEvent event, int track, long arg) {
+        if (BuildConfig.BLE_TRACE) {
+            buffer.asyncEnd(event, track, arg);
+        }
+    }
+
+    /**
+     * 把缓冲区写入应用外部私有目录的 traces/ 下（可用 adb pull 取出），返回文件。
+     * 在后台线程调用；没有启用追踪时返回 null。
+     */
+    public static File export(Context context) throws IOException {
+        if (!BuildConfig.BLE_TRACE) {
+            return null;
+        }
+        File directory = context.getExternalFilesDir("traces");
+        if (directory == null) {
+            directory = new File(context.getFilesDir(), "traces");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建目录: " + directory);
+        }
+        String name = "ble-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + ".json";
+        File file = new File(directory, name);
+
+        Map<Integer, String> trackNames = new TreeMap<>();
+        trackNames.put(TRACK_APP, "应用");
+        for (Map.Entry<String, Integer> track : tracks.entrySet()) {
+            trackNames.put(track.getValue(), track.getKey());
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            buffer.writeJson(writer, Process.myPid(), trackNames);
+        }
+        return file;
+    }
+
+    public static void clear() {
+        if (BuildConfig.BLE_TRACE) {
+            buffer.clear();
+        }
+    }
+}
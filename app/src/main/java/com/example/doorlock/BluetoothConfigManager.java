@@ -4,22 +4,62 @@ import static android.content.Context.MODE_PRIVATE;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * 蓝牙配置。配置以不可变的 {@link LockConfig} 快照发布：进程启动时在后台线程读取 SharedPreferences，
+ * 更新时先发布新快照再异步写盘。各组件通过 {@link ConfigListener} 即时收到变化，不需要轮询。
+ * 加载、更新和删除都在同一个配置线程上按提交顺序执行，调用方不等待加载，之后的更新也不会被加载结果覆盖。
+ * 每把门锁一份配置：默认门锁沿用原来的存储键，新增的门锁以 JSON 数组保存在 PROFILES 中。
+ */
 public class BluetoothConfigManager {
     private static final String TAG = "BluetoothConfigManager";
+    private static final String PREFS_NAME = "BluetoothConfig";
+    private static final String KEY_PROFILES = "PROFILES";
     private static BluetoothConfigManager instance;
 
-    private String deviceName;
-    private UUID serviceUuid;
-    private UUID rxCharacteristicUuid;
-    private String pressTime;
-    private String releaseTime;
+    // 回调在配置线程上执行（添加监听器时的首次回调在调用线程上），需要更新界面的监听器自行切换线程
+    public interface ConfigListener {
+        void onConfigChanged(LockConfig config);
+
+        default void onProfileRemoved(String id) {
+        }
+    }
+
+    private final Context context;
+    // 默认门锁始终在第一位
+    private final AtomicReference<List<LockConfig>> profiles = new AtomicReference<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    // 加载、发布和删除只在这个线程上执行，profiles 只有它写入
+    private final Handler worker;
+    private final List<ConfigListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile SharedPreferences prefs;
+    // 每把门锁当前配置的开锁命令，二进制格式原地写入递增的序号
+    private final Map<String, byte[]> unlockPayloads = new HashMap<>();
+    private int sequence = 0;
 
     private BluetoothConfigManager(Context context) {
-        loadConfig(context);
+        this.context = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread("BluetoothConfig");
+        thread.start();
+        worker = new Handler(thread.getLooper());
+        worker.post(this::loadConfig);
     }
 
     public static synchronized BluetoothConfigManager getInstance(Context context) {
@@ -29,61 +69,256 @@ public class BluetoothConfigManager {
         return instance;
     }
 
-    private void loadConfig(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences("BluetoothConfig", MODE_PRIVATE);
+    private void loadConfig() {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        this.prefs = prefs;
 
-        deviceName = prefs.getString("DEVICE_NAME", "ESP32Lock");
-        pressTime = prefs.getString("PRESS_TIME", "450");
-        releaseTime = prefs.getString("RELEASE_TIME", "300");
+        long lingerTime;
+        try {
+            lingerTime = Long.parseLong(prefs.getString("LINGER_TIME", String.valueOf(LockConfig.DEFAULT_LINGER_TIME)));
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "存储的保持连接时长格式错误，使用默认值", e);
+            lingerTime = LockConfig.DEFAULT_LINGER_TIME;
+        }
 
+        UUID serviceUuid;
+        UUID rxCharacteristicUuid;
         try {
-            serviceUuid = UUID.fromString(prefs.getString("SERVICE_UUID", "6E400001-B5A3-F393-E0A9-E50E24DCCA9E"));
-            rxCharacteristicUuid = UUID.fromString(prefs.getString("RX_CHARACTERISTIC_UUID", "6E400002-B5A3-F393-E0A9-E50E24DCCA9E"));
+            serviceUuid = UUID.fromString(prefs.getString("SERVICE_UUID", NordicUartService.SERVICE));
+            rxCharacteristicUuid = UUID.fromString(prefs.getString("RX_CHARACTERISTIC_UUID", NordicUartService.RX_CHARACTERISTIC));
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "存储的UUID格式错误，使用默认值", e);
-            serviceUuid = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
-            rxCharacteristicUuid = UUID.fromString("6E400002-B5A3-F393-E0A9-E50E24DCCA9E");
+            serviceUuid = NordicUartService.SERVICE_UUID;
+            rxCharacteristicUuid = NordicUartService.RX_CHARACTERISTIC_UUID;
+        }
+
+        String commandFormat = prefs.getString("COMMAND_FORMAT", UnlockCommandCodec.FORMAT_JSON);
+        LockConfig loadedConfig = new LockConfig(
+                LockConfig.DEFAULT_ID,
+                prefs.getString("DEVICE_NAME", LockConfig.DEFAULT_DEVICE_NAME),
+                serviceUuid,
+                rxCharacteristicUuid,
+                prefs.getString("PRESS_TIME", LockConfig.DEFAULT_PRESS_TIME),
+                prefs.getString("RELEASE_TIME", LockConfig.DEFAULT_RELEASE_TIME),
+                prefs.getBoolean("KEEP_WARM", false),
+                lingerTime,
+                commandFormat);
+        if (!commandFormat.equals(loadedConfig.getCommandFormat())) {
+            Log.e(TAG, "时间参数无法编码为二进制命令，使用JSON格式");
+        }
+
+        List<LockConfig> loadedProfiles = new ArrayList<>();
+        loadedProfiles.add(loadedConfig);
+        try {
+            JSONArray array = new JSONArray(prefs.getString(KEY_PROFILES, "[]"));
+            for (int i = 0; i < array.length(); i++) {
+                loadedProfiles.add(fromJson(array.getJSONObject(i)));
+            }
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "存储的门锁列表格式错误，只加载默认门锁", e);
+        }
+
+        Log.d(TAG, "加载蓝牙配置: " + loadedProfiles);
+        synchronized (this) {
+            for (LockConfig profile : loadedProfiles) {
+                unlockPayloads.put(profile.getId(), profile.newUnlockPayload());
+            }
+        }
+        profiles.set(Collections.unmodifiableList(loadedProfiles));
+        loaded.countDown();
+        // 之后的更新排在这个任务后面，不会先于加载结果通知
+        for (LockConfig profile : loadedProfiles) {
+            for (ConfigListener listener : listeners) {
+                listener.onConfigChanged(profile);
+            }
+        }
+    }
+
+    // 只在配置线程上调用
+    private void publish(LockConfig newConfig) {
+        List<LockConfig> updated = new ArrayList<>(profiles.get());
+        int index = indexOf(updated, newConfig.getId());
+        if (index >= 0) {
+            updated.set(index, newConfig);
+        } else {
+            updated.add(newConfig);
+        }
+        synchronized (this) {
+            unlockPayloads.put(newConfig.getId(), newConfig.newUnlockPayload());
+        }
+        profiles.set(Collections.unmodifiableList(updated));
+        for (ConfigListener listener : listeners) {
+            listener.onConfigChanged(newConfig);
+        }
+    }
+
+    private static int indexOf(List<LockConfig> list, String id) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 所有门锁的配置快照，默认门锁在第一位。首次加载完成前调用会等待加载，主线程上请改用监听器
+    public List<LockConfig> getProfiles() {
+        List<LockConfig> current = profiles.get();
+        if (current != null) {
+            return current;
+        }
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        current = profiles.get();
+        return current != null ? current : Collections.singletonList(LockConfig.DEFAULT);
+    }
 
-        Log.d(TAG, "加载蓝牙配置: " + deviceName + ", " + serviceUuid + ", " +
-                rxCharacteristicUuid+ ", " + pressTime+ ", " + releaseTime);
+    // 默认门锁的配置快照
+    public LockConfig getConfig() {
+        return getProfiles().get(0);
     }
 
-    // Getter 方法
-    public String getDeviceName() {
-        return deviceName;
+    // 按 id 查找门锁配置，不存在时返回 null
+    public LockConfig getProfile(String id) {
+        List<LockConfig> current = getProfiles();
+        int index = indexOf(current, id);
+        return index >= 0 ? current.get(index) : null;
     }
 
-    public UUID getServiceUuid() {
-        return serviceUuid;
+    // 已加载时立即以每把门锁的当前配置各回调一次，之后每次配置变化回调
+    public void addListener(ConfigListener listener) {
+        listeners.add(listener);
+        List<LockConfig> current = profiles.get();
+        if (current != null) {
+            for (LockConfig profile : current) {
+                listener.onConfigChanged(profile);
+            }
+        }
     }
 
-    public UUID getRxCharacteristicUuid() {
-        return rxCharacteristicUuid;
+    public void removeListener(ConfigListener listener) {
+        listeners.remove(listener);
     }
 
-    public String getPressTime() {
-        return pressTime;
+    // 返回指定门锁预编码的开锁命令，二进制格式会原地写入递增的序号；序号在所有门锁间递增
+    public synchronized byte[] nextUnlockPayload(String id) {
+        byte[] payload = unlockPayloads.get(id);
+        if (payload == null) {
+            payload = LockConfig.DEFAULT.newUnlockPayload();
+            unlockPayloads.put(id, payload);
+        }
+        if (UnlockCommandCodec.isBinary(payload)) {
+            sequence = (sequence + 1) & 0xFFFF;
+            UnlockCommandCodec.writeSequence(payload, sequence);
+        }
+        return payload;
     }
 
-    public String getReleaseTime() {
-        return releaseTime;
+    // 新门锁的 id，保存前不会出现在列表中
+    public static String newProfileId() {
+        return UUID.randomUUID().toString().substring(0, 8);
     }
 
-    // 更新配置的方法
-    public void updateConfig(Context context, String newDeviceName, String newServiceUuid, String
-            newRxCharacteristicUuid, String newPressTime, String newReleaseTime) {
-        SharedPreferences prefs = context.getSharedPreferences("BluetoothConfig", MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
+    // 更新配置：立即发布新快照，SharedPreferences 在后台写入。id 不存在时新增一把门锁。
+    // 格式错误在调用线程上抛出；发布和保存交给配置线程，不等待首次加载（主线程会调用）
+    public void updateConfig(String id, String newDeviceName, String newServiceUuid, String newRxCharacteristicUuid,
+                             String newPressTime, String newReleaseTime, boolean newKeepWarm,
+                             String newLingerTime, String newCommandFormat) {
+        LockConfig newConfig = new LockConfig(id, newDeviceName, UUID.fromString(newServiceUuid),
+                UUID.fromString(newRxCharacteristicUuid), newPressTime, newReleaseTime, newKeepWarm,
+                Long.parseLong(newLingerTime), newCommandFormat);
+        worker.post(() -> apply(newConfig));
+    }
+
+    // 只在配置线程上调用
+    private void apply(LockConfig newConfig) {
+        publish(newConfig);
+
+        if (newConfig.isDefault()) {
+            prefs.edit()
+                    .putString("DEVICE_NAME", newConfig.getDeviceName())
+                    .putString("SERVICE_UUID", newConfig.getServiceUuid().toString())
+                    .putString("RX_CHARACTERISTIC_UUID", newConfig.getRxCharacteristicUuid().toString())
+                    .putString("PRESS_TIME", newConfig.getPressTime())
+                    .putString("RELEASE_TIME", newConfig.getReleaseTime())
+                    .putBoolean("KEEP_WARM", newConfig.isKeepWarm())
+                    .putString("LINGER_TIME", String.valueOf(newConfig.getLingerTime()))
+                    .putString("COMMAND_FORMAT", newConfig.getCommandFormat())
+                    .apply();
+        } else {
+            saveProfiles();
+        }
+        Log.d(TAG, "更新蓝牙配置: " + newConfig);
+    }
 
-        editor.putString("DEVICE_NAME", newDeviceName);
-        editor.putString("SERVICE_UUID", newServiceUuid);
-        editor.putString("RX_CHARACTERISTIC_UUID", newRxCharacteristicUuid);
-        editor.putString("PRESS_TIME", newPressTime);
-        editor.putString("RELEASE_TIME", newReleaseTime);
-        editor.apply();
+    // 删除一把门锁，默认门锁不能删除。与更新一样在配置线程上执行，不等待首次加载
+    public void removeProfile(String id) {
+        if (LockConfig.DEFAULT_ID.equals(id)) {
+            return;
+        }
+        worker.post(() -> remove(id));
+    }
+
+    private void remove(String id) {
+        List<LockConfig> updated = new ArrayList<>(profiles.get());
+        int index = indexOf(updated, id);
+        if (index < 0) {
+            return;
+        }
+        updated.remove(index);
+        synchronized (this) {
+            unlockPayloads.remove(id);
+        }
+        profiles.set(Collections.unmodifiableList(updated));
+        for (ConfigListener listener : listeners) {
+            listener.onProfileRemoved(id);
+        }
+        saveProfiles();
+        Log.d(TAG, "删除门锁: " + id);
+    }
+
+    private void saveProfiles() {
+        JSONArray array = new JSONArray();
+        try {
+            for (LockConfig profile : profiles.get()) {
+                if (!profile.isDefault()) {
+                    array.put(toJson(profile));
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "保存门锁列表失败", e);
+            return;
+        }
+        prefs.edit().putString(KEY_PROFILES, array.toString()).apply();
+    }
+
+    private static JSONObject toJson(LockConfig config) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("id", config.getId());
+        json.put("device_name", config.getDeviceName());
+        json.put("service_uuid", config.getServiceUuid().toString());
+        json.put("rx_characteristic_uuid", config.getRxCharacteristicUuid().toString());
+        json.put("press_time", config.getPressTime());
+        json.put("release_time", config.getReleaseTime());
+        json.put("keep_warm", config.isKeepWarm());
+        json.put("linger_time", config.getLingerTime());
+        json.put("command_format", config.getCommandFormat());
+        return json;
+    }
 
-        // 重新加载配置
-        loadConfig(context);
+    private static LockConfig fromJson(JSONObject json) throws JSONException {
+        return new LockConfig(
+                json.getString("id"),
+                json.getString("device_name"),
+                UUID.fromString(json.getString("service_uuid")),
+                UUID.fromString(json.getString("rx_characteristic_uuid")),
+                json.optString("press_time", LockConfig.DEFAULT_PRESS_TIME),
+                json.optString("release_time", LockConfig.DEFAULT_RELEASE_TIME),
+                json.optBoolean("keep_warm", false),
+                json.optLong("linger_time", LockConfig.DEFAULT_LINGER_TIME),
+                json.optString("command_format", UnlockCommandCodec.FORMAT_JSON));
     }
-}
\ No newline at end of file
+}
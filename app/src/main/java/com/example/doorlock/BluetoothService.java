@@ -1,120 +1,161 @@
 package com.example.doorlock;
 
-import android.Manifest;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.Service;
-import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
-import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanResult;
-import android.bluetooth.le.ScanSettings;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
+import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
-import android.widget.Toast;
 
 import androidx.annotation.Nullable;
-import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.UUID;
-
+/**
+ * 门锁服务，持有进程内唯一的门锁连接管理。小组件通过前台服务 PendingIntent 直接启动开锁，
+ * {@link #EXTRA_LOCK_ID} 指定开哪一把门锁；主界面绑定服务，通过 {@link LockBinder} 在同一进程内调用，不再各自建立连接。
+ * 所有门锁都没有进行中的操作时服务退出前台。通知渠道和开锁时的通知由 {@link WarmStart} 在进程启动时预先准备。
+ */
 public class BluetoothService extends Service {
     private static final String TAG = "BluetoothService";
     private static final String CHANNEL_ID = "BluetoothServiceChannel";
-    private BluetoothDevice device;
-    private String device_name;
-    private UUID serviceUuid;
-    private UUID rxCharacteristicUuid;
-    private String pressTime;
-    private String releaseTime;
     public static final String ACTION_UNLOCK = "ACTION_UNLOCK";
-    private BluetoothAdapter bluetoothAdapter;
-    private BluetoothGatt bluetoothGatt;
-    private boolean isConnected = false;
-    private static final long CONNECTION_TIMEOUT = 30000;
-    private Runnable scanTimeoutRunnable;
-    private Handler timeoutHandler;
-    private Runnable timeoutRunnable;
+    public static final String EXTRA_LOCK_ID = "lock_id";
+    public static final String ACTION_PROXIMITY_START = "ACTION_PROXIMITY_START";
+    public static final String ACTION_PROXIMITY_STOP = "ACTION_PROXIMITY_STOP";
+    static final String UNLOCK_NOTIFICATION_TEXT = "正在执行开锁操作...";
     private Handler mainHandler;
     private NotificationManager notificationManager;
+    // 开锁流程在 LockSession 的 BLE 线程上运行，服务只负责前台通知和生命周期
+    private LockSession session;
+    private WarmStart warmStart;
+    // 接近检测期间服务一直在前台运行
+    private boolean proximityActive = false;
+
+    private final IBinder binder = new LockBinder();
+
+    // 在 BLE 线程上汇总所有门锁的状态，再交给主线程处理。
+    // 合并、忽略或拒绝的开锁请求不会改变状态，所以准入结果出来后也要重新判断
+    private final LockConnectionManager.Listener lockListener = new LockConnectionManager.Listener() {
+        @Override
+        public void onStateChanged(String lockId, LockState state) {
+            reportSession();
+        }
+
+        @Override
+        public void onUnlockRequested(String lockId, UnlockAdmission.Decision decision) {
+            reportSession();
+        }
+    };
+
+    // 同一进程内的绑定接口，直接返回服务本身
+    public class LockBinder extends Binder {
+        public BluetoothService getService() {
+            return BluetoothService.this;
+        }
+    }
+
+    // 只能在 BLE 线程上调用
+    private void reportSession() {
+        boolean busy = session.isBusy();
+        boolean keepingWarm = session.isKeepingWarm();
+        mainHandler.post(() -> onSessionChanged(busy, keepingWarm));
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "蓝牙服务已创建");
-        // 加载配置
-        BluetoothConfigManager configManager = BluetoothConfigManager.getInstance(this);
-        device_name = configManager.getDeviceName();
-        serviceUuid = configManager.getServiceUuid();
-        rxCharacteristicUuid = configManager.getRxCharacteristicUuid();
-        pressTime = configManager.getPressTime();
-        releaseTime = configManager.getReleaseTime();
+        warmStart = WarmStart.getInstance(this);
         mainHandler = new Handler(Looper.getMainLooper());
         notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-
-        timeoutHandler = new Handler(Looper.getMainLooper());
-        timeoutRunnable = () -> {
-            if (!isConnected) {
-                Log.e(TAG, "连接超时");
-                disconnectDevice();
-                showToast("连接超时，请检查设备是否开启");
-            }
-        };
-
-        BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
-        if (bluetoothManager != null) {
-            bluetoothAdapter = bluetoothManager.getAdapter();
-        }
+        session = LockSession.getInstance(this);
+        session.addLockListener(lockListener);
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "服务启动");
+        long startTime = SystemClock.elapsedRealtime();
+        BleTrace.begin(TraceEvent.SERVICE_COMMAND, BleTrace.TRACK_APP);
 
         try {
-            Notification notification = createNotification();
-            Log.d(TAG, "通知创建成功");
-            startForeground(1, notification);
-            Log.d(TAG, "前台服务已启动");
+            startForeground(1, warmStart.getUnlockNotification());
         } catch (Exception e) {
             Log.e(TAG, "启动前台服务失败", e);
         }
 
-        if (intent != null && ACTION_UNLOCK.equals(intent.getAction())) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_PROXIMITY_START.equals(action)) {
+            // 后台扫描需要服务保持前台运行
+            session.setProximityEnabled(true);
+            proximityActive = true;
+            showProximityNotification();
+        } else if (ACTION_PROXIMITY_STOP.equals(action)) {
+            // 进行中的开锁结束后再退出前台
+            session.setProximityEnabled(false);
+            proximityActive = false;
+            session.post(this::reportSession);
+        } else if (ACTION_UNLOCK.equals(action)) {
             Log.d(TAG, "收到开锁指令");
-            connectAndUnlock();
+            String lockId = intent.getStringExtra(EXTRA_LOCK_ID);
+            if (lockId == null) {
+                lockId = LockConfig.DEFAULT_ID;
+            }
+            // 点击后立即显示为打开，门锁的结果由 LockSession 更新
+            LockControlWidget.setLockState(this, lockId, true);
+            if (LockControlWidget.ALL_LOCKS.equals(lockId)) {
+                session.unlockAll();
+            } else {
+                session.requestUnlock(lockId, UnlockSource.WIDGET, startTime);
+            }
+        } else {
+            // 系统重启服务时 intent 为空，或者未知的指令：没有进行中的操作就退出前台
+            Log.d(TAG, "没有可执行的指令: " + action);
+            session.post(this::reportSession);
         }
 
+        BleTrace.end(TraceEvent.SERVICE_COMMAND, BleTrace.TRACK_APP, 0);
         return START_STICKY;
     }
 
-    private Notification createNotification() {
-        createNotificationChannel();
+    private void onSessionChanged(boolean busy, boolean keepingWarm) {
+        if (busy) {
+            return;
+        }
+        if (keepingWarm) {
+            if (notificationManager != null) {
+                notificationManager.notify(1, createNotification("门锁已连接，保持连接中"));
+            }
+        } else if (proximityActive) {
+            showProximityNotification();
+        } else {
+            // 命令都已送达或失败，连接由主界面保持或已经断开，服务不再需要前台运行
+            stopSelf();
+        }
+    }
+
+    private void showProximityNotification() {
+        if (notificationManager != null) {
+            notificationManager.notify(1, createNotification("接近门锁时自动连接"));
+        }
+    }
+
+    private Notification createNotification(String contentText) {
+        warmStart.ensureNotificationChannel();
+        return buildNotification(this, contentText);
+    }
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+    // 渠道需要已经创建；预热线程也会调用
+    static Notification buildNotification(Context context, String contentText) {
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
                 .setContentTitle("门锁控制服务")
-                .setContentText("正在执行开锁操作...")
+                .setContentText(contentText)
                 .setOngoing(false);
 
         try {
@@ -127,8 +168,9 @@ public class BluetoothService extends Service {
         return builder.build();
     }
 
-    private void createNotificationChannel() {
+    static void createNotificationChannel(Context context) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
             NotificationChannel channel = new NotificationChannel(
                     CHANNEL_ID,
                     "蓝牙服务通道",
@@ -142,360 +184,61 @@ public class BluetoothService extends Service {
         }
     }
 
-    private void saveDeviceInfo(BluetoothDevice device) {
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
-            Log.e(TAG, "缺少蓝牙扫描权限");
-            showToast("缺少蓝牙扫描权限");
-            return;
-        }
-        SharedPreferences prefs = getSharedPreferences("BluetoothPrefs", MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putString("device_name", device.getName());
-        editor.putString("device_address", device.getAddress());
-        editor.apply();
-        Log.d(TAG, "设备信息已保存");
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        session.removeLockListener(lockListener);
+        Log.d(TAG, "蓝牙服务已停止");
     }
 
-    private BluetoothDevice loadDeviceInfo() {
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
-            Log.e(TAG, "缺少蓝牙扫描权限");
-            showToast("缺少蓝牙扫描权限");
-            return null;
-        }
-        SharedPreferences prefs = getSharedPreferences("BluetoothPrefs", MODE_PRIVATE);
-        String deviceName = prefs.getString("device_name", "");
-        String deviceAddress = prefs.getString("device_address", "");
-
-        if (!deviceName.isEmpty() && !deviceAddress.isEmpty()) {
-            try {
-                BluetoothDevice device = bluetoothAdapter.getRemoteDevice(deviceAddress);
-                if (device != null && deviceName.equals(device.getName())) {
-                    return device;
-                }
-            } catch (IllegalArgumentException e) {
-                Log.e(TAG, "无效的设备地址: " + e.getMessage());
-            }
-        }
-        return null;
+    public void requestUnlock() {
+        session.requestUnlock();
     }
 
-    private void connectAndUnlock() {
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
-            Log.e(TAG, "缺少蓝牙扫描权限");
-            showToast("缺少蓝牙扫描权限");
-            return;
-        }
-        Log.d(TAG, "开始连接门锁");
-
-        if (bluetoothAdapter == null) {
-            Log.e(TAG, "蓝牙适配器未初始化");
-            showToast("蓝牙适配器不可用");
-            return;
-        }
-
-        if (!bluetoothAdapter.isEnabled()) {
-            Log.e(TAG, "蓝牙未启用");
-            showToast("请先启用蓝牙");
-            return;
-        }
-
-        BluetoothDevice savedDevice = loadDeviceInfo();
-        if (savedDevice != null) {
-            Log.d(TAG, "使用保存的设备连接");
-            device = savedDevice;
-            connectToDevice(device);
-            return;
-        }
-
-        startDeviceScan();
+    public void requestUnlock(String lockId) {
+        session.requestUnlock(lockId, UnlockSource.APP);
     }
 
-    private void connectToDevice(BluetoothDevice device) {
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
-            Log.e(TAG, "缺少蓝牙扫描权限");
-            showToast("缺少蓝牙扫描权限");
-            return;
-        }
-        Log.d(TAG, "尝试连接设备: " + device.getName());
-
-        try {
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-                Log.e(TAG, "缺少蓝牙连接权限");
-                showToast("缺少蓝牙连接权限");
-                return;
-            }
-
-            // 保存设备信息
-            saveDeviceInfo(device);
-
-            bluetoothGatt = device.connectGatt(this, false, gattCallback);
-            Log.d(TAG, "正在连接门锁...");
-            startConnectionTimeout();
-        } catch (SecurityException e) {
-            Log.e(TAG, "连接权限错误: " + e.getMessage());
-            showToast("连接权限错误: " + e.getMessage());
-        }
+    // 同时开启所有已配置的门锁
+    public void unlockAll() {
+        session.unlockAll();
     }
 
-    private void startDeviceScan() {
-        Log.d(TAG, "开始扫描蓝牙设备...");
-        showToast("正在扫描门锁设备...");
-
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
-            Log.e(TAG, "缺少蓝牙扫描权限");
-            showToast("缺少蓝牙扫描权限");
-            return;
-        }
-
-        BluetoothLeScanner bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
-        if (bluetoothLeScanner == null) {
-            Log.e(TAG, "无法获取蓝牙扫描器");
-            showToast("无法扫描蓝牙设备");
-            return;
-        }
-
-        ScanCallback scanCallback = new ScanCallback() {
-            @Override
-            public void onScanResult(int callbackType, ScanResult result) {
-                super.onScanResult(callbackType, result);
-
-                if (ActivityCompat.checkSelfPermission(BluetoothService.this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
-                    Log.e(TAG, "缺少蓝牙扫描权限，无法处理扫描结果");
-                    return;
-                }
-
-                BluetoothDevice device = result.getDevice();
-                String deviceName = device.getName();
-
-                if (deviceName != null && deviceName.equals(device_name)) {
-                    Log.d(TAG, "找到目标设备: " + deviceName);
-
-                    try {
-                        bluetoothLeScanner.stopScan(this);
-                        Log.d(TAG,"已停止扫描");
-
-                        // 取消扫描超时任务
-                        if (scanTimeoutRunnable != null) {
-                            mainHandler.removeCallbacks(scanTimeoutRunnable);
-                            Log.d(TAG, "已取消扫描超时任务");
-                        }
-                    } catch (SecurityException e) {
-                        Log.e(TAG, "停止扫描权限错误: " + e.getMessage());
-                    }
-
-                    BluetoothService.this.device = device;
-                    connectToDevice(device);
-                }
-            }
-
-            @Override
-            public void onScanFailed(int errorCode) {
-                super.onScanFailed(errorCode);
-                Log.e(TAG, "扫描失败，错误码: " + errorCode);
-                showToast("扫描设备失败");
-
-                // 扫描失败时也取消超时任务
-                if (scanTimeoutRunnable != null) {
-                    mainHandler.removeCallbacks(scanTimeoutRunnable);
-                    Log.d(TAG, "扫描失败，已取消扫描超时任务");
-                }
-            }
-        };
-
-        try {
-            ScanSettings settings = new ScanSettings.Builder()
-                    .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-                    .build();
-            Log.d(TAG, "开始扫描");
-            bluetoothLeScanner.startScan(null, settings, scanCallback);
-
-            // 创建扫描超时任务
-            scanTimeoutRunnable = () -> {
-                try {
-                    bluetoothLeScanner.stopScan(scanCallback);
-                } catch (SecurityException e) {
-                    Log.e(TAG, "停止扫描权限错误: " + e.getMessage());
-                }
-                Log.d(TAG, "扫描超时");
-                showToast("未找到门锁设备");
-            };
-
-            // 设置扫描超时
-            mainHandler.postDelayed(scanTimeoutRunnable, 10000);
-        } catch (SecurityException e) {
-            Log.e(TAG, "扫描权限错误: " + e.getMessage());
-            showToast("扫描权限错误: " + e.getMessage());
-        }
+    // 建立并保持连接，直到 release() 或解除绑定
+    public void connect() {
+        session.connect();
     }
 
-    private void sendUnlockCommand() {
-        Log.d(TAG, "尝试发送开锁命令");
-
-        if (bluetoothGatt == null) {
-            Log.e(TAG, "未连接到设备");
-            return;
-        }
-
-        try {
-
-            BluetoothGattService service = bluetoothGatt.getService(serviceUuid);
-            if (service == null) {
-                Log.e(TAG, "未找到服务");
-                showToast("未找到服务, 请检查服务UUID是否填写正确");
-                return;
-            }
-
-            BluetoothGattCharacteristic characteristic = service.getCharacteristic(rxCharacteristicUuid);
-            if (characteristic == null) {
-                Log.e(TAG, "未找到特征");
-                showToast("未找到特征, 请检查RX特征UUID是否填写正确");
-                return;
-            }
-            JSONObject sendMessage = new JSONObject();
-            try {
-                sendMessage.put("press_time", pressTime);
-                sendMessage.put("release_time", releaseTime);
-                sendMessage.put("action", "unlock");
-
-                // 将 JSON 对象转换为字符串并发送
-                String jsonString = sendMessage.toString();
-                characteristic.setValue(jsonString.getBytes(StandardCharsets.UTF_8));
-
-                Log.d(TAG, "发送 JSON 数据: " + jsonString);
-            } catch (JSONException e) {
-                Log.e(TAG, "创建 JSON 数据时出错: " + e.getMessage());
-            }
-            characteristic.setValue(sendMessage.toString().getBytes());
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-                return;
-            }
-            boolean success = bluetoothGatt.writeCharacteristic(characteristic);
-            if (success) {
-                Log.d(TAG, "开锁命令发送成功");
-                showToast("开锁命令发送成功");
-                removeNotification();
-                updateWidgetStatus(true);
-
-                mainHandler.postDelayed(() -> {
-                    Log.d(TAG, "恢复锁定状态");
-                    updateWidgetStatus(false);
-                    disconnectDevice();
-                }, 2000);
-            } else {
-                Log.e(TAG, "开锁命令发送失败");
-                showToast("开锁命令发送失败");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "错误: " + e.getMessage());
-            showToast("错误: " + e.getMessage());
-        }
+    public void release() {
+        session.release();
     }
 
-    private void removeNotification() {
-        stopForeground(true);
-        Log.d(TAG, "通知已移除");
+    public LockState getState() {
+        return session.getState();
     }
 
-    private void updateWidgetStatus(final boolean isUnlocked) {
-        mainHandler.post(() -> {
-            Log.d(TAG, "发送小组件状态更新: " + (isUnlocked ? "门已开" : "门已锁"));
-
-            Intent updateIntent = new Intent(LockControlWidget.ACTION_UPDATE);
-            updateIntent.putExtra("isUnlocked", isUnlocked);
-            updateIntent.setPackage(getPackageName());
-            sendBroadcast(updateIntent);
-
-            Log.d(TAG, "小组件状态更新广播已发送");
-        });
+    public boolean isProximityEnabled() {
+        return session.isProximityEnabled();
     }
 
-    private void startConnectionTimeout() {
-        timeoutHandler.postDelayed(timeoutRunnable, CONNECTION_TIMEOUT);
+    public void addStateListener(LockController.StateListener listener) {
+        session.addStateListener(listener);
     }
 
-    private void stopConnectionTimeout() {
-        timeoutHandler.removeCallbacks(timeoutRunnable);
+    public void removeStateListener(LockController.StateListener listener) {
+        session.removeStateListener(listener);
     }
 
-    private void disconnectDevice() {
-        stopConnectionTimeout();
-
-        try {
-            if (bluetoothGatt != null) {
-                if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-                    Log.e(TAG, "缺少蓝牙连接权限");
-                    return;
-                }
-                bluetoothGatt.disconnect();
-                bluetoothGatt.close();
-                bluetoothGatt = null;
-                Log.d(TAG, "已断开连接");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "断开连接错误: " + e.getMessage());
-        }
-
-        updateWidgetStatus(false);
-        stopSelf();
-    }
-
-    private void showToast(final String message) {
-        mainHandler.post(() -> Toast.makeText(BluetoothService.this, message, Toast.LENGTH_SHORT).show());
-    }
-
-    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
-        @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            Log.d(TAG, "onConnectionStateChange: status=" + status + ", newState=" + newState);
-            stopConnectionTimeout();
-
-            if (newState == BluetoothProfile.STATE_CONNECTED) {
-                isConnected = true;
-                Log.d(TAG, "设备已连接");
-
-                try {
-                    bluetoothGatt.discoverServices();
-                    Log.d(TAG, "正在发现服务...");
-                } catch (SecurityException e) {
-                    Log.e(TAG, "发现服务错误: " + e.getMessage());
-                    showToast("发现服务错误: " + e.getMessage());
-                    disconnectDevice();
-                }
-            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                isConnected = false;
-                Log.d(TAG, "设备已断开");
-                showToast("门锁连接失败");
-                updateWidgetStatus(false);
-            }
-        }
-
-        @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            Log.d(TAG, "onServicesDiscovered: status=" + status);
-
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                Log.d(TAG, "服务发现成功");
-                sendUnlockCommand();
-                List<BluetoothGattService> services = gatt.getServices();
-                Log.d(TAG, "发现的服务数量: " + services.size());
-            } else {
-                Log.e(TAG, "服务发现失败");
-                showToast("服务发现失败");
-                disconnectDevice();
-            }
-        }
-    };
-
+    @Nullable
     @Override
-    public void onDestroy() {
-        super.onDestroy();
-        disconnectDevice();
-        Log.d(TAG, "蓝牙服务已停止");
+    public IBinder onBind(Intent intent) {
+        return binder;
     }
 
-    @Nullable
+    // 绑定方全部离开后放弃它们保持的连接；正在进行的开锁不受影响
     @Override
-    public IBinder onBind(Intent intent) {
-        return null;
+    public boolean onUnbind(Intent intent) {
+        session.release();
+        return false;
     }
-}
\ No newline at end of file
+}
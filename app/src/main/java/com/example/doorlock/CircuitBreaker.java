@@ -0,0 +1,60 @@
+package com.example.doorlock;
+
+/**
+ * 每把门锁的熔断器：连续 {@link #FAILURE_THRESHOLD} 次连接失败（每次已经包含重试）后打开，
+ * 打开期间不再连接这把门锁，直接提示；{@link #OPEN_TIME} 后半开，允许再尝试一次：成功则关闭，
+ * 失败则重新打开并把打开时间加倍，最长 {@link #MAX_OPEN_TIME}。不依赖 Android API，不是线程安全的。
+ */
+public class CircuitBreaker {
+    static final int FAILURE_THRESHOLD = 3;
+    static final long OPEN_TIME = 30000;
+    static final long MAX_OPEN_TIME = 5 * 60 * 1000;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openTime = OPEN_TIME;
+    private long openUntil;
+
+    // 是否允许发起连接；打开时间已过时转为半开
+    public boolean allow(long now) {
+        if (state == State.OPEN && now >= openUntil) {
+            state = State.HALF_OPEN;
+        }
+        return state != State.OPEN;
+    }
+
+    public void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        openTime = OPEN_TIME;
+    }
+
+    public void onFailure(long now) {
+        if (state == State.HALF_OPEN) {
+            openTime = Math.min(openTime * 2, MAX_OPEN_TIME);
+            open(now);
+        } else if (++failures >= FAILURE_THRESHOLD) {
+            open(now);
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openUntil = now + openTime;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // 打开状态的剩余时间，没有打开时为 0
+    public long getRemaining(long now) {
+        return state == State.OPEN ? Math.max(0, openUntil - now) : 0;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.doorlock;
+
+import java.util.Arrays;
+
+/**
+ * 超过单次写入长度（MTU - 3）的开锁命令的分片格式，只用于提供功能特征
+ * ({@link NordicUartService#FEATURE_CHARACTERISTIC}) 的新固件。
+ * 分片 (3 字节头): [标记 0xFB][消息号 u8][分片序号 bit0-6 | 最后一片 bit7] + 命令的一段
+ * 固件可通过首字节区分：0xFB 是分片，'{' 是 JSON 命令，版本号是二进制帧。
+ * 重组规则见 {@link Reassembler}，固件按同样的规则实现。不依赖 Android API。
+ */
+public final class CommandFramer {
+    public static final byte MARKER = (byte) 0xFB;
+    public static final int HEADER_LENGTH = 3;
+    public static final int MAX_FRAGMENTS = 128;
+    // 固件的重组缓冲区大小
+    public static final int MAX_MESSAGE_LENGTH = 512;
+
+    private static final int OFFSET_MARKER = 0;
+    private static final int OFFSET_MESSAGE = 1;
+    private static final int OFFSET_INDEX = 2;
+    private static final int LAST_FLAG = 0x80;
+    private static final int INDEX_MASK = 0x7F;
+
+    private CommandFramer() {
+    }
+
+    public static boolean isFragment(byte[] frame) {
+        return frame != null && frame.length >= HEADER_LENGTH && frame[OFFSET_MARKER] == MARKER;
+    }
+
+    // 按每次写入最多 capacity 字节（含分片头）切分，messageId 取低 8 位
+    public static byte[][] split(byte[] payload, int capacity, int messageId) {
+        int chunk = capacity - HEADER_LENGTH;
+        if (chunk <= 0) {
+            throw new IllegalArgumentException("写入长度过小: " + capacity);
+        }
+        if (payload.length > MAX_MESSAGE_LENGTH) {
+            throw new IllegalArgumentException("命令过长: " + payload.length);
+        }
+        int count = Math.max(1, (payload.length + chunk - 1) / chunk);
+        if (count > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException("分片过多: " + count);
+        }
+        byte[][] fragments = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            int offset = i * chunk;
+            int length = Math.min(chunk, payload.length - offset);
+            byte[] fragment = new byte[HEADER_LENGTH + length];
+            fragment[OFFSET_MARKER] = MARKER;
+            fragment[OFFSET_MESSAGE] = (byte) messageId;
+            fragment[OFFSET_INDEX] = (byte) (i | (i == count - 1 ? LAST_FLAG : 0));
+            System.arraycopy(payload, offset, fragment, HEADER_LENGTH, length);
+            fragments[i] = fragment;
+        }
+        return fragments;
+    }
+
+    /**
+     * 接收端的重组，规则：
+     * 1. 序号为 0 的分片开始一条新消息，丢弃之前没有收完的消息；
+     * 2. 之后的分片必须与当前消息的消息号相同且序号连续，否则丢弃整条消息，等待下一个序号 0；
+     * 3. 带最后一片标记的分片收到后，拼接的内容按一条完整命令处理；
+     * 4. 内容超过 {@link #MAX_MESSAGE_LENGTH} 时丢弃整条消息；连接断开时调用 {@link #reset()} 丢弃未完成的消息。
+     * 不是线程安全的。
+     */
+    public static final class Reassembler {
+        private final byte[] buffer = new byte[MAX_MESSAGE_LENGTH];
+        private int length;
+        private int messageId;
+        // 下一个期望的分片序号，没有进行中的消息时为 -1
+        private int expectedIndex = -1;
+        private int discarded;
+
+        // 收完一条消息时返回完整的命令，否则返回 null
+        public byte[] accept(byte[] frame) {
+            if (!isFragment(frame)) {
+                return null;
+            }
+            int id = frame[OFFSET_MESSAGE] & 0xFF;
+            int index = frame[OFFSET_INDEX] & INDEX_MASK;
+            if (index == 0) {
+                reset();
+                messageId = id;
+                expectedIndex = 0;
+            }
+            int chunk = frame.length - HEADER_LENGTH;
+            if (expectedIndex < 0) {
+                return null;
+            }
+            if (id != messageId || index != expectedIndex || length + chunk > buffer.length) {
+                reset();
+                return null;
+            }
+            System.arraycopy(frame, HEADER_LENGTH, buffer, length, chunk);
+            length += chunk;
+            expectedIndex++;
+            if ((frame[OFFSET_INDEX] & LAST_FLAG) == 0) {
+                return null;
+            }
+            byte[] message = Arrays.copyOf(buffer, length);
+            expectedIndex = -1;
+            length = 0;
+            return message;
+        }
+
+        public void reset() {
+            if (expectedIndex > 0) {
+                discarded++;
+            }
+            expectedIndex = -1;
+            length = 0;
+        }
+
+        // 收到部分分片后被丢弃的消息数
+        public int getDiscardedCount() {
+            return discarded;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.doorlock;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+public class DiagnosticsActivity extends AppCompatActivity {
+    private static final String TAG = "DiagnosticsActivity";
+    private TextView tvDiagnostics;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        tvDiagnostics = findViewById(R.id.tv_diagnostics);
+        Button btnReset = findViewById(R.id.btn_reset_diagnostics);
+        btnReset.setOnClickListener(v -> {
+            UnlockTracer.getInstance(this).reset();
+            UnlockLatencyMetrics.getInstance(this).reset();
+            LinkProfileMetrics.getInstance(this).reset();
+            WarmStart.getInstance(this).reset();
+            Toast.makeText(this, "统计已清空", Toast.LENGTH_SHORT).show();
+            refresh();
+        });
+
+        // 只有 debug 构建记录 BLE 事件
+        Button btnExportTrace = findViewById(R.id.btn_export_trace);
+        btnExportTrace.setVisibility(BleTrace.isEnabled() ? View.VISIBLE : View.GONE);
+        btnExportTrace.setOnClickListener(v -> exportTrace());
+    }
+
+    // 导出的文件可在 Perfetto (ui.perfetto.dev) 或 chrome://tracing 中打开
+    private void exportTrace() {
+        new Thread(() -> {
+            String message;
+            try {
+                File file = BleTrace.export(getApplicationContext());
+                message = "已导出: " + file.getAbsolutePath();
+            } catch (IOException e) {
+                Log.e(TAG, "导出追踪失败", e);
+                message = "导出失败: " + e.getMessage();
+            }
+            String result = message;
+            runOnUiThread(() -> Toast.makeText(this, result, Toast.LENGTH_LONG).show());
+        }, "TraceExport").start();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    private void refresh() {
+        UnlockTracer tracer = UnlockTracer.getInstance(this);
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("各阶段耗时 (相对上一阶段, ms)\n");
+        sb.append(String.format(Locale.ROOT, "%-12s %6s %6s %6s %6s\n", "阶段", "次数", "p50", "p95", "p99"));
+        for (UnlockPhase phase : UnlockPhase.values()) {
+            appendRow(sb, phase.getLabel(), tracer.getPhaseHistogram(phase));
+        }
+        appendRow(sb, "总耗时", tracer.getTotalHistogram());
+        appendRow(sb, "服务到蓝牙", WarmStart.getInstance(this).getStartToBleHistogram());
+
+        sb.append("\n热/冷连接\n");
+        sb.append(UnlockLatencyMetrics.getInstance(this).getSummary()).append('\n');
+
+        sb.append("\n连接参数配置\n");
+        sb.append(LinkProfileMetrics.getInstance(this).getSummary());
+
+        sb.append("\n最近开锁\n");
+        List<String> timelines = tracer.getRecentTimelines();
+        if (timelines.isEmpty()) {
+            sb.append("暂无记录\n");
+        }
+        for (String timeline : timelines) {
+            sb.append(timeline).append('\n');
+        }
+
+        tvDiagnostics.setText(sb.toString());
+    }
+
+    private void appendRow(StringBuilder sb, String label, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        sb.append(String.format(Locale.ROOT, "%-12s %6d %6d %6d %6d\n", label, histogram.getCount(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(95),
+                histogram.getValueAtPercentile(99)));
+    }
+}
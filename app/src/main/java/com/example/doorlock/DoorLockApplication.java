@@ -0,0 +1,16 @@
+package com.example.doorlock;
+
+import android.app.Application;
+
+/**
+ * 进程启动时在后台开始加载配置并预热开锁服务（见 {@link WarmStart}），
+ * 界面、小组件和服务用到时通常已经准备好。
+ */
+public class DoorLockApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        BluetoothConfigManager.getInstance(this);
+        WarmStart.getInstance(this);
+    }
+}
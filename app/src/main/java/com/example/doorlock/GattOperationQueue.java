@@ -0,0 +1,427 @@
+package com.example.doorlock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * GATT 操作队列。Android 同一时间只允许一个未完成的 GATT 操作，前一个操作完成前发起的新操作会直接失败。
+ * 这里把连接、发现服务、MTU、写入、订阅通知和读取信号强度逐个顺序执行，每个操作有各自的超时；
+ * 写入和订阅通知排在其他等待中的操作之前，它们之间保持提交顺序，订阅后发出的开锁命令一定能收到门锁的动作通知。超时的操作以 {@link LockTransport#GATT_TIMEOUT} 结束。
+ * 回调按类型和特征 UUID 与操作对应；超时或被取消的操作仍在系统中执行，之后第一个对应的回调属于它，被丢弃，
+ * 不会被当作同类型的下一个操作的结果。连接断开或 close() 时取消所有操作，调用方也可以用 {@link #cancel(UUID)} 取消。
+ */
+public class GattOperationQueue implements LockTransport, LockTransport.Callback {
+    static final long CONNECT_TIMEOUT = 10000;
+    static final long DISCOVER_TIMEOUT = 5000;
+    static final long MTU_TIMEOUT = 3000;
+    static final long WRITE_TIMEOUT = 3000;
+    static final long READ_TIMEOUT = 3000;
+
+    enum Type {
+        CONNECT(CONNECT_TIMEOUT, false),
+        DISCOVER(DISCOVER_TIMEOUT, false),
+        MTU(MTU_TIMEOUT, false),
+        WRITE(WRITE_TIMEOUT, true),
+        SUBSCRIBE(WRITE_TIMEOUT, true),
+        READ_RSSI(READ_TIMEOUT, false);
+
+        final long timeout;
+        final boolean priority;
+
+        Type(long timeout, boolean priority) {
+            this.timeout = timeout;
+            this.priority = priority;
+        }
+    }
+
+    private interface Starter {
+        boolean start();
+    }
+
+    private static final class Operation {
+        final Type type;
+        final Starter starter;
+        // 写入和订阅的特征 UUID，用于匹配回调和失败时回调
+        final UUID characteristicUuid;
+        // 开始执行时分配，超时只对同一次执行生效
+        int generation;
+        // 超时或取消后等待迟到回调的截止时间，过后不再认领回调
+        long lateUntil;
+
+        Operation(Type type, Starter starter, UUID characteristicUuid) {
+            this.type = type;
+            this.starter = starter;
+            this.characteristicUuid = characteristicUuid;
+        }
+
+        boolean matches(Type type, UUID characteristicUuid) {
+            return this.type == type && (this.characteristicUuid == null || characteristicUuid == null
+                    || this.characteristicUuid.equals(characteristicUuid));
+        }
+    }
+
+    private final LockTransport transport;
+    private final LockScheduler scheduler;
+    private final List<Operation> pending = new ArrayList<>();
+    // 已经发出、但超时或被取消的操作，按发出顺序认领迟到的回调
+    private final List<Operation> abandoned = new ArrayList<>();
+    private Runnable deadlineRunnable;
+    private int generation = 0;
+    private Operation current;
+    private Callback callback;
+
+    public GattOperationQueue(LockTransport transport, LockScheduler scheduler) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        transport.setCallback(this);
+    }
+
+    // 当前正在执行和等待执行的操作数
+    public int size() {
+        return pending.size() + (current != null ? 1 : 0);
+    }
+
+    private boolean enqueue(Operation operation) {
+        if (current == null) {
+            // 队列空闲时立即执行，启动失败直接返回 false
+            if (!operation.starter.start()) {
+                return false;
+            }
+            begin(operation);
+            return true;
+        }
+        if (operation.type.priority) {
+            int index = 0;
+            while (index < pending.size() && pending.get(index).type.priority) {
+                index++;
+            }
+            pending.add(index, operation);
+        } else {
+            pending.add(operation);
+        }
+        return true;
+    }
+
+    private void begin(Operation operation) {
+        current = operation;
+        int id = ++generation;
+        operation.generation = id;
+        deadlineRunnable = () -> onDeadline(id);
+        scheduler.postDelayed(deadlineRunnable, operation.type.timeout);
+    }
+
+    private void cancelDeadline() {
+        if (deadlineRunnable != null) {
+            scheduler.cancel(deadlineRunnable);
+            deadlineRunnable = null;
+        }
+    }
+
+    // 放弃已经发出的操作：之后对应的回调被丢弃
+    private void abandon(Operation operation) {
+        operation.lateUntil = scheduler.now() + operation.type.timeout;
+        abandoned.add(operation);
+    }
+
+    // 回调属于已放弃的操作时认领并返回 true；先发出的操作先认领
+    private boolean claimLate(Type type, UUID characteristicUuid) {
+        long now = scheduler.now();
+        for (int i = 0; i < abandoned.size(); i++) {
+            Operation operation = abandoned.get(i);
+            if (now > operation.lateUntil) {
+                abandoned.remove(i--);
+            } else if (operation.matches(type, characteristicUuid)) {
+                abandoned.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void next() {
+        while (current == null && !pending.isEmpty()) {
+            Operation operation = pending.remove(0);
+            if (operation.starter.start()) {
+                begin(operation);
+            } else {
+                // 排队期间条件已变化（例如特征不存在），以失败结束，继续下一个
+                scheduler.post(() -> fail(operation, GATT_FAILURE));
+            }
+        }
+    }
+
+    // 回调属于当前操作时结束该操作；调用方随后转发回调（回调里可能继续提交操作），再执行下一个
+    private boolean complete(Type type, UUID characteristicUuid) {
+        if (claimLate(type, characteristicUuid)) {
+            return false;
+        }
+        if (current == null || !current.matches(type, characteristicUuid)) {
+            return false;
+        }
+        cancelDeadline();
+        current = null;
+        return true;
+    }
+
+    private void onDeadline(int id) {
+        Operation operation = current;
+        if (operation == null || operation.generation != id) {
+            return;
+        }
+        deadlineRunnable = null;
+        current = null;
+        if (operation.type == Type.CONNECT) {
+            // 放弃这次连接，避免之后迟到的连接成功回调
+            pending.clear();
+            transport.close();
+        } else {
+            abandon(operation);
+        }
+        fail(operation, GATT_TIMEOUT);
+        next();
+    }
+
+    /**
+     * 取消特征 characteristicUuid 的写入和订阅；为 null 时取消除连接以外的所有操作（取消连接请用 close()）。
+     * 等待中的操作直接移除，已经发出的操作无法撤回，之后到达的回调被丢弃，队列继续执行下一个。
+     * 被取消的操作不回调，返回取消的操作数。
+     */
+    public int cancel(UUID characteristicUuid) {
+        int cancelled = 0;
+        for (int i = 0; i < pending.size(); i++) {
+            Operation operation = pending.get(i);
+            if (operation.type != Type.CONNECT && (characteristicUuid == null
+                    || characteristicUuid.equals(operation.characteristicUuid))) {
+                pending.remove(i--);
+                cancelled++;
+            }
+        }
+        Operation operation = current;
+        if (operation != null && operation.type != Type.CONNECT && (characteristicUuid == null
+                || characteristicUuid.equals(operation.characteristicUuid))) {
+            cancelDeadline();
+            current = null;
+            abandon(operation);
+            cancelled++;
+            next();
+        }
+        return cancelled;
+    }
+
+    private void fail(Operation operation, int status) {
+        if (callback == null) {
+            return;
+        }
+        switch (operation.type) {
+            case CONNECT:
+                callback.onConnectionStateChanged(status, false);
+                break;
+            case DISCOVER:
+                callback.onServicesDiscovered(status);
+                break;
+            case MTU:
+                callback.onMtuChanged(LockDeviceRecord.MTU_UNKNOWN, status);
+                break;
+            case WRITE:
+                callback.onCharacteristicWritten(operation.characteristicUuid, status);
+                break;
+            case SUBSCRIBE:
+                callback.onNotificationsEnabled(operation.characteristicUuid, status);
+                break;
+            case READ_RSSI:
+                callback.onRssiRead(0, status);
+                break;
+        }
+    }
+
+    private void clear() {
+        cancelDeadline();
+        current = null;
+        pending.clear();
+        abandoned.clear();
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return transport.isEnabled();
+    }
+
+    @Override
+    public boolean startScan(LockScanMatcher matcher) {
+        return transport.startScan(matcher);
+    }
+
+    @Override
+    public void stopScan() {
+        transport.stopScan();
+    }
+
+    @Override
+    public boolean connect(String address, int addressType, boolean prefer2mPhy) {
+        return enqueue(new Operation(Type.CONNECT, () -> transport.connect(address, addressType, prefer2mPhy), null));
+    }
+
+    @Override
+    public boolean discoverServices() {
+        return enqueue(new Operation(Type.DISCOVER, transport::discoverServices, null));
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        return transport.hasCharacteristic(serviceUuid, characteristicUuid);
+    }
+
+    @Override
+    public boolean restoreCharacteristic(UUID serviceUuid, UUID characteristicUuid, boolean writeWithoutResponse) {
+        return transport.restoreCharacteristic(serviceUuid, characteristicUuid, writeWithoutResponse);
+    }
+
+    @Override
+    public boolean supportsWriteWithoutResponse(UUID serviceUuid, UUID characteristicUuid) {
+        return transport.supportsWriteWithoutResponse(serviceUuid, characteristicUuid);
+    }
+
+    // 写入优先于等待中的其他操作，多个写入和订阅之间保持提交顺序
+    @Override
+    public boolean write(UUID serviceUuid, UUID characteristicUuid, byte[] value, boolean withoutResponse) {
+        return enqueue(new Operation(Type.WRITE,
+                () -> transport.write(serviceUuid, characteristicUuid, value, withoutResponse), characteristicUuid));
+    }
+
+    @Override
+    public boolean enableNotifications(UUID serviceUuid, UUID characteristicUuid) {
+        return enqueue(new Operation(Type.SUBSCRIBE,
+                () -> transport.enableNotifications(serviceUuid, characteristicUuid), characteristicUuid));
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        return enqueue(new Operation(Type.MTU, () -> transport.requestMtu(mtu), null));
+    }
+
+    @Override
+    public boolean readRssi() {
+        return enqueue(new Operation(Type.READ_RSSI, transport::readRssi, null));
+    }
+
+    // 读取 PHY 是控制器命令，不占用 GATT，不需要排队
+    @Override
+    public boolean readPhy() {
+        return transport.readPhy();
+    }
+
+    // 连接参数和 PHY 由链路层协商，不占用 GATT，不需要排队
+    @Override
+    public boolean requestConnectionPriority(int priority) {
+        return transport.requestConnectionPriority(priority);
+    }
+
+    @Override
+    public boolean setPreferredPhy(int phy) {
+        return transport.setPreferredPhy(phy);
+    }
+
+    @Override
+    public void close() {
+        clear();
+        transport.close();
+    }
+
+    @Override
+    public void onScanResult(String address, String name, List<UUID> serviceUuids, int rssi, int addressType) {
+        if (callback != null) {
+            callback.onScanResult(address, name, serviceUuids, rssi, addressType);
+        }
+    }
+
+    @Override
+    public void onScanFailed(int errorCode) {
+        if (callback != null) {
+            callback.onScanFailed(errorCode);
+        }
+    }
+
+    @Override
+    public void onConnectionStateChanged(int status, boolean connected) {
+        if (connected) {
+            complete(Type.CONNECT, null);
+        } else {
+            // 连接断开，等待中的操作都不会再有结果
+            clear();
+        }
+        if (callback != null) {
+            callback.onConnectionStateChanged(status, connected);
+        }
+        next();
+    }
+
+    @Override
+    public void onServicesDiscovered(int status) {
+        if (complete(Type.DISCOVER, null) && callback != null) {
+            callback.onServicesDiscovered(status);
+        }
+        next();
+    }
+
+    @Override
+    public void onCharacteristicWritten(UUID characteristicUuid, int status) {
+        if (complete(Type.WRITE, characteristicUuid) && callback != null) {
+            callback.onCharacteristicWritten(characteristicUuid, status);
+        }
+        next();
+    }
+
+    @Override
+    public void onNotificationsEnabled(UUID characteristicUuid, int status) {
+        if (complete(Type.SUBSCRIBE, characteristicUuid) && callback != null) {
+            callback.onNotificationsEnabled(characteristicUuid, status);
+        }
+        next();
+    }
+
+    // 通知由门锁主动发出，不占用队列
+    @Override
+    public void onCharacteristicChanged(UUID characteristicUuid, byte[] value) {
+        if (callback != null) {
+            callback.onCharacteristicChanged(characteristicUuid, value);
+        }
+    }
+
+    @Override
+    public void onRssiRead(int rssi, int status) {
+        if (complete(Type.READ_RSSI, null) && callback != null) {
+            callback.onRssiRead(rssi, status);
+        }
+        next();
+    }
+
+    @Override
+    public void onPhyRead(int txPhy, int rxPhy, int status) {
+        if (callback != null) {
+            callback.onPhyRead(txPhy, rxPhy, status);
+        }
+    }
+
+    // 门锁也可能主动发起 MTU 交换，不是当前操作的结果同样转发
+    @Override
+    public void onMtuChanged(int mtu, int status) {
+        complete(Type.MTU, null);
+        if (callback != null) {
+            callback.onMtuChanged(mtu, status);
+        }
+        next();
+    }
+
+    @Override
+    public void onConnectionUpdated(int interval, int latency, int timeout, int status) {
+        if (callback != null) {
+            callback.onConnectionUpdated(interval, latency, timeout, status);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.doorlock;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+public class HandlerScheduler implements LockScheduler {
+    private final Handler handler;
+
+    public HandlerScheduler(Looper looper) {
+        handler = new Handler(looper);
+    }
+
+    @Override
+    public void post(Runnable task) {
+        handler.post(task);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        handler.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.elapsedRealtime();
+    }
+}
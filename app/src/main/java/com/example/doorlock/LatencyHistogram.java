@@ -0,0 +1,149 @@
+package com.example.doorlock;
+
+/**
+ * HDR 风格的对数-线性延迟直方图（单位毫秒）。
+ * 每个 2 的幂区间再平均分成 16 个子桶，相对误差约 6%，内存固定，记录时不分配对象。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // 最大可区分的值约为 2^26 ms（约 18 小时），更大的值计入最后一个桶
+    private static final int MAX_EXPONENT = 26;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private long sum;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    // percentile 取值 0-100，返回所在桶的上界（不超过记录到的最大值）
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100.0 * totalCount);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(Math.max(highestEquivalentValue(i), getMin()), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+    }
+
+    // 稀疏编码: "min,max,sum;索引:计数,索引:计数"
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getMin()).append(',').append(max).append(',').append(sum).append(';');
+        boolean first = true;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append(i).append(':').append(counts[i]);
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    public static LatencyHistogram decode(String encoded) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        if (encoded == null || encoded.isEmpty()) {
+            return histogram;
+        }
+        try {
+            int split = encoded.indexOf(';');
+            String[] header = encoded.substring(0, split).split(",");
+            String body = encoded.substring(split + 1);
+            if (!body.isEmpty()) {
+                for (String entry : body.split(",")) {
+                    int colon = entry.indexOf(':');
+                    int index = Integer.parseInt(entry.substring(0, colon));
+                    long count = Long.parseLong(entry.substring(colon + 1));
+                    if (index >= 0 && index < BUCKET_COUNT) {
+                        histogram.counts[index] += count;
+                        histogram.totalCount += count;
+                    }
+                }
+            }
+            if (histogram.totalCount > 0) {
+                histogram.min = Long.parseLong(header[0]);
+                histogram.max = Long.parseLong(header[1]);
+                histogram.sum = Long.parseLong(header[2]);
+            }
+        } catch (RuntimeException e) {
+            histogram.reset();
+        }
+        return histogram;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long lowest = (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return lowest + width - 1;
+    }
+}
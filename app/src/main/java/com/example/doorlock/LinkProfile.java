@@ -0,0 +1,33 @@
+package com.example.doorlock;
+
+/**
+ * 连接参数配置。建立连接和开锁期间用高优先级（最短连接间隔）和 2M PHY，缩短发现服务和写入的每次往返；
+ * 开锁结束后仍保持的连接改为低功耗间隔。低功耗配置不改 PHY：2M 发送同样的数据占用的空口时间更短，并不更耗电。
+ */
+public enum LinkProfile {
+    UNLOCK("开锁", LockTransport.CONNECTION_PRIORITY_HIGH, LockTransport.PHY_LE_2M),
+    IDLE("空闲", LockTransport.CONNECTION_PRIORITY_LOW_POWER, LockDeviceRecord.PHY_UNKNOWN);
+
+    private final String label;
+    private final int priority;
+    private final int phy;
+
+    LinkProfile(String label, int priority, int phy) {
+        this.label = label;
+        this.priority = priority;
+        this.phy = phy;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    // 首选的 PHY，不改变时为 PHY_UNKNOWN
+    public int getPhy() {
+        return phy;
+    }
+}
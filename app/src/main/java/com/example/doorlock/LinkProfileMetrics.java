@@ -0,0 +1,167 @@
+package com.example.doorlock;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 每把门锁在各连接参数配置（{@link LinkProfile}）下的实际效果：系统给出的连接间隔和 PHY，
+ * 以及在该配置下经过的各阶段耗时（相对上一阶段，按阶段结束时使用的配置归类）。
+ * 持久化保存，重启后继续累计。
+ */
+public class LinkProfileMetrics {
+    private static final String TAG = "LinkProfileMetrics";
+    private static final String PREFS_NAME = "LinkProfileMetrics";
+    private static final UnlockPhase[] PHASES = UnlockPhase.values();
+    private static LinkProfileMetrics instance;
+
+    private final SharedPreferences prefs;
+    // 键为 "门锁 ID/配置名"
+    private final Map<String, Stat> stats = new LinkedHashMap<>();
+
+    private LinkProfileMetrics(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            try {
+                stats.put(entry.getKey(), Stat.fromJson(new JSONObject(String.valueOf(entry.getValue()))));
+            } catch (JSONException e) {
+                Log.e(TAG, "连接参数统计格式错误，已忽略: " + entry.getKey(), e);
+            }
+        }
+    }
+
+    public static synchronized LinkProfileMetrics getInstance(Context context) {
+        if (instance == null) {
+            instance = new LinkProfileMetrics(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // 记录配置下实际得到的连接间隔（单位 1.25ms）和 PHY，为 0 的参数不更新
+    public synchronized void recordLink(String lockId, LinkProfile profile, int interval, int phy) {
+        Stat stat = get(lockId, profile);
+        boolean changed = false;
+        if (interval > 0 && interval != stat.interval) {
+            stat.interval = interval;
+            changed = true;
+        }
+        if (phy != LockDeviceRecord.PHY_UNKNOWN && phy != stat.phy) {
+            stat.phy = phy;
+            changed = true;
+        }
+        if (changed) {
+            save(key(lockId, profile), stat);
+        }
+    }
+
+    // 一次开锁结束时记录各阶段耗时，phaseProfiles 是每个阶段结束时使用的配置（按阶段序号，没有时为 null）
+    public synchronized void recordUnlock(String lockId, UnlockTimeline timeline, LinkProfile[] phaseProfiles) {
+        Map<String, Stat> touched = new LinkedHashMap<>();
+        for (UnlockPhase phase : PHASES) {
+            LinkProfile profile = phaseProfiles[phase.ordinal()];
+            long delta = timeline.sincePrevious(phase);
+            if (profile == null || delta < 0) {
+                continue;
+            }
+            Stat stat = get(lockId, profile);
+            stat.phases[phase.ordinal()].record(delta);
+            touched.put(key(lockId, profile), stat);
+        }
+        for (Map.Entry<String, Stat> entry : touched.entrySet()) {
+            save(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized String getSummary() {
+        if (stats.isEmpty()) {
+            return "暂无记录\n";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+            Stat stat = entry.getValue();
+            String[] parts = entry.getKey().split("/", 2);
+            LinkProfile profile = LinkProfile.valueOf(parts[1]);
+            sb.append(String.format(Locale.ROOT, "[%s] %s: 间隔 %s, PHY %s\n", parts[0], profile.getLabel(),
+                    stat.interval > 0 ? String.format(Locale.ROOT, "%.2fms", stat.interval * 1.25) : "未知",
+                    stat.phy == LockTransport.PHY_LE_2M ? "2M" : stat.phy == LockTransport.PHY_LE_1M ? "1M" : "未知"));
+            for (UnlockPhase phase : PHASES) {
+                LatencyHistogram histogram = stat.phases[phase.ordinal()];
+                if (histogram.getCount() > 0) {
+                    sb.append(String.format(Locale.ROOT, "  %-10s %4d次 p50 %dms p95 %dms\n", phase.getLabel(),
+                            histogram.getCount(), histogram.getValueAtPercentile(50),
+                            histogram.getValueAtPercentile(95)));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+        prefs.edit().clear().apply();
+    }
+
+    private static String key(String lockId, LinkProfile profile) {
+        return lockId + "/" + profile.name();
+    }
+
+    private Stat get(String lockId, LinkProfile profile) {
+        return stats.computeIfAbsent(key(lockId, profile), k -> new Stat());
+    }
+
+    private void save(String key, Stat stat) {
+        try {
+            prefs.edit().putString(key, stat.toJson().toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "保存连接参数统计失败", e);
+        }
+    }
+
+    private static final class Stat {
+        int interval;
+        int phy = LockDeviceRecord.PHY_UNKNOWN;
+        final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+
+        Stat() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("interval", interval);
+            json.put("phy", phy);
+            JSONObject phaseJson = new JSONObject();
+            for (UnlockPhase phase : PHASES) {
+                if (phases[phase.ordinal()].getCount() > 0) {
+                    phaseJson.put(phase.name(), phases[phase.ordinal()].encode());
+                }
+            }
+            json.put("phases", phaseJson);
+            return json;
+        }
+
+        static Stat fromJson(JSONObject json) {
+            Stat stat = new Stat();
+            stat.interval = json.optInt("interval", 0);
+            stat.phy = json.optInt("phy", LockDeviceRecord.PHY_UNKNOWN);
+            JSONObject phaseJson = json.optJSONObject("phases");
+            if (phaseJson != null) {
+                for (UnlockPhase phase : PHASES) {
+                    stat.phases[phase.ordinal()] = LatencyHistogram.decode(phaseJson.optString(phase.name(), null));
+                }
+            }
+            return stat;
+        }
+    }
+}
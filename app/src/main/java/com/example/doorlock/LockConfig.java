@@ -0,0 +1,116 @@
+package com.example.doorlock;
+
+import java.util.UUID;
+
+/**
+ * 一份不可变的蓝牙配置快照。配置变化时整体替换，读取方拿到的始终是同一次保存的一组值。
+ * 开锁命令在创建快照时预编码，二进制参数超出范围时回退为 JSON 格式。
+ * 每把门锁一份配置，以 {@link #getId()} 区分，{@link #DEFAULT_ID} 是首次安装时的默认门锁。
+ */
+public final class LockConfig {
+    public static final String DEFAULT_ID = "default";
+    public static final String DEFAULT_DEVICE_NAME = "ESP32Lock";
+    public static final String DEFAULT_PRESS_TIME = "450";
+    public static final String DEFAULT_RELEASE_TIME = "300";
+    public static final long DEFAULT_LINGER_TIME = 30000;
+
+    public static final LockConfig DEFAULT = new LockConfig(DEFAULT_ID, DEFAULT_DEVICE_NAME, NordicUartService.SERVICE_UUID,
+            NordicUartService.RX_CHARACTERISTIC_UUID, DEFAULT_PRESS_TIME, DEFAULT_RELEASE_TIME, false,
+            DEFAULT_LINGER_TIME, UnlockCommandCodec.FORMAT_JSON);
+
+    private final String id;
+    private final String deviceName;
+    private final UUID serviceUuid;
+    private final UUID rxCharacteristicUuid;
+    private final String pressTime;
+    private final String releaseTime;
+    private final boolean keepWarm;
+    private final long lingerTime;
+    private final String commandFormat;
+    private final byte[] unlockPayload;
+
+    public LockConfig(String id, String deviceName, UUID serviceUuid, UUID rxCharacteristicUuid, String pressTime,
+                      String releaseTime, boolean keepWarm, long lingerTime, String commandFormat) {
+        this.id = id;
+        this.deviceName = deviceName;
+        this.serviceUuid = serviceUuid;
+        this.rxCharacteristicUuid = rxCharacteristicUuid;
+        this.pressTime = pressTime;
+        this.releaseTime = releaseTime;
+        this.keepWarm = keepWarm;
+        this.lingerTime = lingerTime;
+
+        byte[] payload = null;
+        if (UnlockCommandCodec.FORMAT_BINARY.equals(commandFormat)) {
+            try {
+                payload = UnlockCommandCodec.encodeBinary(Integer.parseInt(pressTime), Integer.parseInt(releaseTime), 0);
+            } catch (IllegalArgumentException e) {
+                // 时间参数无法编码为二进制命令，使用 JSON 格式
+                payload = null;
+            }
+        }
+        if (payload == null) {
+            payload = UnlockCommandCodec.encodeJson(pressTime, releaseTime);
+            commandFormat = UnlockCommandCodec.FORMAT_JSON;
+        }
+        this.commandFormat = commandFormat;
+        this.unlockPayload = payload;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isDefault() {
+        return DEFAULT_ID.equals(id);
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public UUID getServiceUuid() {
+        return serviceUuid;
+    }
+
+    public UUID getRxCharacteristicUuid() {
+        return rxCharacteristicUuid;
+    }
+
+    public String getPressTime() {
+        return pressTime;
+    }
+
+    public String getReleaseTime() {
+        return releaseTime;
+    }
+
+    public boolean isKeepWarm() {
+        return keepWarm;
+    }
+
+    public long getLingerTime() {
+        return lingerTime;
+    }
+
+    public String getCommandFormat() {
+        return commandFormat;
+    }
+
+    // 预编码命令的副本，调用方可以原地写入序号
+    public byte[] newUnlockPayload() {
+        return unlockPayload.clone();
+    }
+
+    // 设备名称和 UUID 相同时连接的是同一把锁，其余参数可以在连接上直接生效
+    public boolean hasSameTarget(LockConfig other) {
+        return other != null && deviceName.equals(other.deviceName) && serviceUuid.equals(other.serviceUuid)
+                && rxCharacteristicUuid.equals(other.rxCharacteristicUuid);
+    }
+
+    @Override
+    public String toString() {
+        return id + ": " + deviceName + ", " + serviceUuid + ", " + rxCharacteristicUuid + ", " + pressTime + ", " + releaseTime
+                + ", 保持连接: " + keepWarm + ", " + lingerTime + ", 命令格式: " + commandFormat;
+    }
+}
@@ -0,0 +1,344 @@
+package com.example.doorlock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 多把门锁的连接管理。每把门锁一个 {@link LockController}，全部运行在同一个 {@link LockScheduler} 线程上，
+ * 各自的连接可以同时进行。Android 同时维持的 GATT 连接数有限（常见为 4～7 个），超过上限的请求排队，
+ * 等有门锁回到 IDLE 后按提交顺序放行。{@link #unlockGroup} 同时向一组门锁发出开锁请求，全部结束后回调一次。
+ * 开锁请求先经过每把门锁的 {@link UnlockAdmission}，合并重复请求并避开门锁的冷却时间。
+ * 除 {@link #getState(String)}、{@link #getActiveCount()} 和监听器注册外，所有方法都必须在调度器线程上调用。
+ */
+public class LockConnectionManager {
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    // 为每把门锁创建独立的蓝牙连接和回调
+    public interface Factory {
+        LockTransport createTransport(String lockId);
+
+        LockController.Host createHost(String lockId);
+    }
+
+    // 回调在调度器线程上执行
+    public interface Listener {
+        void onStateChanged(String lockId, LockState state);
+
+        // 开锁请求经过准入后的结果，分组开锁时每把门锁各一次
+        default void onUnlockRequested(String lockId, UnlockAdmission.Decision decision) {
+        }
+
+        // 准入放行、状态机即将开始开锁（冷却结束后才开始的请求在那时回调），在 onUnlockRequested 之前
+        default void onUnlockStarted(String lockId) {
+        }
+    }
+
+    public interface GroupListener {
+        void onGroupFinished(List<String> succeeded, List<String> failed, long elapsedMs);
+    }
+
+    private final LockScheduler scheduler;
+    private final Factory factory;
+    private final int maxConnections;
+    private final Map<String, LockController> controllers = new ConcurrentHashMap<>();
+    private final Map<String, UnlockAdmission> admissions = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // 等待连接名额的请求，只在调度器线程上访问
+    private final ArrayDeque<PendingRequest> waiting = new ArrayDeque<>();
+    private final List<Group> groups = new ArrayList<>();
+    private final Runnable drainRunnable = this::drainWaiting;
+
+    public LockConnectionManager(LockScheduler scheduler, Factory factory, int maxConnections) {
+        this.scheduler = scheduler;
+        this.factory = factory;
+        this.maxConnections = maxConnections;
+    }
+
+    // 门锁的状态机，第一次使用时创建
+    public LockController get(String lockId) {
+        return controllers.computeIfAbsent(lockId, this::createController);
+    }
+
+    private LockController createController(String lockId) {
+        LockController controller = new LockController(factory.createTransport(lockId), scheduler,
+                factory.createHost(lockId));
+        controller.addStateListener(new LockController.StateListener() {
+            @Override
+            public void onStateChanged(LockState state) {
+                onLockStateChanged(lockId, state);
+            }
+
+            @Override
+            public void onUnlockFinished(boolean success, long latencyMs) {
+                onLockUnlockFinished(lockId, success);
+            }
+        });
+        admissions.put(lockId, new UnlockAdmission(scheduler, controller::getCooldownUntil, () -> {
+            for (Listener listener : listeners) {
+                listener.onUnlockStarted(lockId);
+            }
+            admit(lockId, LockController::requestUnlock);
+        }));
+        return controller;
+    }
+
+    // 门锁已删除：断开连接并丢弃状态机
+    public void remove(String lockId) {
+        LockController controller = controllers.remove(lockId);
+        if (controller != null) {
+            removeWaiting(lockId);
+            admissions.remove(lockId).cancel();
+            controller.disconnect();
+        }
+    }
+
+    public Collection<String> getLockIds() {
+        return controllers.keySet();
+    }
+
+    public LockState getState(String lockId) {
+        LockController controller = controllers.get(lockId);
+        return controller != null ? controller.getState() : LockState.IDLE;
+    }
+
+    // 占用连接名额（不在 IDLE）的门锁数量
+    public int getActiveCount() {
+        int count = 0;
+        for (LockController controller : controllers.values()) {
+            if (controller.getState() != LockState.IDLE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+
+    // 有门锁正在建立连接、发送命令，或者有请求在排队、在等待门锁冷却
+    public boolean hasWorkInProgress() {
+        if (!waiting.isEmpty()) {
+            return true;
+        }
+        for (UnlockAdmission admission : admissions.values()) {
+            if (admission.isPending()) {
+                return true;
+            }
+        }
+        for (LockController controller : controllers.values()) {
+            if (controller.hasWorkInProgress()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isKeepingWarm() {
+        for (LockController controller : controllers.values()) {
+            if (controller.isKeepingWarm()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // 返回准入结果；被合并、忽略或拒绝的请求不会建立连接
+    public UnlockAdmission.Decision requestUnlock(String lockId) {
+        get(lockId);
+        UnlockAdmission.Decision decision = admissions.get(lockId).request();
+        for (Listener listener : listeners) {
+            listener.onUnlockRequested(lockId, decision);
+        }
+        return decision;
+    }
+
+    // 门锁的剩余冷却时间（毫秒）
+    public long getCooldownRemaining(String lockId) {
+        UnlockAdmission admission = admissions.get(lockId);
+        return admission != null ? admission.getCooldownRemaining() : 0;
+    }
+
+    public void connect(String lockId) {
+        admit(lockId, LockController::connect);
+    }
+
+    // 预连接不排队：名额已满时放弃，连接名额留给用户的操作
+    public void preconnect(String lockId, long holdTime) {
+        LockController controller = get(lockId);
+        if (controller.getState() == LockState.IDLE && getActiveCount() < maxConnections) {
+            controller.preconnect(holdTime);
+        }
+    }
+
+    public void release(String lockId) {
+        removeWaiting(lockId);
+        LockController controller = controllers.get(lockId);
+        if (controller != null) {
+            controller.release();
+        }
+    }
+
+    public void releaseAll() {
+        for (String lockId : controllers.keySet()) {
+            release(lockId);
+        }
+    }
+
+    public void disconnect(String lockId) {
+        removeWaiting(lockId);
+        LockController controller = controllers.get(lockId);
+        if (controller != null) {
+            controller.disconnect();
+        }
+    }
+
+    // 同时向一组门锁发出开锁请求，每把门锁都有结果（确认或失败）后回调
+    public void unlockGroup(List<String> lockIds, GroupListener listener) {
+        Group group = new Group(lockIds, listener, scheduler.now());
+        if (group.pending.isEmpty()) {
+            listener.onGroupFinished(group.succeeded, group.failed, 0);
+            return;
+        }
+        groups.add(group);
+        for (String lockId : group.pending.toArray(new String[0])) {
+            UnlockAdmission.Decision decision = requestUnlock(lockId);
+            if (decision == UnlockAdmission.Decision.DEBOUNCED) {
+                // 刚刚开过，视为成功
+                resolveGroups(lockId, true);
+            } else if (decision == UnlockAdmission.Decision.REJECTED) {
+                resolveGroups(lockId, false);
+            }
+        }
+    }
+
+    // 已经连接的门锁直接执行；需要新连接时名额已满则排队
+    private void admit(String lockId, Consumer<LockController> action) {
+        LockController controller = get(lockId);
+        if (controller.getState() != LockState.IDLE || getActiveCount() < maxConnections) {
+            action.accept(controller);
+            return;
+        }
+        waiting.add(new PendingRequest(lockId, action));
+    }
+
+    // 排队中的开锁被取消时结束它的准入，之后的请求重新开始
+    private void removeWaiting(String lockId) {
+        if (waiting.removeIf(request -> request.lockId.equals(lockId))) {
+            UnlockAdmission admission = admissions.get(lockId);
+            if (admission != null) {
+                admission.onFinished(false);
+            }
+        }
+    }
+
+    private boolean isWaiting(String lockId) {
+        for (PendingRequest request : waiting) {
+            if (request.lockId.equals(lockId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drainWaiting() {
+        while (!waiting.isEmpty() && getActiveCount() < maxConnections) {
+            PendingRequest request = waiting.poll();
+            LockController controller = controllers.get(request.lockId);
+            if (controller != null) {
+                request.action.accept(controller);
+            }
+        }
+    }
+
+    private void onLockStateChanged(String lockId, LockState state) {
+        for (Listener listener : listeners) {
+            listener.onStateChanged(lockId, state);
+        }
+        if (state != LockState.IDLE) {
+            return;
+        }
+        // 回到 IDLE 时仍未得到结果的开锁视为失败，排队中的除外
+        if (!isWaiting(lockId)) {
+            UnlockAdmission admission = admissions.get(lockId);
+            if (admission != null) {
+                admission.onFinished(false);
+            }
+            resolveGroups(lockId, false);
+        }
+        // 在状态机的回调之外放行排队的请求
+        if (!waiting.isEmpty()) {
+            scheduler.cancel(drainRunnable);
+            scheduler.post(drainRunnable);
+        }
+    }
+
+    private void onLockUnlockFinished(String lockId, boolean success) {
+        UnlockAdmission admission = admissions.get(lockId);
+        if (admission != null) {
+            admission.onFinished(success);
+        }
+        resolveGroups(lockId, success);
+    }
+
+    private void resolveGroups(String lockId, boolean success) {
+        List<Group> finished = new ArrayList<>();
+        Iterator<Group> iterator = groups.iterator();
+        while (iterator.hasNext()) {
+            Group group = iterator.next();
+            if (!group.pending.remove(lockId)) {
+                continue;
+            }
+            (success ? group.succeeded : group.failed).add(lockId);
+            if (group.pending.isEmpty()) {
+                iterator.remove();
+                finished.add(group);
+            }
+        }
+        // 遍历结束后再回调，监听器里可以发起新的分组开锁
+        for (Group group : finished) {
+            group.listener.onGroupFinished(group.succeeded, group.failed, scheduler.now() - group.startTime);
+        }
+    }
+
+    private static class PendingRequest {
+        final String lockId;
+        final Consumer<LockController> action;
+
+        PendingRequest(String lockId, Consumer<LockController> action) {
+            this.lockId = lockId;
+            this.action = action;
+        }
+    }
+
+    private static class Group {
+        final Set<String> pending;
+        final List<String> succeeded = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        final GroupListener listener;
+        final long startTime;
+
+        Group(List<String> lockIds, GroupListener listener, long startTime) {
+            this.pending = new LinkedHashSet<>(lockIds);
+            this.listener = listener;
+            this.startTime = startTime;
+        }
+    }
+}
@@ -6,19 +6,72 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.RemoteViews;
 
+/**
+ * 门锁小组件。点击直接启动前台服务开锁，不经过广播和透明 Activity 中转。
+ * 每个小组件绑定一把门锁或全部门锁，绑定关系在添加小组件时由 {@link LockWidgetConfigureActivity} 选择。
+ * 状态变化交给 {@link WidgetRenderer} 合并，只有图标变化时用 partiallyUpdateAppWidget 更新。
+ */
 public class LockControlWidget extends AppWidgetProvider {
     private static final String TAG = "LockControlWidget";
-    public static final String ACTION_UNLOCK = "com.example.ACTION_UNLOCK";
     public static final String ACTION_UPDATE = "com.example.ACTION_UPDATE";
+    // 绑定全部门锁的小组件点击时同时开启所有门锁
+    public static final String ALL_LOCKS = WidgetRenderer.ALL_LOCKS;
+    private static final String BINDINGS_PREFS = "WidgetBindings";
+    private static WidgetRenderer renderer;
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        // 桌面要求重建的小组件完整渲染一次
+        getRenderer(context).invalidate(appWidgetIds);
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        getRenderer(context).forget(appWidgetIds);
+        SharedPreferences.Editor editor = bindings(context).edit();
         for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId, false);
+            editor.remove(bindingKey(appWidgetId));
         }
+        editor.apply();
+    }
+
+    // 渲染在主线程上进行，门锁状态可以从任意线程提交
+    static synchronized WidgetRenderer getRenderer(Context context) {
+        if (renderer == null) {
+            Context appContext = context.getApplicationContext();
+            renderer = new WidgetRenderer(new HandlerScheduler(Looper.getMainLooper()), new RemoteViewsTarget(appContext));
+        }
+        return renderer;
+    }
+
+    // 门锁状态变化，帧窗口内的多次变化合并后只更新显示变化的小组件
+    static void setLockState(Context context, String lockId, boolean unlocked) {
+        BleTrace.instant(TraceEvent.WIDGET_UPDATE, BleTrace.TRACK_APP, unlocked ? 1 : 0);
+        getRenderer(context).setLockState(lockId, unlocked);
+    }
+
+    private static SharedPreferences bindings(Context context) {
+        return context.getSharedPreferences(BINDINGS_PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static String bindingKey(int appWidgetId) {
+        return "widget_" + appWidgetId;
+    }
+
+    // 小组件绑定的门锁 id 或 ALL_LOCKS；未配置的小组件绑定默认门锁
+    static String getBoundLock(Context context, int appWidgetId) {
+        return bindings(context).getString(bindingKey(appWidgetId), LockConfig.DEFAULT_ID);
+    }
+
+    static void bindLock(Context context, int appWidgetId, String lockId) {
+        bindings(context).edit().putString(bindingKey(appWidgetId), lockId).apply();
+        getRenderer(context).invalidate(new int[]{appWidgetId});
     }
 
     @Override
@@ -31,54 +84,62 @@ public class LockControlWidget extends AppWidgetProvider {
             return;
         }
 
-        if (ACTION_UNLOCK.equals(intent.getAction())) {
-            Log.d(TAG, "处理开锁指令");
-
-            Intent activityIntent = new Intent(context, ServiceLauncherActivity.class);
-            activityIntent.setAction(ACTION_UNLOCK);
-            activityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            context.startActivity(activityIntent);
-            Log.d(TAG, "透明Activity已启动");
-
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            ComponentName thisWidget = new ComponentName(context, LockControlWidget.class);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(thisWidget);
-            for (int appWidgetId : appWidgetIds) {
-                updateAppWidget(context, appWidgetManager, appWidgetId, true);
-            }
-        } else if (ACTION_UPDATE.equals(intent.getAction())) {
+        if (ACTION_UPDATE.equals(intent.getAction())) {
             Log.d(TAG, "处理更新指令");
-            boolean isUnlocked = intent.getBooleanExtra("isUnlocked", false);
-            Log.d(TAG, "更新状态: " + (isUnlocked ? "门已开" : "门已锁"));
-
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            ComponentName thisWidget = new ComponentName(context, LockControlWidget.class);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(thisWidget);
-            for (int appWidgetId : appWidgetIds) {
-                updateAppWidget(context, appWidgetManager, appWidgetId, isUnlocked);
-            }
+            setLockState(context, LockConfig.DEFAULT_ID, intent.getBooleanExtra("isUnlocked", false));
         }
     }
 
-    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager,
-                                int appWidgetId, boolean isUnlocked) {
-        Log.d(TAG, "更新小组件[" + appWidgetId + "]状态: " + (isUnlocked ? "门已开" : "门已锁"));
+    private static class RemoteViewsTarget implements WidgetRenderer.Target {
+        private final Context context;
+        private final AppWidgetManager appWidgetManager;
+
+        RemoteViewsTarget(Context context) {
+            this.context = context;
+            this.appWidgetManager = AppWidgetManager.getInstance(context);
+        }
+
+        @Override
+        public int[] getWidgetIds() {
+            return appWidgetManager.getAppWidgetIds(new ComponentName(context, LockControlWidget.class));
+        }
 
-        Intent intent = new Intent(context, LockControlWidget.class);
-        intent.setAction(ACTION_UNLOCK);
+        @Override
+        public String getBoundLock(int widgetId) {
+            return LockControlWidget.getBoundLock(context, widgetId);
+        }
 
-        int flags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE;
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, 0, intent, flags);
+        @Override
+        public void renderFull(int widgetId, String boundLock, boolean unlocked) {
+            Log.d(TAG, "更新小组件[" + widgetId + "]: " + boundLock + ", " + (unlocked ? "门已开" : "门已锁"));
 
-        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_lock_control);
+            // 点击时由系统直接启动前台服务；点击小组件属于用户操作，允许从后台启动前台服务。
+            // 每个小组件用自己的 requestCode，PendingIntent 才不会互相覆盖绑定的门锁
+            Intent intent = new Intent(context, BluetoothService.class);
+            intent.setAction(BluetoothService.ACTION_UNLOCK);
+            intent.putExtra(BluetoothService.EXTRA_LOCK_ID, boundLock);
 
-        if (isUnlocked) {
-            views.setImageViewResource(R.id.widget_lock_icon, R.drawable.unlock);
-        } else {
-            views.setImageViewResource(R.id.widget_lock_icon, R.drawable.lock);
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE;
+            PendingIntent pendingIntent;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                pendingIntent = PendingIntent.getForegroundService(context, widgetId, intent, flags);
+            } else {
+                pendingIntent = PendingIntent.getService(context, widgetId, intent, flags);
+            }
+
+            RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_lock_control);
+            views.setImageViewResource(R.id.widget_lock_icon, unlocked ? R.drawable.unlock : R.drawable.lock);
+            views.setOnClickPendingIntent(R.id.widget_lock_icon, pendingIntent);
+            appWidgetManager.updateAppWidget(widgetId, views);
         }
 
-        views.setOnClickPendingIntent(R.id.widget_lock_icon, pendingIntent);
-        appWidgetManager.updateAppWidget(appWidgetId, views);
+        // 只包含图标一个操作，桌面保留原来的点击事件
+        @Override
+        public void renderPartial(int widgetId, boolean unlocked) {
+            Log.d(TAG, "更新小组件[" + widgetId + "]状态: " + (unlocked ? "门已开" : "门已锁"));
+            RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_lock_control);
+            views.setImageViewResource(R.id.widget_lock_icon, unlocked ? R.drawable.unlock : R.drawable.lock);
+            appWidgetManager.partiallyUpdateAppWidget(widgetId, views);
+        }
     }
-}
\ No newline at end of file
+}
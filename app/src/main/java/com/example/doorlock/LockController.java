@@ -0,0 +1,1141 @@
+package com.example.doorlock;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * 开锁状态机：直连/扫描 → 连接 → 发现服务 → 写入开锁命令，以及保持连接模式下的连接复用、健康检查和重连。
+ * 状态见 {@link LockState}，界面和小组件通过 {@link StateListener} 观察状态，不直接操作连接。
+ * 不依赖 Android API，通过 {@link LockTransport} 访问蓝牙，通过 {@link Host} 通知外部。
+ * GATT 操作经 {@link GattOperationQueue} 顺序执行，连接、发现服务等各步的超时由队列负责。
+ * 缓存了服务结构、且传输层能恢复特征的门锁连接后直接写入，写入出错时再完整发现服务并重发（目前只有模拟器）。
+ * 门锁支持 TX 通知时按它的动作事件（{@link LockEvent}）更新小组件和决定断开时机，否则写入后按固定延时恢复。
+ * 建立连接和开锁期间使用 {@link LinkProfile#UNLOCK} 的连接参数，空闲保持的连接改为 {@link LinkProfile#IDLE}。
+ * 命令超过当前 MTU 时先交换 MTU，仍然放不下时新固件按 {@link CommandFramer} 分片逐片写入，旧固件交给系统的长写入。
+ * 连接失败按 {@link RetryPolicy} 退避后用新的连接重试，多次失败后由 {@link CircuitBreaker} 暂停连接这把门锁。
+ * 除 {@link #getState()}、{@link #isKeepingWarm()} 和监听器注册外，所有方法都必须在 {@link LockScheduler} 的线程上调用。
+ */
+public class LockController implements LockTransport.Callback {
+    static final long SCAN_TIMEOUT = 10000;
+    static final long CANDIDATE_WINDOW = 300;
+    static final long DIRECT_CONNECT_TIMEOUT = 5000;
+    static final long WIDGET_REVERT_DELAY = 2000;
+    // 订阅了动作通知时等待动作完成的最长时间，超时后按没有通知处理
+    static final long ACTUATION_TIMEOUT = 5000;
+    // 门锁回复冷却时，剩余时间不超过它才等待后自动重发
+    static final long MAX_COOLDOWN_WAIT = 5000;
+    static final long HEALTH_CHECK_INTERVAL = 10000;
+    static final int DEFAULT_MTU = 23;
+    static final int PREFERRED_MTU = 247;
+    // 一次写入中 ATT 头部占用的字节
+    static final int ATT_HEADER = 3;
+
+    public interface Host {
+        // 设备登记表中可直接连接的设备，没有时返回 null
+        LockDeviceRecord getPreferredDevice(String deviceName);
+
+        void onDeviceSeen(String address, String name, int addressType);
+
+        void onConnectSucceeded(String address);
+
+        void onConnectFailed(String address);
+
+        void onLinkParameters(String address, int phy, int mtu);
+
+        // 切换了连接参数配置，或得到了实际的连接间隔（单位 1.25ms）和 PHY；还不知道的参数为 0
+        void onLinkProfile(String address, LinkProfile profile, int interval, int phy);
+
+        // 按地址查找登记的设备，没有时返回 null
+        LockDeviceRecord getDevice(String address);
+
+        // 发现服务得到的开锁特征；只有传输层能恢复特征时才需要保存，供下次连接跳过发现服务
+        void onSchemaResolved(String address, UUID serviceUuid, UUID characteristicUuid, boolean writeWithoutResponse);
+
+        void onSchemaInvalid(String address);
+
+        void onPhase(UnlockPhase phase);
+
+        void onUnlockFinished(boolean success, boolean warm, long latencyMs);
+
+        // 门锁通知开始动作，latencyMs 为发出写入到开始动作的耗时
+        default void onActuation(long latencyMs) {
+        }
+
+        void onLockStateChanged(boolean unlocked);
+
+        void onMessage(String message);
+
+        // 连接已释放，没有待处理的请求
+        void onIdle();
+
+        // 返回 false 时控制器不调用 log，也不拼接日志字符串；只在创建控制器时读取一次
+        boolean isLogging();
+
+        void log(String message);
+    }
+
+    // 回调在调度器线程上执行，需要更新界面的监听器自行切换线程
+    public interface StateListener {
+        void onStateChanged(LockState state);
+
+        default void onDeviceFound(String address, String name, int rssi) {
+        }
+
+        // 一次开锁请求结束：门锁确认、写入失败或连接失败
+        default void onUnlockFinished(boolean success, long latencyMs) {
+        }
+    }
+
+    private final LockTransport transport;
+    private final LockScheduler scheduler;
+    private final Host host;
+    // 不记录日志时（release 构建、基准测试）扫描和连接回调里不拼接日志字符串
+    private final boolean logging;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker breaker = new CircuitBreaker();
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+
+    // 配置
+    private String deviceName;
+    private UUID serviceUuid;
+    private UUID rxCharacteristicUuid;
+    private boolean keepWarm;
+    private long lingerTime;
+    private Supplier<byte[]> payloadSource;
+
+    // 连接状态
+    private volatile LockState state = LockState.IDLE;
+    private boolean directConnecting = false;
+    private String currentAddress;
+    private int currentAddressType = LockDeviceRecord.ADDRESS_TYPE_UNKNOWN;
+    private LockScanMatcher scanMatcher;
+    private int bestAddressType = LockDeviceRecord.ADDRESS_TYPE_UNKNOWN;
+    // 使用缓存的服务结构、还没有写入成功验证过
+    private boolean schemaUnverified = false;
+
+    // 开锁请求与保持连接
+    private boolean held = false;
+    // 接近时的预连接：就绪后保持 prewarmTime，期间开锁只需写入
+    private boolean prewarming = false;
+    private long prewarmTime;
+    private boolean unlockPending = false;
+    // 开锁命令已发出（或等 MTU 交换后发出）、还没有结果；断开或放弃时按失败结束
+    private boolean writeInFlight = false;
+    private volatile boolean lingering = false;
+    private boolean rssiCheckPending = false;
+    // 这次连接已经重试的次数，连接成功后清零
+    private int reconnectAttempts = 0;
+    // 这次开锁发起的连接次数（含重试），结果回调之后清零
+    private int connectAttempts = 0;
+    private boolean warmUnlock = false;
+    private long unlockRequestTime;
+    private long queuedRequestTime;
+
+    // 门锁动作通知
+    private boolean acksRequested = false;
+    private boolean awaitingActuation = false;
+    private boolean cooldownRetried = false;
+    // 等待的命令序号，JSON 命令没有序号时为 -1
+    private int awaitingSequence = -1;
+    private long writeIssuedTime;
+    // 门锁冷却结束的时间，断开重连后仍然有效
+    private long cooldownUntil;
+    // 导致这次开锁失败的 GATT 状态码，结果回调之后清零
+    private int failureStatus = LockTransport.GATT_SUCCESS;
+
+    // MTU 与分片发送，每个连接重新开始
+    private int mtu = DEFAULT_MTU;
+    private boolean mtuRequested = false;
+    private boolean mtuPending = false;
+    // 等待 MTU 交换完成后再写入的命令
+    private byte[] deferredPayload;
+    // 分片发送时的各个分片，单包写入时为 null
+    private byte[][] fragments;
+    private int fragmentIndex;
+    private boolean fragmentsWithoutResponse;
+    private int messageId = 0;
+    // 上一条命令的长度，用于判断连接后是否需要提前交换 MTU
+    private int lastPayloadLength = 0;
+    // 当前连接请求的配置和实际得到的连接间隔、PHY
+    private LinkProfile linkProfile;
+    private int linkInterval;
+    private int linkPhy;
+
+    private final Runnable scanTimeoutRunnable = this::onScanTimeout;
+    private final Runnable candidateWindowRunnable = this::connectBestCandidate;
+    private final Runnable directConnectTimeoutRunnable = this::onDirectConnectTimeout;
+    private final Runnable lingerRunnable = this::onLingerExpired;
+    private final Runnable healthCheckRunnable = this::checkConnectionHealth;
+    private final Runnable widgetRevertRunnable = this::onWidgetRevert;
+    private final Runnable cooldownRunnable = this::onCooldownEnd;
+    private final Runnable retryRunnable = this::retryConnect;
+
+    public LockController(LockTransport transport, LockScheduler scheduler, Host host) {
+        this(transport, scheduler, host, new RetryPolicy(new Random()));
+    }
+
+    LockController(LockTransport transport, LockScheduler scheduler, Host host, RetryPolicy retryPolicy) {
+        this.transport = new GattOperationQueue(transport, scheduler);
+        this.scheduler = scheduler;
+        this.host = host;
+        this.logging = host.isLogging();
+        this.retryPolicy = retryPolicy;
+        this.transport.setCallback(this);
+    }
+
+    public void configure(String deviceName, UUID serviceUuid, UUID rxCharacteristicUuid,
+                          boolean keepWarm, long lingerTime, Supplier<byte[]> payloadSource) {
+        this.deviceName = deviceName;
+        this.serviceUuid = serviceUuid;
+        this.rxCharacteristicUuid = rxCharacteristicUuid;
+        this.keepWarm = keepWarm;
+        this.lingerTime = lingerTime;
+        this.payloadSource = payloadSource;
+    }
+
+    public void addStateListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeStateListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    public LockState getState() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return state == LockState.READY;
+    }
+
+    public boolean isKeepingWarm() {
+        return lingering;
+    }
+
+    // 门锁通知的冷却结束时间，没有收到过冷却信息时为 0
+    public long getCooldownUntil() {
+        return cooldownUntil;
+    }
+
+    // 在 Host.onUnlockFinished 回调中读取导致失败的 GATT 状态码，不是 GATT 错误时为 0
+    public int getFailureStatus() {
+        return failureStatus;
+    }
+
+    // 在 Host.onUnlockFinished 回调中读取这次开锁发起的连接次数（含重试），复用连接时为 0
+    public int getConnectAttempts() {
+        return connectAttempts;
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    // 正在建立连接、发送命令、等待门锁动作完成，或者有等待发送的开锁请求
+    public boolean hasWorkInProgress() {
+        return (state != LockState.IDLE && state != LockState.READY) || unlockPending || awaitingActuation;
+    }
+
+    private void transition(LockState newState) {
+        if (state == newState) {
+            return;
+        }
+        if (logging) {
+            host.log("状态: " + state + " → " + newState);
+        }
+        state = newState;
+        notifyState();
+    }
+
+    private void notifyState() {
+        LockState current = state;
+        for (StateListener listener : listeners) {
+            listener.onStateChanged(current);
+        }
+    }
+
+    public void requestUnlock() {
+        switch (state) {
+            case READY:
+                unlockRequestTime = scheduler.now();
+                connectAttempts = 0;
+                log("复用已建立的连接直接发送开锁命令");
+                warmUnlock = true;
+                scheduler.cancel(lingerRunnable);
+                sendWhenCooledDown();
+                return;
+            case WRITING:
+                // 上一条命令确认后再发送，GATT 同一时间只能有一个写操作
+                log("上一条命令发送中，确认后再发送");
+                if (!unlockPending) {
+                    queuedRequestTime = scheduler.now();
+                }
+                unlockPending = true;
+                return;
+            case IDLE:
+                unlockRequestTime = scheduler.now();
+                connectAttempts = 0;
+                warmUnlock = false;
+                unlockPending = true;
+                startConnection();
+                return;
+            default:
+                if (!unlockPending) {
+                    unlockRequestTime = scheduler.now();
+                }
+                warmUnlock = false;
+                unlockPending = true;
+                log("连接建立中，就绪后发送开锁命令");
+        }
+    }
+
+    // 建立并保持连接（主界面使用），直到调用 release() 或 disconnect()
+    public void connect() {
+        held = true;
+        if (state == LockState.IDLE) {
+            startConnection();
+        }
+    }
+
+    // 预连接（接近检测触发）：建立连接并保持 holdTime，没有开锁请求时到期断开，连接失败不提示用户
+    public void preconnect(long holdTime) {
+        if (state != LockState.IDLE) {
+            return;
+        }
+        log("接近门锁，预连接");
+        prewarming = true;
+        prewarmTime = holdTime;
+        startConnection();
+    }
+
+    // 放弃保持的连接；有等待中的开锁或保持连接计时时由它们负责断开
+    public void release() {
+        held = false;
+        if (state != LockState.IDLE && state != LockState.WRITING && !unlockPending && !lingering && !awaitingActuation) {
+            disconnect();
+        }
+    }
+
+    private void startConnection() {
+        log("开始连接门锁");
+        if (!transport.isEnabled()) {
+            failUnlock("请先启用蓝牙");
+            disconnect();
+            return;
+        }
+        long now = scheduler.now();
+        if (!breaker.allow(now)) {
+            // 门锁多次连接失败，暂停期间不再连接
+            failUnlock("门锁无响应，" + (breaker.getRemaining(now) + 999) / 1000 + " 秒后再试");
+            disconnect();
+            return;
+        }
+
+        LockDeviceRecord record = host.getPreferredDevice(deviceName);
+        if (record != null) {
+            // 已登记的门锁直接连接，失败时再扫描
+            if (logging) {
+                host.log("按登记地址直接连接: " + record.getAddress());
+            }
+            directConnecting = true;
+            if (connectDevice(record.getAddress(), record.getAddressType(), record.getLastPhy() == LockTransport.PHY_LE_2M)) {
+                scheduler.postDelayed(directConnectTimeoutRunnable, DIRECT_CONNECT_TIMEOUT);
+            }
+            return;
+        }
+
+        startScan();
+    }
+
+    private void startScan() {
+        log("开始扫描蓝牙设备...");
+        notifyUser("正在扫描门锁设备...");
+
+        LockDeviceRecord record = host.getPreferredDevice(deviceName);
+        scanMatcher = new LockScanMatcher(deviceName, serviceUuid, record != null ? record.getAddress() : null);
+        bestAddressType = LockDeviceRecord.ADDRESS_TYPE_UNKNOWN;
+        if (!transport.startScan(scanMatcher)) {
+            failUnlock("无法扫描蓝牙设备");
+            disconnect();
+            return;
+        }
+        transition(LockState.SCANNING);
+        host.onPhase(UnlockPhase.SCAN_START);
+        scheduler.postDelayed(scanTimeoutRunnable, SCAN_TIMEOUT);
+    }
+
+    private void stopScanning() {
+        scheduler.cancel(scanTimeoutRunnable);
+        scheduler.cancel(candidateWindowRunnable);
+        if (state == LockState.SCANNING) {
+            transport.stopScan();
+            log("已停止扫描");
+        }
+    }
+
+    private void onScanTimeout() {
+        log("扫描超时");
+        stopScanning();
+        failUnlock("未找到门锁设备");
+        disconnect();
+    }
+
+    @Override
+    public void onScanResult(String address, String name, List<UUID> serviceUuids, int rssi, int addressType) {
+        if (state != LockState.SCANNING) {
+            return;
+        }
+        boolean firstCandidate = scanMatcher.getCandidateCount() == 0;
+        if (!scanMatcher.offer(address, name, serviceUuids, rssi)) {
+            return;
+        }
+        if (logging) {
+            host.log("找到候选设备: " + address + ", RSSI: " + rssi);
+        }
+        for (StateListener listener : listeners) {
+            listener.onDeviceFound(address, name, rssi);
+        }
+        if (address.equalsIgnoreCase(scanMatcher.getBestAddress())) {
+            bestAddressType = addressType;
+        }
+
+        if (scanMatcher.isKnownAddress(address)) {
+            // 已知门锁直接连接
+            connectBestCandidate();
+        } else if (firstCandidate) {
+            // 短暂等待其他候选设备，选择信号最强的一个
+            scheduler.postDelayed(candidateWindowRunnable, CANDIDATE_WINDOW);
+        }
+    }
+
+    private void connectBestCandidate() {
+        if (state != LockState.SCANNING) {
+            return;
+        }
+        stopScanning();
+        host.onPhase(UnlockPhase.SCAN_HIT);
+
+        String address = scanMatcher.getBestAddress();
+        if (logging) {
+            host.log("选择目标设备: " + address + ", RSSI: " + scanMatcher.getBestRssi()
+                    + ", 候选数: " + scanMatcher.getCandidateCount());
+        }
+        host.onDeviceSeen(address, deviceName, bestAddressType);
+        connectDevice(address, bestAddressType, false);
+    }
+
+    @Override
+    public void onScanFailed(int errorCode) {
+        if (logging) {
+            host.log("扫描失败，错误码: " + errorCode);
+        }
+        stopScanning();
+        failUnlock("扫描设备失败");
+        disconnect();
+    }
+
+    private boolean connectDevice(String address, int addressType, boolean prefer2mPhy) {
+        if (logging) {
+            host.log("尝试连接设备: " + address);
+        }
+        currentAddress = address;
+        currentAddressType = addressType;
+        schemaUnverified = false;
+        resetLink();
+        connectAttempts++;
+        if (!transport.connect(address, addressType, prefer2mPhy)) {
+            directConnecting = false;
+            failUnlock("缺少蓝牙连接权限");
+            disconnect();
+            return false;
+        }
+        transition(LockState.CONNECTING);
+        return true;
+    }
+
+    private void onDirectConnectTimeout() {
+        if (directConnecting && state == LockState.CONNECTING) {
+            log("直接连接超时");
+            fallbackToScan();
+        }
+    }
+
+    private void fallbackToScan() {
+        if (!directConnecting) {
+            return;
+        }
+        directConnecting = false;
+        scheduler.cancel(directConnectTimeoutRunnable);
+        log("直接连接失败，改为扫描");
+        host.onConnectFailed(currentAddress);
+        transport.close();
+        startScan();
+    }
+
+    @Override
+    public void onConnectionStateChanged(int status, boolean connected) {
+        if (logging) {
+            host.log("连接状态变化: status=" + status + ", connected=" + connected);
+        }
+
+        if (connected) {
+            directConnecting = false;
+            scheduler.cancel(directConnectTimeoutRunnable);
+            // 发现服务、订阅通知和写入都是多次往返，建立连接期间使用最短的连接间隔
+            applyLinkProfile(LinkProfile.UNLOCK);
+            host.onPhase(UnlockPhase.CONNECTED);
+            if (restoreCachedSchema()) {
+                return;
+            }
+            transition(LockState.DISCOVERING);
+            log("设备已连接，正在发现服务...");
+            if (!transport.discoverServices()) {
+                failUnlock("发现服务错误");
+                disconnect();
+            }
+            return;
+        }
+
+        log("设备已断开");
+        failureStatus = status;
+        if (deferredPayload != null) {
+            // 等待 MTU 交换时断开，按未发送的请求处理，重连后重新发送
+            deferredPayload = null;
+            writeInFlight = false;
+            unlockPending = true;
+        }
+        // 命令已写出但门锁还没确认时断开：门锁可能已经收到，不重发，这次开锁按失败结束
+        boolean writeLost = writeInFlight;
+        if (writeLost) {
+            log("开锁命令未确认，连接已断开");
+            finishUnlock(false);
+        }
+        if (directConnecting) {
+            fallbackToScan();
+            return;
+        }
+        // 有等待中的开锁，或保持连接期间意外断开，按重试策略透明重连
+        boolean wanted = held || unlockPending || (keepWarm && lingering);
+        if (wanted && scheduleRetry(status)) {
+            if (writeLost) {
+                host.onMessage("开锁命令未确认，连接已断开");
+            }
+            return;
+        }
+        if (status == LockTransport.GATT_TIMEOUT && state == LockState.CONNECTING) {
+            log("连接超时");
+            giveUp("连接超时，请检查设备是否开启");
+        } else {
+            giveUp("门锁连接失败");
+        }
+    }
+
+    @Override
+    public void onServicesDiscovered(int status) {
+        if (status != LockTransport.GATT_SUCCESS) {
+            if (logging) {
+                host.log("服务发现失败: " + status);
+            }
+            failureStatus = status;
+            if ((held || unlockPending) && scheduleRetry(status)) {
+                return;
+            }
+            giveUp("服务发现失败");
+            return;
+        }
+
+        log("服务发现成功");
+        onServicesAvailable();
+
+        if (!transport.hasCharacteristic(serviceUuid, rxCharacteristicUuid)) {
+            failUnlock("未找到服务或特征, 请检查UUID是否填写正确");
+            disconnect();
+            return;
+        }
+        host.onSchemaResolved(currentAddress, serviceUuid, rxCharacteristicUuid,
+                transport.supportsWriteWithoutResponse(serviceUuid, rxCharacteristicUuid));
+        enterReady();
+    }
+
+    // 登记表中有与配置一致的服务结构、且传输层能恢复特征时跳过发现服务，由第一次写入验证。
+    // 目前只有模拟器能恢复，Android 上总是完整发现服务，不会因为未验证而放弃无响应写入
+    private boolean restoreCachedSchema() {
+        LockDeviceRecord record = host.getDevice(currentAddress);
+        if (record == null || !record.hasSchema(serviceUuid, rxCharacteristicUuid)
+                || !transport.restoreCharacteristic(serviceUuid, rxCharacteristicUuid, record.isSchemaWriteWithoutResponse())) {
+            return false;
+        }
+        log("使用缓存的服务结构，跳过发现服务");
+        schemaUnverified = true;
+        onServicesAvailable();
+        enterReady();
+        return true;
+    }
+
+    // 缓存的服务结构已失效，清除缓存后完整发现服务，成功后重发开锁命令
+    private void rediscoverServices() {
+        log("缓存的服务结构无效，重新发现服务");
+        schemaUnverified = false;
+        host.onSchemaInvalid(currentAddress);
+        writeInFlight = false;
+        unlockPending = true;
+        transition(LockState.DISCOVERING);
+        if (!transport.discoverServices()) {
+            failUnlock("发现服务错误");
+            disconnect();
+        }
+    }
+
+    private void onServicesAvailable() {
+        host.onPhase(UnlockPhase.SERVICES_DISCOVERED);
+        reconnectAttempts = 0;
+        breaker.onSuccess();
+        host.onConnectSucceeded(currentAddress);
+        transport.readPhy();
+        if (lastPayloadLength > DEFAULT_MTU - ATT_HEADER) {
+            // 上一条命令在默认 MTU 下放不下，连接后立即交换，不等到发送时
+            negotiateMtu();
+        }
+        subscribeActuation();
+    }
+
+    // 登记表记录着门锁上次交换的结果，门锁只支持默认 MTU 时不再交换。返回是否已发出请求
+    private boolean negotiateMtu() {
+        mtuRequested = true;
+        LockDeviceRecord record = host.getDevice(currentAddress);
+        if (record != null && record.getLastMtu() != LockDeviceRecord.MTU_UNKNOWN
+                && record.getLastMtu() <= DEFAULT_MTU) {
+            log("门锁只支持默认 MTU，跳过 MTU 交换");
+            return false;
+        }
+        mtuPending = transport.requestMtu(PREFERRED_MTU);
+        if (mtuPending) {
+            if (logging) {
+                host.log("请求 MTU " + PREFERRED_MTU);
+            }
+        }
+        return mtuPending;
+    }
+
+    // 固件提供功能特征（会发送动作事件）时订阅 TX 通知。TX 是标准 NUS 特征，不发事件的旧固件也有，
+    // 只看 TX 会让旧固件按动作超时而不是固定延时恢复。订阅和开锁写入按提交顺序执行，第一条命令的通知也能收到
+    private void subscribeActuation() {
+        acksRequested = transport.hasCharacteristic(serviceUuid, NordicUartService.FEATURE_CHARACTERISTIC_UUID)
+                && transport.hasCharacteristic(serviceUuid, NordicUartService.TX_CHARACTERISTIC_UUID)
+                && transport.enableNotifications(serviceUuid, NordicUartService.TX_CHARACTERISTIC_UUID);
+        if (acksRequested) {
+            log("订阅门锁动作通知");
+        }
+    }
+
+    @Override
+    public void onNotificationsEnabled(UUID characteristicUuid, int status) {
+        if (status == LockTransport.GATT_SUCCESS) {
+            log("已订阅门锁动作通知");
+            return;
+        }
+        if (logging) {
+            host.log("订阅门锁动作通知失败: " + status + "，按固定延时恢复");
+        }
+        acksRequested = false;
+        if (awaitingActuation) {
+            awaitingActuation = false;
+            scheduler.cancel(widgetRevertRunnable);
+            scheduler.postDelayed(widgetRevertRunnable, WIDGET_REVERT_DELAY);
+        }
+    }
+
+    private void enterReady() {
+        transition(LockState.READY);
+
+        if (unlockPending) {
+            sendWhenCooledDown();
+            return;
+        }
+        applyLinkProfile(LinkProfile.IDLE);
+        if (lingering) {
+            log("保持的连接已恢复");
+            scheduler.cancel(healthCheckRunnable);
+            scheduler.postDelayed(healthCheckRunnable, HEALTH_CHECK_INTERVAL);
+        } else if (prewarming && !held) {
+            startLinger(prewarmTime);
+        }
+    }
+
+    // 门锁还在冷却时等冷却结束再发送，期间保持连接
+    private void sendWhenCooledDown() {
+        long wait = cooldownUntil - scheduler.now();
+        if (wait <= 0) {
+            sendUnlockCommand();
+            return;
+        }
+        if (logging) {
+            host.log("门锁冷却中，" + wait + "ms 后发送开锁命令");
+        }
+        unlockPending = true;
+        scheduler.cancel(cooldownRunnable);
+        scheduler.postDelayed(cooldownRunnable, wait);
+    }
+
+    private void onCooldownEnd() {
+        if (unlockPending && state == LockState.READY) {
+            sendUnlockCommand();
+        }
+    }
+
+    private void sendUnlockCommand() {
+        log("尝试发送开锁命令");
+        unlockPending = false;
+        scheduler.cancel(cooldownRunnable);
+        applyLinkProfile(LinkProfile.UNLOCK);
+
+        // 使用配置加载时预编码的命令
+        byte[] payload = payloadSource.get();
+        lastPayloadLength = payload.length;
+        if (payload.length > mtu - ATT_HEADER && (mtuPending || (!mtuRequested && negotiateMtu()))) {
+            // 单次写入放不下：MTU 交换完成后再写入，只多一次往返，省去长写入或分片的多次往返
+            if (logging) {
+                host.log("开锁命令 " + payload.length + " 字节，等待 MTU 交换后发送");
+            }
+            deferredPayload = payload;
+            writeInFlight = true;
+            transition(LockState.WRITING);
+            return;
+        }
+        writePayload(payload);
+    }
+
+    private void writePayload(byte[] payload) {
+        // 特征支持时用无响应写入，省去等待门锁确认的一个连接间隔。
+        // 缓存的服务结构未验证时必须等门锁确认，否则句柄失效也发现不了
+        boolean withoutResponse = !schemaUnverified
+                && transport.supportsWriteWithoutResponse(serviceUuid, rxCharacteristicUuid);
+        int capacity = mtu - ATT_HEADER;
+        fragments = null;
+        byte[] first = payload;
+        if (payload.length > capacity) {
+            if (transport.hasCharacteristic(serviceUuid, NordicUartService.FEATURE_CHARACTERISTIC_UUID)) {
+                // 提供功能特征的新固件按分片重组，每片都能单包写入。TX 是标准 NUS 特征，不能说明固件能重组
+                fragments = CommandFramer.split(payload, capacity, messageId++);
+                fragmentIndex = 0;
+                fragmentsWithoutResponse = withoutResponse;
+                first = fragments[0];
+            } else {
+                // 旧固件只能由系统按长写入发送；无响应写入没有长写入，超出 MTU 的部分会被截断
+                withoutResponse = false;
+            }
+        }
+        if (!transport.write(serviceUuid, rxCharacteristicUuid, first, withoutResponse)) {
+            fragments = null;
+            if (schemaUnverified) {
+                rediscoverServices();
+                return;
+            }
+            log("开锁命令发送失败");
+            finishUnlock(false);
+            host.onMessage("开锁命令发送失败");
+            if (!keepWarm && !held) {
+                disconnect();
+            } else {
+                transition(LockState.READY);
+            }
+            return;
+        }
+
+        writeInFlight = true;
+        transition(LockState.WRITING);
+        host.onPhase(UnlockPhase.WRITE_ISSUED);
+        if (logging) {
+            host.log("开锁命令发送成功: " + payload.length + " 字节"
+                    + (fragments != null ? "，" + fragments.length + " 个分片" : ""));
+        }
+        host.onMessage("开锁命令发送成功");
+
+        scheduler.cancel(widgetRevertRunnable);
+        if (acksRequested) {
+            // 小组件和断开时机交给门锁的动作通知，门锁一直没有通知时超时后恢复
+            awaitingActuation = true;
+            writeIssuedTime = scheduler.now();
+            awaitingSequence = UnlockCommandCodec.isBinary(payload) ? UnlockCommandCodec.readSequence(payload) : -1;
+            scheduler.postDelayed(widgetRevertRunnable, ACTUATION_TIMEOUT);
+        } else {
+            host.onLockStateChanged(true);
+            scheduler.postDelayed(widgetRevertRunnable, WIDGET_REVERT_DELAY);
+        }
+        if (keepWarm && !held) {
+            startLinger(lingerTime);
+        }
+    }
+
+    @Override
+    public void onCharacteristicWritten(UUID characteristicUuid, int status) {
+        if (state != LockState.WRITING) {
+            return;
+        }
+        if (status != LockTransport.GATT_SUCCESS && schemaUnverified) {
+            fragments = null;
+            rediscoverServices();
+            return;
+        }
+        schemaUnverified = false;
+        if (status == LockTransport.GATT_SUCCESS && fragments != null && ++fragmentIndex < fragments.length) {
+            // 上一片确认后再写下一片，中途失败时整条命令失败，门锁丢弃没有收完的消息
+            if (transport.write(serviceUuid, rxCharacteristicUuid, fragments[fragmentIndex], fragmentsWithoutResponse)) {
+                return;
+            }
+            status = LockTransport.GATT_FAILURE;
+        }
+        fragments = null;
+        if (status == LockTransport.GATT_SUCCESS) {
+            host.onPhase(UnlockPhase.WRITE_ACKED);
+            finishUnlock(true);
+        } else {
+            if (logging) {
+                host.log("门锁未确认开锁命令: " + status);
+            }
+            failureStatus = status;
+            finishUnlock(false);
+        }
+        transition(LockState.READY);
+
+        if (unlockPending) {
+            unlockRequestTime = queuedRequestTime;
+            warmUnlock = true;
+            scheduler.cancel(lingerRunnable);
+            sendWhenCooledDown();
+        } else if (keepWarm || held) {
+            // 之后只等门锁的通知，保持的连接改用低功耗参数；不保持的连接很快断开，不必切换
+            applyLinkProfile(LinkProfile.IDLE);
+        }
+    }
+
+    @Override
+    public void onCharacteristicChanged(UUID characteristicUuid, byte[] value) {
+        if (!NordicUartService.TX_CHARACTERISTIC_UUID.equals(characteristicUuid)) {
+            return;
+        }
+        LockEvent event = LockEvent.decode(value);
+        if (event == null) {
+            if (logging) {
+                host.log("无法识别的门锁通知: " + value.length + " 字节");
+            }
+            return;
+        }
+        if (logging) {
+            host.log("门锁通知: " + event);
+        }
+        if (!awaitingActuation || (awaitingSequence >= 0 && event.getSequence() != awaitingSequence)) {
+            // 之前命令的迟到通知
+            return;
+        }
+        switch (event.getType()) {
+            case LockEvent.ACTUATION_START:
+                host.onActuation(scheduler.now() - writeIssuedTime);
+                host.onLockStateChanged(true);
+                break;
+            case LockEvent.ACTUATION_DONE:
+                cooldownRetried = false;
+                cooldownUntil = scheduler.now() + event.getParam();
+                finishActuation();
+                break;
+            case LockEvent.COOLDOWN:
+                onCooldownRejected(event.getParam());
+                break;
+        }
+    }
+
+    // 门锁在冷却中没有动作：等待不长时重发一次，否则放弃
+    private void onCooldownRejected(long remaining) {
+        cooldownUntil = scheduler.now() + remaining;
+        if (cooldownRetried || remaining > MAX_COOLDOWN_WAIT) {
+            cooldownRetried = false;
+            host.onMessage("门锁忙，请稍后再试");
+            finishActuation();
+            return;
+        }
+        cooldownRetried = true;
+        host.onMessage("门锁冷却中，稍后自动重试");
+        awaitingActuation = false;
+        scheduler.cancel(widgetRevertRunnable);
+        // 重发的耗时仍从原来的请求开始计算
+        queuedRequestTime = unlockRequestTime;
+        unlockPending = true;
+        if (state == LockState.READY) {
+            sendWhenCooledDown();
+        }
+    }
+
+    // 门锁动作结束（或不再等待）：恢复小组件，没有后续请求时按配置断开
+    private void finishActuation() {
+        awaitingActuation = false;
+        scheduler.cancel(widgetRevertRunnable);
+        onWidgetRevert();
+        if (state == LockState.IDLE) {
+            return;
+        }
+        if (unlockPending && state == LockState.READY) {
+            sendWhenCooledDown();
+        } else {
+            // 状态没有变化，通知监听器重新检查是否还有进行中的工作
+            notifyState();
+        }
+    }
+
+    private void onWidgetRevert() {
+        log("恢复锁定状态");
+        awaitingActuation = false;
+        host.onLockStateChanged(false);
+        if (!keepWarm && !held && !unlockPending) {
+            disconnect();
+        }
+    }
+
+    private void startLinger(long duration) {
+        if (logging) {
+            host.log("保持连接 " + duration + "ms");
+        }
+        lingering = true;
+        scheduler.cancel(lingerRunnable);
+        scheduler.postDelayed(lingerRunnable, duration);
+        scheduler.cancel(healthCheckRunnable);
+        scheduler.postDelayed(healthCheckRunnable, HEALTH_CHECK_INTERVAL);
+    }
+
+    private void onLingerExpired() {
+        log("保持连接时间已到，断开连接");
+        disconnect();
+    }
+
+    private void checkConnectionHealth() {
+        if (!lingering || !state.isConnected()) {
+            return;
+        }
+        if (rssiCheckPending) {
+            log("连接健康检查无响应，重新连接");
+            reconnect(LockTransport.GATT_TIMEOUT);
+            return;
+        }
+        rssiCheckPending = transport.readRssi();
+        if (!rssiCheckPending) {
+            log("连接健康检查失败，重新连接");
+            reconnect(LockTransport.GATT_ERROR);
+            return;
+        }
+        scheduler.postDelayed(healthCheckRunnable, HEALTH_CHECK_INTERVAL);
+    }
+
+    @Override
+    public void onRssiRead(int rssi, int status) {
+        rssiCheckPending = false;
+        if (status != LockTransport.GATT_SUCCESS) {
+            log("读取信号强度失败，重新连接");
+            reconnect(status);
+        }
+    }
+
+    @Override
+    public void onPhyRead(int txPhy, int rxPhy, int status) {
+        if (status == LockTransport.GATT_SUCCESS) {
+            if (logging) {
+                host.log("当前PHY: tx=" + txPhy + ", rx=" + rxPhy);
+            }
+            host.onLinkParameters(currentAddress, txPhy, LockDeviceRecord.MTU_UNKNOWN);
+            linkPhy = txPhy;
+            if (linkProfile != null) {
+                host.onLinkProfile(currentAddress, linkProfile, linkInterval, linkPhy);
+            }
+        }
+    }
+
+    @Override
+    public void onConnectionUpdated(int interval, int latency, int timeout, int status) {
+        if (status != LockTransport.GATT_SUCCESS || linkProfile == null) {
+            return;
+        }
+        if (logging) {
+            host.log("连接间隔: " + interval * 5 / 4 + "ms, 从机延迟: " + latency);
+        }
+        linkInterval = interval;
+        host.onLinkProfile(currentAddress, linkProfile, linkInterval, linkPhy);
+    }
+
+    // 切换连接参数配置，同一个配置不重复请求
+    private void applyLinkProfile(LinkProfile profile) {
+        if (profile == linkProfile) {
+            return;
+        }
+        linkProfile = profile;
+        if (logging) {
+            host.log("连接参数: " + profile.getLabel());
+        }
+        host.onLinkProfile(currentAddress, profile, linkInterval, linkPhy);
+        transport.requestConnectionPriority(profile.getPriority());
+        if (profile.getPhy() != LockDeviceRecord.PHY_UNKNOWN && profile.getPhy() != linkPhy) {
+            transport.setPreferredPhy(profile.getPhy());
+        }
+    }
+
+    // 门锁也可能主动发起 MTU 交换；请求失败或超时时按默认 MTU 继续
+    @Override
+    public void onMtuChanged(int mtu, int status) {
+        mtuPending = false;
+        if (status == LockTransport.GATT_SUCCESS) {
+            if (logging) {
+                host.log("MTU: " + mtu);
+            }
+            this.mtu = mtu;
+            host.onLinkParameters(currentAddress, LockDeviceRecord.PHY_UNKNOWN, mtu);
+        } else {
+            if (logging) {
+                host.log("MTU 交换失败: " + status);
+            }
+        }
+        if (deferredPayload != null && state == LockState.WRITING) {
+            byte[] payload = deferredPayload;
+            deferredPayload = null;
+            writePayload(payload);
+        }
+    }
+
+    private void resetLink() {
+        mtu = DEFAULT_MTU;
+        mtuRequested = false;
+        mtuPending = false;
+        deferredPayload = null;
+        fragments = null;
+        linkProfile = null;
+        linkInterval = 0;
+        linkPhy = LockDeviceRecord.PHY_UNKNOWN;
+    }
+
+    private void reconnect(int status) {
+        if (!scheduleRetry(status)) {
+            giveUp("门锁连接失败");
+        }
+    }
+
+    // 关闭旧的连接，按重试策略退避后用新的连接重试；错误不可重试、次数或时间用完时返回 false
+    private boolean scheduleRetry(int status) {
+        scheduler.cancel(healthCheckRunnable);
+        rssiCheckPending = false;
+        if (currentAddress == null) {
+            return false;
+        }
+        long elapsed = unlockPending ? scheduler.now() - unlockRequestTime : 0;
+        long delay = retryPolicy.nextDelay(status, reconnectAttempts, elapsed);
+        if (delay < 0) {
+            if (logging) {
+                host.log(RetryPolicy.classify(status) == RetryPolicy.Failure.FATAL
+                        ? "错误不可重试: " + status : "重新连接次数已达上限");
+            }
+            return false;
+        }
+        reconnectAttempts++;
+        if (logging) {
+            host.log("重新连接门锁，第 " + reconnectAttempts + " 次，等待 " + delay + "ms");
+        }
+
+        transport.close();
+        transition(LockState.CONNECTING);
+        scheduler.cancel(retryRunnable);
+        scheduler.postDelayed(retryRunnable, delay);
+        return true;
+    }
+
+    private void retryConnect() {
+        if (state == LockState.CONNECTING && currentAddress != null) {
+            connectDevice(currentAddress, currentAddressType, false);
+        }
+    }
+
+    // 重试后仍然失败：计入熔断器，结束等待中的开锁并断开
+    private void giveUp(String message) {
+        breaker.onFailure(scheduler.now());
+        if (breaker.getState() == CircuitBreaker.State.OPEN) {
+            if (logging) {
+                host.log("门锁多次连接失败，暂停连接 " + breaker.getRemaining(scheduler.now()) + "ms");
+            }
+        }
+        failUnlock(message);
+        disconnect();
+    }
+
+    private void finishUnlock(boolean success) {
+        writeInFlight = false;
+        long latency = scheduler.now() - unlockRequestTime;
+        host.onUnlockFinished(success, warmUnlock, latency);
+        failureStatus = LockTransport.GATT_SUCCESS;
+        connectAttempts = 0;
+        for (StateListener listener : listeners) {
+            listener.onUnlockFinished(success, latency);
+        }
+    }
+
+    // 后台预连接期间用户没有在等待结果，只记录日志
+    private void notifyUser(String message) {
+        if (prewarming && !unlockPending && !held) {
+            log(message);
+        } else {
+            host.onMessage(message);
+        }
+    }
+
+    // 当前有等待中或已发出的开锁请求时，以失败结束并提示
+    private void failUnlock(String message) {
+        notifyUser(message);
+        if (unlockPending || writeInFlight) {
+            unlockPending = false;
+            finishUnlock(false);
+        }
+    }
+
+    // 断开连接并回到 IDLE；已经是 IDLE 时也会再次通知监听器，便于等待结果的一方收尾。
+    // 还有没有结果的开锁时先按失败结束，例如门锁被删除或配置变化
+    public void disconnect() {
+        if (unlockPending || writeInFlight) {
+            unlockPending = false;
+            finishUnlock(false);
+        }
+        scheduler.cancel(directConnectTimeoutRunnable);
+        scheduler.cancel(lingerRunnable);
+        scheduler.cancel(healthCheckRunnable);
+        scheduler.cancel(widgetRevertRunnable);
+        scheduler.cancel(cooldownRunnable);
+        scheduler.cancel(retryRunnable);
+        stopScanning();
+
+        held = false;
+        prewarming = false;
+        unlockPending = false;
+        directConnecting = false;
+        schemaUnverified = false;
+        rssiCheckPending = false;
+        reconnectAttempts = 0;
+        lingering = false;
+        acksRequested = false;
+        awaitingActuation = false;
+        cooldownRetried = false;
+        resetLink();
+
+        if (state != LockState.IDLE) {
+            transition(LockState.DISCONNECTING);
+            transport.close();
+            transition(LockState.IDLE);
+        } else {
+            transport.close();
+            notifyState();
+        }
+        host.onLockStateChanged(false);
+        host.onIdle();
+    }
+
+    private void log(String message) {
+        if (logging) {
+            host.log(message);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.doorlock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.UUID;
+
+/**
+ * 设备登记表中的一条记录：地址、地址类型、最近出现时间、上次成功连接的 PHY/MTU 以及成功/失败次数。
+ * 还可以缓存上次发现服务得到的开锁特征，配置的 UUID 不变时重新连接可以跳过发现服务；
+ * 只有能恢复特征的传输层（模拟器）用到，Android 上不保存。
+ */
+public class LockDeviceRecord {
+    public static final int ADDRESS_TYPE_UNKNOWN = -1;
+    public static final int PHY_UNKNOWN = 0;
+    public static final int MTU_UNKNOWN = 0;
+
+    private final String address;
+    private String name;
+    private int addressType = ADDRESS_TYPE_UNKNOWN;
+    private long lastSeen;
+    private long lastSuccess;
+    private int lastPhy = PHY_UNKNOWN;
+    private int lastMtu = MTU_UNKNOWN;
+    private int successCount;
+    private int failureCount;
+    private int consecutiveFailures;
+    private UUID schemaServiceUuid;
+    private UUID schemaCharacteristicUuid;
+    private boolean schemaWriteWithoutResponse;
+
+    public LockDeviceRecord(String address) {
+        this.address = address.toUpperCase();
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAddressType() {
+        return addressType;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public long getLastSuccess() {
+        return lastSuccess;
+    }
+
+    public int getLastPhy() {
+        return lastPhy;
+    }
+
+    public int getLastMtu() {
+        return lastMtu;
+    }
+
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    // 是否缓存了与当前配置的 UUID 一致的服务结构
+    public boolean hasSchema(UUID serviceUuid, UUID characteristicUuid) {
+        return serviceUuid != null && serviceUuid.equals(schemaServiceUuid)
+                && characteristicUuid != null && characteristicUuid.equals(schemaCharacteristicUuid);
+    }
+
+    public boolean isSchemaWriteWithoutResponse() {
+        return schemaWriteWithoutResponse;
+    }
+
+    // 返回缓存是否有变化，没有变化时不必重新保存
+    boolean setSchema(UUID serviceUuid, UUID characteristicUuid, boolean writeWithoutResponse) {
+        if (hasSchema(serviceUuid, characteristicUuid) && schemaWriteWithoutResponse == writeWithoutResponse) {
+            return false;
+        }
+        schemaServiceUuid = serviceUuid;
+        schemaCharacteristicUuid = characteristicUuid;
+        schemaWriteWithoutResponse = writeWithoutResponse;
+        return true;
+    }
+
+    boolean clearSchema() {
+        if (schemaServiceUuid == null) {
+            return false;
+        }
+        schemaServiceUuid = null;
+        schemaCharacteristicUuid = null;
+        schemaWriteWithoutResponse = false;
+        return true;
+    }
+
+    void markSeen(String name, int addressType, long now) {
+        if (name != null) {
+            this.name = name;
+        }
+        if (addressType != ADDRESS_TYPE_UNKNOWN) {
+            this.addressType = addressType;
+        }
+        lastSeen = now;
+    }
+
+    void markSuccess(long now) {
+        successCount++;
+        consecutiveFailures = 0;
+        lastSuccess = now;
+        lastSeen = now;
+    }
+
+    void markFailure() {
+        failureCount++;
+        consecutiveFailures++;
+    }
+
+    void setLinkParameters(int phy, int mtu) {
+        if (phy != PHY_UNKNOWN) {
+            lastPhy = phy;
+        }
+        if (mtu != MTU_UNKNOWN) {
+            lastMtu = mtu;
+        }
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("address", address);
+        if (name != null) {
+            json.put("name", name);
+        }
+        json.put("address_type", addressType);
+        json.put("last_seen", lastSeen);
+        json.put("last_success", lastSuccess);
+        json.put("last_phy", lastPhy);
+        json.put("last_mtu", lastMtu);
+        json.put("success_count", successCount);
+        json.put("failure_count", failureCount);
+        json.put("consecutive_failures", consecutiveFailures);
+        if (schemaServiceUuid != null) {
+            json.put("schema_service", schemaServiceUuid.toString());
+            json.put("schema_characteristic", schemaCharacteristicUuid.toString());
+            json.put("schema_write_no_response", schemaWriteWithoutResponse);
+        }
+        return json;
+    }
+
+    static LockDeviceRecord fromJson(JSONObject json) throws JSONException {
+        LockDeviceRecord record = new LockDeviceRecord(json.getString("address"));
+        record.name = json.has("name") ? json.getString("name") : null;
+        record.addressType = json.optInt("address_type", ADDRESS_TYPE_UNKNOWN);
+        record.lastSeen = json.optLong("last_seen", 0);
+        record.lastSuccess = json.optLong("last_success", 0);
+        record.lastPhy = json.optInt("last_phy", PHY_UNKNOWN);
+        record.lastMtu = json.optInt("last_mtu", MTU_UNKNOWN);
+        record.successCount = json.optInt("success_count", 0);
+        record.failureCount = json.optInt("failure_count", 0);
+        record.consecutiveFailures = json.optInt("consecutive_failures", 0);
+        if (json.has("schema_service") && json.has("schema_characteristic")) {
+            try {
+                record.schemaServiceUuid = UUID.fromString(json.getString("schema_service"));
+                record.schemaCharacteristicUuid = UUID.fromString(json.getString("schema_characteristic"));
+                record.schemaWriteWithoutResponse = json.optBoolean("schema_write_no_response", false);
+            } catch (IllegalArgumentException e) {
+                // 缓存格式不对时丢弃，下次连接重新发现服务
+                record.clearSchema();
+            }
+        }
+        return record;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.doorlock;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.util.List;
+
+/**
+ * 已连接过的门锁登记表，保存在 BluetoothPrefs 中。
+ * 连接时优先按登记的地址直接发起连接，不再依赖扫描。
+ */
+public class LockDeviceRegistry {
+    private static final String TAG = "LockDeviceRegistry";
+    private static final String PREFS_NAME = "BluetoothPrefs";
+    private static final String KEY_DEVICES = "devices";
+    private static LockDeviceRegistry instance;
+
+    private final SharedPreferences prefs;
+    private final LockDeviceTable table = new LockDeviceTable();
+
+    private LockDeviceRegistry(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        load();
+    }
+
+    public static synchronized LockDeviceRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new LockDeviceRegistry(context);
+        }
+        return instance;
+    }
+
+    private void load() {
+        String json = prefs.getString(KEY_DEVICES, null);
+        if (json != null) {
+            try {
+                int dropped = table.decode(json);
+                if (dropped > 0) {
+                    Log.w(TAG, "设备登记表中 " + dropped + " 条记录格式错误，已忽略");
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "设备登记表格式错误，已忽略", e);
+            }
+        } else {
+            // 兼容旧版本只保存了名称和地址的数据
+            String address = prefs.getString("device_address", "");
+            if (!address.isEmpty()) {
+                table.obtain(address).markSeen(prefs.getString("device_name", null),
+                        LockDeviceRecord.ADDRESS_TYPE_UNKNOWN, 0);
+            }
+        }
+        Log.d(TAG, "已加载设备登记表: " + table.size() + " 台设备");
+    }
+
+    private void save() {
+        String json;
+        try {
+            json = table.encode();
+        } catch (JSONException e) {
+            Log.e(TAG, "保存设备登记表失败", e);
+            return;
+        }
+        prefs.edit()
+                .putString(KEY_DEVICES, json)
+                .remove("device_name")
+                .remove("device_address")
+                .apply();
+    }
+
+    public synchronized LockDeviceRecord get(String address) {
+        return table.get(address);
+    }
+
+    public synchronized List<LockDeviceRecord> getAll() {
+        return table.getAll();
+    }
+
+    // 最近一次成功连接、且直连没有连续失败的设备，可以跳过扫描
+    public synchronized LockDeviceRecord getPreferred(String deviceName) {
+        return table.getPreferred(deviceName);
+    }
+
+    public synchronized String getPreferredAddress(String deviceName) {
+        LockDeviceRecord record = getPreferred(deviceName);
+        return record != null ? record.getAddress() : "";
+    }
+
+    public synchronized void recordSeen(String address, String name, int addressType) {
+        table.obtain(address).markSeen(name, addressType, System.currentTimeMillis());
+        save();
+    }
+
+    public synchronized void recordSuccess(String address) {
+        table.obtain(address).markSuccess(System.currentTimeMillis());
+        save();
+    }
+
+    public synchronized void recordFailure(String address) {
+        LockDeviceRecord record = get(address);
+        if (record != null) {
+            record.markFailure();
+            save();
+        }
+    }
+
+    public synchronized void recordLinkParameters(String address, int phy, int mtu) {
+        LockDeviceRecord record = get(address);
+        if (record != null) {
+            record.setLinkParameters(phy, mtu);
+            save();
+        }
+    }
+
+    public synchronized void clearSchema(String address) {
+        LockDeviceRecord record = get(address);
+        if (record != null && record.clearSchema()) {
+            save();
+        }
+    }
+}
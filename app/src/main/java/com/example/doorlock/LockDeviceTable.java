@@ -0,0 +1,114 @@
+package com.example.doorlock;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 设备登记表的内容：按大写地址保存 {@link LockDeviceRecord}，最多 {@link #MAX_RECORDS} 条，
+ * 超出时淘汰最久没有出现的设备；负责 JSON 编解码和选择直连的设备。
+ * 不依赖 Android API，持久化和同步由 {@link LockDeviceRegistry} 负责。
+ */
+class LockDeviceTable {
+    static final int MAX_RECORDS = 8;
+    // 连续直连失败超过该次数后不再尝试直连，回到扫描
+    static final int MAX_DIRECT_FAILURES = 3;
+
+    private final Map<String, LockDeviceRecord> records = new LinkedHashMap<>();
+
+    // 解析保存的登记表，替换现有内容；格式不对的单条记录被丢弃，返回丢弃的条数。
+    // 整体不是 JSON 数组时抛出异常，现有内容不变
+    int decode(String json) throws JSONException {
+        JSONArray array = new JSONArray(json);
+        records.clear();
+        int dropped = 0;
+        for (int i = 0; i < array.length(); i++) {
+            LockDeviceRecord record = parse(array.optJSONObject(i));
+            if (record == null || records.size() >= MAX_RECORDS) {
+                dropped++;
+                continue;
+            }
+            records.put(record.getAddress(), record);
+        }
+        return dropped;
+    }
+
+    private static LockDeviceRecord parse(JSONObject entry) {
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return LockDeviceRecord.fromJson(entry);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    String encode() throws JSONException {
+        JSONArray array = new JSONArray();
+        for (LockDeviceRecord record : records.values()) {
+            array.put(record.toJson());
+        }
+        return array.toString();
+    }
+
+    LockDeviceRecord obtain(String address) {
+        String key = address.toUpperCase();
+        LockDeviceRecord record = records.get(key);
+        if (record == null) {
+            if (records.size() >= MAX_RECORDS) {
+                evictOldest();
+            }
+            record = new LockDeviceRecord(key);
+            records.put(key, record);
+        }
+        return record;
+    }
+
+    private void evictOldest() {
+        LockDeviceRecord oldest = null;
+        for (LockDeviceRecord record : records.values()) {
+            if (oldest == null || record.getLastSeen() < oldest.getLastSeen()) {
+                oldest = record;
+            }
+        }
+        if (oldest != null) {
+            records.remove(oldest.getAddress());
+        }
+    }
+
+    LockDeviceRecord get(String address) {
+        return address == null ? null : records.get(address.toUpperCase());
+    }
+
+    List<LockDeviceRecord> getAll() {
+        return new ArrayList<>(records.values());
+    }
+
+    int size() {
+        return records.size();
+    }
+
+    // 最近一次成功连接、且直连没有连续失败的设备，可以跳过扫描；
+    // 名称不同的设备不选，还不知道名称的设备可以选
+    LockDeviceRecord getPreferred(String deviceName) {
+        LockDeviceRecord best = null;
+        for (LockDeviceRecord record : records.values()) {
+            if (record.getConsecutiveFailures() >= MAX_DIRECT_FAILURES) {
+                continue;
+            }
+            if (deviceName != null && record.getName() != null && !deviceName.equals(record.getName())) {
+                continue;
+            }
+            if (best == null || record.getLastSuccess() > best.getLastSuccess()) {
+                best = record;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.doorlock;
+
+/**
+ * 门锁通过 TX 特征（NUS 6E400003）通知的动作事件。
+ * 帧格式 (v1, 6 字节, 大端): [版本][事件][序号 u16][参数 u16]
+ * 序号是触发动作的开锁命令的序号（JSON 命令没有序号，固件填 0）。
+ * 动作完成事件的参数是之后的冷却时间，冷却事件的参数是剩余冷却时间（毫秒），门锁在冷却中收到命令时回复冷却事件，不动作。
+ */
+public final class LockEvent {
+    public static final int ACTUATION_START = 0x01;
+    public static final int ACTUATION_DONE = 0x02;
+    public static final int COOLDOWN = 0x03;
+    public static final int LENGTH = 6;
+
+    private static final int OFFSET_VERSION = 0;
+    private static final int OFFSET_TYPE = 1;
+    private static final int OFFSET_SEQUENCE = 2;
+    private static final int OFFSET_PARAM = 4;
+
+    private final int type;
+    private final int sequence;
+    private final int param;
+
+    private LockEvent(int type, int sequence, int param) {
+        this.type = type;
+        this.sequence = sequence;
+        this.param = param;
+    }
+
+    // 无法识别的通知返回 null
+    public static LockEvent decode(byte[] frame) {
+        if (frame == null || frame.length != LENGTH || frame[OFFSET_VERSION] != UnlockCommandCodec.VERSION) {
+            return null;
+        }
+        int type = frame[OFFSET_TYPE] & 0xFF;
+        if (type < ACTUATION_START || type > COOLDOWN) {
+            return null;
+        }
+        return new LockEvent(type, getU16(frame, OFFSET_SEQUENCE), getU16(frame, OFFSET_PARAM));
+    }
+
+    public static byte[] encode(int type, int sequence, int param) {
+        byte[] frame = new byte[LENGTH];
+        frame[OFFSET_VERSION] = UnlockCommandCodec.VERSION;
+        frame[OFFSET_TYPE] = (byte) type;
+        putU16(frame, OFFSET_SEQUENCE, sequence);
+        putU16(frame, OFFSET_PARAM, Math.min(param, UnlockCommandCodec.MAX_DURATION));
+        return frame;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    // 冷却时间（毫秒）
+    public int getParam() {
+        return param;
+    }
+
+    @Override
+    public String toString() {
+        String name;
+        switch (type) {
+            case ACTUATION_START:
+                name = "开始动作";
+                break;
+            case ACTUATION_DONE:
+                name = "动作完成";
+                break;
+            default:
+                name = "冷却中";
+        }
+        return name + "#" + sequence + (param > 0 ? " (" + param + "ms)" : "");
+    }
+
+    private static void putU16(byte[] frame, int offset, int value) {
+        frame[offset] = (byte) (value >>> 8);
+        frame[offset + 1] = (byte) value;
+    }
+
+    private static int getU16(byte[] frame, int offset) {
+        return ((frame[offset] & 0xFF) << 8) | (frame[offset + 1] & 0xFF);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.doorlock;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.os.ParcelUuid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 根据 {@link LockScanMatcher} 生成交给蓝牙控制器的硬件扫描过滤器。
+ * 多个过滤器之间是"或"的关系：设备名称或已知地址命中即上报；与 {@link LockScanMatcher} 一致，
+ * 只有没有配置名称时才按服务UUID过滤，避免附近其他 Nordic UART 设备唤醒应用。
+ */
+public final class LockScanFilters {
+
+    private LockScanFilters() {
+    }
+
+    public static List<ScanFilter> build(LockScanMatcher matcher) {
+        List<ScanFilter> filters = new ArrayList<>(3);
+        if (matcher.getDeviceName() == null && matcher.getServiceUuid() != null) {
+            filters.add(new ScanFilter.Builder()
+                    .setServiceUuid(new ParcelUuid(matcher.getServiceUuid()))
+                    .build());
+        }
+        if (matcher.getDeviceName() != null) {
+            filters.add(new ScanFilter.Builder()
+                    .setDeviceName(matcher.getDeviceName())
+                    .build());
+        }
+        String knownAddress = matcher.getKnownAddress();
+        if (knownAddress != null && BluetoothAdapter.checkBluetoothAddress(knownAddress)) {
+            filters.add(new ScanFilter.Builder()
+                    .setDeviceAddress(knownAddress)
+                    .build());
+        }
+        return filters;
+    }
+
+    // 广播包中的名称，不需要 BLUETOOTH_CONNECT 权限，也不依赖系统缓存
+    public static String advertisedName(ScanResult result) {
+        ScanRecord record = result.getScanRecord();
+        return record != null ? record.getDeviceName() : null;
+    }
+
+    public static List<UUID> advertisedServiceUuids(ScanResult result) {
+        ScanRecord record = result.getScanRecord();
+        List<ParcelUuid> parcelUuids = record != null ? record.getServiceUuids() : null;
+        if (parcelUuids == null || parcelUuids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<UUID> uuids = new ArrayList<>(parcelUuids.size());
+        for (ParcelUuid parcelUuid : parcelUuids) {
+            uuids.add(parcelUuid.getUuid());
+        }
+        return uuids;
+    }
+}
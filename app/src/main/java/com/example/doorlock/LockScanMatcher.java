@@ -0,0 +1,107 @@
+package com.example.doorlock;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * 扫描结果匹配器，在创建时固定目标名称、服务UUID和已知地址，扫描回调中只做比较。
+ * 配置了名称时必须名称一致（服务UUID是通用的 Nordic UART 服务，附近其他串口设备也会广播），
+ * 以名称匹配过的地址之后不带名称的广播也算匹配；没有配置名称时才按服务UUID匹配。已知地址总是匹配。
+ * 多个候选设备同时出现时按信号强度(RSSI)选择最强的一个，已知地址优先。
+ */
+public class LockScanMatcher {
+    private final String deviceName;
+    private final UUID serviceUuid;
+    private final String knownAddress;
+    // 以名称匹配过的地址；扫描线程和批量处理线程都会访问
+    private final Set<String> namedAddresses = Collections.synchronizedSet(new TreeSet<>(String.CASE_INSENSITIVE_ORDER));
+    // 匹配过的不同地址
+    private final Set<String> candidates = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    private String bestAddress;
+    private int bestRssi = Integer.MIN_VALUE;
+    private boolean bestIsKnown = false;
+
+    public LockScanMatcher(String deviceName, UUID serviceUuid, String knownAddress) {
+        this.deviceName = deviceName == null || deviceName.isEmpty() ? null : deviceName;
+        this.serviceUuid = serviceUuid;
+        this.knownAddress = knownAddress == null || knownAddress.isEmpty() ? null : knownAddress.toUpperCase();
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public UUID getServiceUuid() {
+        return serviceUuid;
+    }
+
+    public String getKnownAddress() {
+        return knownAddress;
+    }
+
+    public boolean isKnownAddress(String address) {
+        return knownAddress != null && knownAddress.equalsIgnoreCase(address);
+    }
+
+    public boolean matches(String address, String name, List<UUID> serviceUuids) {
+        if (isKnownAddress(address)) {
+            return true;
+        }
+        if (deviceName != null) {
+            if (deviceName.equals(name)) {
+                namedAddresses.add(address);
+                return true;
+            }
+            return namedAddresses.contains(address);
+        }
+        if (serviceUuid != null && serviceUuids != null) {
+            for (int i = 0; i < serviceUuids.size(); i++) {
+                if (serviceUuid.equals(serviceUuids.get(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 记录一个扫描结果，匹配时返回 true
+    public synchronized boolean offer(String address, String name, List<UUID> serviceUuids, int rssi) {
+        if (!matches(address, name, serviceUuids)) {
+            return false;
+        }
+        candidates.add(address);
+
+        boolean known = isKnownAddress(address);
+        if (bestAddress == null || (known && !bestIsKnown) || (known == bestIsKnown && rssi > bestRssi)
+                || address.equalsIgnoreCase(bestAddress)) {
+            bestAddress = address;
+            bestRssi = rssi;
+            bestIsKnown = known;
+        }
+        return true;
+    }
+
+    public synchronized String getBestAddress() {
+        return bestAddress;
+    }
+
+    public synchronized int getBestRssi() {
+        return bestRssi;
+    }
+
+    // 匹配过的不同设备数
+    public synchronized int getCandidateCount() {
+        return candidates.size();
+    }
+
+    public synchronized void reset() {
+        bestAddress = null;
+        bestRssi = Integer.MIN_VALUE;
+        bestIsKnown = false;
+        candidates.clear();
+    }
+}
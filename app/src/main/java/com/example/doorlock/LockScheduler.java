@@ -0,0 +1,15 @@
+package com.example.doorlock;
+
+/**
+ * 开锁流程使用的单线程调度器。所有回调都在同一个线程上执行，流程代码不需要加锁。
+ */
+public interface LockScheduler {
+    void post(Runnable task);
+
+    void postDelayed(Runnable task, long delayMs);
+
+    void cancel(Runnable task);
+
+    // 单调递增的当前时间（毫秒）
+    long now();
+}
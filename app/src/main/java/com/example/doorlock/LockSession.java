@@ -0,0 +1,602 @@
+package com.example.doorlock;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内唯一的门锁连接管理。所有门锁的状态机运行在同一个独立的 BLE 线程上，主界面、服务和小组件共用这些连接，
+ * 只通过这里提交请求、通过 {@link LockController.StateListener} 或 {@link LockConnectionManager.Listener} 观察状态。
+ * 不带门锁 id 的方法操作默认门锁。
+ */
+public class LockSession {
+    private static final String TAG = "LockSession";
+    private static final String PROXIMITY_PREFS = "Proximity";
+    // 接近触发的预连接保持时长，走到门口点击时只需写入
+    static final long PRECONNECT_HOLD = 60000;
+    // 接近检测的批量扫描上报间隔，走近门口的检测最多晚这么久
+    static final long PROXIMITY_REPORT_DELAY = 1000;
+    private static LockSession instance;
+
+    private final Context context;
+    private final HandlerThread bleThread;
+    private final LockScheduler scheduler;
+    private final Handler mainHandler;
+    private final LockConnectionManager manager;
+    private final BluetoothConfigManager configManager;
+    private final LockDeviceRegistry registry;
+    private final UnlockLatencyMetrics latencyMetrics;
+    private final UnlockTracer tracer;
+    private final LinkProfileMetrics linkMetrics;
+    private final UnlockJournal journal;
+    // 每把门锁的回调，主线程注册监听器时也可能创建
+    private final Map<String, LockHost> hosts = new ConcurrentHashMap<>();
+    // 以下只在 BLE 线程上访问
+    private final Map<String, LockConfig> appliedConfigs = new LinkedHashMap<>();
+    // 每把门锁最近一次开锁请求的入口，写入开锁记录
+    private final Map<String, UnlockSource> requestSources = new HashMap<>();
+    // 开锁追踪只记录服务发起的那一把门锁
+    private String tracedLockId = LockConfig.DEFAULT_ID;
+    // 默认门锁的接近检测，只在 BLE 线程上访问
+    private ProximityMonitor proximity;
+    private SharedPreferences proximityPrefs;
+    private volatile boolean proximityEnabled = false;
+
+    private LockSession(Context context) {
+        this.context = context;
+        configManager = BluetoothConfigManager.getInstance(context);
+        registry = LockDeviceRegistry.getInstance(context);
+        latencyMetrics = UnlockLatencyMetrics.getInstance(context);
+        linkMetrics = LinkProfileMetrics.getInstance(context);
+        mainHandler = new Handler(Looper.getMainLooper());
+
+        // 开锁记录在独立的低优先级线程上读写，BLE 线程只提交记录
+        HandlerThread journalThread = new HandlerThread("UnlockJournal", Process.THREAD_PRIORITY_BACKGROUND);
+        journalThread.start();
+        Handler journalHandler = new Handler(journalThread.getLooper());
+        journal = new UnlockJournal(new File(context.getFilesDir(), "unlock_journal"), journalHandler::post,
+                message -> Log.w(TAG, message));
+        tracer = UnlockTracer.getInstance(context);
+        tracer.setPersistExecutor(journalHandler::post);
+
+        // 蓝牙回调和超时处理都在这个线程上执行，不占用主线程
+        bleThread = new HandlerThread("LockBle");
+        bleThread.start();
+        scheduler = new HandlerScheduler(bleThread.getLooper());
+        manager = new LockConnectionManager(scheduler, new LockConnectionManager.Factory() {
+            @Override
+            public LockTransport createTransport(String lockId) {
+                return new AndroidLockTransport(context, scheduler).setTraceTrack(BleTrace.track("门锁 " + lockId));
+            }
+
+            @Override
+            public LockController.Host createHost(String lockId) {
+                LockHost host = new LockHost(lockId);
+                hosts.put(lockId, host);
+                return host;
+            }
+        }, LockConnectionManager.DEFAULT_MAX_CONNECTIONS);
+        manager.addListener(new LockConnectionManager.Listener() {
+            @Override
+            public void onStateChanged(String lockId, LockState state) {
+            }
+
+            @Override
+            public void onUnlockStarted(String lockId) {
+                LockHost host = hosts.get(lockId);
+                if (host != null) {
+                    host.beginAttempt(getSource(lockId));
+                }
+            }
+
+            @Override
+            public void onUnlockRequested(String lockId, UnlockAdmission.Decision decision) {
+                if (decision == UnlockAdmission.Decision.REJECTED) {
+                    journal.append(UnlockJournal.Entry.rejected(System.currentTimeMillis(), lockId, getSource(lockId)));
+                }
+            }
+        });
+        // 首次配置在 BLE 线程上等待加载完成，之后提交的请求排在它后面，主线程不读磁盘
+        scheduler.post(() -> {
+            for (LockConfig config : configManager.getProfiles()) {
+                applyConfig(config);
+            }
+            loadProximity();
+        });
+        configManager.addListener(new BluetoothConfigManager.ConfigListener() {
+            @Override
+            public void onConfigChanged(LockConfig config) {
+                scheduler.post(() -> applyConfig(config));
+            }
+
+            @Override
+            public void onProfileRemoved(String id) {
+                scheduler.post(() -> removeLock(id));
+            }
+        });
+    }
+
+    public static synchronized LockSession getInstance(Context context) {
+        if (instance == null) {
+            instance = new LockSession(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // 配置变化立即生效；门锁名称或 UUID 变化时断开现有连接，下次按新配置连接
+    private void applyConfig(LockConfig config) {
+        LockConfig applied = appliedConfigs.get(config.getId());
+        if (config == applied) {
+            return;
+        }
+        boolean retarget = applied != null && !applied.hasSameTarget(config);
+        appliedConfigs.put(config.getId(), config);
+        LockController controller = manager.get(config.getId());
+        String id = config.getId();
+        controller.configure(config.getDeviceName(), config.getServiceUuid(), config.getRxCharacteristicUuid(),
+                config.isKeepWarm(), config.getLingerTime(), () -> configManager.nextUnlockPayload(id));
+        if (retarget && controller.getState() != LockState.IDLE) {
+            Log.d(TAG, "门锁配置已变化，断开现有连接: " + id);
+            controller.disconnect();
+        }
+        if (retarget && config.isDefault() && proximity != null && proximity.isRunning()) {
+            startProximity();
+        }
+    }
+
+    // 上次开启了接近检测时，启动前台服务继续检测（会话由界面或小组件点击创建，应用此时在前台）
+    private void loadProximity() {
+        proximityPrefs = context.getSharedPreferences(PROXIMITY_PREFS, Context.MODE_PRIVATE);
+        if (!proximityPrefs.getBoolean("enabled", false)) {
+            return;
+        }
+        proximityEnabled = true;
+        mainHandler.post(() -> {
+            try {
+                Intent intent = new Intent(context, BluetoothService.class);
+                intent.setAction(BluetoothService.ACTION_PROXIMITY_START);
+                ContextCompat.startForegroundService(context, intent);
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "无法在后台恢复接近检测", e);
+            }
+        });
+    }
+
+    public boolean isProximityEnabled() {
+        return proximityEnabled;
+    }
+
+    // 由 BluetoothService 在前台运行时调用
+    public void setProximityEnabled(boolean enabled) {
+        proximityEnabled = enabled;
+        scheduler.post(() -> {
+            proximityPrefs.edit().putBoolean("enabled", enabled).apply();
+            if (enabled) {
+                startProximity();
+            } else if (proximity != null) {
+                proximity.stop();
+                Log.d(TAG, "接近检测已停止");
+            }
+        });
+    }
+
+    private void startProximity() {
+        LockConfig config = appliedConfigs.get(LockConfig.DEFAULT_ID);
+        if (config == null) {
+            return;
+        }
+        if (proximity == null) {
+            ProximityDetector detector = new ProximityDetector();
+            detector.setDoorRssi(proximityPrefs.getFloat("door_rssi", (float) ProximityDetector.DEFAULT_DOOR_RSSI));
+            // 后台长时间扫描：低占空比并批量上报
+            AndroidLockTransport transport = new AndroidLockTransport(context, scheduler)
+                    .setLowPowerScan(true)
+                    .setReportDelay(PROXIMITY_REPORT_DELAY)
+                    .setTraceTrack(BleTrace.track("接近检测"));
+            proximity = new ProximityMonitor(transport, scheduler, detector, new ProximityMonitor.Listener() {
+                @Override
+                public void onApproach(String address, double smoothedRssi) {
+                    LockSession.this.onApproach(address, smoothedRssi);
+                }
+
+                @Override
+                public void onScanFailed(int errorCode, long retryDelay) {
+                    onProximityScanFailed(errorCode, retryDelay);
+                }
+            });
+        }
+        LockDeviceRecord record = registry.getPreferred(config.getDeviceName());
+        // 只有成功连接过的记录才是门锁，扫描时见过的其他设备不算
+        List<String> lockAddresses = new ArrayList<>();
+        for (LockDeviceRecord seen : registry.getAll()) {
+            if (seen.getLastSuccess() > 0 && (seen.getName() == null || seen.getName().equals(config.getDeviceName()))) {
+                lockAddresses.add(seen.getAddress());
+            }
+        }
+        boolean started = proximity.start(config.getDeviceName(), config.getServiceUuid(),
+                record != null ? record.getAddress() : null, lockAddresses);
+        if (!started) {
+            Log.e(TAG, "接近检测无法开始扫描");
+            disableProximity();
+            return;
+        }
+        Log.d(TAG, "接近检测已开始，触发阈值 " + proximity.getDetector().getThreshold() + " dBm");
+    }
+
+    private void onProximityScanFailed(int errorCode, long retryDelay) {
+        if (retryDelay >= 0) {
+            Log.w(TAG, "接近检测扫描失败，错误码 " + errorCode + "，" + retryDelay + "ms 后重试");
+            return;
+        }
+        Log.e(TAG, "接近检测扫描多次失败，错误码 " + errorCode + "，已关闭");
+        disableProximity();
+    }
+
+    // 扫描无法继续：关闭接近检测，服务据此去掉"接近门锁时自动连接"的通知
+    private void disableProximity() {
+        proximityEnabled = false;
+        proximityPrefs.edit().putBoolean("enabled", false).apply();
+        showToast("无法扫描门锁，已关闭接近时自动连接");
+        mainHandler.post(() -> {
+            try {
+                Intent intent = new Intent(context, BluetoothService.class);
+                intent.setAction(BluetoothService.ACTION_PROXIMITY_STOP);
+                ContextCompat.startForegroundService(context, intent);
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "无法通知服务停止接近检测", e);
+            }
+        });
+    }
+
+    private void onApproach(String address, double smoothedRssi) {
+        Log.d(TAG, "接近门锁 " + address + ", 平滑RSSI " + smoothedRssi + " dBm，预连接");
+        manager.preconnect(LockConfig.DEFAULT_ID, PRECONNECT_HOLD);
+    }
+
+    // 开锁成功时的信号强度就是门口的信号强度，用来调整触发阈值
+    private void learnDoorRssi() {
+        if (proximity != null && proximity.isRunning() && proximity.onUnlocked()) {
+            double doorRssi = proximity.getDetector().getDoorRssi();
+            proximityPrefs.edit().putFloat("door_rssi", (float) doorRssi).apply();
+            Log.d(TAG, "门口信号强度更新为 " + doorRssi + " dBm");
+        }
+    }
+
+    private void removeLock(String lockId) {
+        Log.d(TAG, "门锁已删除: " + lockId);
+        appliedConfigs.remove(lockId);
+        manager.remove(lockId);
+        hosts.remove(lockId);
+        LockControlWidget.setLockState(context, lockId, false);
+    }
+
+    // 小组件可能绑定了已删除的门锁，这时改用默认门锁
+    private String resolve(String lockId) {
+        if (lockId != null && appliedConfigs.containsKey(lockId)) {
+            return lockId;
+        }
+        Log.d(TAG, "未知门锁 " + lockId + "，使用默认门锁");
+        return LockConfig.DEFAULT_ID;
+    }
+
+    public void requestUnlock() {
+        requestUnlock(LockConfig.DEFAULT_ID, UnlockSource.APP);
+    }
+
+    public void requestUnlock(String lockId, UnlockSource source) {
+        requestUnlock(lockId, source, 0);
+    }
+
+    // startTime 为服务收到指令的 SystemClock.elapsedRealtime()，用于统计到第一个蓝牙调用的耗时；不统计时为 0
+    public void requestUnlock(String lockId, UnlockSource source, long startTime) {
+        BleTrace.instant(TraceEvent.UNLOCK_REQUEST, BleTrace.TRACK_APP, source.ordinal());
+        scheduler.post(() -> {
+            String id = resolve(lockId);
+            if (!id.equals(lockId)) {
+                // 服务已经把绑定未知门锁的小组件显示为打开
+                LockControlWidget.setLockState(context, lockId, false);
+            }
+            requestSources.put(id, source);
+            // 服务收到的指令先记录待定的时间线，准入时状态机同步发出的阶段也记在上面
+            String previousTraced = tracedLockId;
+            boolean traced = startTime != 0;
+            if (traced) {
+                tracedLockId = id;
+                tracer.prepare(startTime);
+            }
+            UnlockAdmission.Decision decision = manager.requestUnlock(id);
+            Log.d(TAG, "[" + id + "] 开锁请求: " + decision);
+            if (traced && decision != UnlockAdmission.Decision.ADMITTED) {
+                // 没有发起新的开锁，不计入耗时统计，进行中的开锁继续追踪
+                tracer.discard();
+                tracedLockId = previousTraced;
+            }
+            switch (decision) {
+                case ADMITTED:
+                    tracedLockId = id;
+                    if (traced) {
+                        tracer.commit();
+                        // 准入后状态机已经同步发出扫描、连接或写入
+                        WarmStart.getInstance(context).recordStartToBle(SystemClock.elapsedRealtime() - startTime);
+                    }
+                    break;
+                case DEFERRED:
+                    showToast(prefixed(id, "门锁冷却中，" + toSeconds(manager.getCooldownRemaining(id)) + " 秒后自动开锁"));
+                    break;
+                case REJECTED:
+                    showToast(prefixed(id, "门锁冷却中，请 " + toSeconds(manager.getCooldownRemaining(id)) + " 秒后再试"));
+                    LockControlWidget.setLockState(context, id, false);
+                    break;
+                case DEBOUNCED:
+                    // 服务已经把小组件显示为打开，门锁刚开过不会再有结果来恢复
+                    LockControlWidget.setLockState(context, id, false);
+                    break;
+                default:
+                    break;
+            }
+        });
+    }
+
+    private UnlockSource getSource(String lockId) {
+        UnlockSource source = requestSources.get(lockId);
+        return source != null ? source : UnlockSource.APP;
+    }
+
+    private static long toSeconds(long ms) {
+        return (ms + 999) / 1000;
+    }
+
+    // 有多把门锁时在提示前加上门锁名称
+    private String prefixed(String lockId, String message) {
+        LockConfig config = appliedConfigs.get(lockId);
+        if (appliedConfigs.size() > 1 && config != null) {
+            return config.getDeviceName() + ": " + message;
+        }
+        return message;
+    }
+
+    // 同时开启所有门锁，全部有结果后提示
+    public void unlockAll() {
+        scheduler.post(() -> {
+            List<String> lockIds = new ArrayList<>(appliedConfigs.keySet());
+            for (String lockId : lockIds) {
+                requestSources.put(lockId, UnlockSource.GROUP);
+            }
+            manager.unlockGroup(lockIds, (succeeded, failed, elapsedMs) -> {
+                Log.d(TAG, "分组开锁完成: 成功 " + succeeded + ", 失败 " + failed + ", 耗时 " + elapsedMs + "ms");
+                showToast("已开锁 " + succeeded.size() + "/" + lockIds.size());
+                LockControlWidget.setLockState(context, LockControlWidget.ALL_LOCKS, false);
+            });
+        });
+    }
+
+    public void connect() {
+        scheduler.post(() -> manager.connect(LockConfig.DEFAULT_ID));
+    }
+
+    public void release() {
+        scheduler.post(() -> manager.release(LockConfig.DEFAULT_ID));
+    }
+
+    public void disconnect() {
+        scheduler.post(() -> manager.disconnect(LockConfig.DEFAULT_ID));
+    }
+
+    public LockState getState() {
+        return manager.getState(LockConfig.DEFAULT_ID);
+    }
+
+    // 开锁记录，查询请通过 UnlockJournal.execute 放到记录线程上
+    public UnlockJournal getJournal() {
+        return journal;
+    }
+
+    // 在 BLE 线程上执行，排在之前提交的请求后面
+    public void post(Runnable task) {
+        scheduler.post(task);
+    }
+
+    // 以下两个方法只能在 BLE 线程上调用，例如在 LockConnectionManager.Listener 回调中
+    public boolean isKeepingWarm() {
+        return manager.isKeepingWarm();
+    }
+
+    public boolean isBusy() {
+        return manager.hasWorkInProgress();
+    }
+
+    public void addStateListener(LockController.StateListener listener) {
+        manager.get(LockConfig.DEFAULT_ID).addStateListener(listener);
+    }
+
+    public void removeStateListener(LockController.StateListener listener) {
+        manager.get(LockConfig.DEFAULT_ID).removeStateListener(listener);
+    }
+
+    // 观察所有门锁的状态
+    public void addLockListener(LockConnectionManager.Listener listener) {
+        manager.addListener(listener);
+    }
+
+    public void removeLockListener(LockConnectionManager.Listener listener) {
+        manager.removeListener(listener);
+    }
+
+    private void showToast(String message) {
+        mainHandler.post(() -> Toast.makeText(context, message, Toast.LENGTH_SHORT).show());
+    }
+
+    // 每把门锁一个，回调都在 BLE 线程上
+    private class LockHost implements LockController.Host {
+        private final String lockId;
+        // 当前这次开锁的入口和各阶段时间，写入开锁记录后清空
+        private final UnlockTimeline attempt = new UnlockTimeline();
+        private UnlockSource attemptSource;
+        // 各阶段结束时使用的连接参数配置，与 attempt 一起清空
+        private final LinkProfile[] attemptProfiles = new LinkProfile[UnlockPhase.values().length];
+        private LinkProfile linkProfile;
+        private final int traceTrack;
+
+        LockHost(String lockId) {
+            this.lockId = lockId;
+            traceTrack = BleTrace.track("门锁 " + lockId);
+        }
+
+        void beginAttempt(UnlockSource source) {
+            if (attemptSource == null) {
+                attemptSource = source;
+                attempt.reset(System.currentTimeMillis());
+                Arrays.fill(attemptProfiles, null);
+                BleTrace.asyncBegin(TraceEvent.UNLOCK, traceTrack);
+            }
+        }
+
+        // 只构造记录交给记录线程，不在 BLE 线程上写文件
+        private void recordAttempt(boolean success, boolean warm, long latencyMs, int status) {
+            if (attemptSource == null) {
+                return;
+            }
+            BleTrace.asyncEnd(TraceEvent.UNLOCK, traceTrack, success ? 1 : 0);
+            journal.append(UnlockJournal.Entry.of(attempt.getWallClockStart(), lockId, attemptSource, success, warm,
+                    status, latencyMs, attempt));
+            if (success) {
+                linkMetrics.recordUnlock(lockId, attempt, attemptProfiles);
+            }
+            attemptSource = null;
+        }
+
+        private boolean isTraced() {
+            return lockId.equals(tracedLockId);
+        }
+
+        @Override
+        public LockDeviceRecord getPreferredDevice(String deviceName) {
+            return registry.getPreferred(deviceName);
+        }
+
+        @Override
+        public void onDeviceSeen(String address, String name, int addressType) {
+            registry.recordSeen(address, name, addressType);
+        }
+
+        @Override
+        public void onConnectSucceeded(String address) {
+            registry.recordSuccess(address);
+        }
+
+        @Override
+        public void onConnectFailed(String address) {
+            registry.recordFailure(address);
+        }
+
+        @Override
+        public void onLinkParameters(String address, int phy, int mtu) {
+            registry.recordLinkParameters(address, phy, mtu);
+        }
+
+        @Override
+        public void onLinkProfile(String address, LinkProfile profile, int interval, int phy) {
+            linkProfile = profile;
+            linkMetrics.recordLink(lockId, profile, interval, phy);
+        }
+
+        @Override
+        public LockDeviceRecord getDevice(String address) {
+            return registry.get(address);
+        }
+
+        @Override
+        public void onSchemaResolved(String address, UUID serviceUuid, UUID characteristicUuid,
+                                     boolean writeWithoutResponse) {
+            // AndroidLockTransport 不能恢复特征，缓存的服务结构用不上，不再写入登记表；
+            // 清除旧版本保存的服务结构，没有时不写文件
+            registry.clearSchema(address);
+        }
+
+        @Override
+        public void onSchemaInvalid(String address) {
+            registry.clearSchema(address);
+        }
+
+        @Override
+        public void onPhase(UnlockPhase phase) {
+            if (attemptSource != null) {
+                attempt.mark(phase, scheduler.now());
+                attemptProfiles[phase.ordinal()] = linkProfile;
+            }
+            if (isTraced()) {
+                tracer.mark(phase);
+            }
+        }
+
+        @Override
+        public void onUnlockFinished(boolean success, boolean warm, long latencyMs) {
+            if (success) {
+                latencyMetrics.record(warm, latencyMs, manager.get(lockId).getConnectAttempts());
+                if (LockConfig.DEFAULT_ID.equals(lockId)) {
+                    learnDoorRssi();
+                }
+            }
+            recordAttempt(success, warm, latencyMs,
+                    success ? LockTransport.GATT_SUCCESS : manager.get(lockId).getFailureStatus());
+            if (isTraced()) {
+                tracer.finish(success);
+            }
+        }
+
+        @Override
+        public void onActuation(long latencyMs) {
+            latencyMetrics.recordActuation(latencyMs);
+        }
+
+        // 同一进程内直接交给小组件渲染，不经过广播
+        @Override
+        public void onLockStateChanged(boolean unlocked) {
+            LockControlWidget.setLockState(context, lockId, unlocked);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            showToast(prefixed(lockId, message));
+        }
+
+        @Override
+        public void onIdle() {
+            // 没有结果就放弃了，例如门锁被删除
+            recordAttempt(false, false, -1, LockTransport.GATT_SUCCESS);
+            if (isTraced()) {
+                tracer.finish(false);
+            }
+        }
+
+        // release 构建不输出控制器日志
+        @Override
+        public boolean isLogging() {
+            return BuildConfig.DEBUG;
+        }
+
+        @Override
+        public void log(String message) {
+            Log.d(TAG, "[" + lockId + "] " + message);
+        }
+    }
+}
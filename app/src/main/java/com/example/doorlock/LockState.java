@@ -0,0 +1,31 @@
+package com.example.doorlock;
+
+/**
+ * 门锁连接状态。
+ * IDLE → SCANNING → CONNECTING → DISCOVERING → READY ⇄ WRITING，任意状态经 DISCONNECTING 回到 IDLE。
+ * 有登记地址时跳过 SCANNING 直接进入 CONNECTING。
+ */
+public enum LockState {
+    IDLE("未连接"),
+    SCANNING("扫描中"),
+    CONNECTING("连接中"),
+    DISCOVERING("发现服务中"),
+    READY("已连接"),
+    WRITING("发送命令中"),
+    DISCONNECTING("断开中");
+
+    private final String label;
+
+    LockState(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // 已建立 GATT 连接
+    public boolean isConnected() {
+        return this == DISCOVERING || this == READY || this == WRITING;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.doorlock;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 门锁的 BLE 传输层：扫描、连接、发现服务、写入和订阅通知。
+ * Android 实现为 {@link AndroidLockTransport}，JVM 上可使用 {@link SimulatedLockTransport}。
+ * 所有回调都通过构造时传入的 {@link LockScheduler} 派发。
+ */
+public interface LockTransport {
+    int GATT_SUCCESS = 0;
+    int GATT_ERROR = 133;
+    int GATT_FAILURE = 257;
+    // 操作超时，与 Android 的 GATT_CONNECTION_TIMEOUT 取值相同
+    int GATT_TIMEOUT = 0x93;
+    int PHY_LE_1M = 1;
+    int PHY_LE_2M = 2;
+    // 与 BluetoothGatt 的连接优先级取值相同
+    int CONNECTION_PRIORITY_BALANCED = 0;
+    int CONNECTION_PRIORITY_HIGH = 1;
+    int CONNECTION_PRIORITY_LOW_POWER = 2;
+
+    interface Callback {
+        void onScanResult(String address, String name, List<UUID> serviceUuids, int rssi, int addressType);
+
+        void onScanFailed(int errorCode);
+
+        void onConnectionStateChanged(int status, boolean connected);
+
+        void onServicesDiscovered(int status);
+
+        void onCharacteristicWritten(UUID characteristicUuid, int status);
+
+        // 订阅通知（写入 CCCD 描述符）的结果
+        void onNotificationsEnabled(UUID characteristicUuid, int status);
+
+        void onCharacteristicChanged(UUID characteristicUuid, byte[] value);
+
+        void onRssiRead(int rssi, int status);
+
+        void onPhyRead(int txPhy, int rxPhy, int status);
+
+        void onMtuChanged(int mtu, int status);
+
+        // 连接参数更新完成，interval 单位 1.25ms，timeout 单位 10ms
+        void onConnectionUpdated(int interval, int latency, int timeout, int status);
+    }
+
+    void setCallback(Callback callback);
+
+    // 蓝牙可用且已开启
+    boolean isEnabled();
+
+    boolean startScan(LockScanMatcher matcher);
+
+    void stopScan();
+
+    boolean connect(String address, int addressType, boolean prefer2mPhy);
+
+    boolean discoverServices();
+
+    boolean hasCharacteristic(UUID serviceUuid, UUID characteristicUuid);
+
+    // 按缓存的服务结构直接使用特征，不发现服务；无法恢复时返回 false。
+    // 恢复后特征可能已经失效（例如门锁固件更新），由第一次写入的结果验证。
+    // 只有 SimulatedLockTransport 支持，AndroidLockTransport 总是返回 false
+    boolean restoreCharacteristic(UUID serviceUuid, UUID characteristicUuid, boolean writeWithoutResponse);
+
+    // 特征是否支持无响应写入（不等待门锁的 ATT 确认）
+    boolean supportsWriteWithoutResponse(UUID serviceUuid, UUID characteristicUuid);
+
+    boolean write(UUID serviceUuid, UUID characteristicUuid, byte[] value, boolean withoutResponse);
+
+    // 订阅特征的通知，结果通过 onNotificationsEnabled 回调；特征不支持通知时返回 false
+    boolean enableNotifications(UUID serviceUuid, UUID characteristicUuid);
+
+    boolean requestMtu(int mtu);
+
+    boolean readRssi();
+
+    boolean readPhy();
+
+    // 请求连接优先级（连接间隔），结果通过 onConnectionUpdated 回调
+    boolean requestConnectionPriority(int priority);
+
+    // 请求收发都使用指定的 PHY，实际使用的 PHY 通过 onPhyRead 回调
+    boolean setPreferredPhy(int phy);
+
+    // 断开并释放当前连接，之后不会再收到该连接的回调
+    void close();
+}
@@ -0,0 +1,86 @@
+package com.example.doorlock;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.List;
+
+/**
+ * 添加小组件时选择它控制的门锁：某一把门锁，或者同时开启全部门锁。
+ */
+public class LockWidgetConfigureActivity extends AppCompatActivity {
+    private static final String TAG = "LockWidgetConfigure";
+
+    private int appWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
+    private BluetoothConfigManager configManager;
+    private boolean chooserShown = false;
+
+    // 配置加载完成后在主线程弹出选择列表
+    private final BluetoothConfigManager.ConfigListener configListener = config ->
+            runOnUiThread(() -> {
+                if (!chooserShown) {
+                    chooserShown = true;
+                    showChooser(configManager.getProfiles());
+                }
+            });
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // 用户中途退出时不添加小组件
+        setResult(RESULT_CANCELED);
+
+        Intent intent = getIntent();
+        if (intent != null) {
+            appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, AppWidgetManager.INVALID_APPWIDGET_ID);
+        }
+        if (appWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+            finish();
+            return;
+        }
+
+        configManager = BluetoothConfigManager.getInstance(this);
+        configManager.addListener(configListener);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (configManager != null) {
+            configManager.removeListener(configListener);
+        }
+    }
+
+    private void showChooser(List<LockConfig> profiles) {
+        String[] labels = new String[profiles.size() + 1];
+        String[] lockIds = new String[profiles.size() + 1];
+        for (int i = 0; i < profiles.size(); i++) {
+            labels[i] = profiles.get(i).getDeviceName();
+            lockIds[i] = profiles.get(i).getId();
+        }
+        labels[profiles.size()] = "全部门锁";
+        lockIds[profiles.size()] = LockControlWidget.ALL_LOCKS;
+
+        new AlertDialog.Builder(this)
+                .setTitle("选择小组件控制的门锁")
+                .setItems(labels, (dialog, which) -> bind(lockIds[which]))
+                .setOnCancelListener(dialog -> finish())
+                .show();
+    }
+
+    private void bind(String lockId) {
+        Log.d(TAG, "小组件[" + appWidgetId + "]绑定门锁: " + lockId);
+        // 绑定后由渲染器完整更新一次小组件
+        LockControlWidget.bindLock(this, appWidgetId, lockId);
+
+        Intent result = new Intent();
+        result.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        setResult(RESULT_OK, result);
+        finish();
+    }
+}
@@ -2,24 +2,15 @@ package com.example.doorlock;
 
 import android.Manifest;
 import android.annotation.SuppressLint;
-import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
-import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanResult;
-import android.bluetooth.le.ScanSettings;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -32,152 +23,163 @@ import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "DoorLockApp";
     private static final int PERMISSION_REQUEST_CODE = 100;
 
-    private BluetoothAdapter bluetoothAdapter;
-    private BluetoothLeScanner bluetoothLeScanner;
-    private BluetoothGatt bluetoothGatt;
-
-    private boolean scanning = false;
-    private final Handler handler = new Handler();
-    private static final long SCAN_PERIOD = 10000;
-    private String device_name;
-    private UUID serviceUuid;
-    private UUID rxCharacteristicUuid;
-    private String pressTime;
-    private String releaseTime;
+    // 绑定的门锁服务，连接由服务持有；未绑定时为 null
+    private BluetoothService lockService;
+    private boolean serviceBound = false;
+    private BluetoothConfigManager configManager;
+    // 界面上次看到的配置，只在主线程上访问
+    private LockConfig shownConfig;
     private Button connectButton;
     private Button unlockButton;
     private TextView statusText;
     private TextView devicesText;
+    // 扫描结果在后台线程去重合并，每帧最多向列表提交一次快照
+    private HandlerThread scanTableThread;
+    private ScanResultTable scanTable;
+    private ScanResultAdapter deviceAdapter;
 
-    private final ScanCallback scanCallback = new ScanCallback() {
-        @SuppressLint("SetTextI18n")
+    // 状态在 BLE 线程上回调，切换到主线程更新界面
+    private final LockController.StateListener stateListener = new LockController.StateListener() {
         @Override
-        public void onScanResult(int callbackType, ScanResult result) {
-            super.onScanResult(callbackType, result);
-
-            BluetoothDevice device = result.getDevice();
-            String deviceName = null;
-            String deviceAddress = device.getAddress();
-
-            try {
-                if (hasRequiredPermissions()) {
-                    deviceName = device.getName();
-                }
-            } catch (SecurityException e) {
-                Log.e(TAG, "安全异常: " + e.getMessage());
-            }
-
-            final String finalDeviceName = deviceName;
-            final String finalDeviceAddress = deviceAddress;
+        public void onStateChanged(LockState state) {
+            runOnUiThread(() -> renderState(state));
+        }
 
-            if (finalDeviceName != null && finalDeviceName.equals(device_name)) {
-                stopScan();
-                connectToDevice(device);
-            }
+        @Override
+        public void onDeviceFound(String address, String name, int rssi) {
+            scanTable.offer(address, name, rssi);
+        }
+    };
 
-            runOnUiThread(() -> {
-                String currentText = devicesText.getText().toString();
-                if (finalDeviceName != null) {
-                    devicesText.setText(currentText + "\n发现设备: " + finalDeviceName + " (" + finalDeviceAddress + ")");
-                } else {
-                    devicesText.setText(currentText + "\n发现设备: " + finalDeviceAddress);
-                }
-            });
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            lockService = ((BluetoothService.LockBinder) binder).getService();
+            lockService.addStateListener(stateListener);
+            renderState(lockService.getState());
         }
 
         @Override
-        public void onScanFailed(int errorCode) {
-            super.onScanFailed(errorCode);
-            Log.e(TAG, "扫描失败，错误代码: " + errorCode);
-            runOnUiThread(() -> {
-                Toast.makeText(MainActivity.this, "蓝牙扫描失败", Toast.LENGTH_SHORT).show();
-                scanning = false;
+        public void onServiceDisconnected(ComponentName name) {
+            lockService = null;
+        }
+    };
+
+    // 配置在保存设置的线程上回调，切换到主线程；连接的断开由 LockSession 负责
+    private final BluetoothConfigManager.ConfigListener configListener = config ->
+            runOnUiThread(() -> onConfigChanged(config));
+
+    @SuppressLint("SetTextI18n")
+    private void renderDevices(List<ScanResultTable.Device> devices) {
+        deviceAdapter.submitList(devices);
+        if (!devices.isEmpty()) {
+            devicesText.setText("发现设备: " + devices.size());
+        }
+    }
+
+    @SuppressLint("SetTextI18n")
+    private void renderState(LockState state) {
+        statusText.setText(state.getLabel());
+        unlockButton.setEnabled(state == LockState.READY || state == LockState.WRITING);
+        switch (state) {
+            case IDLE:
                 connectButton.setEnabled(true);
                 connectButton.setText("连接门锁");
-            });
+                break;
+            case SCANNING:
+                connectButton.setEnabled(false);
+                connectButton.setText("扫描中...");
+                break;
+            case READY:
+            case WRITING:
+                connectButton.setEnabled(false);
+                connectButton.setText("已连接");
+                break;
+            default:
+                connectButton.setEnabled(false);
+                break;
         }
-    };
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem proximityItem = menu.findItem(R.id.action_proximity);
+        if (proximityItem != null) {
+            proximityItem.setChecked(lockService != null && lockService.isProximityEnabled());
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == R.id.action_settings) {
             Intent intent = new Intent(this, SettingsActivity.class);
             startActivity(intent);
             return true;
+        } else if (item.getItemId() == R.id.action_history) {
+            startActivity(new Intent(this, UnlockHistoryActivity.class));
+            return true;
+        } else if (item.getItemId() == R.id.action_diagnostics) {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
+            return true;
+        } else if (item.getItemId() == R.id.action_unlock_all) {
+            if (lockService != null) {
+                lockService.unlockAll();
+            }
+            return true;
+        } else if (item.getItemId() == R.id.action_proximity) {
+            if (setProximityEnabled(!item.isChecked())) {
+                item.setChecked(!item.isChecked());
+            }
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-        // 每次回到前台时重新加载配置
-        reloadConfiguration();
+    // 接近检测在前台服务中运行，应用退到后台后继续扫描
+    private boolean setProximityEnabled(boolean enabled) {
+        if (enabled && !hasRequiredPermissions()) {
+            Toast.makeText(this, "需要权限才能检测门锁", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        Intent intent = new Intent(this, BluetoothService.class);
+        intent.setAction(enabled ? BluetoothService.ACTION_PROXIMITY_START : BluetoothService.ACTION_PROXIMITY_STOP);
+        ContextCompat.startForegroundService(this, intent);
+        return true;
     }
 
-    private void reloadConfiguration() {
-        BluetoothConfigManager configManager = BluetoothConfigManager.getInstance(this);
-        String newDeviceName = configManager.getDeviceName();
-        UUID newServiceUuid = configManager.getServiceUuid();
-        UUID newRxCharacteristicUuid = configManager.getRxCharacteristicUuid();
-        pressTime = configManager.getPressTime();
-        releaseTime = configManager.getReleaseTime();
-        // 检查配置是否发生变化
-        boolean configChanged = !device_name.equals(newDeviceName) ||
-                !serviceUuid.equals(newServiceUuid) ||
-                !rxCharacteristicUuid.equals(newRxCharacteristicUuid);
-
-        if (configChanged) {
-            Log.d(TAG, "检测到配置变化，重新加载配置");
-
-            // 更新配置
-            device_name = newDeviceName;
-            serviceUuid = newServiceUuid;
-            rxCharacteristicUuid = newRxCharacteristicUuid;
-
-            // 断开现有连接
-            disconnectFromDevice();
-
-            // 更新UI状态
-            runOnUiThread(() -> {
-                statusText.setText("配置已更新");
-                connectButton.setEnabled(true);
-                connectButton.setText("连接门锁");
-                unlockButton.setEnabled(false);
-
-                Toast.makeText(MainActivity.this, "配置已更新，请重新连接", Toast.LENGTH_SHORT).show();
-            });
+    @SuppressLint("SetTextI18n")
+    private void onConfigChanged(LockConfig config) {
+        // 主界面只连接默认门锁
+        if (!config.isDefault()) {
+            return;
         }
-    }
+        boolean targetChanged = shownConfig != null && !shownConfig.hasSameTarget(config);
+        shownConfig = config;
+        if (targetChanged) {
+            Log.d(TAG, "检测到配置变化: " + config);
+            statusText.setText("配置已更新");
+            connectButton.setEnabled(true);
+            connectButton.setText("连接门锁");
+            unlockButton.setEnabled(false);
 
-    private void disconnectFromDevice() {
-        stopScan();
-        if (bluetoothGatt != null) {
-            try {
-                bluetoothGatt.disconnect();
-                bluetoothGatt.close();
-                bluetoothGatt = null;
-            } catch (SecurityException e) {
-                Log.e(TAG, "安全异常: " + e.getMessage());
-            }
+            Toast.makeText(MainActivity.this, "配置已更新，请重新连接", Toast.LENGTH_SHORT).show();
         }
     }
 
@@ -186,32 +188,33 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         Log.d(TAG, "APP初始化");
-        // 初始化配置管理器
-        BluetoothConfigManager configManager = BluetoothConfigManager.getInstance(this);
-        // 使用配置
-        device_name = configManager.getDeviceName();
-        serviceUuid = configManager.getServiceUuid();
-        rxCharacteristicUuid = configManager.getRxCharacteristicUuid();
         connectButton = findViewById(R.id.connectButton);
         unlockButton = findViewById(R.id.unlockButton);
         statusText = findViewById(R.id.statusText);
         devicesText = findViewById(R.id.devicesText);
         unlockButton.setEnabled(false);
 
-        BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
-        if (bluetoothManager != null) {
-            bluetoothAdapter = bluetoothManager.getAdapter();
-            if (bluetoothAdapter != null) {
-                bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
-            }
-        }
+        RecyclerView deviceList = findViewById(R.id.deviceList);
+        deviceList.setLayoutManager(new LinearLayoutManager(this));
+        deviceAdapter = new ScanResultAdapter();
+        deviceList.setAdapter(deviceAdapter);
+        scanTableThread = new HandlerThread("ScanTable");
+        scanTableThread.start();
+        scanTable = new ScanResultTable(new HandlerScheduler(scanTableThread.getLooper()),
+                devices -> runOnUiThread(() -> renderDevices(devices)));
 
-        if (bluetoothAdapter == null) {
+        if (!isBluetoothSupported()) {
             Toast.makeText(this, "设备不支持蓝牙", Toast.LENGTH_SHORT).show();
             finish();
             return;
         }
 
+        renderState(LockState.IDLE);
+        serviceBound = bindService(new Intent(this, BluetoothService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+        // 配置在后台加载，加载完成和之后的每次修改都会回调，不需要在 onResume 中轮询
+        configManager = BluetoothConfigManager.getInstance(this);
+        configManager.addListener(configListener);
+
         connectButton.setOnClickListener(v -> scanAndConnect());
 
         unlockButton.setOnClickListener(v -> sendUnlockCommand());
@@ -255,6 +258,10 @@ public class MainActivity extends AppCompatActivity {
         return requiredPermissions;
     }
 
+    private boolean isBluetoothSupported() {
+        return getPackageManager().hasSystemFeature(PackageManager.FEATURE_BLUETOOTH_LE);
+    }
+
     private boolean hasRequiredPermissions() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             return ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) == PackageManager.PERMISSION_GRANTED &&
@@ -276,102 +283,16 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
-            Toast.makeText(this, "请先启用蓝牙", Toast.LENGTH_SHORT).show();
+        if (lockService == null) {
             return;
         }
-
-        if (scanning) {
-            stopScan();
-        } else {
-            startScan();
-        }
-    }
-
-    private void startScan() {
-        if (!hasRequiredPermissions()) {
-            Toast.makeText(this, "需要权限才能扫描设备", Toast.LENGTH_SHORT).show();
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
-                checkAndRequestPermissions();
-            }
-            return;
-        }
-
-        if (bluetoothLeScanner == null) {
-            bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
-            if (bluetoothLeScanner == null) {
-                Toast.makeText(this, "无法启动蓝牙扫描", Toast.LENGTH_SHORT).show();
-                return;
-            }
-        }
-
-        runOnUiThread(() -> {
-            devicesText.setText("扫描中...");
-            connectButton.setEnabled(false);
-            connectButton.setText("扫描中...");
-        });
-
-        try {
-            ScanSettings settings = new ScanSettings.Builder()
-                    .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-                    .build();
-
-            bluetoothLeScanner.startScan(new ArrayList<>(), settings, scanCallback);
-            scanning = true;
-
-            handler.postDelayed(() -> {
-                if (scanning) {
-                    stopScan();
-                    runOnUiThread(() -> {
-                        Toast.makeText(MainActivity.this, "扫描超时，未找到设备", Toast.LENGTH_SHORT).show();
-                        connectButton.setEnabled(true);
-                        connectButton.setText("连接门锁");
-                    });
-                }
-            }, SCAN_PERIOD);
-
-        } catch (SecurityException e) {
-            Log.e(TAG, "安全异常: " + e.getMessage());
-            Toast.makeText(this, "权限错误，无法扫描设备", Toast.LENGTH_SHORT).show();
-            connectButton.setEnabled(true);
-            connectButton.setText("连接门锁");
-        }
-    }
-
-    private void stopScan() {
-        if (scanning && bluetoothLeScanner != null) {
-            try {
-                bluetoothLeScanner.stopScan(scanCallback);
-            } catch (SecurityException e) {
-                Log.e(TAG, "安全异常: " + e.getMessage());
-                Toast.makeText(this, "权限错误，无法停止扫描", Toast.LENGTH_SHORT).show();
-            }
-            scanning = false;
-        }
-    }
-
-    private void connectToDevice(BluetoothDevice device) {
-        if (!hasRequiredPermissions()) {
-            Toast.makeText(this, "需要权限才能连接设备", Toast.LENGTH_SHORT).show();
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
-                checkAndRequestPermissions();
-            }
-            return;
-        }
-
-        try {
-            bluetoothGatt = device.connectGatt(this, false, gattCallback);
-            statusText.setText("正在连接...");
-            connectButton.setEnabled(false);
-        } catch (SecurityException e) {
-            Log.e(TAG, "安全异常: " + e.getMessage());
-            Toast.makeText(this, "权限错误，无法连接设备", Toast.LENGTH_SHORT).show();
-            connectButton.setEnabled(true);
-            connectButton.setText("连接门锁");
-        }
+        devicesText.setText("扫描中...");
+        scanTable.clear();
+        lockService.connect();
     }
 
     private void sendUnlockCommand() {
+        BleTrace.instant(TraceEvent.UI_UNLOCK, BleTrace.TRACK_APP, 0);
         if (!hasRequiredPermissions()) {
             Toast.makeText(this, "需要权限才能发送命令", Toast.LENGTH_SHORT).show();
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
@@ -380,159 +301,28 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        if (bluetoothGatt == null) {
-            Toast.makeText(this, "未连接到设备", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        try {
-            BluetoothGattService service = bluetoothGatt.getService(serviceUuid);
-            if (service == null) {
-                Log.e(TAG, "未找到服务");
-                Toast.makeText(this, "未找到服务", Toast.LENGTH_SHORT).show();
-                return;
-            }
-
-            BluetoothGattCharacteristic characteristic = service.getCharacteristic(rxCharacteristicUuid);
-            if (characteristic == null) {
-                Toast.makeText(this, "未找到特征", Toast.LENGTH_SHORT).show();
-                return;
-            }
-            JSONObject sendMessage = new JSONObject();
-            try {
-                sendMessage.put("press_time", pressTime);
-                sendMessage.put("release_time", releaseTime);
-                sendMessage.put("action", "unlock");
-
-                // 将 JSON 对象转换为字符串并发送
-                String jsonString = sendMessage.toString();
-                characteristic.setValue(jsonString.getBytes(StandardCharsets.UTF_8));
-
-                Log.d(TAG, "发送 JSON 数据: " + jsonString);
-            } catch (JSONException e) {
-                Log.e(TAG, "创建 JSON 数据时出错: " + e.getMessage());
-            }
-            characteristic.setValue(sendMessage.toString().getBytes());
-            Log.d(TAG, "sendMessage" + sendMessage);
-            boolean success = bluetoothGatt.writeCharacteristic(characteristic);
-            if (success) {
-                Toast.makeText(this, "发送开锁命令", Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, "发送失败", Toast.LENGTH_SHORT).show();
-            }
-        } catch (SecurityException e) {
-            Log.e(TAG, "安全异常: " + e.getMessage());
-            Toast.makeText(this, "权限错误，无法发送命令", Toast.LENGTH_SHORT).show();
+        if (lockService != null) {
+            lockService.requestUnlock();
         }
     }
 
-
-
-    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
-        @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            super.onConnectionStateChange(gatt, status, newState);
-
-            runOnUiThread(() -> {
-                if (newState == BluetoothProfile.STATE_CONNECTED) {
-                    try {
-                        bluetoothGatt.discoverServices();
-                        statusText.setText("发现服务中...");
-                    } catch (SecurityException e) {
-                        Log.e(TAG, "安全异常: " + e.getMessage());
-                        statusText.setText("权限错误");
-                        connectButton.setEnabled(true);
-                        connectButton.setText("连接门锁");
-                    }
-                } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                    connectButton.setEnabled(true);
-                    connectButton.setText("连接门锁");
-                    unlockButton.setEnabled(false);
-                }
-            });
-        }
-
-        @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            super.onServicesDiscovered(gatt, status);
-
-            runOnUiThread(() -> {
-                if (status == BluetoothGatt.GATT_SUCCESS) {
-                    try {
-                        List<BluetoothGattService> services = gatt.getServices();
-                        boolean serviceFound = false;
-
-                        for (BluetoothGattService service : services) {
-                            if (service.getUuid().equals(serviceUuid)) {
-                                serviceFound = true;
-                                break;
-                            }
-                        }
-
-                        if (serviceFound) {
-                            statusText.setText("已连接");
-                            unlockButton.setEnabled(true);
-                            connectButton.setText("已连接");
-                        } else {
-                            Log.e(TAG, "服务未找到");
-                            statusText.setText("服务未找到");
-                            try {
-                                gatt.disconnect();
-                            } catch (SecurityException e) {
-                                Log.e(TAG, "安全异常: " + e.getMessage());
-                            }
-                            connectButton.setEnabled(true);
-                            connectButton.setText("连接门锁");
-                        }
-                    } catch (SecurityException e) {
-                        Log.e(TAG, "安全异常: " + e.getMessage());
-                        statusText.setText("权限错误");
-                        connectButton.setEnabled(true);
-                        connectButton.setText("连接门锁");
-                    }
-                } else {
-                    statusText.setText("服务发现失败");
-                    Log.e(TAG, "服务发现失败");
-                    try {
-                        gatt.disconnect();
-                    } catch (SecurityException e) {
-                        Log.e(TAG, "安全异常: " + e.getMessage());
-                    }
-                    connectButton.setEnabled(true);
-                    connectButton.setText("连接门锁");
-                }
-            });
-        }
-
-        @Override
-        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            super.onCharacteristicWrite(gatt, characteristic, status);
-
-            runOnUiThread(() -> {
-                if (status == BluetoothGatt.GATT_SUCCESS) {
-                    Toast.makeText(MainActivity.this, "命令发送成功", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(MainActivity.this, "命令发送失败", Toast.LENGTH_SHORT).show();
-                }
-            });
-        }
-    };
-
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        stopScan();
-        if (bluetoothGatt != null) {
-            try {
-                bluetoothGatt.disconnect();
-            } catch (SecurityException e) {
-                Log.e(TAG, "安全异常: " + e.getMessage());
-            }
-            try {
-                bluetoothGatt.close();
-            } catch (SecurityException e) {
-                Log.e(TAG, "安全异常: " + e.getMessage());
-            }
+        if (lockService != null) {
+            lockService.removeStateListener(stateListener);
+            lockService.release();
+            lockService = null;
+        }
+        if (serviceBound) {
+            unbindService(serviceConnection);
+            serviceBound = false;
+        }
+        if (configManager != null) {
+            configManager.removeListener(configListener);
+        }
+        if (scanTableThread != null) {
+            scanTableThread.quitSafely();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,25 @@
+package com.example.doorlock;
+
+import java.util.UUID;
+
+/**
+ * ESP32 固件使用的 Nordic UART Service (NUS) UUID。
+ * RX/TX 是标准 NUS 特征，其他串口设备也有；门锁固件的能力只看 {@link #FEATURE_CHARACTERISTIC}。
+ */
+public final class NordicUartService {
+    public static final String SERVICE = "6E400001-B5A3-F393-E0A9-E50E24DCCA9E";
+    // 手机写入，门锁接收
+    public static final String RX_CHARACTERISTIC = "6E400002-B5A3-F393-E0A9-E50E24DCCA9E";
+    // 门锁通知，手机接收
+    public static final String TX_CHARACTERISTIC = "6E400003-B5A3-F393-E0A9-E50E24DCCA9E";
+    // 门锁固件自己的功能特征，不属于 NUS 标准：提供它的固件支持 CommandFramer 分片重组，并通过 TX 发送 LockEvent 动作事件
+    public static final String FEATURE_CHARACTERISTIC = "6E400010-B5A3-F393-E0A9-E50E24DCCA9E";
+
+    public static final UUID SERVICE_UUID = UUID.fromString(SERVICE);
+    public static final UUID RX_CHARACTERISTIC_UUID = UUID.fromString(RX_CHARACTERISTIC);
+    public static final UUID TX_CHARACTERISTIC_UUID = UUID.fromString(TX_CHARACTERISTIC);
+    public static final UUID FEATURE_CHARACTERISTIC_UUID = UUID.fromString(FEATURE_CHARACTERISTIC);
+
+    private NordicUartService() {
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.doorlock;
+
+/**
+ * 根据平滑后的 RSSI 判断是否正在走近门锁。
+ * 门口的信号强度从每次开锁时的 RSSI 学习得到，触发阈值比它低 {@link #APPROACH_MARGIN}，在到门口之前触发；
+ * 还要求信号相对布防以来的最低值上升了 {@link #MIN_RISE}，一直待在门附近（例如在家里）不会触发。
+ * 触发后信号回落到阈值以下 {@link #HYSTERESIS}，或者信号丢失，才重新布防。
+ */
+public class ProximityDetector {
+    static final double DEFAULT_DOOR_RSSI = -65;
+    static final double APPROACH_MARGIN = 10;
+    static final double MIN_RISE = 6;
+    static final double HYSTERESIS = 6;
+    static final double MIN_THRESHOLD = -90;
+    static final double MAX_THRESHOLD = -50;
+    // 开锁时最近一次采样超过这个时间就不用来学习
+    static final long LEARN_MAX_AGE = 5000;
+    private static final double LEARN_RATE = 0.3;
+
+    private final RssiFilter filter = new RssiFilter();
+    private double doorRssi = DEFAULT_DOOR_RSSI;
+    private boolean armed = true;
+    private double lowestSinceArmed = Double.MAX_VALUE;
+
+    // 记录一次采样，应当预连接时返回 true
+    public boolean offer(long timeMs, int rssi) {
+        if (filter.isInitialized() && timeMs - filter.getLastTime() > RssiFilter.RESET_GAP) {
+            // 信号丢失后重新出现，视为重新从远处走近
+            rearm();
+        }
+        double smoothed = filter.update(timeMs, rssi);
+        double threshold = getThreshold();
+
+        if (!armed) {
+            if (smoothed < threshold - HYSTERESIS) {
+                rearm();
+                lowestSinceArmed = smoothed;
+            }
+            return false;
+        }
+        lowestSinceArmed = Math.min(lowestSinceArmed, smoothed);
+        if (smoothed >= threshold && smoothed - lowestSinceArmed >= MIN_RISE) {
+            armed = false;
+            return true;
+        }
+        return false;
+    }
+
+    private void rearm() {
+        armed = true;
+        lowestSinceArmed = Double.MAX_VALUE;
+    }
+
+    // 开锁成功：以当前平滑值更新门口的信号强度
+    public boolean onUnlocked(long timeMs) {
+        if (!filter.isInitialized() || timeMs - filter.getLastTime() > LEARN_MAX_AGE) {
+            return false;
+        }
+        doorRssi += LEARN_RATE * (filter.get() - doorRssi);
+        return true;
+    }
+
+    public double getThreshold() {
+        return Math.max(MIN_THRESHOLD, Math.min(MAX_THRESHOLD, doorRssi - APPROACH_MARGIN));
+    }
+
+    public double getDoorRssi() {
+        return doorRssi;
+    }
+
+    public void setDoorRssi(double doorRssi) {
+        this.doorRssi = doorRssi;
+    }
+
+    public double getSmoothedRssi() {
+        return filter.get();
+    }
+
+    public boolean isArmed() {
+        return armed;
+    }
+
+    public void reset() {
+        filter.reset();
+        rearm();
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.doorlock;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * 接近检测：用低占空比扫描持续接收门锁广播，RSSI 交给 {@link ProximityDetector}，判断走近时通知预连接。
+ * 只跟踪登记过的门锁地址或名称与配置一致的设备，单靠服务UUID不算；同一时间只跟踪一个地址，
+ * 登记过的地址优先，跟踪的设备信号丢失后可以换成其他符合条件的设备。
+ * 扫描失败时按 {@link RetryPolicy} 退避后重新开始，连续失败超过重试次数或设备不支持时停止并通知监听器。
+ * 不依赖 Android API，扫描通过 {@link LockTransport} 进行，
+ * 所有方法都必须在 {@link LockScheduler} 的线程上调用。
+ */
+public class ProximityMonitor implements LockTransport.Callback {
+    // ScanCallback 的错误码
+    static final int SCAN_FAILED_INTERNAL_ERROR = 3;
+    static final int SCAN_FAILED_FEATURE_UNSUPPORTED = 4;
+    static final int SCAN_FAILED_SCANNING_TOO_FREQUENTLY = 6;
+    // 系统限制 30 秒内最多开始 5 次扫描，太频繁时至少等这么久再重试
+    static final long SCAN_THROTTLE_WINDOW = 30000;
+
+    public interface Listener {
+        void onApproach(String address, double smoothedRssi);
+
+        // 扫描失败：retryDelay 毫秒后重新开始扫描；为 -1 时不再重试，接近检测已停止
+        void onScanFailed(int errorCode, long retryDelay);
+    }
+
+    private final LockTransport transport;
+    private final ProximityDetector detector;
+    private final LockScheduler scheduler;
+    private final Listener listener;
+    private final RetryPolicy retryPolicy;
+    private final Runnable restartRunnable = this::restartScan;
+    private LockScanMatcher matcher;
+    private final Set<String> knownAddresses = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private String trackedAddress;
+    private boolean trackedKnown = false;
+    private long trackedLastSeen = 0;
+    // 检测开启期间为 true，包括扫描失败后等待重试的时候
+    private boolean running = false;
+    // 连续失败的次数，收到扫描结果后清零
+    private int scanFailures = 0;
+
+    public ProximityMonitor(LockTransport transport, LockScheduler scheduler, ProximityDetector detector,
+                            Listener listener) {
+        this(transport, scheduler, detector, listener, new RetryPolicy(new Random()));
+    }
+
+    ProximityMonitor(LockTransport transport, LockScheduler scheduler, ProximityDetector detector,
+                     Listener listener, RetryPolicy retryPolicy) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.detector = detector;
+        this.listener = listener;
+        this.retryPolicy = retryPolicy;
+        transport.setCallback(this);
+    }
+
+    // knownAddress 为首选门锁，registryAddresses 为其他登记过的门锁地址，可以为空
+    public boolean start(String deviceName, UUID serviceUuid, String knownAddress,
+                         Collection<String> registryAddresses) {
+        stop();
+        matcher = new LockScanMatcher(deviceName, serviceUuid, knownAddress);
+        knownAddresses.clear();
+        if (registryAddresses != null) {
+            knownAddresses.addAll(registryAddresses);
+        }
+        if (knownAddress != null) {
+            knownAddresses.add(knownAddress);
+        }
+        trackedAddress = knownAddress;
+        trackedKnown = knownAddress != null;
+        trackedLastSeen = scheduler.now();
+        scanFailures = 0;
+        running = transport.startScan(matcher);
+        return running;
+    }
+
+    public void stop() {
+        scheduler.cancel(restartRunnable);
+        if (running) {
+            transport.stopScan();
+            running = false;
+        }
+        detector.reset();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // 开锁成功时学习门口的信号强度
+    public boolean onUnlocked() {
+        return detector.onUnlocked(scheduler.now());
+    }
+
+    public String getTrackedAddress() {
+        return trackedAddress;
+    }
+
+    public ProximityDetector getDetector() {
+        return detector;
+    }
+
+    @Override
+    public void onScanResult(String address, String name, List<UUID> serviceUuids, int rssi, int addressType) {
+        if (!running) {
+            return;
+        }
+        scanFailures = 0;
+        boolean known = knownAddresses.contains(address);
+        if (!known && (matcher.getDeviceName() == null || !matcher.matches(address, name, serviceUuids))) {
+            return;
+        }
+        long now = scheduler.now();
+        if (trackedAddress == null || !trackedAddress.equalsIgnoreCase(address)) {
+            // 登记过的门锁替换只按名称匹配的设备；跟踪的设备信号丢失后换成新出现的设备
+            boolean lost = now - trackedLastSeen > RssiFilter.RESET_GAP;
+            if (trackedAddress != null && !(known && !trackedKnown) && !lost) {
+                return;
+            }
+            trackedAddress = address;
+            trackedKnown = known;
+            detector.reset();
+        }
+        trackedLastSeen = now;
+        if (detector.offer(now, rssi)) {
+            listener.onApproach(address, detector.getSmoothedRssi());
+        }
+    }
+
+    @Override
+    public void onScanFailed(int errorCode) {
+        if (!running) {
+            return;
+        }
+        transport.stopScan();
+        scanFailures++;
+        if (errorCode == SCAN_FAILED_FEATURE_UNSUPPORTED || scanFailures > RetryPolicy.MAX_RETRIES) {
+            running = false;
+            detector.reset();
+            listener.onScanFailed(errorCode, -1);
+            return;
+        }
+        long delay = retryPolicy.backoff(scanFailures - 1);
+        if (errorCode == SCAN_FAILED_SCANNING_TOO_FREQUENTLY) {
+            delay = Math.max(delay, SCAN_THROTTLE_WINDOW);
+        }
+        scheduler.cancel(restartRunnable);
+        scheduler.postDelayed(restartRunnable, delay);
+        listener.onScanFailed(errorCode, delay);
+    }
+
+    private void restartScan() {
+        if (running && !transport.startScan(matcher)) {
+            // 权限被收回或蓝牙不可用，按一次失败处理
+            onScanFailed(SCAN_FAILED_INTERNAL_ERROR);
+        }
+    }
+
+    @Override
+    public void onConnectionStateChanged(int status, boolean connected) {
+    }
+
+    @Override
+    public void onServicesDiscovered(int status) {
+    }
+
+    @Override
+    public void onCharacteristicWritten(UUID characteristicUuid, int status) {
+    }
+
+    @Override
+    public void onNotificationsEnabled(UUID characteristicUuid, int status) {
+    }
+
+    @Override
+    public void onCharacteristicChanged(UUID characteristicUuid, byte[] value) {
+    }
+
+    @Override
+    public void onRssiRead(int rssi, int status) {
+    }
+
+    @Override
+    public void onPhyRead(int txPhy, int rxPhy, int status) {
+    }
+
+    @Override
+    public void onMtuChanged(int mtu, int status) {
+    }
+
+    @Override
+    public void onConnectionUpdated(int interval, int latency, int timeout, int status) {
+    }
+}
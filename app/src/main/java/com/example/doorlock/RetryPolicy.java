@@ -0,0 +1,65 @@
+package com.example.doorlock;
+
+import java.util.Random;
+
+/**
+ * 连接失败后的重试策略。按 GATT 状态码分类，只重试临时性错误（ESP32 上常见的 133、连接建立失败、超时等），
+ * 鉴权失败这类重试也不会成功的错误直接放弃。重试间隔按指数退避，一半固定一半随机，
+ * 避免门锁刚出错时立即重连再次失败，也避免多把门锁同时重连；开锁请求发出后超过 {@link #RETRY_BUDGET}
+ * 不再重试，用户等待的时间有上限。不依赖 Android API，不是线程安全的。
+ */
+public class RetryPolicy {
+    static final int MAX_RETRIES = 3;
+    static final long BASE_DELAY = 100;
+    static final long MAX_DELAY = 1600;
+    static final long RETRY_BUDGET = 8000;
+
+    // 连接断开和 GATT 操作的状态码（Android BluetoothGatt / HCI 错误码）
+    static final int HCI_CONNECTION_TIMEOUT = 0x08;
+    static final int HCI_REMOTE_USER_TERMINATED = 0x13;
+    static final int HCI_LOCAL_HOST_TERMINATED = 0x16;
+    static final int HCI_CONNECTION_FAILED = 0x3E;
+    static final int GATT_INSUFFICIENT_AUTHENTICATION = 0x05;
+    static final int GATT_INSUFFICIENT_ENCRYPTION = 0x0F;
+    static final int GATT_INTERNAL_ERROR = 0x81;
+
+    public enum Failure {
+        // 重建连接后通常能成功
+        TRANSIENT,
+        // 重试也不会成功
+        FATAL
+    }
+
+    private final Random random;
+
+    public RetryPolicy(Random random) {
+        this.random = random;
+    }
+
+    public static Failure classify(int status) {
+        switch (status) {
+            case GATT_INSUFFICIENT_AUTHENTICATION:
+            case GATT_INSUFFICIENT_ENCRYPTION:
+            case LockTransport.GATT_FAILURE:
+                return Failure.FATAL;
+            default:
+                // 133、超时、连接建立失败、门锁断开等；没有列出的错误码也按临时错误重试
+                return Failure.TRANSIENT;
+        }
+    }
+
+    // 第 retries 次重试之前的等待时间：[d/2, d]，d = BASE_DELAY * 2^retries，最长 MAX_DELAY
+    public long backoff(int retries) {
+        long delay = Math.min(MAX_DELAY, BASE_DELAY << Math.min(retries, 16));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2 + 1));
+    }
+
+    // 已经重试 retries 次、开锁请求已等待 elapsed 毫秒时，下一次重试前的等待时间；不再重试时返回 -1
+    public long nextDelay(int status, int retries, long elapsed) {
+        if (classify(status) == Failure.FATAL || retries >= MAX_RETRIES) {
+            return -1;
+        }
+        long delay = backoff(retries);
+        return elapsed + delay < RETRY_BUDGET ? delay : -1;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.doorlock;
+
+/**
+ * 一维卡尔曼滤波平滑 RSSI。广播间隔不固定，过程噪声按两次采样的时间间隔累加；
+ * 间隔超过 {@link #RESET_GAP} 视为重新出现，直接以新的采样值开始。
+ */
+public class RssiFilter {
+    static final long RESET_GAP = 10000;
+    // 过程噪声（dB²/秒）：步行时信号每秒变化约 1～2 dB
+    private static final double PROCESS_NOISE = 2.0;
+    // 测量噪声（dB²）：单次广播的 RSSI 抖动约 ±4 dB
+    private static final double MEASUREMENT_NOISE = 16.0;
+
+    private double estimate;
+    private double variance;
+    private long lastTime;
+    private boolean initialized = false;
+
+    public double update(long timeMs, int rssi) {
+        if (!initialized || timeMs - lastTime > RESET_GAP) {
+            estimate = rssi;
+            variance = MEASUREMENT_NOISE;
+            initialized = true;
+        } else {
+            variance += PROCESS_NOISE * (timeMs - lastTime) / 1000.0;
+            double gain = variance / (variance + MEASUREMENT_NOISE);
+            estimate += gain * (rssi - estimate);
+            variance *= 1 - gain;
+        }
+        lastTime = timeMs;
+        return estimate;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public double get() {
+        return estimate;
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public void reset() {
+        initialized = false;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.doorlock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 一批扫描结果（蓝牙控制器按上报间隔缓存的广播）的处理：用 {@link LockScanMatcher} 过滤无关设备，
+ * 按地址去重并对同一设备的 RSSI 取平均，再排序：已知地址优先，其次平均信号更强、广播次数更多的设备。
+ * 在后台线程上处理整批结果，只把排在第一的设备交给连接流程。不依赖 Android API，不是线程安全的。
+ */
+public class ScanBatch {
+
+    // 一个设备在这批结果里的汇总
+    public static final class Hit {
+        private final String address;
+        private final boolean known;
+        private String name;
+        private List<UUID> serviceUuids;
+        private int addressType;
+        private long rssiSum;
+        private int count;
+
+        Hit(String address, boolean known) {
+            this.address = address;
+            this.known = known;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<UUID> getServiceUuids() {
+            return serviceUuids;
+        }
+
+        public int getAddressType() {
+            return addressType;
+        }
+
+        // 这批结果里的平均 RSSI
+        public int getRssi() {
+            return (int) Math.round((double) rssiSum / count);
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final LockScanMatcher matcher;
+    private final Map<String, Hit> hits = new LinkedHashMap<>();
+
+    public ScanBatch(LockScanMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    // 不匹配的结果直接丢弃
+    public void add(String address, String name, List<UUID> serviceUuids, int rssi, int addressType) {
+        if (!matcher.matches(address, name, serviceUuids)) {
+            return;
+        }
+        String key = address.toUpperCase();
+        Hit hit = hits.get(key);
+        if (hit == null) {
+            hit = new Hit(address, matcher.isKnownAddress(address));
+            hits.put(key, hit);
+        }
+        // 名称和地址类型不一定出现在每次广播里
+        if (name != null) {
+            hit.name = name;
+        }
+        if (serviceUuids != null && !serviceUuids.isEmpty()) {
+            hit.serviceUuids = serviceUuids;
+        }
+        if (addressType != LockDeviceRecord.ADDRESS_TYPE_UNKNOWN || hit.count == 0) {
+            hit.addressType = addressType;
+        }
+        hit.rssiSum += rssi;
+        hit.count++;
+    }
+
+    public boolean isEmpty() {
+        return hits.isEmpty();
+    }
+
+    // 排在第一的设备，没有匹配的结果时返回 null
+    public Hit best() {
+        Hit best = null;
+        for (Hit hit : hits.values()) {
+            if (best == null || compare(hit, best) < 0) {
+                best = hit;
+            }
+        }
+        return best;
+    }
+
+    public List<Hit> ranked() {
+        List<Hit> ranked = new ArrayList<>(hits.values());
+        Collections.sort(ranked, ScanBatch::compare);
+        return ranked;
+    }
+
+    private static int compare(Hit a, Hit b) {
+        if (a.known != b.known) {
+            return a.known ? -1 : 1;
+        }
+        if (a.getRssi() != b.getRssi()) {
+            return Integer.compare(b.getRssi(), a.getRssi());
+        }
+        return Integer.compare(b.count, a.count);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.doorlock;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Locale;
+
+/**
+ * 主界面的扫描设备列表。每次提交 {@link ScanResultTable} 的快照，差异在后台线程计算，只刷新变化的行。
+ */
+public class ScanResultAdapter extends ListAdapter<ScanResultTable.Device, ScanResultAdapter.DeviceHolder> {
+    private static final DiffUtil.ItemCallback<ScanResultTable.Device> DIFF =
+            new DiffUtil.ItemCallback<ScanResultTable.Device>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull ScanResultTable.Device oldItem,
+                                               @NonNull ScanResultTable.Device newItem) {
+                    return oldItem.getAddress().equals(newItem.getAddress());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull ScanResultTable.Device oldItem,
+                                                  @NonNull ScanResultTable.Device newItem) {
+                    return oldItem == newItem || oldItem.sameContent(newItem);
+                }
+            };
+
+    public ScanResultAdapter() {
+        super(DIFF);
+    }
+
+    @NonNull
+    @Override
+    public DeviceHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_2, parent, false);
+        return new DeviceHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull DeviceHolder holder, int position) {
+        ScanResultTable.Device device = getItem(position);
+        holder.title.setText(device.getName() != null ? device.getName() : device.getAddress());
+        holder.detail.setText(String.format(Locale.ROOT, "%s  %d dBm  ×%d",
+                device.getAddress(), device.getRssi(), device.getSeenCount()));
+    }
+
+    static class DeviceHolder extends RecyclerView.ViewHolder {
+        final TextView title;
+        final TextView detail;
+
+        DeviceHolder(View itemView) {
+            super(itemView);
+            title = itemView.findViewById(android.R.id.text1);
+            detail = itemView.findViewById(android.R.id.text2);
+        }
+    }
+}
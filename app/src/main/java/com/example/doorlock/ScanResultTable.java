@@ -0,0 +1,168 @@
+package com.example.doorlock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 扫描到的设备表：按地址去重，记录最近的信号强度和出现时间，最多保留 {@link #MAX_DEVICES} 个设备，
+ * 超出时淘汰最久没有出现的设备。扫描回调只更新表，一个 {@link #FRAME_INTERVAL} 内的更新合并为一次快照
+ * 在调度器线程上交给 {@link Listener}，没有变化时不产生快照。快照按首次出现的顺序排列，列表不会随信号跳动。
+ * 不依赖 Android API，可以在任意线程调用。
+ */
+public class ScanResultTable {
+    static final int MAX_DEVICES = 64;
+    // 每秒最多刷新 10 次列表
+    static final long FRAME_INTERVAL = 100;
+
+    public interface Listener {
+        // 在调度器线程上回调，快照不会再被修改
+        void onSnapshot(List<Device> devices);
+    }
+
+    // 一个设备在某次快照时的状态，不可变
+    public static final class Device {
+        private final String address;
+        private final String name;
+        private final int rssi;
+        private final long lastSeen;
+        private final int seenCount;
+
+        Device(String address, String name, int rssi, long lastSeen, int seenCount) {
+            this.address = address;
+            this.name = name;
+            this.rssi = rssi;
+            this.lastSeen = lastSeen;
+            this.seenCount = seenCount;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        // 广播里没有名称时为 null
+        public String getName() {
+            return name;
+        }
+
+        public int getRssi() {
+            return rssi;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public int getSeenCount() {
+            return seenCount;
+        }
+
+        // 界面上显示的内容是否相同，出现时间不显示、不参与比较
+        public boolean sameContent(Device other) {
+            return rssi == other.rssi && seenCount == other.seenCount
+                    && (name == null ? other.name == null : name.equals(other.name));
+        }
+    }
+
+    private static final class Slot {
+        final String address;
+        final long order;
+        String name;
+        int rssi;
+        long lastSeen;
+        int seenCount;
+        // 上次快照里的对象，没有变化时直接复用
+        Device published;
+
+        Slot(String address, long order) {
+            this.address = address;
+            this.order = order;
+        }
+    }
+
+    private final LockScheduler scheduler;
+    private final Listener listener;
+    private final int maxDevices;
+    // 访问顺序排列，最久没有出现的在最前面
+    private final LinkedHashMap<String, Slot> entries;
+    private long nextOrder = 0;
+    private boolean dirty = false;
+    private boolean flushScheduled = false;
+    private final Runnable flushRunnable = this::flush;
+
+    public ScanResultTable(LockScheduler scheduler, Listener listener) {
+        this(scheduler, listener, MAX_DEVICES);
+    }
+
+    ScanResultTable(LockScheduler scheduler, Listener listener, int maxDevices) {
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.maxDevices = maxDevices;
+        entries = new LinkedHashMap<String, Slot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+                return size() > ScanResultTable.this.maxDevices;
+            }
+        };
+    }
+
+    public synchronized void offer(String address, String name, int rssi) {
+        String key = address.toUpperCase();
+        Slot entry = entries.get(key);
+        if (entry == null) {
+            entry = new Slot(key, nextOrder++);
+            entries.put(key, entry);
+        }
+        if (name != null) {
+            entry.name = name;
+        }
+        entry.rssi = rssi;
+        entry.lastSeen = scheduler.now();
+        entry.seenCount++;
+        markDirty();
+    }
+
+    // 开始新的扫描时清空
+    public synchronized void clear() {
+        entries.clear();
+        markDirty();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void markDirty() {
+        dirty = true;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.postDelayed(flushRunnable, FRAME_INTERVAL);
+        }
+    }
+
+    private void flush() {
+        List<Device> snapshot;
+        synchronized (this) {
+            flushScheduled = false;
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            List<Slot> ordered = new ArrayList<>(entries.values());
+            Collections.sort(ordered, (a, b) -> Long.compare(a.order, b.order));
+            snapshot = new ArrayList<>(ordered.size());
+            for (Slot entry : ordered) {
+                Device device = entry.published;
+                if (device == null || device.seenCount != entry.seenCount) {
+                    device = new Device(entry.address, entry.name, entry.rssi, entry.lastSeen, entry.seenCount);
+                    entry.published = device;
+                }
+                snapshot.add(device);
+            }
+        }
+        // 回调不持有锁，扫描线程不会等待界面
+        listener.onSnapshot(Collections.unmodifiableList(snapshot));
+    }
+}
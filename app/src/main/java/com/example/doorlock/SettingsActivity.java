@@ -1,33 +1,65 @@
 package com.example.doorlock;
 
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.Spinner;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.google.android.material.switchmaterial.SwitchMaterial;
 import com.google.android.material.textfield.TextInputEditText;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 public class SettingsActivity extends AppCompatActivity {
     private static final String TAG = "SettingsActivity";
-    private static final String PREFS_NAME = "BluetoothConfig";
 
     // 默认值
     private static final String DEFAULT_DEVICE_NAME = "ESP32Lock";
-    private static final String DEFAULT_SERVICE_UUID = "6E400001-B5A3-F393-E0A9-E50E24DCCA9E";
-    private static final String DEFAULT_RX_CHARACTERISTIC_UUID = "6E400002-B5A3-F393-E0A9-E50E24DCCA9E";
+    private static final String DEFAULT_SERVICE_UUID = NordicUartService.SERVICE;
+    private static final String DEFAULT_RX_CHARACTERISTIC_UUID = NordicUartService.RX_CHARACTERISTIC;
     private static final String PRESS_TIME = "450";
     private static final String RELEASE_TIME = "300";
+    private static final boolean DEFAULT_KEEP_WARM = false;
+    private static final String DEFAULT_LINGER_TIME = "30000";
+    private static final boolean DEFAULT_BINARY_COMMAND = false;
 
     private TextInputEditText etDeviceName;
     private TextInputEditText etServiceUuid;
     private TextInputEditText etRxCharacteristicUuid;
     private TextInputEditText etPressTime;
     private TextInputEditText etReleaseTime;
+    private SwitchMaterial swKeepWarm;
+    private TextInputEditText etLingerTime;
+    private SwitchMaterial swBinaryCommand;
+    private Spinner spLockProfile;
+    private ArrayAdapter<String> profileAdapter;
+    private final List<String> profileLabels = new ArrayList<>();
+    private List<LockConfig> profiles = new ArrayList<>();
+    // 正在编辑的门锁；新增的门锁保存前不在列表中
+    private String selectedId = LockConfig.DEFAULT_ID;
+    private BluetoothConfigManager configManager;
+    private boolean settingsShown = false;
+
+    // 配置在后台线程加载，加载完成后在主线程填入表单；之后只刷新门锁列表，不覆盖正在编辑的内容
+    private final BluetoothConfigManager.ConfigListener configListener = new BluetoothConfigManager.ConfigListener() {
+        @Override
+        public void onConfigChanged(LockConfig config) {
+            runOnUiThread(SettingsActivity.this::refreshProfiles);
+        }
+
+        @Override
+        public void onProfileRemoved(String id) {
+            runOnUiThread(SettingsActivity.this::refreshProfiles);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -39,31 +71,108 @@ public class SettingsActivity extends AppCompatActivity {
         etRxCharacteristicUuid = findViewById(R.id.et_rx_characteristic_uuid);
         etPressTime = findViewById(R.id.et_press_time);
         etReleaseTime = findViewById(R.id.et_release_time);
+        swKeepWarm = findViewById(R.id.sw_keep_warm);
+        etLingerTime = findViewById(R.id.et_linger_time);
+        swBinaryCommand = findViewById(R.id.sw_binary_command);
+
+        spLockProfile = findViewById(R.id.sp_lock_profile);
 
         Button btnSave = findViewById(R.id.btn_save);
         Button btnReset = findViewById(R.id.btn_reset);
+        Button btnAddLock = findViewById(R.id.btn_add_lock);
+        Button btnRemoveLock = findViewById(R.id.btn_remove_lock);
+
+        profileAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, profileLabels);
+        profileAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spLockProfile.setAdapter(profileAdapter);
+        spLockProfile.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                LockConfig config = profiles.get(position);
+                if (!config.getId().equals(selectedId)) {
+                    selectedId = config.getId();
+                    loadSettings(config);
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
 
         // 加载已保存的配置
-        loadSettings();
+        configManager = BluetoothConfigManager.getInstance(this);
+        configManager.addListener(configListener);
 
         btnSave.setOnClickListener(v -> saveSettings());
         btnReset.setOnClickListener(v -> resetToDefaults());
+        btnAddLock.setOnClickListener(v -> addLock());
+        btnRemoveLock.setOnClickListener(v -> removeLock());
+    }
+
+    private void refreshProfiles() {
+        profiles = configManager.getProfiles();
+        profileLabels.clear();
+        int selection = 0;
+        for (int i = 0; i < profiles.size(); i++) {
+            LockConfig config = profiles.get(i);
+            profileLabels.add(config.isDefault() ? config.getDeviceName() + "（默认）" : config.getDeviceName());
+            if (config.getId().equals(selectedId)) {
+                selection = i;
+            }
+        }
+        profileAdapter.notifyDataSetChanged();
+        spLockProfile.setSelection(selection);
+
+        if (!settingsShown) {
+            settingsShown = true;
+            loadSettings(profiles.get(selection));
+        }
+    }
+
+    // 新门锁使用默认参数，填写设备名称后保存才会加入列表
+    private void addLock() {
+        selectedId = BluetoothConfigManager.newProfileId();
+        loadSettings(LockConfig.DEFAULT);
+        etDeviceName.setText("");
+        Toast.makeText(this, "填写新门锁的设备名称后保存", Toast.LENGTH_SHORT).show();
     }
 
-    private void loadSettings() {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+    private void removeLock() {
+        if (LockConfig.DEFAULT_ID.equals(selectedId)) {
+            Toast.makeText(this, "默认门锁不能删除", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        configManager.removeProfile(selectedId);
+        selectedId = LockConfig.DEFAULT_ID;
+        loadSettings(configManager.getConfig());
+        Toast.makeText(this, "门锁已删除", Toast.LENGTH_SHORT).show();
+    }
 
-        String deviceName = prefs.getString("DEVICE_NAME", DEFAULT_DEVICE_NAME);
-        String serviceUuid = prefs.getString("SERVICE_UUID", DEFAULT_SERVICE_UUID);
-        String rxCharacteristicUuid = prefs.getString("RX_CHARACTERISTIC_UUID", DEFAULT_RX_CHARACTERISTIC_UUID);
-        String pressTime = prefs.getString("PRESS_TIME", PRESS_TIME);
-        String releaseTime = prefs.getString("RELEASE_TIME", RELEASE_TIME);
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        configManager.removeListener(configListener);
+    }
+
+    private void loadSettings(LockConfig config) {
+        String deviceName = config.getDeviceName();
+        String serviceUuid = config.getServiceUuid().toString();
+        String rxCharacteristicUuid = config.getRxCharacteristicUuid().toString();
+        String pressTime = config.getPressTime();
+        String releaseTime = config.getReleaseTime();
+        boolean keepWarm = config.isKeepWarm();
+        String lingerTime = String.valueOf(config.getLingerTime());
+        String commandFormat = config.getCommandFormat();
 
         etDeviceName.setText(deviceName);
         etServiceUuid.setText(serviceUuid);
         etRxCharacteristicUuid.setText(rxCharacteristicUuid);
         etPressTime.setText(pressTime);
         etReleaseTime.setText(releaseTime);
+        swKeepWarm.setChecked(keepWarm);
+        etLingerTime.setText(lingerTime);
+        swBinaryCommand.setChecked(UnlockCommandCodec.FORMAT_BINARY.equals(commandFormat));
 
         Log.d(TAG, "配置已加载: " + deviceName + ", " + serviceUuid + ", " + rxCharacteristicUuid+
                 ", " + etPressTime+ ", " + etReleaseTime);
@@ -75,23 +184,38 @@ public class SettingsActivity extends AppCompatActivity {
         String rxCharacteristicUuid = Objects.requireNonNull(etRxCharacteristicUuid.getText()).toString().trim();
         String pressTime = Objects.requireNonNull(etPressTime.getText()).toString().trim();
         String releaseTime = Objects.requireNonNull(etReleaseTime.getText()).toString().trim();
+        boolean keepWarm = swKeepWarm.isChecked();
+        String lingerTime = Objects.requireNonNull(etLingerTime.getText()).toString().trim();
+        String commandFormat = swBinaryCommand.isChecked()
+                ? UnlockCommandCodec.FORMAT_BINARY : UnlockCommandCodec.FORMAT_JSON;
+
+        if (deviceName.isEmpty()) {
+            Toast.makeText(this, "请填写设备名称", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
         try {
             Integer.parseInt(pressTime);
             Integer.parseInt(releaseTime);
+            Long.parseLong(lingerTime);
         } catch (Exception e){
             Toast.makeText(this, "时间格式不正确", Toast.LENGTH_SHORT).show();
             return;
         }
 
+        if (swBinaryCommand.isChecked() && (isOutOfRange(pressTime) || isOutOfRange(releaseTime))) {
+            Toast.makeText(this, "二进制命令的时间范围为0-" + UnlockCommandCodec.MAX_DURATION, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         // 验证UUID格式
         if (isValidUuid(serviceUuid) || isValidUuid(rxCharacteristicUuid)) {
             Toast.makeText(this, "UUID格式不正确", Toast.LENGTH_SHORT).show();
             return;
         }
         try {
-            BluetoothConfigManager configManager = BluetoothConfigManager.getInstance(this);
-            configManager.updateConfig(this, deviceName, serviceUuid, rxCharacteristicUuid, pressTime, releaseTime);
+            configManager.updateConfig(selectedId, deviceName, serviceUuid, rxCharacteristicUuid, pressTime, releaseTime,
+                    keepWarm, lingerTime, commandFormat);
             Toast.makeText(this, "配置已保存", Toast.LENGTH_SHORT).show();
             Log.d(TAG, "配置已保存: " + deviceName + ", " + serviceUuid + ", " + rxCharacteristicUuid);
         } catch (Exception e) {
@@ -105,11 +229,19 @@ public class SettingsActivity extends AppCompatActivity {
         etRxCharacteristicUuid.setText(DEFAULT_RX_CHARACTERISTIC_UUID);
         etRxCharacteristicUuid.setText(PRESS_TIME);
         etRxCharacteristicUuid.setText(RELEASE_TIME);
+        swKeepWarm.setChecked(DEFAULT_KEEP_WARM);
+        etLingerTime.setText(DEFAULT_LINGER_TIME);
+        swBinaryCommand.setChecked(DEFAULT_BINARY_COMMAND);
 
         Toast.makeText(this, "已恢复默认值", Toast.LENGTH_SHORT).show();
         Log.d(TAG, "已恢复默认值");
     }
 
+    private boolean isOutOfRange(String time) {
+        int value = Integer.parseInt(time);
+        return value < 0 || value > UnlockCommandCodec.MAX_DURATION;
+    }
+
     private boolean isValidUuid(String uuid) {
         if (uuid == null || uuid.isEmpty()) {
             return true;
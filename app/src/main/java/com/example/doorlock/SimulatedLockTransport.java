@@ -0,0 +1,615 @@
+package com.example.doorlock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 进程内模拟的 ESP32 门锁，实现 Nordic UART Service，用于在 JVM 上测试和评测开锁流程。
+ * 各步骤的延迟、抖动和失败率均可配置，随机数使用固定种子，结果可复现。
+ * 每个连接从默认 MTU 开始：超过 MTU - 3 的有响应写入按 ATT 长写入（多次准备写入 + 执行写入）计时，
+ * 无响应写入被截断；支持 TX 通知的新固件按 {@link CommandFramer} 重组分片。
+ */
+public class SimulatedLockTransport implements LockTransport {
+    public static final String DEFAULT_ADDRESS = "24:0A:C4:00:00:01";
+    public static final String DEFAULT_NAME = "ESP32Lock";
+    // JSON 命令的动作时间（下压 + 回位）
+    static final long DEFAULT_ACTUATION_TIME = 750;
+    static final int DEFAULT_MTU = 23;
+    // 各连接优先级对应的连接间隔（单位 1.25ms），与 Android 的取值相近；建立连接时为均衡
+    static final int DEFAULT_INTERVAL = 24;
+    static final int HIGH_PRIORITY_INTERVAL = 6;
+    static final int LOW_POWER_INTERVAL = 80;
+    // ATT 写请求的头部长度；准备写入请求还要多 2 字节偏移
+    private static final int WRITE_HEADER = 3;
+    private static final int PREPARE_WRITE_HEADER = 5;
+
+    private final LockScheduler scheduler;
+    private final Random random;
+    private Callback callback;
+
+    // 模拟门锁的属性
+    private String address = DEFAULT_ADDRESS;
+    private String name = DEFAULT_NAME;
+    private UUID serviceUuid = NordicUartService.SERVICE_UUID;
+    private UUID rxCharacteristicUuid = NordicUartService.RX_CHARACTERISTIC_UUID;
+    private boolean advertising = true;
+    private boolean advertiseServiceUuid = false;
+    private int rssi = -60;
+    private int phy = PHY_LE_1M;
+    private int maxMtu = 247;
+    private boolean phy2mSupported = true;
+    private boolean writeWithoutResponseSupported = false;
+    // TX 特征（标准 NUS），默认关闭
+    private boolean notifySupported = false;
+    // 功能特征：新固件重组分片并通过 TX 发送动作事件，默认关闭，模拟旧固件
+    private boolean featureSupported = false;
+    private long actuationDelay = 20;
+    private long cooldown = 0;
+
+    // 延迟与故障注入
+    private long advertisingInterval = 100;
+    private long connectLatency = 400;
+    private long discoveryLatency = 600;
+    private long writeLatency = 30;
+    // 无响应写入只需送达链路层，不等待门锁的 ATT 确认
+    private long writeWithoutResponseLatency = 8;
+    private long jitter = 0;
+    private double connectFailureRate = 0;
+    private double discoveryFailureRate = 0;
+    private double writeFailureRate = 0;
+    private double linkLossRate = 0;
+
+    // 连接状态
+    private boolean scanning = false;
+    private boolean connecting = false;
+    private boolean connected = false;
+    private boolean discovered = false;
+    // 按缓存恢复的特征：模拟的是按句柄直接访问，句柄是否仍然有效要等写入时由门锁判断
+    private boolean restored = false;
+    private UUID restoredServiceUuid;
+    private UUID restoredCharacteristicUuid;
+    // 门锁的属性表版本，固件更新后变化；clientLayout 是客户端上次发现服务时看到的版本
+    private int attributeLayout = 0;
+    private int clientLayout = -1;
+    // 与 Android 一样，同一时间只允许一个未完成的 GATT 操作，期间发起的新操作直接失败
+    private boolean operationPending = false;
+    private boolean notifying = false;
+    private int mtu = DEFAULT_MTU;
+    private int connectionInterval = DEFAULT_INTERVAL;
+    private final CommandFramer.Reassembler reassembler = new CommandFramer.Reassembler();
+    // 门锁动作和冷却结束的时间，与连接无关
+    private long busyUntil = 0;
+    private int connectionId = 0;
+    private Runnable advertisingTask;
+
+    // 统计
+    private final List<byte[]> receivedWrites = new ArrayList<>();
+    private int connectAttempts = 0;
+    private int discoveryCount = 0;
+    private int rejectedOperations = 0;
+    private int actuationCount = 0;
+    // 需要门锁回复的 ATT 请求数，长写入按准备写入和执行写入分别计数
+    private int attRequests = 0;
+    private int truncatedWrites = 0;
+
+    public SimulatedLockTransport(LockScheduler scheduler, long seed) {
+        this.scheduler = scheduler;
+        this.random = new Random(seed);
+    }
+
+    public SimulatedLockTransport setIdentity(String address, String name) {
+        this.address = address;
+        this.name = name;
+        return this;
+    }
+
+    public SimulatedLockTransport setUuids(UUID serviceUuid, UUID rxCharacteristicUuid) {
+        this.serviceUuid = serviceUuid;
+        this.rxCharacteristicUuid = rxCharacteristicUuid;
+        return this;
+    }
+
+    public SimulatedLockTransport setAdvertising(boolean advertising, boolean includeServiceUuid) {
+        this.advertising = advertising;
+        this.advertiseServiceUuid = includeServiceUuid;
+        return this;
+    }
+
+    public SimulatedLockTransport setRssi(int rssi) {
+        this.rssi = rssi;
+        return this;
+    }
+
+    public SimulatedLockTransport setPhy(int phy) {
+        this.phy = phy;
+        return this;
+    }
+
+    public SimulatedLockTransport setPhy2mSupported(boolean supported) {
+        this.phy2mSupported = supported;
+        return this;
+    }
+
+    public SimulatedLockTransport setMaxMtu(int maxMtu) {
+        this.maxMtu = maxMtu;
+        return this;
+    }
+
+    public SimulatedLockTransport setWriteWithoutResponse(boolean supported, long latency) {
+        this.writeWithoutResponseSupported = supported;
+        this.writeWithoutResponseLatency = latency;
+        return this;
+    }
+
+    // 提供功能特征的新固件：按 CommandFramer 重组分片，订阅 TX 后发送动作事件
+    public SimulatedLockTransport setFeatureCharacteristic(boolean supported) {
+        this.featureSupported = supported;
+        return this;
+    }
+
+    // actuationDelay：收到命令到电机开始动作；cooldown：动作完成后不接受新命令的时间
+    public SimulatedLockTransport setNotifications(boolean supported, long actuationDelay, long cooldown) {
+        this.notifySupported = supported;
+        this.actuationDelay = actuationDelay;
+        this.cooldown = cooldown;
+        return this;
+    }
+
+    public SimulatedLockTransport setLatency(long advertisingInterval, long connectLatency, long discoveryLatency,
+                                             long writeLatency, long jitter) {
+        this.advertisingInterval = advertisingInterval;
+        this.connectLatency = connectLatency;
+        this.discoveryLatency = discoveryLatency;
+        this.writeLatency = writeLatency;
+        this.jitter = jitter;
+        return this;
+    }
+
+    public SimulatedLockTransport setFailureRates(double connect, double discovery, double write, double linkLoss) {
+        this.connectFailureRate = connect;
+        this.discoveryFailureRate = discovery;
+        this.writeFailureRate = write;
+        this.linkLossRate = linkLoss;
+        return this;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public List<byte[]> getReceivedWrites() {
+        return Collections.unmodifiableList(receivedWrites);
+    }
+
+    public int getConnectAttempts() {
+        return connectAttempts;
+    }
+
+    public int getDiscoveryCount() {
+        return discoveryCount;
+    }
+
+    public int getRejectedOperations() {
+        return rejectedOperations;
+    }
+
+    public int getActuationCount() {
+        return actuationCount;
+    }
+
+    public int getAttRequests() {
+        return attRequests;
+    }
+
+    public int getTruncatedWrites() {
+        return truncatedWrites;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public int getConnectionInterval() {
+        return connectionInterval;
+    }
+
+    public int getPhy() {
+        return phy;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    // 模拟固件更新导致属性句柄变化，之前缓存的服务结构失效
+    public void changeAttributeLayout() {
+        attributeLayout++;
+    }
+
+    // 模拟门锁被按键或其他手机打开后进入冷却
+    public void startCooldown(long duration) {
+        busyUntil = scheduler.now() + duration;
+    }
+
+    // 模拟门锁侧主动断开（掉电、超出范围等）
+    public void dropLink() {
+        if (connected || connecting) {
+            connected = false;
+            connecting = false;
+            discovered = false;
+            restored = false;
+            operationPending = false;
+            notifying = false;
+            resetLink();
+            int id = ++connectionId;
+            deliver(0, id, () -> callback.onConnectionStateChanged(8, false));
+        }
+    }
+
+    private long delay(long base) {
+        if (jitter <= 0) {
+            return base;
+        }
+        return Math.max(0, base + (long) ((random.nextDouble() * 2 - 1) * jitter));
+    }
+
+    // 开始一个 GATT 操作；已有未完成的操作时拒绝
+    private boolean beginOperation() {
+        if (!connected) {
+            return false;
+        }
+        if (operationPending) {
+            rejectedOperations++;
+            return false;
+        }
+        operationPending = true;
+        return true;
+    }
+
+    private boolean fails(double rate) {
+        return rate > 0 && random.nextDouble() < rate;
+    }
+
+    // 只投递属于当前连接的回调，close() 之后的回调被丢弃
+    private void deliver(long delayMs, int id, Runnable event) {
+        scheduler.postDelayed(() -> {
+            if (id == connectionId && callback != null) {
+                event.run();
+            }
+        }, delayMs);
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean startScan(LockScanMatcher matcher) {
+        stopScan();
+        scanning = true;
+        advertisingTask = new Runnable() {
+            @Override
+            public void run() {
+                if (!scanning || advertisingTask != this) {
+                    return;
+                }
+                List<UUID> uuids = advertiseServiceUuid
+                        ? Collections.singletonList(serviceUuid) : Collections.<UUID>emptyList();
+                // 模拟硬件过滤：只有匹配的广播才会上报
+                if (advertising && !connected && !connecting && matcher.matches(address, name, uuids)
+                        && callback != null) {
+                    callback.onScanResult(address, name, uuids, rssi, LockDeviceRecord.ADDRESS_TYPE_UNKNOWN);
+                }
+                scheduler.postDelayed(this, delay(advertisingInterval));
+            }
+        };
+        scheduler.postDelayed(advertisingTask, delay(advertisingInterval));
+        return true;
+    }
+
+    @Override
+    public void stopScan() {
+        scanning = false;
+        if (advertisingTask != null) {
+            scheduler.cancel(advertisingTask);
+            advertisingTask = null;
+        }
+    }
+
+    @Override
+    public boolean connect(String address, int addressType, boolean prefer2mPhy) {
+        close();
+        connectAttempts++;
+        connecting = true;
+        int id = connectionId;
+
+        if (!advertising || !this.address.equalsIgnoreCase(address)) {
+            // 设备不在范围内：和 Android 一样，经过较长时间后以错误 133 结束
+            deliver(delay(connectLatency * 5), id, () -> {
+                connecting = false;
+                callback.onConnectionStateChanged(GATT_ERROR, false);
+            });
+            return true;
+        }
+
+        boolean failed = fails(connectFailureRate);
+        deliver(delay(connectLatency), id, () -> {
+            connecting = false;
+            if (failed) {
+                callback.onConnectionStateChanged(GATT_ERROR, false);
+                return;
+            }
+            connected = true;
+            if (prefer2mPhy && phy2mSupported) {
+                phy = PHY_LE_2M;
+            }
+            callback.onConnectionStateChanged(GATT_SUCCESS, true);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean discoverServices() {
+        if (!beginOperation()) {
+            return false;
+        }
+        discoveryCount++;
+        int id = connectionId;
+        boolean failed = fails(discoveryFailureRate);
+        deliver(delay(discoveryLatency), id, () -> {
+            operationPending = false;
+            discovered = !failed;
+            if (!failed) {
+                clientLayout = attributeLayout;
+            }
+            callback.onServicesDiscovered(failed ? GATT_FAILURE : GATT_SUCCESS);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        if (!connected) {
+            return false;
+        }
+        if (discovered) {
+            return isLockCharacteristic(serviceUuid, characteristicUuid) || isNotifyCharacteristic(serviceUuid, characteristicUuid)
+                    || isFeatureCharacteristic(serviceUuid, characteristicUuid);
+        }
+        // TX 和功能特征与缓存的 RX 特征在同一个服务中，恢复后同样可用
+        return restored && serviceUuid.equals(restoredServiceUuid)
+                && (characteristicUuid.equals(restoredCharacteristicUuid) || isNotifyCharacteristic(serviceUuid, characteristicUuid)
+                || isFeatureCharacteristic(serviceUuid, characteristicUuid));
+    }
+
+    private boolean isFeatureCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        return featureSupported && this.serviceUuid.equals(serviceUuid)
+                && NordicUartService.FEATURE_CHARACTERISTIC_UUID.equals(characteristicUuid);
+    }
+
+    private boolean isLockCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        return this.serviceUuid.equals(serviceUuid) && this.rxCharacteristicUuid.equals(characteristicUuid);
+    }
+
+    private boolean isNotifyCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        return notifySupported && this.serviceUuid.equals(serviceUuid)
+                && NordicUartService.TX_CHARACTERISTIC_UUID.equals(characteristicUuid);
+    }
+
+    @Override
+    public boolean restoreCharacteristic(UUID serviceUuid, UUID characteristicUuid, boolean writeWithoutResponse) {
+        if (!connected) {
+            return false;
+        }
+        restored = true;
+        restoredServiceUuid = serviceUuid;
+        restoredCharacteristicUuid = characteristicUuid;
+        return true;
+    }
+
+    @Override
+    public boolean supportsWriteWithoutResponse(UUID serviceUuid, UUID characteristicUuid) {
+        return writeWithoutResponseSupported && hasCharacteristic(serviceUuid, characteristicUuid);
+    }
+
+    @Override
+    public boolean write(UUID serviceUuid, UUID characteristicUuid, byte[] value, boolean withoutResponse) {
+        if (!hasCharacteristic(serviceUuid, characteristicUuid)
+                || (withoutResponse && !writeWithoutResponseSupported) || !beginOperation()) {
+            return false;
+        }
+        int id = connectionId;
+        int capacity = mtu - WRITE_HEADER;
+        byte[] copy;
+        long latency;
+        if (withoutResponse) {
+            // 无响应写入没有长写入，超出部分被协议栈丢弃
+            copy = Arrays.copyOf(value, Math.min(value.length, capacity));
+            if (copy.length < value.length) {
+                truncatedWrites++;
+            }
+            latency = writeWithoutResponseLatency;
+        } else {
+            copy = value.clone();
+            int requests = value.length <= capacity
+                    ? 1 : (value.length + mtu - PREPARE_WRITE_HEADER - 1) / (mtu - PREPARE_WRITE_HEADER) + 1;
+            attRequests += requests;
+            latency = writeLatency * requests;
+        }
+        // 未发现服务时按缓存的句柄写入，句柄过期时门锁返回错误；无响应写入则直接丢失
+        boolean staleHandle = !discovered
+                && (clientLayout != attributeLayout || !isLockCharacteristic(serviceUuid, characteristicUuid));
+        boolean failed = (staleHandle && !withoutResponse) || fails(writeFailureRate);
+        boolean linkLost = fails(linkLossRate);
+        deliver(delay(latency), id, () -> {
+            operationPending = false;
+            if (linkLost) {
+                dropLink();
+                return;
+            }
+            if (!failed && !staleHandle) {
+                receivedWrites.add(copy);
+                receive(copy, id);
+            }
+            callback.onCharacteristicWritten(characteristicUuid, failed ? GATT_ERROR : GATT_SUCCESS);
+        });
+        return true;
+    }
+
+    // 新固件先重组分片；不完整的命令（被截断、旧固件收到的分片）不动作
+    private void receive(byte[] value, int id) {
+        byte[] command = value;
+        if (featureSupported && CommandFramer.isFragment(value)) {
+            command = reassembler.accept(value);
+            if (command == null) {
+                return;
+            }
+        }
+        if (UnlockCommandCodec.isBinary(command)
+                || (command.length > 1 && command[0] == '{' && command[command.length - 1] == '}')) {
+            actuate(command, id);
+        }
+    }
+
+    // 门锁收到开锁命令：冷却中只回复冷却事件，否则动作，开始和完成时各通知一次
+    private void actuate(byte[] command, int id) {
+        boolean binary = UnlockCommandCodec.isBinary(command);
+        int sequence = binary ? UnlockCommandCodec.readSequence(command) : 0;
+        long now = scheduler.now();
+        if (now < busyUntil) {
+            notifyEvent(0, id, LockEvent.encode(LockEvent.COOLDOWN, sequence, (int) (busyUntil - now)));
+            return;
+        }
+        long duration = binary
+                ? UnlockCommandCodec.readPressTime(command) + UnlockCommandCodec.readReleaseTime(command)
+                : DEFAULT_ACTUATION_TIME;
+        actuationCount++;
+        busyUntil = now + actuationDelay + duration + cooldown;
+        notifyEvent(actuationDelay, id, LockEvent.encode(LockEvent.ACTUATION_START, sequence, 0));
+        notifyEvent(actuationDelay + duration, id, LockEvent.encode(LockEvent.ACTUATION_DONE, sequence, (int) cooldown));
+    }
+
+    // 动作与连接无关，连接断开后只是收不到通知
+    private void notifyEvent(long delayMs, int id, byte[] frame) {
+        deliver(delayMs, id, () -> {
+            if (notifying) {
+                callback.onCharacteristicChanged(NordicUartService.TX_CHARACTERISTIC_UUID, frame);
+            }
+        });
+    }
+
+    @Override
+    public boolean enableNotifications(UUID serviceUuid, UUID characteristicUuid) {
+        if (!isNotifyCharacteristic(serviceUuid, characteristicUuid) || !hasCharacteristic(serviceUuid, characteristicUuid)
+                || !beginOperation()) {
+            return false;
+        }
+        int id = connectionId;
+        attRequests++;
+        boolean staleHandle = !discovered && clientLayout != attributeLayout;
+        deliver(delay(writeLatency), id, () -> {
+            operationPending = false;
+            notifying = !staleHandle;
+            callback.onNotificationsEnabled(characteristicUuid, staleHandle ? GATT_ERROR : GATT_SUCCESS);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean readRssi() {
+        if (!beginOperation()) {
+            return false;
+        }
+        int id = connectionId;
+        deliver(delay(writeLatency), id, () -> {
+            operationPending = false;
+            callback.onRssiRead(rssi, GATT_SUCCESS);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        if (!beginOperation()) {
+            return false;
+        }
+        int id = connectionId;
+        attRequests++;
+        deliver(delay(writeLatency), id, () -> {
+            operationPending = false;
+            this.mtu = Math.max(DEFAULT_MTU, Math.min(mtu, maxMtu));
+            callback.onMtuChanged(this.mtu, GATT_SUCCESS);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean readPhy() {
+        if (!connected) {
+            return false;
+        }
+        int id = connectionId;
+        deliver(delay(writeLatency), id, () -> callback.onPhyRead(phy, phy, GATT_SUCCESS));
+        return true;
+    }
+
+    // 连接参数更新和 PHY 更新是链路层过程，不占用 GATT
+    @Override
+    public boolean requestConnectionPriority(int priority) {
+        if (!connected) {
+            return false;
+        }
+        int id = connectionId;
+        int interval = priority == CONNECTION_PRIORITY_HIGH ? HIGH_PRIORITY_INTERVAL
+                : priority == CONNECTION_PRIORITY_LOW_POWER ? LOW_POWER_INTERVAL : DEFAULT_INTERVAL;
+        int latency = priority == CONNECTION_PRIORITY_LOW_POWER ? 2 : 0;
+        deliver(delay(writeLatency), id, () -> {
+            connectionInterval = interval;
+            callback.onConnectionUpdated(interval, latency, 500, GATT_SUCCESS);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean setPreferredPhy(int phy) {
+        if (!connected) {
+            return false;
+        }
+        int id = connectionId;
+        int granted = phy == PHY_LE_2M && phy2mSupported ? PHY_LE_2M : PHY_LE_1M;
+        deliver(delay(writeLatency), id, () -> {
+            this.phy = granted;
+            callback.onPhyRead(granted, granted, GATT_SUCCESS);
+        });
+        return true;
+    }
+
+    @Override
+    public void close() {
+        connectionId++;
+        connected = false;
+        connecting = false;
+        discovered = false;
+        restored = false;
+        operationPending = false;
+        notifying = false;
+        resetLink();
+    }
+
+    // MTU、连接参数和未收完的分片只属于一个连接
+    private void resetLink() {
+        mtu = DEFAULT_MTU;
+        connectionInterval = DEFAULT_INTERVAL;
+        reassembler.reset();
+    }
+}
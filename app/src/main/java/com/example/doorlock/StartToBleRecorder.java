@@ -0,0 +1,65 @@
+package com.example.doorlock;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * 服务收到开锁指令到 BLE 线程发出第一个蓝牙调用的耗时统计。
+ * 调用线程只把样本提交给 writer，计入直方图和保存都在 writer 上进行；直方图在第一次用到时从 {@link Store} 读取。
+ * 不依赖 Android API，由 {@link WarmStart} 提供预热线程和 SharedPreferences。
+ */
+class StartToBleRecorder {
+    // 服务收到指令到发出第一个蓝牙调用的目标耗时，超过时记录警告
+    static final long BUDGET = 50;
+
+    interface Store {
+        // 保存的直方图编码，没有时返回 null
+        String load();
+
+        void save(String encoded);
+
+        void clear();
+    }
+
+    private final Executor writer;
+    private final Store store;
+    private final Consumer<String> logger;
+    private LatencyHistogram histogram;
+
+    StartToBleRecorder(Executor writer, Store store, Consumer<String> logger) {
+        this.writer = writer;
+        this.store = store;
+        this.logger = logger;
+    }
+
+    // warm 为样本产生时预热是否已经完成，只用于超出目标时的警告
+    void record(long latencyMs, boolean warm) {
+        writer.execute(() -> save(latencyMs, warm));
+    }
+
+    private synchronized void save(long latencyMs, boolean warm) {
+        load();
+        histogram.record(latencyMs);
+        store.save(histogram.encode());
+        if (latencyMs > BUDGET) {
+            logger.accept("服务收到指令到第一个蓝牙调用耗时 " + latencyMs + "ms，预热" + (warm ? "已完成" : "未完成"));
+        }
+    }
+
+    synchronized LatencyHistogram getHistogram() {
+        load();
+        return LatencyHistogram.decode(histogram.encode());
+    }
+
+    synchronized void reset() {
+        load();
+        histogram.reset();
+        store.clear();
+    }
+
+    synchronized void load() {
+        if (histogram == null) {
+            histogram = LatencyHistogram.decode(store.load());
+        }
+    }
+}
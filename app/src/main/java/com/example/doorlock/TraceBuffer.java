@@ -0,0 +1,167 @@
+package com.example.doorlock;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * BLE 事件的环形缓冲区，导出为 Chrome trace-event JSON（可在 Perfetto 或 chrome://tracing 中打开）。
+ * 事件只记录时间戳、事件序号、轨道和一个整数参数，存放在预先分配的基本类型数组中，
+ * 记录时不分配对象、不拼接字符串；缓冲区满时覆盖最早的事件。
+ * 轨道对应导出后的 tid：同一轨道上的 {@link #begin}/{@link #end} 必须按嵌套顺序成对出现，
+ * 跨线程的一次开锁用 {@link #asyncBegin}/{@link #asyncEnd}。不依赖 Android API，可以在任意线程调用。
+ */
+public class TraceBuffer {
+    private static final byte PHASE_BEGIN = 'B';
+    private static final byte PHASE_END = 'E';
+    private static final byte PHASE_INSTANT = 'i';
+    private static final byte PHASE_ASYNC_BEGIN = 'b';
+    private static final byte PHASE_ASYNC_END = 'e';
+    private static final TraceEvent[] EVENTS = TraceEvent.values();
+
+    private final LongSupplier clock;
+    private final int mask;
+    private final long[] timestamps;
+    private final byte[] phases;
+    private final byte[] events;
+    private final int[] tracks;
+    private final long[] args;
+    // 记录过的事件总数，缓冲区中保留最后 capacity 个
+    private long count = 0;
+
+    // capacity 必须是 2 的幂；clock 返回纳秒
+    public TraceBuffer(int capacity, LongSupplier clock) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("容量必须是 2 的幂: " + capacity);
+        }
+        this.clock = clock;
+        mask = capacity - 1;
+        timestamps = new long[capacity];
+        phases = new byte[capacity];
+        events = new byte[capacity];
+        tracks = new int[capacity];
+        args = new long[capacity];
+    }
+
+    public void begin(TraceEvent event, int track) {
+        record(PHASE_BEGIN, event, track, 0);
+    }
+
+    public void end(TraceEvent event, int track, long arg) {
+        record(PHASE_END, event, track, arg);
+    }
+
+    public void instant(TraceEvent event, int track, long arg) {
+        record(PHASE_INSTANT, event, track, arg);
+    }
+
+    // 同一轨道同时只有一个进行中的异步事件，轨道号作为事件 id
+    public void asyncBegin(TraceEvent event, int track) {
+        record(PHASE_ASYNC_BEGIN, event, track, 0);
+    }
+
+    public void asyncEnd(TraceEvent event, int track, long arg) {
+        record(PHASE_ASYNC_END, event, track, arg);
+    }
+
+    private synchronized void record(byte phase, TraceEvent event, int track, long arg) {
+        int slot = (int) (count++ & mask);
+        timestamps[slot] = clock.getAsLong();
+        phases[slot] = phase;
+        events[slot] = (byte) event.ordinal();
+        tracks[slot] = track;
+        args[slot] = arg;
+    }
+
+    // 缓冲区中的事件数
+    public synchronized int size() {
+        return (int) Math.min(count, mask + 1);
+    }
+
+    public synchronized void clear() {
+        count = 0;
+    }
+
+    /**
+     * 按时间顺序写出缓冲区中的事件，trackNames 为轨道名称（导出为线程名）。
+     * 开始事件已被覆盖的结束事件不导出，避免查看器中出现没有开始的区间。
+     */
+    public synchronized void writeJson(Appendable out, int pid, Map<Integer, String> trackNames) throws IOException {
+        out.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Map.Entry<Integer, String> track : trackNames.entrySet()) {
+            first = separate(out, first);
+            out.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(Integer.toString(pid))
+                    .append(",\"tid\":").append(Integer.toString(track.getKey()))
+                    .append(",\"args\":{\"name\":").append(JSONObject.quote(track.getValue())).append("}}");
+        }
+
+        // 各轨道上进行中的同步区间数和异步事件
+        Map<Integer, Integer> depth = new HashMap<>();
+        Map<Integer, Boolean> asyncOpen = new HashMap<>();
+        long start = Math.max(0, count - (mask + 1));
+        for (long i = start; i < count; i++) {
+            int slot = (int) (i & mask);
+            byte phase = phases[slot];
+            int track = tracks[slot];
+            if (phase == PHASE_BEGIN) {
+                depth.merge(track, 1, Integer::sum);
+            } else if (phase == PHASE_END) {
+                int open = depth.getOrDefault(track, 0);
+                if (open == 0) {
+                    continue;
+                }
+                depth.put(track, open - 1);
+            } else if (phase == PHASE_ASYNC_BEGIN) {
+                asyncOpen.put(track, true);
+            } else if (phase == PHASE_ASYNC_END) {
+                if (asyncOpen.remove(track) == null) {
+                    continue;
+                }
+            }
+
+            TraceEvent event = EVENTS[events[slot]];
+            first = separate(out, first);
+            out.append("{\"name\":\"").append(event.getTraceName())
+                    .append("\",\"cat\":\"").append(event.getCategory())
+                    .append("\",\"ph\":\"").append((char) phase)
+                    .append("\",\"ts\":");
+            appendMicros(out, timestamps[slot]);
+            out.append(",\"pid\":").append(Integer.toString(pid))
+                    .append(",\"tid\":").append(Integer.toString(track));
+            if (phase == PHASE_INSTANT) {
+                // 只在所在轨道上显示
+                out.append(",\"s\":\"t\"");
+            }
+            if (phase == PHASE_ASYNC_BEGIN || phase == PHASE_ASYNC_END) {
+                out.append(",\"id\":").append(Integer.toString(track));
+            }
+            if (phase != PHASE_BEGIN && phase != PHASE_ASYNC_BEGIN && event.getArgName() != null) {
+                out.append(",\"args\":{\"").append(event.getArgName()).append("\":")
+                        .append(Long.toString(args[slot])).append('}');
+            }
+            out.append('}');
+        }
+        out.append("]}");
+    }
+
+    private static boolean separate(Appendable out, boolean first) throws IOException {
+        if (!first) {
+            out.append(",\n");
+        }
+        return false;
+    }
+
+    // trace-event 的时间单位是微秒，保留到纳秒
+    private static void appendMicros(Appendable out, long nanos) throws IOException {
+        out.append(Long.toString(nanos / 1000)).append('.');
+        String fraction = Long.toString(nanos % 1000);
+        for (int i = fraction.length(); i < 3; i++) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.doorlock;
+
+/**
+ * {@link TraceBuffer} 记录的事件。名称和分类写入导出的 trace-event JSON，
+ * 每个事件最多带一个整数参数，argName 为 null 时不导出参数。
+ */
+public enum TraceEvent {
+    // 应用内的跳转：小组件点击启动服务、服务交给 BLE 线程、结果回到小组件
+    SERVICE_COMMAND("service.onStartCommand", "app", null),
+    UI_UNLOCK("ui.unlock", "app", null),
+    UNLOCK_REQUEST("unlock.request", "app", "source"),
+    WIDGET_UPDATE("widget.update", "app", "unlocked"),
+    // 一次开锁，从 BLE 线程接受请求到得到结果
+    UNLOCK("unlock", "session", "success"),
+    // GATT 操作，从发出请求到系统回调到达 BLE 线程
+    SCAN("scan", "gatt", null),
+    SCAN_RESULT("scan.result", "gatt", "rssi"),
+    CONNECT("connect", "gatt", "status"),
+    DISCOVER("discover", "gatt", "status"),
+    WRITE("write", "gatt", "status"),
+    SUBSCRIBE("subscribe", "gatt", "status"),
+    MTU("mtu", "gatt", "mtu"),
+    NOTIFY("notify", "gatt", "length"),
+    CONNECTION_UPDATE("connection.update", "gatt", "interval"),
+    DISCONNECT("disconnect", "gatt", "status");
+
+    private final String traceName;
+    private final String category;
+    private final String argName;
+
+    TraceEvent(String traceName, String category, String argName) {
+        this.traceName = traceName;
+        this.category = category;
+        this.argName = argName;
+    }
+
+    public String getTraceName() {
+        return traceName;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getArgName() {
+        return argName;
+    }
+}
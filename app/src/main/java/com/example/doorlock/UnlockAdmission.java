@@ -0,0 +1,104 @@
+package com.example.doorlock;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 一把门锁的开锁请求准入，放在状态机之前，小组件、主界面和分组开锁的请求都经过这里。
+ * 同一时间只有一个进行中的开锁，期间的请求合并进去；开锁成功后 {@link #DEBOUNCE_WINDOW} 内的重复请求
+ * （双击、连续点击）直接忽略。门锁冷却中时，剩余时间不超过 {@link #MAX_DEFER} 的请求等冷却结束再执行，
+ * 更长的立即拒绝，不为门锁一定会拒绝的命令建立连接。
+ * 不依赖 Android API，所有方法都必须在 {@link LockScheduler} 的线程上调用。
+ */
+public class UnlockAdmission {
+    static final long DEBOUNCE_WINDOW = 1500;
+    static final long MAX_DEFER = LockController.MAX_COOLDOWN_WAIT;
+
+    public enum Decision {
+        // 立即开始开锁
+        ADMITTED,
+        // 合并进进行中或等待冷却的开锁
+        COALESCED,
+        // 刚开锁成功，忽略重复请求
+        DEBOUNCED,
+        // 冷却结束后自动开始
+        DEFERRED,
+        // 冷却剩余时间太长，拒绝
+        REJECTED
+    }
+
+    private final LockScheduler scheduler;
+    // 门锁冷却结束的时间，由状态机根据门锁的通知维护
+    private final LongSupplier cooldownUntil;
+    private final Runnable start;
+    private final Runnable deferredRunnable = this::onCooldownEnd;
+    private boolean inFlight = false;
+    private boolean deferred = false;
+    private long lastSuccessTime = Long.MIN_VALUE;
+
+    public UnlockAdmission(LockScheduler scheduler, LongSupplier cooldownUntil, Runnable start) {
+        this.scheduler = scheduler;
+        this.cooldownUntil = cooldownUntil;
+        this.start = start;
+    }
+
+    public Decision request() {
+        if (inFlight || deferred) {
+            return Decision.COALESCED;
+        }
+        long now = scheduler.now();
+        if (lastSuccessTime != Long.MIN_VALUE && now - lastSuccessTime < DEBOUNCE_WINDOW) {
+            return Decision.DEBOUNCED;
+        }
+        long remaining = getCooldownRemaining();
+        if (remaining > MAX_DEFER) {
+            return Decision.REJECTED;
+        }
+        if (remaining > 0) {
+            deferred = true;
+            scheduler.postDelayed(deferredRunnable, remaining);
+            return Decision.DEFERRED;
+        }
+        begin();
+        return Decision.ADMITTED;
+    }
+
+    // 状态机可能在 start 里同步结束这次开锁（例如蓝牙未开启），先标记再执行
+    private void begin() {
+        inFlight = true;
+        start.run();
+    }
+
+    private void onCooldownEnd() {
+        if (deferred) {
+            deferred = false;
+            begin();
+        }
+    }
+
+    // 进行中的开锁有了结果
+    public void onFinished(boolean success) {
+        if (!inFlight) {
+            return;
+        }
+        inFlight = false;
+        if (success) {
+            lastSuccessTime = scheduler.now();
+        }
+    }
+
+    public long getCooldownRemaining() {
+        return Math.max(0, cooldownUntil.getAsLong() - scheduler.now());
+    }
+
+    // 有进行中或等待冷却的开锁
+    public boolean isPending() {
+        return inFlight || deferred;
+    }
+
+    // 门锁删除时放弃等待冷却的开锁
+    public void cancel() {
+        scheduler.cancel(deferredRunnable);
+        deferred = false;
+        inFlight = false;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.doorlock;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 开锁命令编解码。
+ * 二进制帧 (v1, 8 字节, 大端): [版本][操作码][下压时间 u16][反转时间 u16][序号 u16]
+ * JSON 格式保留给旧固件: {"press_time":"450","release_time":"300","action":"unlock"}
+ * 固件可通过首字节区分两种格式: JSON 以 '{' 开头，二进制以版本号开头。
+ */
+public final class UnlockCommandCodec {
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_BINARY = "binary";
+
+    public static final byte VERSION = 0x01;
+    public static final byte OPCODE_UNLOCK = 0x01;
+    public static final int BINARY_LENGTH = 8;
+    public static final int MAX_DURATION = 0xFFFF;
+
+    private static final int OFFSET_VERSION = 0;
+    private static final int OFFSET_OPCODE = 1;
+    private static final int OFFSET_PRESS = 2;
+    private static final int OFFSET_RELEASE = 4;
+    private static final int OFFSET_SEQUENCE = 6;
+
+    private UnlockCommandCodec() {
+    }
+
+    public static byte[] encodeBinary(int pressTime, int releaseTime, int sequence) {
+        checkDuration(pressTime);
+        checkDuration(releaseTime);
+
+        byte[] frame = new byte[BINARY_LENGTH];
+        frame[OFFSET_VERSION] = VERSION;
+        frame[OFFSET_OPCODE] = OPCODE_UNLOCK;
+        putU16(frame, OFFSET_PRESS, pressTime);
+        putU16(frame, OFFSET_RELEASE, releaseTime);
+        putU16(frame, OFFSET_SEQUENCE, sequence);
+        return frame;
+    }
+
+    // 在预编码的帧上原地写入序号，不产生新对象
+    public static void writeSequence(byte[] frame, int sequence) {
+        putU16(frame, OFFSET_SEQUENCE, sequence);
+    }
+
+    public static boolean isBinary(byte[] payload) {
+        return payload != null && payload.length == BINARY_LENGTH && payload[OFFSET_VERSION] == VERSION;
+    }
+
+    public static int readOpcode(byte[] frame) {
+        return frame[OFFSET_OPCODE] & 0xFF;
+    }
+
+    public static int readPressTime(byte[] frame) {
+        return getU16(frame, OFFSET_PRESS);
+    }
+
+    public static int readReleaseTime(byte[] frame) {
+        return getU16(frame, OFFSET_RELEASE);
+    }
+
+    public static int readSequence(byte[] frame) {
+        return getU16(frame, OFFSET_SEQUENCE);
+    }
+
+    // 与原 JSONObject 方式生成的内容一致
+    public static byte[] encodeJson(String pressTime, String releaseTime) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("{\"press_time\":");
+        appendQuoted(sb, pressTime);
+        sb.append(",\"release_time\":");
+        appendQuoted(sb, releaseTime);
+        sb.append(",\"action\":\"unlock\"}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendQuoted(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append('\\').append(c);
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void checkDuration(int value) {
+        if (value < 0 || value > MAX_DURATION) {
+            throw new IllegalArgumentException("时间超出范围: " + value);
+        }
+    }
+
+    private static void putU16(byte[] frame, int offset, int value) {
+        frame[offset] = (byte) (value >>> 8);
+        frame[offset + 1] = (byte) value;
+    }
+
+    private static int getU16(byte[] frame, int offset) {
+        return ((frame[offset] & 0xFF) << 8) | (frame[offset + 1] & 0xFF);
+    }
+}
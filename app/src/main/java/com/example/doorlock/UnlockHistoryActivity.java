@@ -0,0 +1,184 @@
+package com.example.doorlock;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.Spinner;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 开锁记录：按门锁和结果筛选，从新到旧分页显示。读取和格式化都在记录线程上，
+ * 滚动到底部附近时才读取下一页，不会一次读出整个日志。
+ */
+public class UnlockHistoryActivity extends AppCompatActivity {
+    private static final int PAGE_SIZE = 50;
+    private static final UnlockJournal.Outcome[] OUTCOME_FILTERS = {null, UnlockJournal.Outcome.SUCCESS,
+            UnlockJournal.Outcome.FAILED, UnlockJournal.Outcome.REJECTED};
+
+    private UnlockJournal journal;
+    private BluetoothConfigManager configManager;
+    private Spinner spLock;
+    private Spinner spOutcome;
+    private ArrayAdapter<String> lockAdapter;
+    private ArrayAdapter<String> historyAdapter;
+    private final List<String> lockLabels = new ArrayList<>();
+    // 与 lockLabels 对应，第一项 null 表示全部门锁
+    private final List<String> lockIds = new ArrayList<>();
+    private final List<String> lines = new ArrayList<>();
+
+    // 以下只在主线程上访问。筛选条件变化后 generation 加一，旧条件读到的页直接丢弃
+    private int generation = 0;
+    private boolean loading = false;
+    private boolean exhausted = false;
+
+    // 以下只在记录线程上访问
+    private UnlockJournal.Cursor cursor;
+    private int cursorGeneration = -1;
+    private final Map<String, String> lockNames = new HashMap<>();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss", Locale.getDefault());
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_unlock_history);
+
+        journal = LockSession.getInstance(this).getJournal();
+        configManager = BluetoothConfigManager.getInstance(this);
+
+        spLock = findViewById(R.id.sp_history_lock);
+        lockLabels.add("全部门锁");
+        lockIds.add(null);
+        lockAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, lockLabels);
+        lockAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spLock.setAdapter(lockAdapter);
+
+        spOutcome = findViewById(R.id.sp_history_outcome);
+        String[] outcomeLabels = new String[OUTCOME_FILTERS.length];
+        outcomeLabels[0] = "全部结果";
+        for (int i = 1; i < OUTCOME_FILTERS.length; i++) {
+            outcomeLabels[i] = OUTCOME_FILTERS[i].getLabel();
+        }
+        ArrayAdapter<String> outcomeAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item,
+                outcomeLabels);
+        outcomeAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spOutcome.setAdapter(outcomeAdapter);
+
+        AdapterView.OnItemSelectedListener filterListener = new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                reload();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        };
+        spLock.setOnItemSelectedListener(filterListener);
+        spOutcome.setOnItemSelectedListener(filterListener);
+
+        ListView lvHistory = findViewById(R.id.lv_history);
+        historyAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, lines);
+        lvHistory.setAdapter(historyAdapter);
+        lvHistory.setEmptyView(findViewById(R.id.tv_history_empty));
+        lvHistory.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisible, int visibleCount, int totalCount) {
+                if (firstVisible + visibleCount >= totalCount - PAGE_SIZE / 2) {
+                    loadMore();
+                }
+            }
+        });
+
+        // 门锁名称在记录线程上读取，配置还没加载完时不阻塞主线程
+        journal.execute(() -> {
+            List<LockConfig> profiles = configManager.getProfiles();
+            for (LockConfig config : profiles) {
+                lockNames.put(config.getId(), config.getDeviceName());
+            }
+            runOnUiThread(() -> {
+                for (LockConfig config : profiles) {
+                    lockLabels.add(config.getDeviceName());
+                    lockIds.add(config.getId());
+                }
+                lockAdapter.notifyDataSetChanged();
+            });
+        });
+        reload();
+    }
+
+    private void reload() {
+        int current = ++generation;
+        lines.clear();
+        historyAdapter.notifyDataSetChanged();
+        loading = false;
+        exhausted = false;
+
+        UnlockJournal.Query query = new UnlockJournal.Query()
+                .lock(lockIds.get(spLock.getSelectedItemPosition()))
+                .outcome(OUTCOME_FILTERS[spOutcome.getSelectedItemPosition()]);
+        journal.execute(() -> {
+            cursor = journal.query(query);
+            cursorGeneration = current;
+        });
+        loadMore();
+    }
+
+    private void loadMore() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        int current = generation;
+        journal.execute(() -> {
+            // 读取排在新条件的游标之前，由 reload 重新发起
+            if (cursorGeneration != current) {
+                return;
+            }
+            List<String> page = new ArrayList<>(PAGE_SIZE);
+            for (UnlockJournal.Entry entry : cursor.nextPage(PAGE_SIZE)) {
+                page.add(format(entry));
+            }
+            runOnUiThread(() -> onPageLoaded(current, page));
+        });
+    }
+
+    private void onPageLoaded(int pageGeneration, List<String> page) {
+        if (pageGeneration != generation) {
+            return;
+        }
+        loading = false;
+        exhausted = page.size() < PAGE_SIZE;
+        lines.addAll(page);
+        historyAdapter.notifyDataSetChanged();
+    }
+
+    private String format(UnlockJournal.Entry entry) {
+        String name = lockNames.get(entry.getLockId());
+        UnlockSource source = entry.getSource();
+        StringBuilder sb = new StringBuilder();
+        sb.append(timeFormat.format(new Date(entry.getTimestamp())))
+                .append("  ").append(name != null ? name : entry.getLockId())
+                .append("  ").append(source != null ? source.getLabel() : "未知入口");
+        if (entry.isWarm()) {
+            sb.append("  热连接");
+        }
+        sb.append('\n').append(entry);
+        return sb.toString();
+    }
+}
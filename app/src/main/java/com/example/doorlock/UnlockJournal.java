@@ -0,0 +1,630 @@
+package com.example.doorlock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * 开锁记录：每次开锁尝试一条 {@link #RECORD_SIZE} 字节的定长记录，只追加，写在内存映射的分段文件里。
+ * 记录写进映射内存就算完成，由系统回写磁盘，进程被杀也不会丢失。每段 {@link #RECORDS_PER_SEGMENT} 条，
+ * 写满后新开一段；段数超过 {@link #MAX_SEGMENTS} 时压缩旧段：丢掉超过 {@link #RETENTION} 的记录并合并，
+ * 仍然太多时删除最旧的段。
+ * {@link #append} 只把记录交给写入线程，调用方（BLE 线程）不接触磁盘；{@link #query} 从新到旧逐段读取，
+ * 不会把整个日志读进内存。不依赖 Android API。
+ */
+public class UnlockJournal {
+    static final int RECORD_SIZE = 64;
+    static final int RECORDS_PER_SEGMENT = 1024;
+    static final int MAX_SEGMENTS = 8;
+    static final long RETENTION = 180L * 24 * 60 * 60 * 1000;
+    // 门锁 id 按 UTF-8 最多保存 16 字节，过长的截断
+    static final int MAX_LOCK_ID_BYTES = 16;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final byte RECORD_VERSION = 1;
+    private static final UnlockPhase[] PHASES = UnlockPhase.values();
+    private static final int NO_LATENCY = 0xFFFF;
+    private static final int FLAG_WARM = 0x01;
+
+    // 记录格式 (v1, 大端)。版本字节最后写入，非 0 表示记录完整
+    private static final int OFFSET_VERSION = 0;
+    private static final int OFFSET_SOURCE = 1;
+    private static final int OFFSET_OUTCOME = 2;
+    private static final int OFFSET_FLAGS = 3;
+    // i16
+    private static final int OFFSET_GATT_STATUS = 4;
+    // i64，全局递增
+    private static final int OFFSET_SEQUENCE = 8;
+    // i64，发起开锁的系统时间
+    private static final int OFFSET_TIMESTAMP = 16;
+    private static final int OFFSET_LOCK_ID = 24;
+    // i32，请求到结果的毫秒数，-1 表示没有
+    private static final int OFFSET_TOTAL = 40;
+    // 每个阶段 u16，相对上一阶段的毫秒数，最多 10 个阶段
+    private static final int OFFSET_PHASES = 44;
+
+    public enum Outcome {
+        SUCCESS("成功"),
+        FAILED("失败"),
+        // 门锁冷却中，没有发出命令
+        REJECTED("冷却中");
+
+        private final String label;
+
+        Outcome(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // 一次开锁尝试
+    public static final class Entry {
+        private final long sequence;
+        private final long timestamp;
+        private final String lockId;
+        private final UnlockSource source;
+        private final Outcome outcome;
+        private final boolean warm;
+        private final int gattStatus;
+        private final long total;
+        private final long[] phases;
+
+        Entry(long sequence, long timestamp, String lockId, UnlockSource source, Outcome outcome,
+              boolean warm, int gattStatus, long total, long[] phases) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.lockId = lockId;
+            this.source = source;
+            this.outcome = outcome;
+            this.warm = warm;
+            this.gattStatus = gattStatus;
+            this.total = total;
+            this.phases = phases;
+        }
+
+        // 有结果的开锁，各阶段耗时取自时间线
+        public static Entry of(long timestamp, String lockId, UnlockSource source, boolean success, boolean warm,
+                               int gattStatus, long total, UnlockTimeline timeline) {
+            long[] phases = new long[PHASES.length];
+            for (UnlockPhase phase : PHASES) {
+                phases[phase.ordinal()] = timeline.sincePrevious(phase);
+            }
+            return new Entry(-1, timestamp, lockId, source, success ? Outcome.SUCCESS : Outcome.FAILED,
+                    warm, gattStatus, total, phases);
+        }
+
+        // 门锁冷却中被拒绝，没有经过任何阶段
+        public static Entry rejected(long timestamp, String lockId, UnlockSource source) {
+            long[] phases = new long[PHASES.length];
+            Arrays.fill(phases, -1);
+            return new Entry(-1, timestamp, lockId, source, Outcome.REJECTED, false, 0, -1, phases);
+        }
+
+        // 写入日志后分配，还没写入时为 -1
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getLockId() {
+            return lockId;
+        }
+
+        // 新版本写入的未知入口为 null
+        public UnlockSource getSource() {
+            return source;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public boolean isWarm() {
+            return warm;
+        }
+
+        public int getGattStatus() {
+            return gattStatus;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        // 与上一个经过的阶段之间的耗时，未经过该阶段时返回 -1
+        public long getPhaseLatency(UnlockPhase phase) {
+            return phases[phase.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(outcome != null ? outcome.getLabel() : "未知");
+            if (total >= 0) {
+                sb.append(' ').append(total).append("ms");
+            }
+            if (gattStatus != 0) {
+                sb.append(" status=").append(gattStatus);
+            }
+            for (UnlockPhase phase : PHASES) {
+                long latency = phases[phase.ordinal()];
+                if (latency >= 0) {
+                    sb.append(String.format(Locale.ROOT, " %s+%d", phase.getLabel(), latency));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    // 查询条件，未设置的条件不过滤
+    public static final class Query {
+        private long from = Long.MIN_VALUE;
+        private long to = Long.MAX_VALUE;
+        private byte[] lockId;
+        private Outcome outcome;
+
+        // 发起时间在 [from, to) 之间
+        public Query between(long from, long to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        public Query lock(String lockId) {
+            this.lockId = lockId != null ? encodeLockId(lockId) : null;
+            return this;
+        }
+
+        public Query outcome(Outcome outcome) {
+            this.outcome = outcome;
+            return this;
+        }
+
+        // 直接比较映射内存里的字段，不符合的记录不解码
+        boolean matches(ByteBuffer buffer, int offset) {
+            if (outcome != null && buffer.get(offset + OFFSET_OUTCOME) != outcome.ordinal() + 1) {
+                return false;
+            }
+            long timestamp = buffer.getLong(offset + OFFSET_TIMESTAMP);
+            if (timestamp < from || timestamp >= to) {
+                return false;
+            }
+            if (lockId != null) {
+                for (int i = 0; i < MAX_LOCK_ID_BYTES; i++) {
+                    if (buffer.get(offset + OFFSET_LOCK_ID + i) != lockId[i]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    // 从新到旧遍历符合条件的记录。创建时固定当时已有的段，之后追加的记录不在结果里
+    public final class Cursor implements Iterator<Entry> {
+        private final Query query;
+        private final List<Segment> snapshot;
+        private final ByteBuffer activeView;
+        private int segmentIndex;
+        private ByteBuffer buffer;
+        private int recordIndex;
+        private long lastSequence = Long.MAX_VALUE;
+        private Entry next;
+
+        private Cursor(Query query, List<Segment> snapshot, ByteBuffer activeView) {
+            this.query = query;
+            this.snapshot = snapshot;
+            this.activeView = activeView;
+            segmentIndex = snapshot.size() - 1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        // 读取下一页，最多 limit 条，没有更多记录时返回空列表
+        public List<Entry> nextPage(int limit) {
+            List<Entry> page = new ArrayList<>(limit);
+            while (page.size() < limit && hasNext()) {
+                page.add(next());
+            }
+            return page;
+        }
+
+        private Entry advance() {
+            while (true) {
+                if (buffer == null) {
+                    if (segmentIndex < 0) {
+                        return null;
+                    }
+                    Segment segment = snapshot.get(segmentIndex);
+                    buffer = segmentIndex == snapshot.size() - 1 && activeView != null
+                            ? activeView : mapQuietly(segment.file);
+                    if (buffer == null) {
+                        segmentIndex--;
+                        continue;
+                    }
+                    recordIndex = Math.min(segment.count, buffer.capacity() / RECORD_SIZE) - 1;
+                }
+                if (recordIndex < 0) {
+                    buffer = null;
+                    segmentIndex--;
+                    continue;
+                }
+                int offset = recordIndex-- * RECORD_SIZE;
+                long sequence = buffer.getLong(offset + OFFSET_SEQUENCE);
+                // 中断的压缩可能留下重复的记录
+                if (buffer.get(offset + OFFSET_VERSION) == 0 || sequence >= lastSequence) {
+                    continue;
+                }
+                lastSequence = sequence;
+                if (query.matches(buffer, offset)) {
+                    return decode(buffer, offset);
+                }
+            }
+        }
+
+        // 压缩时删除的段已经不再需要
+        private ByteBuffer mapQuietly(File file) {
+            try {
+                return map(file, FileChannel.MapMode.READ_ONLY, Long.MAX_VALUE);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        // 段内记录序号的下界，用于排序
+        final long firstSequence;
+        int count;
+
+        Segment(File file, long firstSequence, int count) {
+            this.file = file;
+            this.firstSequence = firstSequence;
+            this.count = count;
+        }
+    }
+
+    private final File directory;
+    private final Executor writer;
+    private final Consumer<String> logger;
+    private final int recordsPerSegment;
+    private final int maxSegments;
+    private final long retention;
+    private final LongSupplier clock;
+
+    // 以下由 this 保护。段按序号从旧到新排列，最后一段可写
+    private final List<Segment> segments = new ArrayList<>();
+    private MappedByteBuffer active;
+    private long nextSequence;
+    private boolean opened = false;
+    private boolean failed = false;
+
+    public UnlockJournal(File directory, Executor writer, Consumer<String> logger) {
+        this(directory, writer, logger, RECORDS_PER_SEGMENT, MAX_SEGMENTS, RETENTION, System::currentTimeMillis);
+    }
+
+    UnlockJournal(File directory, Executor writer, Consumer<String> logger, int recordsPerSegment,
+                  int maxSegments, long retention, LongSupplier clock) {
+        this.directory = directory;
+        this.writer = writer;
+        this.logger = logger;
+        this.recordsPerSegment = recordsPerSegment;
+        this.maxSegments = maxSegments;
+        this.retention = retention;
+        this.clock = clock;
+    }
+
+    // 交给写入线程追加，调用方不等待
+    public void append(Entry entry) {
+        writer.execute(() -> write(entry));
+    }
+
+    // 在写入线程上执行，例如分页读取，不占用调用方线程
+    public void execute(Runnable task) {
+        writer.execute(task);
+    }
+
+    public synchronized Cursor query(Query query) {
+        if (!ensureOpen()) {
+            return new Cursor(query, new ArrayList<>(), null);
+        }
+        List<Segment> snapshot = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            snapshot.add(new Segment(segment.file, segment.firstSequence, segment.count));
+        }
+        return new Cursor(query, snapshot, active.asReadOnlyBuffer());
+    }
+
+    private synchronized void write(Entry entry) {
+        if (!ensureOpen()) {
+            return;
+        }
+        try {
+            Segment segment = segments.get(segments.size() - 1);
+            if (segment.count >= recordsPerSegment) {
+                segment = rotate();
+            }
+            encode(active, segment.count * RECORD_SIZE, nextSequence, entry);
+            segment.count++;
+            nextSequence++;
+        } catch (IOException e) {
+            fail("写入开锁记录失败", e);
+        }
+    }
+
+    // 第一次读写时在当前线程上打开，出错后本次运行不再记录
+    private boolean ensureOpen() {
+        if (!opened) {
+            opened = true;
+            try {
+                open();
+            } catch (IOException e) {
+                fail("打开开锁记录失败", e);
+            }
+        }
+        return !failed;
+    }
+
+    private void fail(String message, IOException e) {
+        failed = true;
+        logger.accept(message + ": " + e);
+    }
+
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建目录 " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("无法读取目录 " + directory);
+        }
+        long lastSequence = -1;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // 压缩在替换之前中断，原来的段还在
+                file.delete();
+                continue;
+            }
+            long firstSequence = parseSequence(name);
+            if (firstSequence < 0) {
+                continue;
+            }
+            ByteBuffer buffer = map(file, FileChannel.MapMode.READ_ONLY, Long.MAX_VALUE);
+            int count = countRecords(buffer);
+            if (count > 0) {
+                lastSequence = Math.max(lastSequence,
+                        buffer.getLong((count - 1) * RECORD_SIZE + OFFSET_SEQUENCE));
+            }
+            segments.add(new Segment(file, firstSequence, count));
+        }
+        segments.sort((a, b) -> Long.compare(a.firstSequence, b.firstSequence));
+        nextSequence = lastSequence + 1;
+
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null || last.count >= recordsPerSegment) {
+            createSegment();
+        } else {
+            nextSequence = Math.max(nextSequence, last.firstSequence);
+            active = map(last.file, FileChannel.MapMode.READ_WRITE, segmentBytes());
+        }
+    }
+
+    private Segment rotate() throws IOException {
+        active.force();
+        Segment segment = createSegment();
+        if (segments.size() > maxSegments) {
+            compact();
+        }
+        return segment;
+    }
+
+    private Segment createSegment() throws IOException {
+        File file = new File(directory, String.format(Locale.ROOT, "%016x%s", nextSequence, SEGMENT_SUFFIX));
+        active = map(file, FileChannel.MapMode.READ_WRITE, segmentBytes());
+        Segment segment = new Segment(file, nextSequence, 0);
+        segments.add(segment);
+        return segment;
+    }
+
+    // 按顺序把旧段里没过期的记录复制到新文件，每写满一段替换这一组的第一个文件、删除这一组已读完的文件。
+    // 中途中断时最多留下重复的记录，读取时按序号跳过
+    private void compact() throws IOException {
+        long cutoff = clock.getAsLong() - retention;
+        List<Segment> sealed = new ArrayList<>(segments.subList(0, segments.size() - 1));
+        List<Segment> compacted = new ArrayList<>();
+        ByteBuffer output = ByteBuffer.allocate(segmentBytes());
+        int groupStart = 0;
+        long lastSequence = -1;
+        int expired = 0;
+        for (int i = 0; i < sealed.size(); i++) {
+            Segment segment = sealed.get(i);
+            ByteBuffer input = map(segment.file, FileChannel.MapMode.READ_ONLY, Long.MAX_VALUE);
+            int count = Math.min(segment.count, input.capacity() / RECORD_SIZE);
+            for (int r = 0; r < count; r++) {
+                int offset = r * RECORD_SIZE;
+                long sequence = input.getLong(offset + OFFSET_SEQUENCE);
+                if (sequence <= lastSequence) {
+                    continue;
+                }
+                lastSequence = sequence;
+                if (input.getLong(offset + OFFSET_TIMESTAMP) < cutoff) {
+                    expired++;
+                    continue;
+                }
+                if (!output.hasRemaining()) {
+                    compacted.add(commit(sealed, groupStart, i, output));
+                    groupStart = i;
+                }
+                ByteBuffer record = input.duplicate();
+                record.limit(offset + RECORD_SIZE).position(offset);
+                output.put(record);
+            }
+        }
+        if (output.position() > 0) {
+            compacted.add(commit(sealed, groupStart, sealed.size(), output));
+        } else {
+            for (int i = groupStart; i < sealed.size(); i++) {
+                sealed.get(i).file.delete();
+            }
+        }
+
+        Segment current = segments.get(segments.size() - 1);
+        segments.clear();
+        segments.addAll(compacted);
+        segments.add(current);
+        int removed = 0;
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            oldest.file.delete();
+            removed += oldest.count;
+        }
+        logger.accept("压缩开锁记录: 过期 " + expired + " 条, 删除最旧的 " + removed + " 条, 剩余 "
+                + segments.size() + " 段");
+    }
+
+    // 把输出写成 sealed[start] 的新内容，并删除 (start, end) 之间已经读完的段
+    private Segment commit(List<Segment> sealed, int start, int end, ByteBuffer output) throws IOException {
+        Segment target = sealed.get(start);
+        File temp = new File(directory, target.file.getName() + TEMP_SUFFIX);
+        output.flip();
+        int count = output.remaining() / RECORD_SIZE;
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+            channel.force(true);
+        }
+        output.clear();
+        if (!temp.renameTo(target.file)) {
+            throw new IOException("无法替换 " + target.file);
+        }
+        for (int i = start + 1; i < end; i++) {
+            sealed.get(i).file.delete();
+        }
+        return new Segment(target.file, target.firstSequence, count);
+    }
+
+    private int segmentBytes() {
+        return recordsPerSegment * RECORD_SIZE;
+    }
+
+    // 读取时 size 取文件实际长度；写入时补齐到 size
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) throws IOException {
+        boolean writable = mode == FileChannel.MapMode.READ_WRITE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r")) {
+            if (writable && raf.length() < size) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(mode, 0, Math.min(raf.length(), size));
+        }
+    }
+
+    private static long parseSequence(String name) {
+        if (!name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // 段内的记录连续存放，第一个版本字节为 0 的位置就是结尾
+    private static int countRecords(ByteBuffer buffer) {
+        int count = 0;
+        while ((count + 1) * RECORD_SIZE <= buffer.capacity()
+                && buffer.get(count * RECORD_SIZE + OFFSET_VERSION) != 0) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void encode(ByteBuffer buffer, int offset, long sequence, Entry entry) {
+        buffer.put(offset + OFFSET_SOURCE, (byte) (entry.source.ordinal() + 1));
+        buffer.put(offset + OFFSET_OUTCOME, (byte) (entry.outcome.ordinal() + 1));
+        buffer.put(offset + OFFSET_FLAGS, (byte) (entry.warm ? FLAG_WARM : 0));
+        buffer.putShort(offset + OFFSET_GATT_STATUS, (short) entry.gattStatus);
+        buffer.putLong(offset + OFFSET_SEQUENCE, sequence);
+        buffer.putLong(offset + OFFSET_TIMESTAMP, entry.timestamp);
+        byte[] lockId = encodeLockId(entry.lockId);
+        for (int i = 0; i < MAX_LOCK_ID_BYTES; i++) {
+            buffer.put(offset + OFFSET_LOCK_ID + i, lockId[i]);
+        }
+        buffer.putInt(offset + OFFSET_TOTAL, (int) Math.min(entry.total, Integer.MAX_VALUE));
+        for (int i = 0; i < PHASES.length; i++) {
+            long latency = entry.phases[i];
+            int value = latency < 0 ? NO_LATENCY : (int) Math.min(latency, NO_LATENCY - 1);
+            buffer.putShort(offset + OFFSET_PHASES + i * 2, (short) value);
+        }
+        buffer.put(offset + OFFSET_VERSION, RECORD_VERSION);
+    }
+
+    private static Entry decode(ByteBuffer buffer, int offset) {
+        long[] phases = new long[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            int value = buffer.getShort(offset + OFFSET_PHASES + i * 2) & 0xFFFF;
+            phases[i] = value == NO_LATENCY ? -1 : value;
+        }
+        int length = 0;
+        byte[] lockId = new byte[MAX_LOCK_ID_BYTES];
+        while (length < MAX_LOCK_ID_BYTES && (lockId[length] = buffer.get(offset + OFFSET_LOCK_ID + length)) != 0) {
+            length++;
+        }
+        return new Entry(buffer.getLong(offset + OFFSET_SEQUENCE), buffer.getLong(offset + OFFSET_TIMESTAMP),
+                new String(lockId, 0, length, StandardCharsets.UTF_8),
+                valueOf(UnlockSource.values(), buffer.get(offset + OFFSET_SOURCE)),
+                valueOf(Outcome.values(), buffer.get(offset + OFFSET_OUTCOME)),
+                (buffer.get(offset + OFFSET_FLAGS) & FLAG_WARM) != 0,
+                buffer.getShort(offset + OFFSET_GATT_STATUS), buffer.getInt(offset + OFFSET_TOTAL), phases);
+    }
+
+    private static <T> T valueOf(T[] values, byte code) {
+        int index = (code & 0xFF) - 1;
+        return index >= 0 && index < values.length ? values[index] : null;
+    }
+
+    private static byte[] encodeLockId(String lockId) {
+        return Arrays.copyOf(lockId.getBytes(StandardCharsets.UTF_8), MAX_LOCK_ID_BYTES);
+    }
+}
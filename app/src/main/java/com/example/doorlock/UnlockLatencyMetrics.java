@@ -0,0 +1,153 @@
+package com.example.doorlock;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * 开锁耗时统计，区分热连接（复用保持的连接）与冷连接（重新扫描/连接/发现服务）。
+ * 耗时从收到开锁指令开始，到门锁确认写入为止。
+ * 门锁支持动作通知时另外统计从发出写入到门锁开始动作的耗时。
+ * 冷连接另外记录连接尝试次数（含失败后的重试），以及重试之后才成功的开锁耗时。
+ */
+public class UnlockLatencyMetrics {
+    private static final String TAG = "UnlockLatencyMetrics";
+    private static final String PREFS_NAME = "UnlockMetrics";
+    private static final String KEY_COLD_ATTEMPTS = "cold_attempts";
+    private static UnlockLatencyMetrics instance;
+
+    private final SharedPreferences prefs;
+    private final Stat warm;
+    private final Stat cold;
+    private final Stat actuation;
+    private final Stat retried;
+    // 成功的冷连接开锁一共发起的连接次数
+    private long coldAttempts;
+
+    private UnlockLatencyMetrics(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        warm = new Stat("warm");
+        cold = new Stat("cold");
+        actuation = new Stat("actuation");
+        retried = new Stat("retried");
+        warm.load(prefs);
+        cold.load(prefs);
+        actuation.load(prefs);
+        retried.load(prefs);
+        coldAttempts = prefs.getLong(KEY_COLD_ATTEMPTS, 0);
+    }
+
+    public static synchronized UnlockLatencyMetrics getInstance(Context context) {
+        if (instance == null) {
+            instance = new UnlockLatencyMetrics(context);
+        }
+        return instance;
+    }
+
+    // attempts 为这次开锁发起的连接次数，复用连接时为 0
+    public synchronized void record(boolean isWarm, long latencyMs, int attempts) {
+        Stat stat = isWarm ? warm : cold;
+        stat.add(latencyMs);
+
+        SharedPreferences.Editor editor = prefs.edit();
+        stat.save(editor);
+        if (!isWarm) {
+            coldAttempts += Math.max(1, attempts);
+            editor.putLong(KEY_COLD_ATTEMPTS, coldAttempts);
+        }
+        if (attempts > 1) {
+            retried.add(latencyMs);
+            retried.save(editor);
+        }
+        editor.apply();
+
+        Log.d(TAG, (isWarm ? "热连接" : "冷连接") + "开锁耗时: " + latencyMs + "ms, 连接 " + attempts + " 次, "
+                + getSummary());
+    }
+
+    public synchronized void recordActuation(long latencyMs) {
+        actuation.add(latencyMs);
+
+        SharedPreferences.Editor editor = prefs.edit();
+        actuation.save(editor);
+        editor.apply();
+
+        Log.d(TAG, "写入到门锁动作耗时: " + latencyMs + "ms");
+    }
+
+    public synchronized String getSummary() {
+        return String.format(Locale.ROOT, "热连接 %s | 冷连接 %s (平均连接 %.2f 次) | 重试后成功 %s | 写入到动作 %s",
+                warm, cold, cold.count == 0 ? 0.0 : (double) coldAttempts / cold.count, retried, actuation);
+    }
+
+    public synchronized long getWarmAverage() {
+        return warm.average();
+    }
+
+    public synchronized long getColdAverage() {
+        return cold.average();
+    }
+
+    public synchronized void reset() {
+        warm.clear();
+        cold.clear();
+        actuation.clear();
+        retried.clear();
+        coldAttempts = 0;
+        prefs.edit().clear().apply();
+    }
+
+    private static final class Stat {
+        private final String key;
+        private long count;
+        private long total;
+        private long min;
+        private long max;
+
+        Stat(String key) {
+            this.key = key;
+        }
+
+        void add(long value) {
+            if (count == 0 || value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+            count++;
+            total += value;
+        }
+
+        long average() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        void clear() {
+            count = total = min = max = 0;
+        }
+
+        void load(SharedPreferences prefs) {
+            count = prefs.getLong(key + "_count", 0);
+            total = prefs.getLong(key + "_total", 0);
+            min = prefs.getLong(key + "_min", 0);
+            max = prefs.getLong(key + "_max", 0);
+        }
+
+        void save(SharedPreferences.Editor editor) {
+            editor.putLong(key + "_count", count);
+            editor.putLong(key + "_total", total);
+            editor.putLong(key + "_min", min);
+            editor.putLong(key + "_max", max);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d次, 平均%dms, 最小%dms, 最大%dms", count, average(), min, max);
+        }
+    }
+}
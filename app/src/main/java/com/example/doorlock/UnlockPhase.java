@@ -0,0 +1,24 @@
+package com.example.doorlock;
+
+/**
+ * 一次开锁经过的各个阶段，按发生顺序排列。
+ */
+public enum UnlockPhase {
+    SERVICE_START("服务收到指令"),
+    SCAN_START("开始扫描"),
+    SCAN_HIT("扫描命中"),
+    CONNECTED("连接建立"),
+    SERVICES_DISCOVERED("服务发现完成"),
+    WRITE_ISSUED("发出写入"),
+    WRITE_ACKED("写入确认");
+
+    private final String label;
+
+    UnlockPhase(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.doorlock;
+
+/**
+ * 开锁请求的入口，记录在开锁日志里。新的入口只能加在末尾，日志按序号保存。
+ */
+public enum UnlockSource {
+    WIDGET("小组件"),
+    APP("主界面"),
+    GROUP("全部开锁");
+
+    private final String label;
+
+    UnlockSource(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
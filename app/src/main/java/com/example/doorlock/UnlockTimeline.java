@@ -0,0 +1,102 @@
+package com.example.doorlock;
+
+import java.util.Locale;
+
+/**
+ * 单次开锁的时间线：每个阶段发生的时间点（毫秒，-1 表示未经过该阶段）。
+ */
+public class UnlockTimeline {
+    private static final UnlockPhase[] PHASES = UnlockPhase.values();
+
+    private final long[] timestamps = new long[PHASES.length];
+    private long wallClockStart;
+    private boolean success;
+    private boolean finished;
+
+    public UnlockTimeline() {
+        reset(0);
+    }
+
+    void reset(long wallClockStart) {
+        java.util.Arrays.fill(timestamps, -1);
+        this.wallClockStart = wallClockStart;
+        success = false;
+        finished = false;
+    }
+
+    void mark(UnlockPhase phase, long time) {
+        timestamps[phase.ordinal()] = time;
+    }
+
+    void finish(boolean success) {
+        this.success = success;
+        this.finished = true;
+    }
+
+    public boolean has(UnlockPhase phase) {
+        return timestamps[phase.ordinal()] >= 0;
+    }
+
+    public long get(UnlockPhase phase) {
+        return timestamps[phase.ordinal()];
+    }
+
+    // 与上一个经过的阶段之间的耗时，没有上一个阶段或未经过该阶段时返回 -1
+    public long sincePrevious(UnlockPhase phase) {
+        long time = timestamps[phase.ordinal()];
+        if (time < 0) {
+            return -1;
+        }
+        for (int i = phase.ordinal() - 1; i >= 0; i--) {
+            if (timestamps[i] >= 0) {
+                return time - timestamps[i];
+            }
+        }
+        return -1;
+    }
+
+    public long getStart() {
+        for (long timestamp : timestamps) {
+            if (timestamp >= 0) {
+                return timestamp;
+            }
+        }
+        return -1;
+    }
+
+    public long getTotal() {
+        long start = getStart();
+        long end = -1;
+        for (long timestamp : timestamps) {
+            if (timestamp > end) {
+                end = timestamp;
+            }
+        }
+        return start < 0 ? -1 : end - start;
+    }
+
+    public long getWallClockStart() {
+        return wallClockStart;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(success ? "成功" : "失败").append(' ').append(getTotal()).append("ms:");
+        for (UnlockPhase phase : PHASES) {
+            long delta = sincePrevious(phase);
+            if (has(phase)) {
+                sb.append(String.format(Locale.ROOT, " %s+%d", phase.getLabel(), Math.max(delta, 0)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.doorlock;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 开锁全链路耗时追踪。
+ * 服务收到的开锁指令先记录为待定的时间线，准入后才计入，被去抖、合并或拒绝的点击不影响统计；
+ * 最近的时间线保存在固定大小的环形缓冲区中，各阶段相对上一阶段的耗时计入直方图。
+ * 直方图在 {@link #setPersistExecutor} 指定的线程上持久化保存，重启后继续累计。
+ */
+public class UnlockTracer {
+    private static final String TAG = "UnlockTracer";
+    private static final String PREFS_NAME = "UnlockTrace";
+    private static final String KEY_TOTAL = "total";
+    private static final int RING_SIZE = 32;
+    private static final UnlockPhase[] PHASES = UnlockPhase.values();
+    private static UnlockTracer instance;
+
+    private final SharedPreferences prefs;
+    private final UnlockTimeline[] ring = new UnlockTimeline[RING_SIZE];
+    private int ringNext = 0;
+    private int ringCount = 0;
+    private UnlockTimeline current;
+    // 等待准入结果的时间线，准入后与环形缓冲区中的下一个位置交换
+    private UnlockTimeline pending = new UnlockTimeline();
+    private boolean pendingActive = false;
+    private Executor persistExecutor = Runnable::run;
+    private boolean persistScheduled = false;
+    private final Runnable persistRunnable = this::persist;
+
+    private final LatencyHistogram[] phaseHistograms = new LatencyHistogram[PHASES.length];
+    private LatencyHistogram totalHistogram;
+
+    private UnlockTracer(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        for (int i = 0; i < RING_SIZE; i++) {
+            ring[i] = new UnlockTimeline();
+        }
+        for (UnlockPhase phase : PHASES) {
+            phaseHistograms[phase.ordinal()] = LatencyHistogram.decode(prefs.getString(phase.name(), null));
+        }
+        totalHistogram = LatencyHistogram.decode(prefs.getString(KEY_TOTAL, null));
+    }
+
+    public static synchronized UnlockTracer getInstance(Context context) {
+        if (instance == null) {
+            instance = new UnlockTracer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // 直方图的编码和写入交给后台线程，不占用调用 finish 的 BLE 线程
+    public synchronized void setPersistExecutor(Executor executor) {
+        persistExecutor = executor;
+    }
+
+    // 服务收到开锁指令：startTime 为 SystemClock.elapsedRealtime()，准入结果出来之前记录的阶段先放在待定的时间线上
+    public synchronized void prepare(long startTime) {
+        pending.reset(System.currentTimeMillis());
+        pending.mark(UnlockPhase.SERVICE_START, startTime);
+        pendingActive = true;
+    }
+
+    // 请求已准入：待定的时间线成为当前时间线，未结束的上一条按失败处理
+    public synchronized void commit() {
+        if (!pendingActive) {
+            return;
+        }
+        pendingActive = false;
+        if (current != null && !current.isFinished()) {
+            finish(false);
+        }
+        current = pending;
+        pending = ring[ringNext];
+        ring[ringNext] = current;
+        ringNext = (ringNext + 1) % RING_SIZE;
+        if (ringCount < RING_SIZE) {
+            ringCount++;
+        }
+    }
+
+    // 请求被去抖、合并、推迟或拒绝：丢弃待定的时间线，进行中的时间线不受影响
+    public synchronized void discard() {
+        pendingActive = false;
+    }
+
+    // 记录阶段；没有进行中的时间线时忽略
+    public synchronized void mark(UnlockPhase phase) {
+        UnlockTimeline timeline = pendingActive ? pending : current;
+        if (timeline == null || timeline.isFinished()) {
+            return;
+        }
+        timeline.mark(phase, SystemClock.elapsedRealtime());
+    }
+
+    public synchronized void finish(boolean success) {
+        if (current == null || current.isFinished()) {
+            return;
+        }
+        current.finish(success);
+
+        for (UnlockPhase phase : PHASES) {
+            long delta = current.sincePrevious(phase);
+            if (delta >= 0) {
+                phaseHistograms[phase.ordinal()].record(delta);
+            }
+        }
+        if (success) {
+            totalHistogram.record(current.getTotal());
+        }
+        if (!persistScheduled) {
+            persistScheduled = true;
+            persistExecutor.execute(persistRunnable);
+        }
+
+        Log.d(TAG, "开锁时间线: " + current);
+    }
+
+    // 在持久化线程上编码并写入全部直方图；期间结束的开锁由同一次写入一起保存
+    private synchronized void persist() {
+        persistScheduled = false;
+        SharedPreferences.Editor editor = prefs.edit();
+        for (UnlockPhase phase : PHASES) {
+            editor.putString(phase.name(), phaseHistograms[phase.ordinal()].encode());
+        }
+        editor.putString(KEY_TOTAL, totalHistogram.encode());
+        editor.apply();
+    }
+
+    public synchronized LatencyHistogram getPhaseHistogram(UnlockPhase phase) {
+        return LatencyHistogram.decode(phaseHistograms[phase.ordinal()].encode());
+    }
+
+    public synchronized LatencyHistogram getTotalHistogram() {
+        return LatencyHistogram.decode(totalHistogram.encode());
+    }
+
+    // 最近的时间线，最新的在前
+    public synchronized List<String> getRecentTimelines() {
+        List<String> timelines = new ArrayList<>(ringCount);
+        for (int i = 1; i <= ringCount; i++) {
+            UnlockTimeline timeline = ring[(ringNext - i + RING_SIZE) % RING_SIZE];
+            if (timeline.isFinished()) {
+                timelines.add(timeline.toString());
+            }
+        }
+        return timelines;
+    }
+
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : phaseHistograms) {
+            histogram.reset();
+        }
+        totalHistogram.reset();
+        ringCount = 0;
+        current = null;
+        pendingActive = false;
+        prefs.edit().clear().apply();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.doorlock;
+
+import java.util.PriorityQueue;
+
+/**
+ * 虚拟时间调度器，配合 {@link SimulatedLockTransport} 在 JVM 上运行完整开锁流程。
+ * 任务按到期时间顺序执行，时间只在执行任务时前进，不会真正等待。
+ */
+public class VirtualScheduler implements LockScheduler {
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+
+    @Override
+    public void post(Runnable task) {
+        postDelayed(task, 0);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        queue.add(new Task(now + Math.max(delayMs, 0), sequence++, task));
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        queue.removeIf(t -> t.runnable == task);
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    public boolean isIdle() {
+        return queue.isEmpty();
+    }
+
+    // 执行所有到期时间不晚于 now + duration 的任务，然后把时间推进到该时刻
+    public void advanceBy(long duration) {
+        long target = now + duration;
+        while (!queue.isEmpty() && queue.peek().time <= target) {
+            runNext();
+        }
+        now = target;
+    }
+
+    // 执行任务直到队列为空或达到任务数上限（防止周期任务导致死循环）
+    public int runUntilIdle(int maxTasks) {
+        int executed = 0;
+        while (!queue.isEmpty() && executed < maxTasks) {
+            runNext();
+            executed++;
+        }
+        return executed;
+    }
+
+    private void runNext() {
+        Task task = queue.poll();
+        now = Math.max(now, task.time);
+        task.runnable.run();
+    }
+
+    private static final class Task implements Comparable<Task> {
+        final long time;
+        final long sequence;
+        final Runnable runnable;
+
+        Task(long time, long sequence, Runnable runnable) {
+            this.time = time;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
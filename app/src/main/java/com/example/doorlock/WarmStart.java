@@ -0,0 +1,149 @@
+package com.example.doorlock;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.app.Notification;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 进程启动时（打开应用或系统为小组件启动进程）在后台线程上预先准备开锁服务用到的东西：
+ * 配置快照、门锁登记表和统计的 SharedPreferences、BluetoothAdapter、通知渠道和前台服务的通知。
+ * 服务收到开锁指令时直接使用准备好的对象，还没准备好的部分在调用线程上现做，不等待预热线程。
+ * 另外统计从服务收到开锁指令到 BLE 线程发出第一个蓝牙调用的耗时（{@link StartToBleRecorder}），
+ * 由预热线程持久化保存，BLE 线程不读写磁盘。
+ */
+public class WarmStart {
+    private static final String TAG = "WarmStart";
+    private static final String PREFS_NAME = "WarmStart";
+    private static final String KEY_START_TO_BLE = "start_to_ble";
+    private static WarmStart instance;
+
+    private final Context context;
+    // 预热完成后继续用于保存统计，排在预热之后执行
+    private final Handler handler;
+    private volatile BluetoothAdapter adapter;
+    private volatile boolean channelCreated = false;
+    private volatile Notification unlockNotification;
+    private volatile boolean ready = false;
+    private final StartToBleRecorder startToBle;
+
+    private WarmStart(Context context) {
+        this.context = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread("WarmStart", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        startToBle = new StartToBleRecorder(handler::post, new PrefsStore(this.context), message -> Log.w(TAG, message));
+        handler.post(this::warmUp);
+    }
+
+    public static synchronized WarmStart getInstance(Context context) {
+        if (instance == null) {
+            instance = new WarmStart(context);
+        }
+        return instance;
+    }
+
+    private void warmUp() {
+        long begin = SystemClock.elapsedRealtime();
+        // 等待配置快照加载完成，BLE 线程上的首次配置不再等待磁盘
+        BluetoothConfigManager.getInstance(context).getProfiles();
+        getAdapter();
+        // LockSession 创建时会用到，SharedPreferences 首次读取需要读文件
+        LockDeviceRegistry.getInstance(context);
+        UnlockLatencyMetrics.getInstance(context);
+        UnlockTracer.getInstance(context);
+        LinkProfileMetrics.getInstance(context);
+        ensureNotificationChannel();
+        unlockNotification = BluetoothService.buildNotification(context, BluetoothService.UNLOCK_NOTIFICATION_TEXT);
+        startToBle.load();
+        ready = true;
+        Log.d(TAG, "预热完成，耗时 " + (SystemClock.elapsedRealtime() - begin) + "ms");
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // 没有蓝牙时返回 null
+    public BluetoothAdapter getAdapter() {
+        BluetoothAdapter current = adapter;
+        if (current == null) {
+            BluetoothManager manager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+            current = manager != null ? manager.getAdapter() : null;
+            adapter = current;
+        }
+        return current;
+    }
+
+    // 创建通知渠道是跨进程调用，每个进程只需要一次
+    public void ensureNotificationChannel() {
+        if (!channelCreated) {
+            BluetoothService.createNotificationChannel(context);
+            channelCreated = true;
+        }
+    }
+
+    // 开锁期间前台服务的通知，预热还没完成时现做
+    public Notification getUnlockNotification() {
+        Notification notification = unlockNotification;
+        if (notification == null) {
+            ensureNotificationChannel();
+            notification = BluetoothService.buildNotification(context, BluetoothService.UNLOCK_NOTIFICATION_TEXT);
+            unlockNotification = notification;
+        }
+        return notification;
+    }
+
+    // 在 BLE 线程上调用，只提交给预热线程，记录和保存都在那里进行
+    public void recordStartToBle(long latencyMs) {
+        startToBle.record(latencyMs, ready);
+    }
+
+    public LatencyHistogram getStartToBleHistogram() {
+        return startToBle.getHistogram();
+    }
+
+    public void reset() {
+        startToBle.reset();
+    }
+
+    // 第一次用到时才打开 SharedPreferences，通常在预热线程上
+    private static class PrefsStore implements StartToBleRecorder.Store {
+        private final Context context;
+        private SharedPreferences prefs;
+
+        PrefsStore(Context context) {
+            this.context = context;
+        }
+
+        private SharedPreferences prefs() {
+            if (prefs == null) {
+                prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+            }
+            return prefs;
+        }
+
+        @Override
+        public String load() {
+            return prefs().getString(KEY_START_TO_BLE, null);
+        }
+
+        @Override
+        public void save(String encoded) {
+            prefs().edit().putString(KEY_START_TO_BLE, encoded).apply();
+        }
+
+        @Override
+        public void clear() {
+            prefs().edit().clear().apply();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.doorlock;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 小组件渲染：记录每个小组件上次显示的状态，一个帧窗口内的多次状态变化合并为一次渲染，
+ * 只向桌面推送真正变化的小组件。第一次渲染或绑定变化时完整更新（含点击事件），之后只局部更新图标。
+ * 不依赖 Android API，通过 {@link Target} 访问小组件，可以在任意线程调用。
+ */
+public class WidgetRenderer {
+    static final long FRAME_WINDOW = 16;
+    // 绑定全部门锁的小组件在任意一把门锁打开时显示为打开
+    public static final String ALL_LOCKS = "*";
+
+    public interface Target {
+        int[] getWidgetIds();
+
+        String getBoundLock(int widgetId);
+
+        // 重建小组件的全部视图和点击事件
+        void renderFull(int widgetId, String boundLock, boolean unlocked);
+
+        // 只更新门锁图标
+        void renderPartial(int widgetId, boolean unlocked);
+    }
+
+    private final LockScheduler scheduler;
+    private final Target target;
+    private final Set<String> unlockedLocks = new HashSet<>();
+    // 小组件 id → 上次渲染的结果；null 表示需要完整渲染
+    private final Map<Integer, Rendered> rendered = new TreeMap<>();
+    private boolean widgetsLoaded = false;
+    private boolean flushScheduled = false;
+    private final Runnable flushRunnable = this::flush;
+
+    public WidgetRenderer(LockScheduler scheduler, Target target) {
+        this.scheduler = scheduler;
+        this.target = target;
+    }
+
+    public synchronized void setLockState(String lockId, boolean unlocked) {
+        boolean changed = unlocked ? unlockedLocks.add(lockId) : unlockedLocks.remove(lockId);
+        if (changed) {
+            scheduleFlush();
+        }
+    }
+
+    // 新增、重新绑定或被桌面重建的小组件，下次完整渲染
+    public synchronized void invalidate(int[] widgetIds) {
+        for (int widgetId : widgetIds) {
+            rendered.put(widgetId, null);
+        }
+        scheduleFlush();
+    }
+
+    public synchronized void forget(int[] widgetIds) {
+        for (int widgetId : widgetIds) {
+            rendered.remove(widgetId);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.postDelayed(flushRunnable, FRAME_WINDOW);
+        }
+    }
+
+    // 锁内只取出快照，读取绑定和推送 RemoteViews（跨进程调用桌面）都在锁外，
+    // 避免桌面响应慢时阻塞在 BLE 线程上调用的 setLockState
+    private void flush() {
+        boolean loadWidgets;
+        synchronized (this) {
+            flushScheduled = false;
+            loadWidgets = !widgetsLoaded;
+            widgetsLoaded = true;
+        }
+        if (loadWidgets) {
+            // 进程启动后第一次渲染时查询一次桌面上的小组件，之后由 invalidate/forget 维护
+            int[] widgetIds = target.getWidgetIds();
+            synchronized (this) {
+                for (int widgetId : widgetIds) {
+                    if (!rendered.containsKey(widgetId)) {
+                        rendered.put(widgetId, null);
+                    }
+                }
+            }
+        }
+        Map<Integer, Rendered> snapshot;
+        Set<String> unlocked;
+        synchronized (this) {
+            snapshot = new TreeMap<>(rendered);
+            unlocked = new HashSet<>(unlockedLocks);
+        }
+        Map<Integer, Rendered> results = new TreeMap<>();
+        for (Map.Entry<Integer, Rendered> entry : snapshot.entrySet()) {
+            int widgetId = entry.getKey();
+            Rendered last = entry.getValue();
+            if (last == null) {
+                String boundLock = target.getBoundLock(widgetId);
+                boolean state = isUnlocked(unlocked, boundLock);
+                target.renderFull(widgetId, boundLock, state);
+                results.put(widgetId, new Rendered(boundLock, state));
+                continue;
+            }
+            boolean state = isUnlocked(unlocked, last.boundLock);
+            if (state != last.unlocked) {
+                target.renderPartial(widgetId, state);
+                results.put(widgetId, new Rendered(last.boundLock, state));
+            }
+        }
+        synchronized (this) {
+            for (Map.Entry<Integer, Rendered> entry : results.entrySet()) {
+                int widgetId = entry.getKey();
+                // 渲染期间被 invalidate 或 forget 的小组件保持原状，由下一帧处理
+                if (rendered.containsKey(widgetId) && rendered.get(widgetId) == snapshot.get(widgetId)) {
+                    rendered.put(widgetId, entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static boolean isUnlocked(Set<String> unlockedLocks, String boundLock) {
+        return ALL_LOCKS.equals(boundLock) ? !unlockedLocks.isEmpty() : unlockedLocks.contains(boundLock);
+    }
+
+    private static class Rendered {
+        final String boundLock;
+        final boolean unlocked;
+
+        Rendered(String boundLock, boolean unlocked) {
+            this.boundLock = boundLock;
+            this.unlocked = unlocked;
+        }
+    }
+}
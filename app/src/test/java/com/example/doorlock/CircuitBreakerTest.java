@@ -0,0 +1,62 @@
+package com.example.doorlock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+    private final CircuitBreaker breaker = new CircuitBreaker();
+
+    @Test
+    public void consecutiveFailures_openBreaker() {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+            breaker.onFailure(0);
+        }
+        assertTrue(breaker.allow(0));
+        breaker.onFailure(0);
+        assertFalse(breaker.allow(0));
+        assertEquals(CircuitBreaker.OPEN_TIME, breaker.getRemaining(0));
+    }
+
+    @Test
+    public void success_resetsFailureCount() {
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedTrial_doublesOpenTime() {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breaker.onFailure(0);
+        }
+        long now = CircuitBreaker.OPEN_TIME;
+        assertTrue(breaker.allow(now));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onFailure(now);
+        assertFalse(breaker.allow(now));
+        assertEquals(CircuitBreaker.OPEN_TIME * 2, breaker.getRemaining(now));
+
+        now += CircuitBreaker.OPEN_TIME * 2;
+        assertTrue(breaker.allow(now));
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void openTime_isCapped() {
+        long now = 0;
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breaker.onFailure(now);
+        }
+        for (int i = 0; i < 10; i++) {
+            now += breaker.getRemaining(now);
+            assertTrue(breaker.allow(now));
+            breaker.onFailure(now);
+        }
+        assertEquals(CircuitBreaker.MAX_OPEN_TIME, breaker.getRemaining(now));
+    }
+}
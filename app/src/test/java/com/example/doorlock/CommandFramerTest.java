@@ -0,0 +1,68 @@
+package com.example.doorlock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CommandFramerTest {
+
+    @Test
+    public void split_thenReassemble() {
+        byte[] command = UnlockCommandCodec.encodeJson("450", "300");
+        byte[][] fragments = CommandFramer.split(command, 20, 7);
+
+        assertEquals(4, fragments.length);
+        CommandFramer.Reassembler reassembler = new CommandFramer.Reassembler();
+        for (int i = 0; i < fragments.length - 1; i++) {
+            assertTrue(fragments[i].length <= 20);
+            assertNull(reassembler.accept(fragments[i]));
+        }
+        assertArrayEquals(command, reassembler.accept(fragments[fragments.length - 1]));
+    }
+
+    @Test
+    public void commands_areNotFragments() {
+        assertFalse(CommandFramer.isFragment(UnlockCommandCodec.encodeJson("450", "300")));
+        assertFalse(CommandFramer.isFragment(UnlockCommandCodec.encodeBinary(450, 300, 1)));
+        assertNull(new CommandFramer.Reassembler().accept(UnlockCommandCodec.encodeBinary(450, 300, 1)));
+    }
+
+    @Test
+    public void missingFragment_discardsMessage() {
+        byte[] command = UnlockCommandCodec.encodeJson("450", "300");
+        byte[][] fragments = CommandFramer.split(command, 20, 1);
+        CommandFramer.Reassembler reassembler = new CommandFramer.Reassembler();
+
+        reassembler.accept(fragments[0]);
+        reassembler.accept(fragments[2]);
+        assertNull(reassembler.accept(fragments[3]));
+        assertEquals(1, reassembler.getDiscardedCount());
+
+        // 新消息从序号 0 重新开始
+        byte[][] retry = CommandFramer.split(command, 20, 2);
+        reassembler.accept(retry[0]);
+        reassembler.accept(retry[1]);
+        reassembler.accept(retry[2]);
+        assertArrayEquals(command, reassembler.accept(retry[3]));
+    }
+
+    @Test
+    public void newMessage_replacesIncompleteOne() {
+        byte[] first = UnlockCommandCodec.encodeJson("450", "300");
+        byte[] second = UnlockCommandCodec.encodeJson("500", "300");
+        CommandFramer.Reassembler reassembler = new CommandFramer.Reassembler();
+
+        reassembler.accept(CommandFramer.split(first, 20, 1)[0]);
+        byte[] result = null;
+        for (byte[] fragment : CommandFramer.split(second, 20, 2)) {
+            result = reassembler.accept(fragment);
+        }
+        assertArrayEquals(second, result);
+        assertEquals(1, reassembler.getDiscardedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyFragments_rejected() {
+        CommandFramer.split(new byte[CommandFramer.MAX_MESSAGE_LENGTH], CommandFramer.HEADER_LENGTH + 1, 0);
+    }
+}
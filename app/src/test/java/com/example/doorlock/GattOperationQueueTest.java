@@ -0,0 +1,350 @@
+package com.example.doorlock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class GattOperationQueueTest {
+    private static final UUID SERVICE = NordicUartService.SERVICE_UUID;
+    private static final UUID RX = NordicUartService.RX_CHARACTERISTIC_UUID;
+    private static final UUID TX = NordicUartService.TX_CHARACTERISTIC_UUID;
+    private static final byte[] PAYLOAD = UnlockCommandCodec.encodeBinary(450, 300, 1);
+
+    private VirtualScheduler scheduler;
+    private SimulatedLockTransport lock;
+    private GattOperationQueue queue;
+    private RecordingCallback callback;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        lock = new SimulatedLockTransport(scheduler, 42)
+                .setLatency(100, 400, 600, 30, 0);
+        queue = new GattOperationQueue(lock, scheduler);
+        callback = new RecordingCallback();
+        queue.setCallback(callback);
+    }
+
+    private void connectAndDiscover() {
+        assertTrue(queue.connect(SimulatedLockTransport.DEFAULT_ADDRESS, LockDeviceRecord.ADDRESS_TYPE_UNKNOWN, false));
+        assertTrue(queue.discoverServices());
+        scheduler.advanceBy(2000);
+        callback.events.clear();
+    }
+
+    @Test
+    public void backToBackOperations_areSerialized() {
+        connectAndDiscover();
+
+        assertTrue(queue.write(SERVICE, RX, PAYLOAD, false));
+        assertTrue(queue.readRssi());
+        assertTrue(queue.requestMtu(247));
+        assertEquals(3, queue.size());
+        scheduler.advanceBy(1000);
+
+        assertEquals(Arrays.asList("write:0", "rssi:0", "mtu:247"), callback.events);
+        assertEquals(0, lock.getRejectedOperations());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void withoutQueue_secondOperationIsRejected() {
+        lock.setCallback(callback);
+        lock.connect(SimulatedLockTransport.DEFAULT_ADDRESS, LockDeviceRecord.ADDRESS_TYPE_UNKNOWN, false);
+        scheduler.advanceBy(500);
+        lock.discoverServices();
+        scheduler.advanceBy(1000);
+
+        assertTrue(lock.write(SERVICE, RX, PAYLOAD, false));
+        assertFalse(lock.readRssi());
+        assertEquals(1, lock.getRejectedOperations());
+    }
+
+    @Test
+    public void write_jumpsAheadOfWaitingOperations() {
+        connectAndDiscover();
+
+        queue.readRssi();
+        queue.requestMtu(247);
+        queue.write(SERVICE, RX, PAYLOAD, false);
+        queue.write(SERVICE, RX, PAYLOAD, false);
+        scheduler.advanceBy(1000);
+
+        assertEquals(Arrays.asList("rssi:0", "write:0", "write:0", "mtu:247"), callback.events);
+    }
+
+    @Test
+    public void subscribe_keepsOrderWithWrites() {
+        lock.setNotifications(true, 20, 0);
+        connectAndDiscover();
+
+        queue.readRssi();
+        queue.enableNotifications(SERVICE, TX);
+        queue.write(SERVICE, RX, PAYLOAD, false);
+        scheduler.advanceBy(2000);
+
+        // 订阅在开锁写入之前完成，门锁的开始和完成通知都能收到
+        assertEquals(Arrays.asList("rssi:0", "notify:0", "write:0",
+                "event:" + LockEvent.ACTUATION_START, "event:" + LockEvent.ACTUATION_DONE), callback.events);
+    }
+
+    @Test
+    public void slowWrite_timesOutAndLateAckIsDropped() {
+        connectAndDiscover();
+        lock.setLatency(100, 400, 600, GattOperationQueue.WRITE_TIMEOUT * 2, 0);
+
+        queue.write(SERVICE, RX, PAYLOAD, false);
+        scheduler.advanceBy(GattOperationQueue.WRITE_TIMEOUT);
+        assertEquals(Arrays.asList("write:" + LockTransport.GATT_TIMEOUT), callback.events);
+
+        scheduler.advanceBy(GattOperationQueue.WRITE_TIMEOUT * 2);
+        // 迟到的写入确认不会再交给调用方
+        assertEquals(1, callback.events.stream().filter(e -> e.startsWith("write")).count());
+    }
+
+    @Test
+    public void unansweredConnect_timesOutAndCloses() {
+        lock.setLatency(100, GattOperationQueue.CONNECT_TIMEOUT * 2, 600, 30, 0);
+
+        queue.connect(SimulatedLockTransport.DEFAULT_ADDRESS, LockDeviceRecord.ADDRESS_TYPE_UNKNOWN, false);
+        queue.discoverServices();
+        scheduler.advanceBy(GattOperationQueue.CONNECT_TIMEOUT);
+
+        assertEquals(Arrays.asList("connected:" + LockTransport.GATT_TIMEOUT + ":false"), callback.events);
+        assertEquals(0, queue.size());
+
+        scheduler.advanceBy(GattOperationQueue.CONNECT_TIMEOUT * 2);
+        assertFalse(lock.isConnected());
+        assertEquals(1, callback.events.size());
+    }
+
+    @Test
+    public void linkLoss_cancelsWaitingOperations() {
+        connectAndDiscover();
+
+        queue.readRssi();
+        queue.requestMtu(247);
+        lock.dropLink();
+        scheduler.advanceBy(1000);
+
+        assertEquals(Arrays.asList("connected:8:false"), callback.events);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void lateAckAfterDeadline_doesNotCompleteNextWrite() {
+        // 系统的回调由测试手动送达，模拟超时后才到达的写入确认
+        ManualTransport manual = new ManualTransport();
+        GattOperationQueue manualQueue = new GattOperationQueue(manual, scheduler);
+        manualQueue.setCallback(callback);
+
+        manualQueue.write(SERVICE, RX, PAYLOAD, false);
+        manualQueue.write(SERVICE, RX, PAYLOAD, false);
+        scheduler.advanceBy(GattOperationQueue.WRITE_TIMEOUT);
+        assertEquals(Arrays.asList("write:" + LockTransport.GATT_TIMEOUT), callback.events);
+        assertEquals(2, manual.started);
+        assertEquals(1, manualQueue.size());
+
+        // 第一次写入迟到的确认属于已超时的操作，不能结束第二次写入
+        manualQueue.onCharacteristicWritten(RX, LockTransport.GATT_ERROR);
+        assertEquals(1, callback.events.size());
+        assertEquals(1, manualQueue.size());
+
+        manualQueue.onCharacteristicWritten(RX, LockTransport.GATT_SUCCESS);
+        assertEquals(Arrays.asList("write:" + LockTransport.GATT_TIMEOUT, "write:0"), callback.events);
+        assertEquals(0, manualQueue.size());
+    }
+
+    @Test
+    public void callbackForOtherCharacteristic_isDropped() {
+        ManualTransport manual = new ManualTransport();
+        GattOperationQueue manualQueue = new GattOperationQueue(manual, scheduler);
+        manualQueue.setCallback(callback);
+
+        manualQueue.write(SERVICE, RX, PAYLOAD, false);
+        manualQueue.onCharacteristicWritten(TX, LockTransport.GATT_SUCCESS);
+        assertTrue(callback.events.isEmpty());
+        assertEquals(1, manualQueue.size());
+
+        manualQueue.onCharacteristicWritten(RX, LockTransport.GATT_SUCCESS);
+        assertEquals(Arrays.asList("write:0"), callback.events);
+    }
+
+    @Test
+    public void cancel_removesWaitingAndDropsLateCallback() {
+        ManualTransport manual = new ManualTransport();
+        GattOperationQueue manualQueue = new GattOperationQueue(manual, scheduler);
+        manualQueue.setCallback(callback);
+
+        manualQueue.write(SERVICE, RX, PAYLOAD, false);
+        manualQueue.write(SERVICE, RX, PAYLOAD, false);
+        manualQueue.readRssi();
+        assertEquals(2, manualQueue.cancel(RX));
+        // 读取信号强度接着执行，已取消的操作不回调
+        assertEquals(2, manual.started);
+        assertEquals(1, manualQueue.size());
+        assertTrue(callback.events.isEmpty());
+
+        manualQueue.onCharacteristicWritten(RX, LockTransport.GATT_SUCCESS);
+        assertTrue(callback.events.isEmpty());
+        manualQueue.onRssiRead(-60, LockTransport.GATT_SUCCESS);
+        assertEquals(Arrays.asList("rssi:0"), callback.events);
+
+        scheduler.advanceBy(GattOperationQueue.WRITE_TIMEOUT * 2);
+        assertEquals(1, callback.events.size());
+    }
+
+    // 所有操作都能立即发出，回调由测试调用队列的回调方法送达
+    private static class ManualTransport implements LockTransport {
+        int started;
+
+        @Override
+        public void setCallback(Callback callback) {
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean startScan(LockScanMatcher matcher) {
+            return true;
+        }
+
+        @Override
+        public void stopScan() {
+        }
+
+        @Override
+        public boolean connect(String address, int addressType, boolean prefer2mPhy) {
+            started++;
+            return true;
+        }
+
+        @Override
+        public boolean discoverServices() {
+            started++;
+            return true;
+        }
+
+        @Override
+        public boolean hasCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+            return true;
+        }
+
+        @Override
+        public boolean restoreCharacteristic(UUID serviceUuid, UUID characteristicUuid, boolean writeWithoutResponse) {
+            return false;
+        }
+
+        @Override
+        public boolean supportsWriteWithoutResponse(UUID serviceUuid, UUID characteristicUuid) {
+            return false;
+        }
+
+        @Override
+        public boolean write(UUID serviceUuid, UUID characteristicUuid, byte[] value, boolean withoutResponse) {
+            started++;
+            return true;
+        }
+
+        @Override
+        public boolean enableNotifications(UUID serviceUuid, UUID characteristicUuid) {
+            started++;
+            return true;
+        }
+
+        @Override
+        public boolean requestMtu(int mtu) {
+            started++;
+            return true;
+        }
+
+        @Override
+        public boolean readRssi() {
+            started++;
+            return true;
+        }
+
+        @Override
+        public boolean readPhy() {
+            return true;
+        }
+
+        @Override
+        public boolean requestConnectionPriority(int priority) {
+            return true;
+        }
+
+        @Override
+        public boolean setPreferredPhy(int phy) {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class RecordingCallback implements LockTransport.Callback {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onScanResult(String address, String name, List<UUID> serviceUuids, int rssi, int addressType) {
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+        }
+
+        @Override
+        public void onConnectionStateChanged(int status, boolean connected) {
+            events.add("connected:" + status + ":" + connected);
+        }
+
+        @Override
+        public void onServicesDiscovered(int status) {
+            events.add("discovered:" + status);
+        }
+
+        @Override
+        public void onCharacteristicWritten(UUID characteristicUuid, int status) {
+            events.add("write:" + status);
+        }
+
+        @Override
+        public void onNotificationsEnabled(UUID characteristicUuid, int status) {
+            events.add("notify:" + status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(UUID characteristicUuid, byte[] value) {
+            events.add("event:" + LockEvent.decode(value).getType());
+        }
+
+        @Override
+        public void onRssiRead(int rssi, int status) {
+            events.add("rssi:" + status);
+        }
+
+        @Override
+        public void onPhyRead(int txPhy, int rxPhy, int status) {
+        }
+
+        @Override
+        public void onMtuChanged(int mtu, int status) {
+            events.add("mtu:" + mtu);
+        }
+
+        @Override
+        public void onConnectionUpdated(int interval, int latency, int timeout, int status) {
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.doorlock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles_withinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getValueAtPercentile(50), 500 * 0.07);
+        assertEquals(950, histogram.getValueAtPercentile(95), 950 * 0.07);
+        assertEquals(990, histogram.getValueAtPercentile(99), 990 * 0.07);
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getMin());
+    }
+
+    @Test
+    public void smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(7);
+
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void encodeDecode_roundTrip() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(12);
+        histogram.record(480);
+        histogram.record(2300);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        LatencyHistogram decoded = LatencyHistogram.decode(histogram.encode());
+
+        assertEquals(histogram.getCount(), decoded.getCount());
+        assertEquals(histogram.getMax(), decoded.getMax());
+        assertEquals(histogram.getValueAtPercentile(50), decoded.getValueAtPercentile(50));
+        assertEquals(0, LatencyHistogram.decode("garbage").getCount());
+    }
+
+    @Test
+    public void bucketBounds_coverValue() {
+        for (long value = 0; value < 1_000_000; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestEquivalentValue(index - 1) < value);
+            }
+        }
+    }
+}
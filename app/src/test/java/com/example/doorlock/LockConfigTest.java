@@ -0,0 +1,53 @@
+package com.example.doorlock;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LockConfigTest {
+
+    private static LockConfig config(String deviceName, String pressTime, String commandFormat) {
+        return new LockConfig(LockConfig.DEFAULT_ID, deviceName, NordicUartService.SERVICE_UUID, NordicUartService.RX_CHARACTERISTIC_UUID,
+                pressTime, "300", false, 30000, commandFormat);
+    }
+
+    @Test
+    public void binaryFormat_isPreEncoded() {
+        LockConfig config = config("ESP32Lock", "450", UnlockCommandCodec.FORMAT_BINARY);
+
+        assertEquals(UnlockCommandCodec.FORMAT_BINARY, config.getCommandFormat());
+        byte[] payload = config.newUnlockPayload();
+        assertTrue(UnlockCommandCodec.isBinary(payload));
+        assertEquals(450, UnlockCommandCodec.readPressTime(payload));
+    }
+
+    @Test
+    public void outOfRangeBinary_fallsBackToJson() {
+        LockConfig config = config("ESP32Lock", "70000", UnlockCommandCodec.FORMAT_BINARY);
+
+        assertEquals(UnlockCommandCodec.FORMAT_JSON, config.getCommandFormat());
+        assertFalse(UnlockCommandCodec.isBinary(config.newUnlockPayload()));
+    }
+
+    @Test
+    public void payloadCopies_doNotShareState() {
+        LockConfig config = config("ESP32Lock", "450", UnlockCommandCodec.FORMAT_BINARY);
+
+        byte[] first = config.newUnlockPayload();
+        UnlockCommandCodec.writeSequence(first, 7);
+
+        assertEquals(0, UnlockCommandCodec.readSequence(config.newUnlockPayload()));
+    }
+
+    @Test
+    public void sameTarget_ignoresTimingChanges() {
+        LockConfig base = config("ESP32Lock", "450", UnlockCommandCodec.FORMAT_JSON);
+
+        assertTrue(base.hasSameTarget(config("ESP32Lock", "600", UnlockCommandCodec.FORMAT_BINARY)));
+        assertFalse(base.hasSameTarget(config("FrontDoor", "450", UnlockCommandCodec.FORMAT_JSON)));
+        assertFalse(base.hasSameTarget(new LockConfig(LockConfig.DEFAULT_ID, "ESP32Lock", UUID.randomUUID(),
+                NordicUartService.RX_CHARACTERISTIC_UUID, "450", "300", false, 30000, UnlockCommandCodec.FORMAT_JSON)));
+    }
+}
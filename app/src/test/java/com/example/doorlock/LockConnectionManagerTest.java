@@ -0,0 +1,270 @@
+package com.example.doorlock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LockConnectionManagerTest {
+    private static final List<String> LOCKS = Arrays.asList("front", "back", "garage");
+    // 广播间隔 + 候选窗口 + 连接 + 发现服务 + 写入
+    private static final long COLD_UNLOCK = 100 + LockController.CANDIDATE_WINDOW + 400 + 600 + 30;
+
+    private VirtualScheduler scheduler;
+    private final Map<String, SimulatedLockTransport> transports = new HashMap<>();
+    private final Map<String, Long> latencies = new HashMap<>();
+    private int maxActive;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        for (int i = 0; i < LOCKS.size(); i++) {
+            String id = LOCKS.get(i);
+            transports.put(id, new SimulatedLockTransport(scheduler, 42 + i)
+                    .setIdentity("24:0A:C4:00:00:0" + (i + 1), "Lock-" + id)
+                    .setLatency(100, 400, 600, 30, 0));
+        }
+    }
+
+    private LockConnectionManager newManager(int maxConnections) {
+        LockConnectionManager manager = new LockConnectionManager(scheduler, new LockConnectionManager.Factory() {
+            @Override
+            public LockTransport createTransport(String lockId) {
+                return transports.get(lockId);
+            }
+
+            @Override
+            public LockController.Host createHost(String lockId) {
+                return new LatencyHost(lockId);
+            }
+        }, maxConnections);
+        for (String id : LOCKS) {
+            manager.get(id).configure("Lock-" + id, NordicUartService.SERVICE_UUID,
+                    NordicUartService.RX_CHARACTERISTIC_UUID, false, 30000,
+                    () -> UnlockCommandCodec.encodeBinary(450, 300, 1));
+        }
+        manager.addListener((lockId, state) -> maxActive = Math.max(maxActive, manager.getActiveCount()));
+        return manager;
+    }
+
+    @Test
+    public void groupUnlock_finishesInTimeOfSlowestLock() {
+        LockConnectionManager manager = newManager(LockConnectionManager.DEFAULT_MAX_CONNECTIONS);
+        GroupResult result = new GroupResult();
+
+        manager.unlockGroup(LOCKS, result);
+        scheduler.advanceBy(10000);
+
+        assertEquals(LOCKS, result.succeeded);
+        assertTrue(result.failed.isEmpty());
+        assertEquals(COLD_UNLOCK, result.elapsed);
+        // 依次开锁需要各把门锁时间之和
+        long sequential = latencies.values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(COLD_UNLOCK * LOCKS.size(), sequential);
+        for (String id : LOCKS) {
+            assertEquals(1, transports.get(id).getReceivedWrites().size());
+        }
+    }
+
+    @Test
+    public void connectionLimit_queuesExtraLocks() {
+        LockConnectionManager manager = newManager(2);
+        GroupResult result = new GroupResult();
+
+        manager.unlockGroup(LOCKS, result);
+        assertEquals(2, manager.getActiveCount());
+        assertEquals(1, manager.getWaitingCount());
+        scheduler.advanceBy(20000);
+
+        assertEquals(3, result.succeeded.size());
+        assertEquals(2, maxActive);
+        assertEquals(0, manager.getWaitingCount());
+        // 第三把门锁要等前面的连接断开后才开始
+        assertTrue(result.elapsed > COLD_UNLOCK + LockController.WIDGET_REVERT_DELAY);
+    }
+
+    @Test
+    public void unreachableLock_isReportedAsFailed() {
+        transports.get("garage").setAdvertising(false, false);
+        LockConnectionManager manager = newManager(LockConnectionManager.DEFAULT_MAX_CONNECTIONS);
+        GroupResult result = new GroupResult();
+
+        manager.unlockGroup(LOCKS, result);
+        scheduler.advanceBy(LockController.SCAN_TIMEOUT + 1000);
+
+        assertEquals(Arrays.asList("front", "back"), result.succeeded);
+        assertEquals(Arrays.asList("garage"), result.failed);
+        assertEquals(LockController.SCAN_TIMEOUT, result.elapsed);
+    }
+
+    @Test
+    public void removedLock_dropsWaitingRequest() {
+        LockConnectionManager manager = newManager(1);
+
+        manager.requestUnlock("front");
+        manager.requestUnlock("back");
+        assertEquals(1, manager.getWaitingCount());
+        manager.remove("back");
+        scheduler.advanceBy(10000);
+
+        assertEquals(0, manager.getWaitingCount());
+        assertEquals(1, transports.get("front").getReceivedWrites().size());
+        assertTrue(transports.get("back").getReceivedWrites().isEmpty());
+    }
+
+    @Test
+    public void repeatedTaps_shareOneUnlock() {
+        LockConnectionManager manager = newManager(LockConnectionManager.DEFAULT_MAX_CONNECTIONS);
+        SimulatedLockTransport front = transports.get("front");
+
+        assertEquals(UnlockAdmission.Decision.ADMITTED, manager.requestUnlock("front"));
+        assertEquals(UnlockAdmission.Decision.COALESCED, manager.requestUnlock("front"));
+        scheduler.advanceBy(1000);
+        assertEquals(UnlockAdmission.Decision.COALESCED, manager.requestUnlock("front"));
+        scheduler.advanceBy(COLD_UNLOCK - 1000 + 100);
+
+        // 开锁成功后紧接着的点击被忽略
+        assertEquals(UnlockAdmission.Decision.DEBOUNCED, manager.requestUnlock("front"));
+        assertEquals(1, front.getConnectAttempts());
+        assertEquals(1, front.getReceivedWrites().size());
+
+        scheduler.advanceBy(UnlockAdmission.DEBOUNCE_WINDOW);
+        assertEquals(UnlockAdmission.Decision.ADMITTED, manager.requestUnlock("front"));
+    }
+
+    @Test
+    public void shortCooldown_defersWithoutConnecting() {
+        SimulatedLockTransport front = transports.get("front").setFeatureCharacteristic(true).setNotifications(true, 20, 3000);
+        LockConnectionManager manager = newManager(LockConnectionManager.DEFAULT_MAX_CONNECTIONS);
+        manager.requestUnlock("front");
+        // 动作在 1480～2230，之后冷却到 5230
+        scheduler.advanceBy(4000);
+        assertEquals(1, front.getConnectAttempts());
+
+        assertEquals(UnlockAdmission.Decision.DEFERRED, manager.requestUnlock("front"));
+        assertEquals(UnlockAdmission.Decision.COALESCED, manager.requestUnlock("front"));
+        assertTrue(manager.hasWorkInProgress());
+        scheduler.advanceBy(1200);
+        assertEquals(1, front.getConnectAttempts());
+
+        scheduler.advanceBy(5000);
+        assertEquals(2, front.getConnectAttempts());
+        assertEquals(2, front.getActuationCount());
+    }
+
+    @Test
+    public void longCooldown_isRejectedImmediately() {
+        SimulatedLockTransport front = transports.get("front").setFeatureCharacteristic(true).setNotifications(true, 20, 10000);
+        LockConnectionManager manager = newManager(LockConnectionManager.DEFAULT_MAX_CONNECTIONS);
+        manager.requestUnlock("front");
+        scheduler.advanceBy(4000);
+
+        assertEquals(UnlockAdmission.Decision.REJECTED, manager.requestUnlock("front"));
+        assertTrue(manager.getCooldownRemaining("front") > UnlockAdmission.MAX_DEFER);
+        GroupResult result = new GroupResult();
+        manager.unlockGroup(LOCKS, result);
+        scheduler.advanceBy(10000);
+
+        assertEquals(Arrays.asList("front"), result.failed);
+        assertEquals(1, front.getConnectAttempts());
+    }
+
+    private static class GroupResult implements LockConnectionManager.GroupListener {
+        List<String> succeeded = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        long elapsed = -1;
+
+        @Override
+        public void onGroupFinished(List<String> succeeded, List<String> failed, long elapsedMs) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.elapsed = elapsedMs;
+        }
+    }
+
+    private class LatencyHost implements LockController.Host {
+        private final String lockId;
+
+        LatencyHost(String lockId) {
+            this.lockId = lockId;
+        }
+
+        @Override
+        public LockDeviceRecord getPreferredDevice(String deviceName) {
+            return null;
+        }
+
+        @Override
+        public void onDeviceSeen(String address, String name, int addressType) {
+        }
+
+        @Override
+        public void onConnectSucceeded(String address) {
+        }
+
+        @Override
+        public void onConnectFailed(String address) {
+        }
+
+        @Override
+        public void onLinkParameters(String address, int phy, int mtu) {
+        }
+
+        @Override
+        public void onLinkProfile(String address, LinkProfile profile, int interval, int phy) {
+        }
+
+        @Override
+        public LockDeviceRecord getDevice(String address) {
+            return null;
+        }
+
+        @Override
+        public void onSchemaResolved(String address, UUID serviceUuid, UUID characteristicUuid,
+                                     boolean writeWithoutResponse) {
+        }
+
+        @Override
+        public void onSchemaInvalid(String address) {
+        }
+
+        @Override
+        public void onPhase(UnlockPhase phase) {
+        }
+
+        @Override
+        public void onUnlockFinished(boolean success, boolean warm, long latencyMs) {
+            if (success) {
+                latencies.put(lockId, latencyMs);
+            }
+        }
+
+        @Override
+        public void onLockStateChanged(boolean unlocked) {
+        }
+
+        @Override
+        public void onMessage(String message) {
+        }
+
+        @Override
+        public void onIdle() {
+        }
+
+        @Override
+        public boolean isLogging() {
+            return false;
+        }
+
+        @Override
+        public void log(String message) {
+        }
+    }
+}
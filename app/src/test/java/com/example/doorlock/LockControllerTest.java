@@ -0,0 +1,716 @@
+package com.example.doorlock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LockControllerTest {
+    private static final String DEVICE_NAME = SimulatedLockTransport.DEFAULT_NAME;
+
+    private VirtualScheduler scheduler;
+    private SimulatedLockTransport lock;
+    private RecordingHost host;
+    private LockController controller;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        lock = new SimulatedLockTransport(scheduler, 42)
+                .setLatency(100, 400, 600, 30, 0);
+        host = new RecordingHost();
+        controller = new LockController(lock, scheduler, host, new RetryPolicy(new Random(1)));
+        controller.addStateListener(host);
+        host.controller = controller;
+        configure(false);
+    }
+
+    private void configureJson(boolean keepWarm) {
+        controller.configure(DEVICE_NAME, NordicUartService.SERVICE_UUID,
+                NordicUartService.RX_CHARACTERISTIC_UUID, keepWarm, 30000,
+                () -> UnlockCommandCodec.encodeJson("450", "300"));
+    }
+
+    private void configure(boolean keepWarm) {
+        controller.configure(DEVICE_NAME, NordicUartService.SERVICE_UUID,
+                NordicUartService.RX_CHARACTERISTIC_UUID, keepWarm, 30000,
+                () -> UnlockCommandCodec.encodeBinary(450, 300, 1));
+    }
+
+    @Test
+    public void coldUnlock_scansConnectsAndWrites() {
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(1, lock.getReceivedWrites().size());
+        assertTrue(UnlockCommandCodec.isBinary(lock.getReceivedWrites().get(0)));
+        assertEquals(1, host.successes);
+        // 广播间隔 + 候选窗口 + 连接 + 发现服务 + 写入
+        assertEquals(100 + LockController.CANDIDATE_WINDOW + 400 + 600 + 30, host.lastLatency);
+        assertTrue(host.phases.contains(UnlockPhase.SCAN_HIT));
+        assertEquals(SimulatedLockTransport.DEFAULT_ADDRESS, host.seenAddress);
+        // 未开启保持连接时，小组件恢复后断开
+        assertTrue(host.idle);
+        assertFalse(lock.isConnected());
+    }
+
+    @Test
+    public void coldUnlock_walksStateMachine() {
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(Arrays.asList(LockState.SCANNING, LockState.CONNECTING, LockState.DISCOVERING,
+                LockState.READY, LockState.WRITING, LockState.READY,
+                LockState.DISCONNECTING, LockState.IDLE), host.states);
+    }
+
+    @Test
+    public void heldConnection_staysReadyUntilReleased() {
+        controller.connect();
+        scheduler.advanceBy(5000);
+        assertEquals(LockState.READY, controller.getState());
+        assertTrue(lock.getReceivedWrites().isEmpty());
+
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+        assertEquals(1, host.successes);
+        assertTrue(host.lastWarm);
+        assertEquals(LockState.READY, controller.getState());
+
+        controller.release();
+        assertEquals(LockState.IDLE, controller.getState());
+        assertFalse(lock.isConnected());
+    }
+
+    @Test
+    public void requestDuringWrite_isQueuedUntilAcked() {
+        configure(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        controller.requestUnlock();
+        assertEquals(LockState.WRITING, controller.getState());
+        controller.requestUnlock();
+        scheduler.advanceBy(1000);
+
+        assertEquals(3, host.successes);
+        assertEquals(3, lock.getReceivedWrites().size());
+        assertEquals(1, lock.getConnectAttempts());
+    }
+
+    @Test
+    public void knownDevice_connectsDirectlyWithoutScan() {
+        host.preferred = new LockDeviceRecord(SimulatedLockTransport.DEFAULT_ADDRESS);
+
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(1, host.successes);
+        assertEquals(400 + 600 + 30, host.lastLatency);
+        assertFalse(host.phases.contains(UnlockPhase.SCAN_START));
+    }
+
+    @Test
+    public void staleDirectAddress_fallsBackToScan() {
+        host.preferred = new LockDeviceRecord("24:0A:C4:FF:FF:FF");
+
+        controller.requestUnlock();
+        scheduler.advanceBy(10000);
+
+        assertEquals(1, host.successes);
+        assertEquals("24:0A:C4:FF:FF:FF", host.failedAddress);
+        assertTrue(host.phases.contains(UnlockPhase.SCAN_START));
+        assertEquals(2, lock.getConnectAttempts());
+    }
+
+    @Test
+    public void keepWarm_secondUnlockOnlyWrites() {
+        configure(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+        assertTrue(controller.isReady());
+        assertTrue(controller.isKeepingWarm());
+
+        controller.requestUnlock();
+        scheduler.advanceBy(1000);
+
+        assertEquals(2, host.successes);
+        assertTrue(host.lastWarm);
+        assertEquals(30, host.lastLatency);
+        assertEquals(1, lock.getConnectAttempts());
+        assertEquals(1, lock.getDiscoveryCount());
+    }
+
+    @Test
+    public void writeWithoutResponse_usedWhenSupported() {
+        lock.setWriteWithoutResponse(true, 8);
+        configure(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        controller.requestUnlock();
+        scheduler.advanceBy(1000);
+
+        assertEquals(2, host.successes);
+        assertEquals(8, host.lastLatency);
+    }
+
+    @Test
+    public void unansweredConnect_timesOutPerOperation() {
+        lock.setLatency(100, 60000, 600, 30, 0);
+
+        controller.requestUnlock();
+        scheduler.advanceBy(100 + LockController.CANDIDATE_WINDOW + GattOperationQueue.CONNECT_TIMEOUT);
+
+        assertEquals(1, host.failures);
+        assertTrue(host.messages.contains("连接超时，请检查设备是否开启"));
+        assertEquals(LockState.IDLE, controller.getState());
+    }
+
+    @Test
+    public void keepWarm_lingerExpiryDisconnects() {
+        configure(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(40000);
+
+        assertTrue(host.idle);
+        assertFalse(controller.isKeepingWarm());
+        assertEquals(LockState.IDLE, controller.getState());
+        assertFalse(lock.isConnected());
+    }
+
+    @Test
+    public void preconnect_tapOnlyWrites() {
+        controller.preconnect(60000);
+        scheduler.advanceBy(5000);
+        assertEquals(LockState.READY, controller.getState());
+        // 后台预连接不打扰用户
+        assertTrue(host.messages.isEmpty());
+
+        controller.requestUnlock();
+        scheduler.advanceBy(1000);
+        assertEquals(1, host.successes);
+        assertEquals(30, host.lastLatency);
+    }
+
+    @Test
+    public void preconnect_unusedExpires() {
+        controller.preconnect(60000);
+        scheduler.advanceBy(59000);
+        assertTrue(lock.isConnected());
+
+        scheduler.advanceBy(5000);
+        assertTrue(host.idle);
+        assertFalse(lock.isConnected());
+    }
+
+    @Test
+    public void actuationNotifications_driveWidgetAndDisconnect() {
+        lock.setFeatureCharacteristic(true).setNotifications(true, 20, 0);
+        controller.requestUnlock();
+        // 就绪 1400，订阅 30，写入 30；门锁 20ms 后开始动作，下压 + 回位 750ms
+        scheduler.advanceBy(1470);
+        assertTrue(host.lockStates.isEmpty());
+        assertEquals(100 + LockController.CANDIDATE_WINDOW + 400 + 600 + 30 + 30, host.lastLatency);
+
+        scheduler.advanceBy(20);
+        assertEquals(Arrays.asList(true), host.lockStates);
+        assertEquals(30 + 30 + 20, host.actuationLatency);
+        assertTrue(controller.hasWorkInProgress());
+
+        // 动作完成后立即断开，不等固定的恢复延时
+        scheduler.advanceBy(750);
+        assertEquals(Arrays.asList(true, false, false), host.lockStates);
+        assertFalse(lock.isConnected());
+        assertTrue(host.idle);
+    }
+
+    @Test
+    public void txWithoutFeature_revertsAfterFixedDelay() {
+        // 标准 NUS 固件也有 TX 特征，但不发动作事件，不能等动作超时
+        lock.setNotifications(true, 20, 0);
+        controller.requestUnlock();
+        scheduler.advanceBy(1460);
+        assertEquals(Arrays.asList(true), host.lockStates);
+        assertTrue(lock.isConnected());
+
+        scheduler.advanceBy(LockController.WIDGET_REVERT_DELAY);
+        assertEquals(Boolean.FALSE, host.lockStates.get(host.lockStates.size() - 1));
+        assertFalse(lock.isConnected());
+        assertTrue(host.idle);
+        assertEquals(-1, host.actuationLatency);
+    }
+
+    @Test
+    public void slowActuation_holdsConnectionUntilDone() {
+        lock.setFeatureCharacteristic(true).setNotifications(true, 20, 0);
+        controller.configure(DEVICE_NAME, NordicUartService.SERVICE_UUID,
+                NordicUartService.RX_CHARACTERISTIC_UUID, false, 30000,
+                () -> UnlockCommandCodec.encodeBinary(2500, 500, 1));
+        controller.requestUnlock();
+        scheduler.advanceBy(1400 + LockController.WIDGET_REVERT_DELAY + 100);
+        assertTrue(lock.isConnected());
+
+        scheduler.advanceBy(1000);
+        assertFalse(lock.isConnected());
+        assertEquals(Arrays.asList(true, false, false), host.lockStates);
+    }
+
+    @Test
+    public void cooldown_defersNextUnlock() {
+        lock.setFeatureCharacteristic(true).setNotifications(true, 20, 1000);
+        configure(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(2300);
+
+        controller.requestUnlock();
+        scheduler.advanceBy(800);
+        assertEquals(1, lock.getReceivedWrites().size());
+
+        scheduler.advanceBy(1000);
+        assertEquals(2, lock.getReceivedWrites().size());
+        assertEquals(2, lock.getActuationCount());
+    }
+
+    @Test
+    public void lockInCooldown_retriesAfterRemainingTime() {
+        lock.setFeatureCharacteristic(true).setNotifications(true, 20, 0).startCooldown(2500);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(2, lock.getReceivedWrites().size());
+        assertEquals(1, lock.getActuationCount());
+        assertTrue(host.messages.contains("门锁冷却中，稍后自动重试"));
+        // 冷却回复不改变小组件，重发后由动作通知更新
+        assertEquals(Arrays.asList(true, false, false), host.lockStates);
+        assertFalse(lock.isConnected());
+    }
+
+    @Test
+    public void keepWarm_linkLossReconnectsTransparently() {
+        configure(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        lock.dropLink();
+        scheduler.advanceBy(2000);
+
+        assertTrue(controller.isReady());
+        assertFalse(host.idle);
+        assertEquals(2, lock.getConnectAttempts());
+    }
+
+    @Test
+    public void cachedSchema_skipsDiscoveryOnNextConnection() {
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+        assertEquals(LockState.IDLE, controller.getState());
+
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(2, host.successes);
+        assertEquals(1, lock.getDiscoveryCount());
+        // 广播间隔 + 候选窗口 + 连接 + 写入
+        assertEquals(100 + LockController.CANDIDATE_WINDOW + 400 + 30, host.lastLatency);
+    }
+
+    @Test
+    public void staleSchema_fallsBackToDiscovery() {
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        lock.changeAttributeLayout();
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(2, host.successes);
+        assertEquals(0, host.failures);
+        assertEquals(1, host.schemaInvalidations);
+        assertEquals(2, lock.getDiscoveryCount());
+        assertEquals(2, lock.getReceivedWrites().size());
+        assertTrue(host.devices.get(SimulatedLockTransport.DEFAULT_ADDRESS)
+                .hasSchema(NordicUartService.SERVICE_UUID, NordicUartService.RX_CHARACTERISTIC_UUID));
+    }
+
+    @Test
+    public void oversizedCommand_negotiatesMtuBeforeWriting() {
+        configureJson(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(1, host.successes);
+        assertEquals(1, lock.getReceivedWrites().size());
+        assertEquals(59, lock.getReceivedWrites().get(0).length);
+        // MTU 交换 + 一次写入，没有长写入
+        assertEquals(2, lock.getAttRequests());
+        assertEquals(100 + LockController.CANDIDATE_WINDOW + 400 + 600 + 30 + 30, host.lastLatency);
+        assertEquals(247, host.devices.get(SimulatedLockTransport.DEFAULT_ADDRESS).getLastMtu());
+
+        // 同一连接上不再交换
+        controller.requestUnlock();
+        scheduler.advanceBy(100);
+        assertEquals(2, host.successes);
+        assertEquals(3, lock.getAttRequests());
+    }
+
+    @Test
+    public void defaultMtuOnly_isCachedAndSkippedNextTime() {
+        lock.setMaxMtu(23);
+        configureJson(false);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+        // MTU 交换 + 4 次准备写入 + 执行写入
+        assertEquals(6, lock.getAttRequests());
+        assertEquals(23, host.devices.get(SimulatedLockTransport.DEFAULT_ADDRESS).getLastMtu());
+
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(2, host.successes);
+        assertEquals(11, lock.getAttRequests());
+        assertEquals(0, lock.getTruncatedWrites());
+        assertEquals(2, lock.getActuationCount());
+        // 广播间隔 + 候选窗口 + 连接 + 长写入
+        assertEquals(100 + LockController.CANDIDATE_WINDOW + 400 + 5 * 30, host.lastLatency);
+    }
+
+    @Test
+    public void newFirmware_receivesFragmentsOnDefaultMtu() {
+        lock.setMaxMtu(23).setNotifications(true, 20, 0).setFeatureCharacteristic(true).setWriteWithoutResponse(true, 8);
+        configureJson(false);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(1, host.successes);
+        assertEquals(1, lock.getActuationCount());
+        assertEquals(0, lock.getTruncatedWrites());
+        List<byte[]> writes = lock.getReceivedWrites();
+        assertEquals(4, writes.size());
+        for (byte[] write : writes) {
+            assertTrue(CommandFramer.isFragment(write));
+            assertTrue(write.length <= 23 - LockController.ATT_HEADER);
+        }
+        // 订阅通知和 MTU 交换各一次往返，分片都是无响应写入
+        assertEquals(2, lock.getAttRequests());
+    }
+
+    @Test
+    public void txWithoutFeatureCharacteristic_usesLongWrite() {
+        // 只有标准 NUS 的 TX 特征，不能假定固件能重组分片
+        lock.setMaxMtu(23).setNotifications(true, 20, 0).setWriteWithoutResponse(true, 8);
+        configureJson(false);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(1, host.successes);
+        assertEquals(1, lock.getActuationCount());
+        assertEquals(0, lock.getTruncatedWrites());
+        assertEquals(1, lock.getReceivedWrites().size());
+        assertFalse(CommandFramer.isFragment(lock.getReceivedWrites().get(0)));
+    }
+
+    @Test
+    public void keptWarmLink_dropsToLowPowerBetweenUnlocks() {
+        configure(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(Arrays.asList(LinkProfile.UNLOCK, LinkProfile.IDLE), host.linkProfiles);
+        assertEquals(SimulatedLockTransport.LOW_POWER_INTERVAL, lock.getConnectionInterval());
+        assertEquals(SimulatedLockTransport.LOW_POWER_INTERVAL, host.linkInterval);
+        assertEquals(LockTransport.PHY_LE_2M, host.linkPhy);
+        // 连接参数更新不占用 GATT，不影响开锁耗时
+        assertEquals(100 + LockController.CANDIDATE_WINDOW + 400 + 600 + 30, host.lastLatency);
+
+        controller.requestUnlock();
+        scheduler.advanceBy(200);
+        assertEquals(2, host.successes);
+        assertEquals(Arrays.asList(LinkProfile.UNLOCK, LinkProfile.IDLE, LinkProfile.UNLOCK, LinkProfile.IDLE),
+                host.linkProfiles);
+        assertEquals(SimulatedLockTransport.LOW_POWER_INTERVAL, lock.getConnectionInterval());
+    }
+
+    @Test
+    public void shortLivedLink_staysOnUnlockProfile() {
+        lock.setPhy2mSupported(false);
+        controller.requestUnlock();
+        scheduler.advanceBy(1500);
+
+        assertEquals(1, host.successes);
+        assertEquals(Arrays.asList(LinkProfile.UNLOCK), host.linkProfiles);
+        assertEquals(SimulatedLockTransport.HIGH_PRIORITY_INTERVAL, host.linkInterval);
+        // 门锁不支持 2M 时记录实际得到的 1M
+        assertEquals(LockTransport.PHY_LE_1M, host.linkPhy);
+    }
+
+    @Test
+    public void noAdvertisement_scanTimesOut() {
+        lock.setAdvertising(false, false);
+
+        controller.requestUnlock();
+        scheduler.advanceBy(LockController.SCAN_TIMEOUT + 1000);
+
+        assertEquals(0, host.successes);
+        assertEquals(1, host.failures);
+        assertTrue(host.messages.contains("未找到门锁设备"));
+        assertTrue(host.idle);
+    }
+
+    @Test
+    public void discoveryFailure_endsUnlockAsFailed() {
+        lock.setFailureRates(0, 1, 0, 0);
+
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(0, host.successes);
+        assertEquals(1, host.failures);
+        assertTrue(lock.getReceivedWrites().isEmpty());
+        assertTrue(host.idle);
+    }
+
+    @Test
+    public void disconnectDuringWrite_endsUnlockAsFailed() {
+        controller.requestUnlock();
+        // 写入已发出，门锁确认之前断开
+        scheduler.advanceBy(100 + LockController.CANDIDATE_WINDOW + 400 + 600);
+        assertEquals(LockState.WRITING, controller.getState());
+        lock.dropLink();
+        scheduler.advanceBy(5000);
+
+        assertEquals(0, host.successes);
+        assertEquals(1, host.failures);
+        assertEquals(100 + LockController.CANDIDATE_WINDOW + 400 + 600, host.lastLatency);
+        assertEquals(LockState.IDLE, controller.getState());
+        assertTrue(host.idle);
+    }
+
+    @Test
+    public void keepWarm_disconnectDuringWrite_failsWithoutResending() {
+        configure(true);
+        controller.requestUnlock();
+        scheduler.advanceBy(100 + LockController.CANDIDATE_WINDOW + 400 + 600);
+        lock.dropLink();
+        scheduler.advanceBy(5000);
+
+        // 保持的连接重新建立，但门锁可能已经收到命令，不重发
+        assertEquals(1, host.failures);
+        assertEquals(0, host.successes);
+        assertEquals(2, lock.getConnectAttempts());
+        assertTrue(lock.getReceivedWrites().isEmpty());
+        assertEquals(LockState.READY, controller.getState());
+        assertTrue(host.messages.contains("开锁命令未确认，连接已断开"));
+    }
+
+    @Test
+    public void transientConnectFailure_retriesWithFreshConnection() {
+        lock.setFailureRates(1, 0, 0, 0);
+        controller.requestUnlock();
+        // 第一次连接以 133 失败
+        scheduler.advanceBy(850);
+        lock.setFailureRates(0, 0, 0, 0);
+        scheduler.advanceBy(5000);
+
+        assertEquals(1, host.successes);
+        assertEquals(0, host.failures);
+        assertEquals(2, lock.getConnectAttempts());
+        assertEquals(2, host.lastAttempts);
+        // 第一次尝试 + 退避 50~100ms + 第二次完整连接
+        assertTrue(host.lastLatency > 100 + LockController.CANDIDATE_WINDOW + 400 + 50 + 400 + 600 + 30);
+        assertTrue(host.lastLatency <= 100 + LockController.CANDIDATE_WINDOW + 400 + 100 + 400 + 600 + 30);
+    }
+
+    @Test
+    public void deadLock_opensCircuitBreaker() {
+        lock.setFailureRates(1, 0, 0, 0);
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            controller.requestUnlock();
+            scheduler.advanceBy(10000);
+        }
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD, host.failures);
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD * (RetryPolicy.MAX_RETRIES + 1), lock.getConnectAttempts());
+        assertEquals(CircuitBreaker.State.OPEN, controller.getBreakerState());
+
+        // 熔断期间直接失败，不再连接
+        controller.requestUnlock();
+        scheduler.advanceBy(10000);
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD + 1, host.failures);
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD * (RetryPolicy.MAX_RETRIES + 1), lock.getConnectAttempts());
+        assertTrue(host.messages.get(host.messages.size() - 1).startsWith("门锁无响应"));
+
+        // 门锁恢复后，半开状态的一次尝试成功即关闭
+        lock.setFailureRates(0, 0, 0, 0);
+        scheduler.advanceBy(CircuitBreaker.OPEN_TIME);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+        assertEquals(1, host.successes);
+        assertEquals(CircuitBreaker.State.CLOSED, controller.getBreakerState());
+    }
+
+    @Test
+    public void rapidRequests_shareOneConnection() {
+        controller.requestUnlock();
+        scheduler.advanceBy(200);
+        controller.requestUnlock();
+        scheduler.advanceBy(5000);
+
+        assertEquals(1, lock.getConnectAttempts());
+        assertEquals(1, lock.getReceivedWrites().size());
+    }
+
+    @Test
+    public void jitteredRuns_areReproducible() {
+        assertEquals(runJittered(7), runJittered(7));
+    }
+
+    private long runJittered(long seed) {
+        VirtualScheduler s = new VirtualScheduler();
+        SimulatedLockTransport t = new SimulatedLockTransport(s, seed).setLatency(100, 400, 600, 30, 80);
+        RecordingHost h = new RecordingHost();
+        LockController c = new LockController(t, s, h);
+        c.configure(DEVICE_NAME, NordicUartService.SERVICE_UUID, NordicUartService.RX_CHARACTERISTIC_UUID,
+                false, 30000, () -> UnlockCommandCodec.encodeBinary(450, 300, 1));
+        c.requestUnlock();
+        s.advanceBy(5000);
+        assertEquals(1, h.successes);
+        return h.lastLatency;
+    }
+
+    private static class RecordingHost implements LockController.Host, LockController.StateListener {
+        LockController controller;
+        int lastAttempts;
+        LockDeviceRecord preferred;
+        final Map<String, LockDeviceRecord> devices = new HashMap<>();
+        int schemaInvalidations;
+        final List<UnlockPhase> phases = new ArrayList<>();
+        final List<LockState> states = new ArrayList<>();
+        final List<String> messages = new ArrayList<>();
+        final List<Boolean> lockStates = new ArrayList<>();
+        final List<LinkProfile> linkProfiles = new ArrayList<>();
+        int linkInterval;
+        int linkPhy;
+        long actuationLatency = -1;
+        String seenAddress;
+        String failedAddress;
+        int successes;
+        int failures;
+        long lastLatency = -1;
+        boolean lastWarm;
+        boolean idle;
+
+        @Override
+        public LockDeviceRecord getPreferredDevice(String deviceName) {
+            return preferred;
+        }
+
+        @Override
+        public void onDeviceSeen(String address, String name, int addressType) {
+            seenAddress = address;
+        }
+
+        @Override
+        public void onConnectSucceeded(String address) {
+        }
+
+        @Override
+        public void onConnectFailed(String address) {
+            failedAddress = address;
+            preferred = null;
+        }
+
+        @Override
+        public void onLinkParameters(String address, int phy, int mtu) {
+            devices.computeIfAbsent(address.toUpperCase(), LockDeviceRecord::new).setLinkParameters(phy, mtu);
+        }
+
+        @Override
+        public void onLinkProfile(String address, LinkProfile profile, int interval, int phy) {
+            if (linkProfiles.isEmpty() || linkProfiles.get(linkProfiles.size() - 1) != profile) {
+                linkProfiles.add(profile);
+            }
+            linkInterval = interval;
+            linkPhy = phy;
+        }
+
+        @Override
+        public LockDeviceRecord getDevice(String address) {
+            return devices.get(address.toUpperCase());
+        }
+
+        @Override
+        public void onSchemaResolved(String address, UUID serviceUuid, UUID characteristicUuid,
+                                     boolean writeWithoutResponse) {
+            devices.computeIfAbsent(address.toUpperCase(), LockDeviceRecord::new)
+                    .setSchema(serviceUuid, characteristicUuid, writeWithoutResponse);
+        }
+
+        @Override
+        public void onSchemaInvalid(String address) {
+            schemaInvalidations++;
+            LockDeviceRecord record = devices.get(address.toUpperCase());
+            if (record != null) {
+                record.clearSchema();
+            }
+        }
+
+        @Override
+        public void onPhase(UnlockPhase phase) {
+            phases.add(phase);
+        }
+
+        @Override
+        public void onUnlockFinished(boolean success, boolean warm, long latencyMs) {
+            if (success) {
+                successes++;
+            } else {
+                failures++;
+            }
+            lastWarm = warm;
+            lastLatency = latencyMs;
+            lastAttempts = controller != null ? controller.getConnectAttempts() : 0;
+        }
+
+        @Override
+        public void onActuation(long latencyMs) {
+            actuationLatency = latencyMs;
+        }
+
+        @Override
+        public void onLockStateChanged(boolean unlocked) {
+            lockStates.add(unlocked);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void onIdle() {
+            idle = true;
+        }
+
+        @Override
+        public boolean isLogging() {
+            return true;
+        }
+
+        @Override
+        public void log(String message) {
+        }
+
+        @Override
+        public void onStateChanged(LockState state) {
+            states.add(state);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.doorlock;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LockDeviceRecordTest {
+    private static final String ADDRESS = "aa:bb:cc:dd:ee:ff";
+
+    @Test
+    public void json_roundTripsAllFields() throws Exception {
+        LockDeviceRecord record = new LockDeviceRecord(ADDRESS);
+        record.markSeen("DoorLock", 1, 1000);
+        record.markSuccess(2000);
+        record.markFailure();
+        record.setLinkParameters(2, 247);
+        record.setSchema(NordicUartService.SERVICE_UUID, NordicUartService.RX_CHARACTERISTIC_UUID, true);
+
+        LockDeviceRecord restored = roundTrip(record);
+
+        assertEquals("AA:BB:CC:DD:EE:FF", restored.getAddress());
+        assertEquals("DoorLock", restored.getName());
+        assertEquals(1, restored.getAddressType());
+        assertEquals(2000, restored.getLastSeen());
+        assertEquals(2000, restored.getLastSuccess());
+        assertEquals(2, restored.getLastPhy());
+        assertEquals(247, restored.getLastMtu());
+        assertEquals(1, restored.getSuccessCount());
+        assertEquals(1, restored.getFailureCount());
+        assertEquals(1, restored.getConsecutiveFailures());
+        assertTrue(restored.hasSchema(NordicUartService.SERVICE_UUID, NordicUartService.RX_CHARACTERISTIC_UUID));
+        assertTrue(restored.isSchemaWriteWithoutResponse());
+    }
+
+    @Test
+    public void json_newRecordKeepsUnknownValues() throws Exception {
+        LockDeviceRecord restored = roundTrip(new LockDeviceRecord(ADDRESS));
+
+        assertNull(restored.getName());
+        assertEquals(LockDeviceRecord.ADDRESS_TYPE_UNKNOWN, restored.getAddressType());
+        assertEquals(LockDeviceRecord.PHY_UNKNOWN, restored.getLastPhy());
+        assertEquals(LockDeviceRecord.MTU_UNKNOWN, restored.getLastMtu());
+        assertFalse(restored.hasSchema(NordicUartService.SERVICE_UUID, NordicUartService.RX_CHARACTERISTIC_UUID));
+    }
+
+    @Test
+    public void fromJson_missingFieldsUseDefaults() throws Exception {
+        LockDeviceRecord record = LockDeviceRecord.fromJson(new JSONObject("{\"address\":\"" + ADDRESS + "\"}"));
+
+        assertEquals("AA:BB:CC:DD:EE:FF", record.getAddress());
+        assertEquals(LockDeviceRecord.ADDRESS_TYPE_UNKNOWN, record.getAddressType());
+        assertEquals(0, record.getLastSuccess());
+        assertEquals(0, record.getConsecutiveFailures());
+    }
+
+    @Test
+    public void fromJson_invalidSchemaIsDroppedWithRestOfRecord() throws Exception {
+        JSONObject json = new LockDeviceRecord(ADDRESS).toJson();
+        json.put("last_mtu", 185);
+        json.put("schema_service", "not-a-uuid");
+        json.put("schema_characteristic", NordicUartService.RX_CHARACTERISTIC_UUID.toString());
+
+        LockDeviceRecord record = LockDeviceRecord.fromJson(json);
+
+        assertEquals(185, record.getLastMtu());
+        assertFalse(record.hasSchema(NordicUartService.SERVICE_UUID, NordicUartService.RX_CHARACTERISTIC_UUID));
+        assertFalse(record.isSchemaWriteWithoutResponse());
+    }
+
+    @Test(expected = org.json.JSONException.class)
+    public void fromJson_withoutAddressFails() throws Exception {
+        LockDeviceRecord.fromJson(new JSONObject("{\"name\":\"DoorLock\"}"));
+    }
+
+    @Test
+    public void setSchema_reportsOnlyChanges() {
+        LockDeviceRecord record = new LockDeviceRecord(ADDRESS);
+        UUID service = NordicUartService.SERVICE_UUID;
+        UUID rx = NordicUartService.RX_CHARACTERISTIC_UUID;
+
+        assertTrue(record.setSchema(service, rx, false));
+        assertFalse(record.setSchema(service, rx, false));
+        assertTrue(record.setSchema(service, rx, true));
+        assertTrue(record.clearSchema());
+        assertFalse(record.clearSchema());
+    }
+
+    @Test
+    public void unknownValues_doNotOverwriteKnownOnes() {
+        LockDeviceRecord record = new LockDeviceRecord(ADDRESS);
+        record.markSeen("DoorLock", 1, 1000);
+        record.setLinkParameters(2, 247);
+
+        record.markSeen(null, LockDeviceRecord.ADDRESS_TYPE_UNKNOWN, 3000);
+        record.setLinkParameters(LockDeviceRecord.PHY_UNKNOWN, LockDeviceRecord.MTU_UNKNOWN);
+
+        assertEquals("DoorLock", record.getName());
+        assertEquals(1, record.getAddressType());
+        assertEquals(3000, record.getLastSeen());
+        assertEquals(2, record.getLastPhy());
+        assertEquals(247, record.getLastMtu());
+    }
+
+    @Test
+    public void success_resetsConsecutiveFailures() {
+        LockDeviceRecord record = new LockDeviceRecord(ADDRESS);
+        record.markFailure();
+        record.markFailure();
+        record.markSuccess(5000);
+
+        assertEquals(0, record.getConsecutiveFailures());
+        assertEquals(2, record.getFailureCount());
+        assertEquals(5000, record.getLastSuccess());
+    }
+
+    private static LockDeviceRecord roundTrip(LockDeviceRecord record) throws Exception {
+        return LockDeviceRecord.fromJson(new JSONObject(record.toJson().toString()));
+    }
+}
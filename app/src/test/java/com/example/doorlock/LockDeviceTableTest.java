@@ -0,0 +1,118 @@
+package com.example.doorlock;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LockDeviceTableTest {
+    private static final String NAME = "DoorLock";
+
+    private LockDeviceTable table;
+
+    @Before
+    public void setUp() {
+        table = new LockDeviceTable();
+    }
+
+    @Test
+    public void encode_roundTripsRecords() throws Exception {
+        table.obtain("aa:00").markSeen(NAME, 1, 1000);
+        table.obtain("aa:00").setLinkParameters(2, 247);
+        table.obtain("bb:00").markSuccess(2000);
+
+        LockDeviceTable restored = new LockDeviceTable();
+        assertEquals(0, restored.decode(table.encode()));
+
+        assertEquals(2, restored.size());
+        assertEquals(NAME, restored.get("AA:00").getName());
+        assertEquals(247, restored.get("aa:00").getLastMtu());
+        assertEquals(2000, restored.get("BB:00").getLastSuccess());
+    }
+
+    @Test
+    public void decode_dropsOnlyCorruptEntries() throws Exception {
+        String json = "[{\"address\":\"AA:00\",\"last_success\":1000}, 42, {\"name\":\"" + NAME + "\"},"
+                + " {\"address\":\"BB:00\",\"last_success\":2000}]";
+
+        assertEquals(2, table.decode(json));
+
+        assertEquals(2, table.size());
+        assertNotNull(table.get("AA:00"));
+        assertEquals("BB:00", table.getPreferred(NAME).getAddress());
+    }
+
+    @Test
+    public void decode_notAnArrayKeepsExistingRecords() {
+        table.obtain("AA:00").markSuccess(1000);
+
+        try {
+            table.decode("{\"address\":\"BB:00\"}");
+            fail();
+        } catch (JSONException expected) {
+            // 整体格式错误
+        }
+
+        assertEquals(1, table.size());
+        assertNotNull(table.get("AA:00"));
+    }
+
+    @Test
+    public void preferred_picksMostRecentSuccess() {
+        table.obtain("AA:00").markSuccess(1000);
+        table.obtain("BB:00").markSuccess(3000);
+        table.obtain("CC:00").markSuccess(2000);
+
+        assertEquals("BB:00", table.getPreferred(NAME).getAddress());
+    }
+
+    @Test
+    public void preferred_skipsRepeatedDirectFailures() {
+        table.obtain("AA:00").markSuccess(1000);
+        LockDeviceRecord failing = table.obtain("BB:00");
+        failing.markSuccess(3000);
+        for (int i = 0; i < LockDeviceTable.MAX_DIRECT_FAILURES - 1; i++) {
+            failing.markFailure();
+        }
+        assertEquals("BB:00", table.getPreferred(NAME).getAddress());
+
+        failing.markFailure();
+        assertEquals("AA:00", table.getPreferred(NAME).getAddress());
+    }
+
+    @Test
+    public void preferred_skipsOtherNamesButAcceptsUnnamed() {
+        table.obtain("AA:00").markSeen("Garage", 1, 0);
+        table.obtain("AA:00").markSuccess(3000);
+        table.obtain("BB:00").markSuccess(2000);
+        table.obtain("CC:00").markSeen(NAME, 1, 0);
+        table.obtain("CC:00").markSuccess(1000);
+
+        assertEquals("BB:00", table.getPreferred(NAME).getAddress());
+        assertEquals("AA:00", table.getPreferred("Garage").getAddress());
+        // 没有配置名称时不按名称过滤
+        assertEquals("AA:00", table.getPreferred(null).getAddress());
+    }
+
+    @Test
+    public void preferred_noCandidateReturnsNull() {
+        assertNull(table.getPreferred(NAME));
+
+        table.obtain("AA:00").markSeen("Garage", 1, 0);
+        assertNull(table.getPreferred(NAME));
+    }
+
+    @Test
+    public void obtain_evictsLeastRecentlySeenWhenFull() {
+        for (int i = 0; i < LockDeviceTable.MAX_RECORDS; i++) {
+            table.obtain("AA:0" + i).markSeen(NAME, 1, i == 3 ? 0 : 1000 + i);
+        }
+
+        table.obtain("BB:00");
+
+        assertEquals(LockDeviceTable.MAX_RECORDS, table.size());
+        assertNull(table.get("AA:03"));
+        assertNotNull(table.get("bb:00"));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.doorlock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LockEventTest {
+
+    @Test
+    public void roundTrip() {
+        LockEvent event = LockEvent.decode(LockEvent.encode(LockEvent.ACTUATION_DONE, 0x1234, 1500));
+
+        assertNotNull(event);
+        assertEquals(LockEvent.ACTUATION_DONE, event.getType());
+        assertEquals(0x1234, event.getSequence());
+        assertEquals(1500, event.getParam());
+    }
+
+    @Test
+    public void malformedFrames_areRejected() {
+        byte[] unknownType = LockEvent.encode(LockEvent.ACTUATION_START, 1, 0);
+        unknownType[1] = 0x7F;
+        byte[] wrongVersion = LockEvent.encode(LockEvent.ACTUATION_START, 1, 0);
+        wrongVersion[0] = 0x02;
+
+        assertNull(LockEvent.decode(unknownType));
+        assertNull(LockEvent.decode(wrongVersion));
+        assertNull(LockEvent.decode(new byte[]{UnlockCommandCodec.VERSION, LockEvent.ACTUATION_START}));
+        // JSON 命令的回显不是事件
+        assertNull(LockEvent.decode(UnlockCommandCodec.encodeJson("450", "300")));
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.doorlock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class ProximityDetectorTest {
+    // 低功耗扫描下大约每 500ms 收到一次广播
+    private static final long INTERVAL = 500;
+
+    private ProximityDetector detector;
+    private Random noise;
+    private long time;
+
+    @Before
+    public void setUp() {
+        detector = new ProximityDetector();
+        noise = new Random(42);
+        time = 0;
+    }
+
+    @Test
+    public void approach_triggersOnceBeforeDoor() {
+        // 从 -90 dBm 走到门口 -65 dBm，然后在门口站 10 秒
+        List<Long> triggers = replay(walk(-90, -65, 30000));
+        long arrival = time;
+        triggers.addAll(replay(walk(-65, -65, 10000)));
+
+        assertEquals(1, triggers.size());
+        assertTrue("到门口之前就应该预连接", triggers.get(0) < arrival);
+    }
+
+    @Test
+    public void passingBy_doesNotTrigger() {
+        // 从门外较远处经过，信号最强只有 -80 dBm
+        List<Long> triggers = replay(walk(-95, -80, 15000));
+        triggers.addAll(replay(walk(-80, -95, 15000)));
+
+        assertTrue(triggers.isEmpty());
+    }
+
+    @Test
+    public void stayingNearDoor_doesNotTrigger() {
+        // 在家里门附近，信号一直在阈值之上抖动
+        List<Long> triggers = replay(walk(-68, -68, 120000));
+
+        assertTrue(triggers.isEmpty());
+    }
+
+    @Test
+    public void leavingAndReturning_triggersAgain() {
+        List<Long> triggers = replay(walk(-90, -65, 30000));
+        triggers.addAll(replay(walk(-65, -90, 30000)));
+        triggers.addAll(replay(walk(-90, -65, 30000)));
+
+        assertEquals(2, triggers.size());
+    }
+
+    @Test
+    public void signalLost_rearms() {
+        List<Long> triggers = replay(walk(-90, -65, 30000));
+        // 离开扫描范围一段时间后再次出现在远处
+        time += RssiFilter.RESET_GAP * 2;
+        triggers.addAll(replay(walk(-90, -65, 30000)));
+
+        assertEquals(2, triggers.size());
+    }
+
+    @Test
+    public void unlock_learnsDoorRssi() {
+        replay(walk(-90, -55, 30000));
+        double before = detector.getThreshold();
+
+        assertTrue(detector.onUnlocked(time));
+        assertTrue(detector.getDoorRssi() > ProximityDetector.DEFAULT_DOOR_RSSI);
+        assertTrue(detector.getThreshold() > before);
+    }
+
+    @Test
+    public void unlock_withStaleSample_isIgnored() {
+        replay(walk(-90, -55, 30000));
+
+        assertFalse(detector.onUnlocked(time + ProximityDetector.LEARN_MAX_AGE + 1));
+        assertEquals(ProximityDetector.DEFAULT_DOOR_RSSI, detector.getDoorRssi(), 0);
+    }
+
+    @Test
+    public void threshold_isClamped() {
+        detector.setDoorRssi(-30);
+        assertEquals(ProximityDetector.MAX_THRESHOLD, detector.getThreshold(), 0);
+        detector.setDoorRssi(-120);
+        assertEquals(ProximityDetector.MIN_THRESHOLD, detector.getThreshold(), 0);
+    }
+
+    @Test
+    public void monitor_ignoresUuidOnlyDevices() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        ProximityMonitor monitor = new ProximityMonitor(new SimulatedLockTransport(scheduler, 1), scheduler,
+                detector, new RecordingListener());
+        UUID service = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
+        assertTrue(monitor.start("ESP32Lock", service, null, null));
+
+        monitor.onScanResult("AA:09", "UART-Sensor", Collections.singletonList(service), -40, 0);
+        assertNull(monitor.getTrackedAddress());
+
+        monitor.onScanResult("AA:01", "ESP32Lock", Collections.singletonList(service), -70, 0);
+        monitor.onScanResult("AA:02", "ESP32Lock", Collections.singletonList(service), -50, 0);
+        assertEquals("AA:01", monitor.getTrackedAddress());
+    }
+
+    @Test
+    public void monitor_prefersRegistryAddress() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        ProximityMonitor monitor = new ProximityMonitor(new SimulatedLockTransport(scheduler, 1), scheduler,
+                detector, new RecordingListener());
+        monitor.start("ESP32Lock", null, null, Collections.singletonList("AA:03"));
+
+        monitor.onScanResult("AA:01", "ESP32Lock", null, -70, 0);
+        assertEquals("AA:01", monitor.getTrackedAddress());
+        // 登记过的门锁不带名称也会替换只按名称匹配的设备
+        monitor.onScanResult("aa:03", null, null, -80, 0);
+        assertEquals("aa:03", monitor.getTrackedAddress());
+        monitor.onScanResult("AA:01", "ESP32Lock", null, -60, 0);
+        assertEquals("aa:03", monitor.getTrackedAddress());
+
+        // 跟踪的门锁信号丢失后换成仍然可见的设备
+        scheduler.advanceBy(RssiFilter.RESET_GAP + 1);
+        monitor.onScanResult("AA:01", "ESP32Lock", null, -60, 0);
+        assertEquals("AA:01", monitor.getTrackedAddress());
+    }
+
+    @Test
+    public void monitor_retriesFailedScanWithBackoff() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        RecordingListener listener = new RecordingListener();
+        ProximityMonitor monitor = new ProximityMonitor(new SimulatedLockTransport(scheduler, 1), scheduler,
+                detector, listener, new RetryPolicy(new Random(1)));
+        monitor.start(SimulatedLockTransport.DEFAULT_NAME, null, null, null);
+
+        monitor.onScanFailed(ProximityMonitor.SCAN_FAILED_INTERNAL_ERROR);
+        long delay = listener.retryDelays.get(0);
+        assertTrue(delay >= RetryPolicy.BASE_DELAY / 2 && delay <= RetryPolicy.BASE_DELAY);
+        assertTrue(monitor.isRunning());
+
+        // 退避后重新开始扫描，又能收到门锁广播
+        scheduler.advanceBy(delay + 5000);
+        assertEquals(SimulatedLockTransport.DEFAULT_ADDRESS, monitor.getTrackedAddress());
+    }
+
+    @Test
+    public void monitor_stopsAfterRepeatedScanFailures() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        RecordingListener listener = new RecordingListener();
+        // 门锁不在范围内，重新开始的扫描没有结果，失败次数不会清零
+        SimulatedLockTransport lock = new SimulatedLockTransport(scheduler, 1).setAdvertising(false, false);
+        ProximityMonitor monitor = new ProximityMonitor(lock, scheduler, detector, listener,
+                new RetryPolicy(new Random(1)));
+        monitor.start(SimulatedLockTransport.DEFAULT_NAME, null, null, null);
+
+        for (int i = 0; i <= RetryPolicy.MAX_RETRIES; i++) {
+            monitor.onScanFailed(ProximityMonitor.SCAN_FAILED_INTERNAL_ERROR);
+            scheduler.advanceBy(RetryPolicy.MAX_DELAY);
+        }
+
+        assertEquals(RetryPolicy.MAX_RETRIES + 1, listener.retryDelays.size());
+        assertEquals(-1, (long) listener.retryDelays.get(RetryPolicy.MAX_RETRIES));
+        assertFalse(monitor.isRunning());
+    }
+
+    @Test
+    public void monitor_scanFailureCodes() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        RecordingListener listener = new RecordingListener();
+        ProximityMonitor monitor = new ProximityMonitor(new SimulatedLockTransport(scheduler, 1), scheduler,
+                detector, listener, new RetryPolicy(new Random(1)));
+        monitor.start(SimulatedLockTransport.DEFAULT_NAME, null, null, null);
+
+        // 太频繁时等系统的限制窗口过去
+        monitor.onScanFailed(ProximityMonitor.SCAN_FAILED_SCANNING_TOO_FREQUENTLY);
+        assertEquals(ProximityMonitor.SCAN_THROTTLE_WINDOW, (long) listener.retryDelays.get(0));
+
+        // 不支持时不重试
+        monitor.onScanFailed(ProximityMonitor.SCAN_FAILED_FEATURE_UNSUPPORTED);
+        assertEquals(-1, (long) listener.retryDelays.get(1));
+        assertFalse(monitor.isRunning());
+        scheduler.advanceBy(ProximityMonitor.SCAN_THROTTLE_WINDOW + 5000);
+        assertNull(monitor.getTrackedAddress());
+    }
+
+    // 线性变化的信号加上 ±4 dB 的抖动
+    private int[] walk(double from, double to, long duration) {
+        int count = (int) (duration / INTERVAL);
+        int[] trace = new int[count];
+        for (int i = 0; i < count; i++) {
+            double level = from + (to - from) * (i + 1) / count;
+            trace[i] = (int) Math.round(level + (noise.nextDouble() * 8 - 4));
+        }
+        return trace;
+    }
+
+    private List<Long> replay(int[] trace) {
+        List<Long> triggers = new ArrayList<>();
+        for (int rssi : trace) {
+            time += INTERVAL;
+            if (detector.offer(time, rssi)) {
+                triggers.add(time);
+            }
+        }
+        return triggers;
+    }
+
+    private static class RecordingListener implements ProximityMonitor.Listener {
+        final List<Long> retryDelays = new ArrayList<>();
+
+        @Override
+        public void onApproach(String address, double smoothedRssi) {
+        }
+
+        @Override
+        public void onScanFailed(int errorCode, long retryDelay) {
+            retryDelays.add(retryDelay);
+        }
+    }
+}
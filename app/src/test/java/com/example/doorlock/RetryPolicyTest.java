@@ -0,0 +1,41 @@
+package com.example.doorlock;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+    private final RetryPolicy policy = new RetryPolicy(new Random(3));
+
+    @Test
+    public void statusCodes_areClassified() {
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(LockTransport.GATT_ERROR));
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(LockTransport.GATT_TIMEOUT));
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(RetryPolicy.HCI_CONNECTION_FAILED));
+        assertEquals(RetryPolicy.Failure.FATAL, RetryPolicy.classify(LockTransport.GATT_FAILURE));
+        assertEquals(RetryPolicy.Failure.FATAL, RetryPolicy.classify(RetryPolicy.GATT_INSUFFICIENT_AUTHENTICATION));
+    }
+
+    @Test
+    public void backoff_growsWithJitterUpToCap() {
+        for (int retries = 0; retries < 10; retries++) {
+            long full = Math.min(RetryPolicy.MAX_DELAY, RetryPolicy.BASE_DELAY << retries);
+            for (int i = 0; i < 100; i++) {
+                long delay = policy.backoff(retries);
+                assertTrue(delay >= full / 2);
+                assertTrue(delay <= full);
+            }
+        }
+    }
+
+    @Test
+    public void nextDelay_stopsAtLimits() {
+        assertTrue(policy.nextDelay(LockTransport.GATT_ERROR, 0, 0) > 0);
+        assertEquals(-1, policy.nextDelay(LockTransport.GATT_FAILURE, 0, 0));
+        assertEquals(-1, policy.nextDelay(LockTransport.GATT_ERROR, RetryPolicy.MAX_RETRIES, 0));
+        // 开锁请求等待的时间已接近上限
+        assertEquals(-1, policy.nextDelay(LockTransport.GATT_ERROR, 0, RetryPolicy.RETRY_BUDGET - 10));
+    }
+}
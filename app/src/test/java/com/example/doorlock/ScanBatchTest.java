@@ -0,0 +1,94 @@
+package com.example.doorlock;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class ScanBatchTest {
+    private static final UUID SERVICE = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
+    private static final List<UUID> LOCK_UUIDS = Collections.singletonList(SERVICE);
+
+    @Test
+    public void unrelatedDevices_areDropped() {
+        ScanBatch batch = new ScanBatch(new LockScanMatcher("Lock", SERVICE, null));
+        batch.add("AA:00", "Phone", null, -40, 0);
+        batch.add("AA:01", null, Collections.singletonList(UUID.randomUUID()), -40, 0);
+
+        assertTrue(batch.isEmpty());
+        assertNull(batch.best());
+    }
+
+    @Test
+    public void sameDevice_isAveraged() {
+        ScanBatch batch = new ScanBatch(new LockScanMatcher("Lock", SERVICE, null));
+        batch.add("aa:01", "Lock", LOCK_UUIDS, -70, LockDeviceRecord.ADDRESS_TYPE_UNKNOWN);
+        batch.add("AA:01", null, LOCK_UUIDS, -60, 1);
+        batch.add("AA:01", null, LOCK_UUIDS, -65, LockDeviceRecord.ADDRESS_TYPE_UNKNOWN);
+
+        ScanBatch.Hit hit = batch.best();
+        assertEquals(1, batch.ranked().size());
+        assertEquals(-65, hit.getRssi());
+        assertEquals(3, hit.getCount());
+        assertEquals("Lock", hit.getName());
+        assertEquals(1, hit.getAddressType());
+    }
+
+    @Test
+    public void ranking_prefersKnownThenStronger() {
+        ScanBatch batch = new ScanBatch(new LockScanMatcher("Lock", SERVICE, "AA:03"));
+        batch.add("AA:01", "Lock", LOCK_UUIDS, -80, 0);
+        batch.add("AA:02", "Lock", LOCK_UUIDS, -50, 0);
+        batch.add("AA:03", null, null, -85, 0);
+
+        List<ScanBatch.Hit> ranked = batch.ranked();
+        assertEquals("AA:03", ranked.get(0).getAddress());
+        assertEquals("AA:02", ranked.get(1).getAddress());
+        assertEquals("AA:01", ranked.get(2).getAddress());
+        assertSame(ranked.get(0), batch.best());
+    }
+
+    @Test
+    public void equalSignal_prefersMoreAdvertisements() {
+        ScanBatch batch = new ScanBatch(new LockScanMatcher("Lock", null, null));
+        batch.add("AA:01", "Lock", null, -60, 0);
+        batch.add("AA:02", "Lock", null, -60, 0);
+        batch.add("AA:02", "Lock", null, -60, 0);
+
+        assertEquals("AA:02", batch.best().getAddress());
+    }
+
+    @Test
+    public void uuidOnlyDevice_isRejectedWhenNameConfigured() {
+        LockScanMatcher matcher = new LockScanMatcher("Lock", SERVICE, null);
+
+        assertFalse(matcher.offer("AA:09", "UART-Sensor", LOCK_UUIDS, -30));
+        assertFalse(matcher.offer("AA:09", null, LOCK_UUIDS, -30));
+        assertTrue(matcher.offer("AA:01", "Lock", LOCK_UUIDS, -70));
+        assertEquals("AA:01", matcher.getBestAddress());
+    }
+
+    @Test
+    public void uuid_matchesWhenNoNameConfigured() {
+        LockScanMatcher matcher = new LockScanMatcher(null, SERVICE, null);
+
+        assertTrue(matcher.offer("AA:09", null, LOCK_UUIDS, -30));
+        assertFalse(matcher.offer("AA:10", null, null, -30));
+    }
+
+    @Test
+    public void candidateCount_countsDistinctAddresses() {
+        LockScanMatcher matcher = new LockScanMatcher("Lock", SERVICE, null);
+        matcher.offer("aa:01", "Lock", LOCK_UUIDS, -70);
+        matcher.offer("AA:01", null, LOCK_UUIDS, -60);
+        matcher.offer("AA:02", "Lock", LOCK_UUIDS, -65);
+        matcher.offer("AA:02", "Lock", LOCK_UUIDS, -65);
+
+        assertEquals(2, matcher.getCandidateCount());
+        matcher.reset();
+        assertEquals(0, matcher.getCandidateCount());
+    }
+}
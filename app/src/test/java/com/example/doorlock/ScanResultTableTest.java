@@ -0,0 +1,96 @@
+package com.example.doorlock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScanResultTableTest {
+    private VirtualScheduler scheduler;
+    private List<List<ScanResultTable.Device>> snapshots;
+    private ScanResultTable table;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        snapshots = new ArrayList<>();
+        table = new ScanResultTable(scheduler, snapshots::add, 3);
+    }
+
+    @Test
+    public void repeatedAdvertisements_areDeduplicated() {
+        table.offer("aa:01", "Lock", -80);
+        table.offer("AA:01", null, -70);
+        table.offer("aa:02", null, -90);
+        scheduler.advanceBy(ScanResultTable.FRAME_INTERVAL);
+
+        assertEquals(1, snapshots.size());
+        List<ScanResultTable.Device> devices = snapshots.get(0);
+        assertEquals(Arrays.asList("AA:01", "AA:02"), addresses(devices));
+        assertEquals("Lock", devices.get(0).getName());
+        assertEquals(-70, devices.get(0).getRssi());
+        assertEquals(2, devices.get(0).getSeenCount());
+    }
+
+    @Test
+    public void burstWithinFrame_producesOneSnapshot() {
+        // 繁忙环境下一帧内收到上百个广播
+        for (int i = 0; i < 200; i++) {
+            table.offer("aa:0" + (i % 3), null, -60 - i % 20);
+        }
+        scheduler.advanceBy(ScanResultTable.FRAME_INTERVAL);
+        assertEquals(1, snapshots.size());
+
+        scheduler.advanceBy(ScanResultTable.FRAME_INTERVAL * 10);
+        assertEquals("没有新的广播时不刷新", 1, snapshots.size());
+    }
+
+    @Test
+    public void full_evictsLeastRecentlySeen() {
+        table.offer("aa:01", null, -60);
+        table.offer("aa:02", null, -60);
+        table.offer("aa:03", null, -60);
+        table.offer("aa:01", null, -60);
+        table.offer("aa:04", null, -60);
+        scheduler.advanceBy(ScanResultTable.FRAME_INTERVAL);
+
+        // aa:02 最久没有出现；顺序按首次出现，不随信号变化
+        assertEquals(Arrays.asList("AA:01", "AA:03", "AA:04"), addresses(snapshots.get(0)));
+    }
+
+    @Test
+    public void unchangedDevice_reusesSnapshotObject() {
+        table.offer("aa:01", null, -60);
+        table.offer("aa:02", null, -60);
+        scheduler.advanceBy(ScanResultTable.FRAME_INTERVAL);
+        table.offer("aa:02", null, -65);
+        scheduler.advanceBy(ScanResultTable.FRAME_INTERVAL);
+
+        assertSame(snapshots.get(0).get(0), snapshots.get(1).get(0));
+        assertNotSame(snapshots.get(0).get(1), snapshots.get(1).get(1));
+        assertFalse(snapshots.get(0).get(1).sameContent(snapshots.get(1).get(1)));
+    }
+
+    @Test
+    public void clear_publishesEmptyList() {
+        table.offer("aa:01", null, -60);
+        scheduler.advanceBy(ScanResultTable.FRAME_INTERVAL);
+        table.clear();
+        scheduler.advanceBy(ScanResultTable.FRAME_INTERVAL);
+
+        assertTrue(snapshots.get(1).isEmpty());
+        assertEquals(0, table.size());
+    }
+
+    private static List<String> addresses(List<ScanResultTable.Device> devices) {
+        List<String> result = new ArrayList<>();
+        for (ScanResultTable.Device device : devices) {
+            result.add(device.getAddress());
+        }
+        return result;
+    }
+}
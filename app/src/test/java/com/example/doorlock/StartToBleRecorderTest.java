@@ -0,0 +1,103 @@
+package com.example.doorlock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StartToBleRecorderTest {
+    // 模拟预热线程：提交的任务排队，由测试决定何时执行
+    private final List<Runnable> writerTasks = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+    private MemoryStore store;
+    private StartToBleRecorder recorder;
+
+    @Before
+    public void setUp() {
+        store = new MemoryStore();
+        recorder = new StartToBleRecorder(writerTasks::add, store, warnings::add);
+    }
+
+    @Test
+    public void record_onlySubmitsToWriter() {
+        recorder.record(12, true);
+
+        // 调用线程（BLE 线程）上不读写存储
+        assertEquals(0, store.loads);
+        assertNull(store.saved);
+        assertEquals(1, writerTasks.size());
+
+        runWriter();
+        assertEquals(1, LatencyHistogram.decode(store.saved).getCount());
+        assertEquals(12, recorder.getHistogram().getMax());
+    }
+
+    @Test
+    public void record_addsToSavedHistogram() {
+        LatencyHistogram saved = new LatencyHistogram();
+        saved.record(20);
+        saved.record(30);
+        store.saved = saved.encode();
+
+        recorder.record(40, true);
+        runWriter();
+
+        LatencyHistogram histogram = recorder.getHistogram();
+        assertEquals(3, histogram.getCount());
+        assertEquals(1, store.loads);
+    }
+
+    @Test
+    public void overBudget_logsWarningWithWarmState() {
+        recorder.record(StartToBleRecorder.BUDGET, true);
+        recorder.record(StartToBleRecorder.BUDGET + 30, false);
+        runWriter();
+
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).contains((StartToBleRecorder.BUDGET + 30) + "ms"));
+        assertTrue(warnings.get(0).contains("未完成"));
+    }
+
+    @Test
+    public void reset_clearsStoreAndHistogram() {
+        recorder.record(12, true);
+        runWriter();
+
+        recorder.reset();
+
+        assertNull(store.saved);
+        assertEquals(0, recorder.getHistogram().getCount());
+    }
+
+    private void runWriter() {
+        List<Runnable> tasks = new ArrayList<>(writerTasks);
+        writerTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private static class MemoryStore implements StartToBleRecorder.Store {
+        String saved;
+        int loads;
+
+        @Override
+        public String load() {
+            loads++;
+            return saved;
+        }
+
+        @Override
+        public void save(String encoded) {
+            saved = encoded;
+        }
+
+        @Override
+        public void clear() {
+            saved = null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.doorlock;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TraceBufferTest {
+    private long nanos;
+    private TraceBuffer buffer;
+
+    @Before
+    public void setUp() {
+        nanos = 1_000_000;
+        buffer = new TraceBuffer(8, () -> nanos);
+    }
+
+    @Test
+    public void export_producesChromeTraceEvents() throws Exception {
+        buffer.asyncBegin(TraceEvent.UNLOCK, 2);
+        buffer.begin(TraceEvent.CONNECT, 2);
+        nanos += 400_500;
+        buffer.end(TraceEvent.CONNECT, 2, LockTransport.GATT_ERROR);
+        buffer.instant(TraceEvent.WIDGET_UPDATE, BleTrace.TRACK_APP, 1);
+        buffer.asyncEnd(TraceEvent.UNLOCK, 2, 0);
+
+        JSONArray events = export();
+        assertEquals(6, events.length());
+        JSONObject thread = events.getJSONObject(0);
+        assertEquals("M", thread.getString("ph"));
+        assertEquals("门锁 \"A\"", thread.getJSONObject("args").getString("name"));
+
+        JSONObject begin = events.getJSONObject(2);
+        assertEquals("connect", begin.getString("name"));
+        assertEquals("B", begin.getString("ph"));
+        assertEquals(1000.0, begin.getDouble("ts"), 0.0001);
+        assertFalse(begin.has("args"));
+
+        JSONObject end = events.getJSONObject(3);
+        assertEquals("E", end.getString("ph"));
+        assertEquals(1400.5, end.getDouble("ts"), 0.0001);
+        assertEquals(LockTransport.GATT_ERROR, end.getJSONObject("args").getInt("status"));
+        assertEquals(2, end.getInt("tid"));
+
+        assertEquals("i", events.getJSONObject(4).getString("ph"));
+        assertEquals(2, events.getJSONObject(5).getInt("id"));
+    }
+
+    @Test
+    public void overwrittenBegin_dropsOrphanEnd() throws Exception {
+        buffer.begin(TraceEvent.SCAN, 2);
+        for (int i = 0; i < 8; i++) {
+            buffer.instant(TraceEvent.SCAN_RESULT, 2, -60 - i);
+        }
+        buffer.end(TraceEvent.SCAN, 2, 0);
+
+        assertEquals(8, buffer.size());
+        JSONArray events = export();
+        // 线程名 + 最后 7 个扫描结果，开始事件已被覆盖，结束事件不导出
+        assertEquals(8, events.length());
+        assertEquals(-61, events.getJSONObject(1).getJSONObject("args").getInt("rssi"));
+        assertEquals("i", events.getJSONObject(7).getString("ph"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_mustBePowerOfTwo() {
+        new TraceBuffer(100, System::nanoTime);
+    }
+
+    private JSONArray export() throws Exception {
+        StringBuilder out = new StringBuilder();
+        buffer.writeJson(out, 1, Collections.singletonMap(2, "门锁 \"A\""));
+        return new JSONObject(out.toString()).getJSONArray("traceEvents");
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.doorlock;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * 二进制开锁命令与原 JSONObject 方式的对比测试（运行在开发机 JVM 上）。
+ */
+public class UnlockCommandCodecTest {
+    // 默认 ATT MTU 23 字节时单包可写入的最大长度
+    private static final int DEFAULT_ATT_PAYLOAD = 20;
+
+    // 原 sendUnlockCommand() 中的实现
+    private static byte[] legacyJsonPayload(String pressTime, String releaseTime) throws Exception {
+        JSONObject sendMessage = new JSONObject();
+        sendMessage.put("press_time", pressTime);
+        sendMessage.put("release_time", releaseTime);
+        sendMessage.put("action", "unlock");
+        String jsonString = sendMessage.toString();
+        jsonString.getBytes(StandardCharsets.UTF_8);
+        return sendMessage.toString().getBytes();
+    }
+
+    @Test
+    public void binary_roundTrip() {
+        byte[] frame = UnlockCommandCodec.encodeBinary(450, 300, 7);
+
+        assertTrue(UnlockCommandCodec.isBinary(frame));
+        assertEquals(UnlockCommandCodec.OPCODE_UNLOCK, UnlockCommandCodec.readOpcode(frame));
+        assertEquals(450, UnlockCommandCodec.readPressTime(frame));
+        assertEquals(300, UnlockCommandCodec.readReleaseTime(frame));
+        assertEquals(7, UnlockCommandCodec.readSequence(frame));
+
+        UnlockCommandCodec.writeSequence(frame, 0xFFFF);
+        assertEquals(0xFFFF, UnlockCommandCodec.readSequence(frame));
+        assertEquals(450, UnlockCommandCodec.readPressTime(frame));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void binary_rejectsOutOfRangeDuration() {
+        UnlockCommandCodec.encodeBinary(70000, 300, 0);
+    }
+
+    @Test
+    public void json_matchesLegacyContent() throws Exception {
+        byte[] json = UnlockCommandCodec.encodeJson("450", "300");
+        JSONObject decoded = new JSONObject(new String(json, StandardCharsets.UTF_8));
+
+        assertEquals("450", decoded.getString("press_time"));
+        assertEquals("300", decoded.getString("release_time"));
+        assertEquals("unlock", decoded.getString("action"));
+        assertEquals(legacyJsonPayload("450", "300").length, json.length);
+        assertFalse(UnlockCommandCodec.isBinary(json));
+    }
+
+    @Test
+    public void json_escapesSpecialCharacters() throws Exception {
+        byte[] json = UnlockCommandCodec.encodeJson("4\"5", "3\\0");
+        JSONObject decoded = new JSONObject(new String(json, StandardCharsets.UTF_8));
+
+        assertEquals("4\"5", decoded.getString("press_time"));
+        assertEquals("3\\0", decoded.getString("release_time"));
+    }
+
+    @Test
+    public void payloadSize_binaryFitsSinglePacket() throws Exception {
+        int legacy = legacyJsonPayload("450", "300").length;
+        int binary = UnlockCommandCodec.encodeBinary(450, 300, 0).length;
+
+        assertTrue(legacy > DEFAULT_ATT_PAYLOAD);
+        assertTrue(binary <= DEFAULT_ATT_PAYLOAD);
+        assertEquals(legacy, UnlockCommandCodec.encodeJson("450", "300").length);
+    }
+
+    @Test
+    public void cachedPayload_onlySequenceChanges() {
+        // 预编码的帧每次只改写序号，其余内容与重新编码一致
+        byte[] cached = UnlockCommandCodec.encodeBinary(450, 300, 0);
+        int length = cached.length;
+
+        for (int sequence : new int[]{1, 255, 256, 0xFFFF}) {
+            UnlockCommandCodec.writeSequence(cached, sequence);
+
+            assertEquals(length, cached.length);
+            assertArrayEquals(UnlockCommandCodec.encodeBinary(450, 300, sequence), cached);
+            assertEquals(sequence, UnlockCommandCodec.readSequence(cached));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.doorlock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UnlockJournalTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private File dir;
+    private final List<String> logs = new ArrayList<>();
+    private long now;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal").toFile();
+        now = 100 * DAY;
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void append_isWrittenOnWriterThread() {
+        ArrayDeque<Runnable> writer = new ArrayDeque<>();
+        UnlockJournal journal = new UnlockJournal(dir, writer::add, logs::add);
+
+        journal.append(success("front", 1000));
+        assertEquals(1, writer.size());
+        assertFalse(journal.query(new UnlockJournal.Query()).hasNext());
+
+        writer.poll().run();
+        UnlockJournal.Entry entry = journal.query(new UnlockJournal.Query()).next();
+        assertEquals(0, entry.getSequence());
+        assertEquals(1000, entry.getTimestamp());
+        assertEquals("front", entry.getLockId());
+        assertEquals(UnlockSource.WIDGET, entry.getSource());
+        assertEquals(UnlockJournal.Outcome.SUCCESS, entry.getOutcome());
+        assertTrue(entry.isWarm());
+        assertEquals(420, entry.getTotal());
+        assertEquals(300, entry.getPhaseLatency(UnlockPhase.WRITE_ISSUED));
+        assertEquals(120, entry.getPhaseLatency(UnlockPhase.WRITE_ACKED));
+        assertEquals(-1, entry.getPhaseLatency(UnlockPhase.SCAN_START));
+        assertTrue(logs.isEmpty());
+    }
+
+    @Test
+    public void query_filtersNewestFirst() {
+        UnlockJournal journal = open(UnlockJournal.RECORDS_PER_SEGMENT, UnlockJournal.MAX_SEGMENTS);
+        journal.append(success("front", 1000));
+        journal.append(failure("back", 2000, 133));
+        journal.append(UnlockJournal.Entry.rejected(3000, "front", UnlockSource.GROUP));
+        journal.append(failure("front", 4000, 8));
+        journal.append(success("back", 5000));
+
+        assertEquals(Arrays.asList(4000L, 3000L, 1000L), timestamps(journal, new UnlockJournal.Query().lock("front")));
+        assertEquals(Arrays.asList(4000L, 2000L),
+                timestamps(journal, new UnlockJournal.Query().outcome(UnlockJournal.Outcome.FAILED)));
+        assertEquals(Arrays.asList(3000L, 2000L), timestamps(journal, new UnlockJournal.Query().between(2000, 4000)));
+
+        UnlockJournal.Entry failed = journal.query(new UnlockJournal.Query().lock("back")
+                .outcome(UnlockJournal.Outcome.FAILED)).next();
+        assertEquals(133, failed.getGattStatus());
+        assertEquals(UnlockSource.APP, failed.getSource());
+    }
+
+    @Test
+    public void cursor_readsPages() {
+        UnlockJournal journal = open(4, UnlockJournal.MAX_SEGMENTS);
+        for (int i = 0; i < 10; i++) {
+            journal.append(success("front", i));
+        }
+
+        UnlockJournal.Cursor cursor = journal.query(new UnlockJournal.Query());
+        journal.append(success("front", 10));
+        assertEquals(4, cursor.nextPage(4).size());
+        assertEquals(4, cursor.nextPage(4).size());
+        List<UnlockJournal.Entry> last = cursor.nextPage(4);
+        // 游标创建之后追加的记录不在结果里
+        assertEquals(2, last.size());
+        assertEquals(0, last.get(1).getTimestamp());
+        assertTrue(cursor.nextPage(4).isEmpty());
+    }
+
+    @Test
+    public void reopen_continuesSequence() {
+        UnlockJournal journal = open(4, UnlockJournal.MAX_SEGMENTS);
+        for (int i = 0; i < 6; i++) {
+            journal.append(success("front", i));
+        }
+
+        UnlockJournal reopened = open(4, UnlockJournal.MAX_SEGMENTS);
+        reopened.append(success("front", 6));
+
+        List<UnlockJournal.Entry> entries = reopened.query(new UnlockJournal.Query()).nextPage(100);
+        assertEquals(7, entries.size());
+        assertEquals(6, entries.get(0).getSequence());
+        assertEquals(6, entries.get(0).getTimestamp());
+        assertEquals(2, segmentFiles().length);
+    }
+
+    @Test
+    public void rotation_compactsExpiredRecords() {
+        UnlockJournal journal = open(4, 3);
+        // 前 8 条已经超过保留期
+        for (int i = 0; i < 8; i++) {
+            journal.append(success("front", i));
+        }
+        for (int i = 0; i < 6; i++) {
+            journal.append(success("front", now - i));
+        }
+
+        List<UnlockJournal.Entry> entries = journal.query(new UnlockJournal.Query()).nextPage(100);
+        assertEquals(6, entries.size());
+        assertEquals(13, entries.get(0).getSequence());
+        assertEquals(8, entries.get(5).getSequence());
+        assertTrue(segmentFiles().length <= 3);
+        assertFalse(logs.isEmpty());
+    }
+
+    @Test
+    public void rotation_dropsOldestSegmentsOverLimit() {
+        UnlockJournal journal = open(4, 3);
+        for (int i = 0; i < 20; i++) {
+            journal.append(success("front", now + i));
+        }
+
+        List<UnlockJournal.Entry> entries = journal.query(new UnlockJournal.Query()).nextPage(100);
+        assertEquals(3, segmentFiles().length);
+        assertEquals(19, entries.get(0).getSequence());
+        // 没有过期的记录时合并不出空间，只能删除最旧的段
+        assertTrue(entries.size() >= 8 && entries.size() < 20);
+        for (int i = 1; i < entries.size(); i++) {
+            assertEquals(entries.get(i - 1).getSequence() - 1, entries.get(i).getSequence());
+        }
+    }
+
+    @Test
+    public void interruptedCompaction_skipsDuplicates() throws IOException {
+        UnlockJournal journal = open(4, UnlockJournal.MAX_SEGMENTS);
+        for (int i = 0; i < 10; i++) {
+            journal.append(success("front", now + i));
+        }
+        // 合并后的第一段已经替换，第二段还没删除；另外留下一个写了一半的临时文件
+        File[] files = segmentFiles();
+        byte[] first = Files.readAllBytes(files[0].toPath());
+        byte[] second = Files.readAllBytes(files[1].toPath());
+        byte[] merged = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, merged, first.length, second.length);
+        Files.write(files[0].toPath(), merged);
+        Files.write(new File(dir, files[0].getName() + ".tmp").toPath(), second);
+
+        UnlockJournal reopened = open(4, UnlockJournal.MAX_SEGMENTS);
+        List<UnlockJournal.Entry> entries = reopened.query(new UnlockJournal.Query()).nextPage(100);
+        assertEquals(10, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(9 - i, entries.get(i).getSequence());
+        }
+        assertFalse(new File(dir, files[0].getName() + ".tmp").exists());
+    }
+
+    @Test
+    public void longLockId_isTruncated() {
+        UnlockJournal journal = open(UnlockJournal.RECORDS_PER_SEGMENT, UnlockJournal.MAX_SEGMENTS);
+        journal.append(success("a-very-long-lock-identifier", 1000));
+
+        UnlockJournal.Entry entry = journal.query(new UnlockJournal.Query().lock("a-very-long-lock-identifier")).next();
+        assertEquals("a-very-long-lock", entry.getLockId());
+    }
+
+    private UnlockJournal open(int recordsPerSegment, int maxSegments) {
+        return new UnlockJournal(dir, Runnable::run, logs::add, recordsPerSegment, maxSegments, DAY, () -> now);
+    }
+
+    private File[] segmentFiles() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".seg"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static List<Long> timestamps(UnlockJournal journal, UnlockJournal.Query query) {
+        List<Long> result = new ArrayList<>();
+        UnlockJournal.Cursor cursor = journal.query(query);
+        while (cursor.hasNext()) {
+            result.add(cursor.next().getTimestamp());
+        }
+        return result;
+    }
+
+    // 热连接直接写入：发出写入 +300ms，写入确认 +120ms
+    private static UnlockJournal.Entry success(String lockId, long timestamp) {
+        UnlockTimeline timeline = new UnlockTimeline();
+        timeline.reset(timestamp);
+        timeline.mark(UnlockPhase.SERVICE_START, 0);
+        timeline.mark(UnlockPhase.WRITE_ISSUED, 300);
+        timeline.mark(UnlockPhase.WRITE_ACKED, 420);
+        return UnlockJournal.Entry.of(timestamp, lockId, UnlockSource.WIDGET, true, true, 0, 420, timeline);
+    }
+
+    private static UnlockJournal.Entry failure(String lockId, long timestamp, int status) {
+        UnlockTimeline timeline = new UnlockTimeline();
+        timeline.reset(timestamp);
+        timeline.mark(UnlockPhase.SCAN_START, 0);
+        timeline.mark(UnlockPhase.SCAN_HIT, 800);
+        return UnlockJournal.Entry.of(timestamp, lockId, UnlockSource.APP, false, false, status, 10000, timeline);
+    }
+}
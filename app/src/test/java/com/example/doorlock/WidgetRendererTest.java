@@ -0,0 +1,165 @@
+package com.example.doorlock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WidgetRendererTest {
+    private VirtualScheduler scheduler;
+    private RecordingTarget target;
+    private WidgetRenderer renderer;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        target = new RecordingTarget();
+        target.bindings.put(1, LockConfig.DEFAULT_ID);
+        target.bindings.put(2, "garage");
+        target.bindings.put(3, WidgetRenderer.ALL_LOCKS);
+        renderer = new WidgetRenderer(scheduler, target);
+    }
+
+    @Test
+    public void firstRender_isFullThenPartial() {
+        renderer.setLockState(LockConfig.DEFAULT_ID, true);
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+        assertEquals(Arrays.asList("full:1:true", "full:2:false", "full:3:true"), target.renders);
+
+        target.renders.clear();
+        renderer.setLockState(LockConfig.DEFAULT_ID, false);
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+        assertEquals(Arrays.asList("partial:1:false", "partial:3:false"), target.renders);
+    }
+
+    @Test
+    public void burstWithinFrame_isCoalesced() {
+        renderInitial();
+
+        // 服务点击、写入成功、恢复、断开在同一帧内到达
+        renderer.setLockState(LockConfig.DEFAULT_ID, true);
+        renderer.setLockState(LockConfig.DEFAULT_ID, false);
+        renderer.setLockState(LockConfig.DEFAULT_ID, true);
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+
+        assertEquals(Arrays.asList("partial:1:true", "partial:3:true"), target.renders);
+    }
+
+    @Test
+    public void unchangedState_rendersNothing() {
+        renderInitial();
+
+        renderer.setLockState(LockConfig.DEFAULT_ID, true);
+        renderer.setLockState(LockConfig.DEFAULT_ID, false);
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+
+        assertTrue(target.renders.isEmpty());
+    }
+
+    @Test
+    public void rebind_rendersFullWithNewLock() {
+        renderInitial();
+        renderer.setLockState("garage", true);
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+        target.renders.clear();
+
+        target.bindings.put(1, "garage");
+        renderer.invalidate(new int[]{1});
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+
+        assertEquals(Arrays.asList("full:1:true"), target.renders);
+        assertEquals(1, target.widgetQueries);
+    }
+
+    @Test
+    public void stateChangeDuringRender_doesNotWaitForLauncher() throws InterruptedException {
+        renderInitial();
+        // 模拟桌面响应慢时 BLE 线程更新状态：渲染中另一个线程调用 setLockState 不应被阻塞
+        Thread[] bleThread = new Thread[1];
+        target.onRender = () -> {
+            target.onRender = null;
+            bleThread[0] = new Thread(() -> renderer.setLockState("garage", true));
+            bleThread[0].start();
+            try {
+                bleThread[0].join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            assertFalse(bleThread[0].isAlive());
+        };
+
+        renderer.setLockState(LockConfig.DEFAULT_ID, true);
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+        assertEquals(Arrays.asList("partial:1:true", "partial:3:true"), target.renders);
+
+        target.renders.clear();
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+        assertEquals(Arrays.asList("partial:2:true"), target.renders);
+    }
+
+    @Test
+    public void invalidateDuringRender_rendersFullNextFrame() {
+        renderInitial();
+        target.onRender = () -> {
+            target.onRender = null;
+            target.bindings.put(1, "garage");
+            renderer.invalidate(new int[]{1});
+        };
+
+        renderer.setLockState(LockConfig.DEFAULT_ID, true);
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+        target.renders.clear();
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+
+        assertEquals(Arrays.asList("full:1:false"), target.renders);
+    }
+
+    private void renderInitial() {
+        renderer.invalidate(new int[0]);
+        scheduler.advanceBy(WidgetRenderer.FRAME_WINDOW);
+        target.renders.clear();
+    }
+
+    private static class RecordingTarget implements WidgetRenderer.Target {
+        final Map<Integer, String> bindings = new HashMap<>();
+        final List<String> renders = new ArrayList<>();
+        int widgetQueries;
+        // 推送到桌面时执行，模拟渲染期间其他线程的调用
+        Runnable onRender;
+
+        @Override
+        public int[] getWidgetIds() {
+            widgetQueries++;
+            return bindings.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        @Override
+        public String getBoundLock(int widgetId) {
+            return bindings.get(widgetId);
+        }
+
+        @Override
+        public void renderFull(int widgetId, String boundLock, boolean unlocked) {
+            renders.add("full:" + widgetId + ":" + unlocked);
+            runHook();
+        }
+
+        @Override
+        public void renderPartial(int widgetId, boolean unlocked) {
+            renders.add("partial:" + widgetId + ":" + unlocked);
+            runHook();
+        }
+
+        private void runHook() {
+            if (onRender != null) {
+                onRender.run();
+            }
+        }
+    }
+}
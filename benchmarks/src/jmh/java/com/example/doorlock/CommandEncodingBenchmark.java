@@ -0,0 +1,53 @@
+package com.example.doorlock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 开锁命令编码：原先每次开锁都构造 JSONObject，对比手写 JSON、二进制帧和预编码帧只写序号。
+ */
+@State(Scope.Thread)
+public class CommandEncodingBenchmark {
+    private String pressTime;
+    private String releaseTime;
+    private byte[] cachedFrame;
+    private int sequence;
+
+    @Setup
+    public void setUp() {
+        pressTime = "450";
+        releaseTime = "300";
+        cachedFrame = UnlockCommandCodec.encodeBinary(450, 300, 0);
+    }
+
+    @Benchmark
+    public byte[] jsonObject() throws JSONException {
+        JSONObject sendMessage = new JSONObject();
+        sendMessage.put("press_time", pressTime);
+        sendMessage.put("release_time", releaseTime);
+        sendMessage.put("action", "unlock");
+        return sendMessage.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] codecJson() {
+        return UnlockCommandCodec.encodeJson(pressTime, releaseTime);
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        return UnlockCommandCodec.encodeBinary(Integer.parseInt(pressTime), Integer.parseInt(releaseTime), ++sequence);
+    }
+
+    @Benchmark
+    public byte[] cachedBinary() {
+        UnlockCommandCodec.writeSequence(cachedFrame, ++sequence);
+        return cachedFrame;
+    }
+}
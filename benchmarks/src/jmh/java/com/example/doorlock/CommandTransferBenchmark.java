@@ -0,0 +1,71 @@
+package com.example.doorlock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * 超过默认 MTU 的 JSON 命令（59 字节）在保持的连接上的发送方式对比，模拟门锁的写入往返为 30ms。
+ * 各方法返回从开锁请求到最后一次写入确认的虚拟时间（毫秒），JMH 结果衡量的是控制器、分片和模拟传输层的开销。
+ * <ul>
+ * <li>{@link #longWrite()}：门锁只支持默认 MTU 且已缓存，直接长写入：4 次准备写入 + 执行写入，5 次往返；</li>
+ * <li>{@link #negotiated()}：先交换 MTU 再单包写入，2 次往返；</li>
+ * <li>{@link #fragmented()}：新固件只支持默认 MTU，MTU 交换 1 次往返，之后 4 个分片无响应写入。</li>
+ * </ul>
+ */
+public class CommandTransferBenchmark {
+    private static final long FLOW_TIME = 5000;
+
+    static final class TimingHost extends UnlockFlowBenchmark.Host {
+        long latency = -1;
+
+        @Override
+        public void onUnlockFinished(boolean success, boolean warm, long latencyMs) {
+            super.onUnlockFinished(success, warm, latencyMs);
+            latency = latencyMs;
+        }
+    }
+
+    private static long unlockOnHeldConnection(SimulatedLockTransport lock, VirtualScheduler scheduler,
+                                               TimingHost host) {
+        LockController controller = new LockController(lock, scheduler, host);
+        byte[] command = UnlockCommandCodec.encodeJson("450", "300");
+        controller.configure(SimulatedLockTransport.DEFAULT_NAME, NordicUartService.SERVICE_UUID,
+                NordicUartService.RX_CHARACTERISTIC_UUID, false, 30000, () -> command);
+        controller.connect();
+        scheduler.advanceBy(FLOW_TIME);
+        controller.requestUnlock();
+        scheduler.advanceBy(FLOW_TIME);
+        return host.latency;
+    }
+
+    @Benchmark
+    public long longWrite() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        TimingHost host = new TimingHost();
+        host.preferred = new LockDeviceRecord(SimulatedLockTransport.DEFAULT_ADDRESS);
+        host.preferred.setLinkParameters(LockDeviceRecord.PHY_UNKNOWN, LockController.DEFAULT_MTU);
+        SimulatedLockTransport lock = new SimulatedLockTransport(scheduler, 1).setMaxMtu(LockController.DEFAULT_MTU);
+        return unlockOnHeldConnection(lock, scheduler, host);
+    }
+
+    @Benchmark
+    public long negotiated() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        TimingHost host = new TimingHost();
+        host.preferred = new LockDeviceRecord(SimulatedLockTransport.DEFAULT_ADDRESS);
+        SimulatedLockTransport lock = new SimulatedLockTransport(scheduler, 1);
+        return unlockOnHeldConnection(lock, scheduler, host);
+    }
+
+    @Benchmark
+    public long fragmented() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        TimingHost host = new TimingHost();
+        host.preferred = new LockDeviceRecord(SimulatedLockTransport.DEFAULT_ADDRESS);
+        SimulatedLockTransport lock = new SimulatedLockTransport(scheduler, 1)
+                .setMaxMtu(LockController.DEFAULT_MTU)
+                .setNotifications(true, 20, 0)
+                .setFeatureCharacteristic(true)
+                .setWriteWithoutResponse(true, 8);
+        return unlockOnHeldConnection(lock, scheduler, host);
+    }
+}
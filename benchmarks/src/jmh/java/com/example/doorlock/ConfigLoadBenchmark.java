@@ -0,0 +1,57 @@
+package com.example.doorlock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 配置加载：与 BluetoothConfigManager.loadConfig 相同的解析步骤，并创建 {@link LockConfig} 快照（含命令预编码），
+ * SharedPreferences 用已加载到内存的 Map 代替（SharedPreferences 读取本身也是查内存 Map）。
+ */
+@State(Scope.Thread)
+public class ConfigLoadBenchmark {
+    @Param({UnlockCommandCodec.FORMAT_JSON, UnlockCommandCodec.FORMAT_BINARY})
+    public String commandFormat;
+
+    private final Map<String, Object> prefs = new HashMap<>();
+
+    @Setup
+    public void setUp() {
+        prefs.put("DEVICE_NAME", "ESP32Lock");
+        prefs.put("SERVICE_UUID", NordicUartService.SERVICE);
+        prefs.put("RX_CHARACTERISTIC_UUID", NordicUartService.RX_CHARACTERISTIC);
+        prefs.put("PRESS_TIME", "450");
+        prefs.put("RELEASE_TIME", "300");
+        prefs.put("KEEP_WARM", true);
+        prefs.put("LINGER_TIME", "30000");
+        prefs.put("COMMAND_FORMAT", commandFormat);
+    }
+
+    private String getString(String key, String defValue) {
+        Object value = prefs.get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @Benchmark
+    public LockConfig load() {
+        long lingerTime = Long.parseLong(getString("LINGER_TIME", String.valueOf(LockConfig.DEFAULT_LINGER_TIME)));
+        UUID serviceUuid = UUID.fromString(getString("SERVICE_UUID", NordicUartService.SERVICE));
+        UUID rxUuid = UUID.fromString(getString("RX_CHARACTERISTIC_UUID", NordicUartService.RX_CHARACTERISTIC));
+        return new LockConfig(
+                LockConfig.DEFAULT_ID,
+                getString("DEVICE_NAME", LockConfig.DEFAULT_DEVICE_NAME),
+                serviceUuid,
+                rxUuid,
+                getString("PRESS_TIME", LockConfig.DEFAULT_PRESS_TIME),
+                getString("RELEASE_TIME", LockConfig.DEFAULT_RELEASE_TIME),
+                Boolean.TRUE.equals(prefs.get("KEEP_WARM")),
+                lingerTime,
+                getString("COMMAND_FORMAT", UnlockCommandCodec.FORMAT_JSON));
+    }
+}
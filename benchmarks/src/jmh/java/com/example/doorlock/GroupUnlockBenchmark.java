@@ -0,0 +1,79 @@
+package com.example.doorlock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多把门锁开锁：{@link LockConnectionManager#unlockGroup} 同时开锁与逐把依次开锁的对比。
+ * 两个方法都返回全部门锁完成时的虚拟时间（毫秒），JMH 结果衡量的是管理器和状态机的 CPU 与内存开销。
+ */
+@State(Scope.Thread)
+public class GroupUnlockBenchmark {
+    private static final long FLOW_TIME = 5000;
+
+    @Param({"2", "4", "6"})
+    public int locks;
+
+    private static final class Run {
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final List<String> lockIds = new ArrayList<>();
+        final LockConnectionManager manager;
+        long finishedAt = -1;
+
+        Run(int locks) {
+            for (int i = 0; i < locks; i++) {
+                lockIds.add("lock" + i);
+            }
+            manager = new LockConnectionManager(scheduler, new LockConnectionManager.Factory() {
+                @Override
+                public LockTransport createTransport(String lockId) {
+                    int index = lockIds.indexOf(lockId);
+                    return new SimulatedLockTransport(scheduler, index + 1)
+                            .setIdentity(String.format("24:0A:C4:00:00:%02X", index + 1), "Lock-" + lockId);
+                }
+
+                @Override
+                public LockController.Host createHost(String lockId) {
+                    return new UnlockFlowBenchmark.Host();
+                }
+            }, LockConnectionManager.DEFAULT_MAX_CONNECTIONS);
+            byte[] frame = UnlockCommandCodec.encodeBinary(450, 300, 0);
+            for (String lockId : lockIds) {
+                manager.get(lockId).configure("Lock-" + lockId, NordicUartService.SERVICE_UUID,
+                        NordicUartService.RX_CHARACTERISTIC_UUID, false, 30000, () -> frame);
+            }
+        }
+    }
+
+    @Benchmark
+    public long group() {
+        Run run = new Run(locks);
+        run.manager.unlockGroup(run.lockIds,
+                (succeeded, failed, elapsedMs) -> run.finishedAt = elapsedMs);
+        run.scheduler.advanceBy(FLOW_TIME * locks);
+        return run.finishedAt;
+    }
+
+    // 上一把门锁确认后才向下一把门锁发出开锁请求
+    @Benchmark
+    public long sequential() {
+        Run run = new Run(locks);
+        unlockFrom(run, 0);
+        run.scheduler.advanceBy(FLOW_TIME * locks);
+        return run.finishedAt;
+    }
+
+    private static void unlockFrom(Run run, int index) {
+        if (index == run.lockIds.size()) {
+            run.finishedAt = run.scheduler.now();
+            return;
+        }
+        run.manager.unlockGroup(List.of(run.lockIds.get(index)),
+                (succeeded, failed, elapsedMs) -> unlockFrom(run, index + 1));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.doorlock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 扫描结果匹配：模拟一次扫描窗口内收到的一批广播（大部分是无关设备），逐条匹配并按信号强度选出目标门锁。
+ */
+@State(Scope.Thread)
+public class ScanMatchBenchmark {
+    @Param({"10", "100"})
+    public int results;
+
+    private LockScanMatcher matcher;
+    private String[] addresses;
+    private String[] names;
+    private List<List<UUID>> uuids;
+    private int[] rssis;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        matcher = new LockScanMatcher("ESP32Lock", NordicUartService.SERVICE_UUID, null);
+        addresses = new String[results];
+        names = new String[results];
+        uuids = new ArrayList<>(results);
+        rssis = new int[results];
+        for (int i = 0; i < results; i++) {
+            addresses[i] = String.format(Locale.US, "24:0A:C4:00:%02X:%02X", i >> 8, i & 0xFF);
+            rssis[i] = -40 - random.nextInt(50);
+            // 每 10 条广播中有 1 条来自门锁
+            if (i % 10 == 0) {
+                names[i] = "ESP32Lock";
+                uuids.add(Collections.singletonList(NordicUartService.SERVICE_UUID));
+            } else {
+                names[i] = random.nextBoolean() ? "Phone-" + i : null;
+                uuids.add(Collections.singletonList(new UUID(random.nextLong(), random.nextLong())));
+            }
+        }
+    }
+
+    @Benchmark
+    public int matchOnly() {
+        int matched = 0;
+        for (int i = 0; i < results; i++) {
+            if (matcher.matches(addresses[i], names[i], uuids.get(i))) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public String offerAndRank() {
+        matcher.reset();
+        for (int i = 0; i < results; i++) {
+            matcher.offer(addresses[i], names[i], uuids.get(i), rssis[i]);
+        }
+        return matcher.getBestAddress();
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.doorlock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * BLE 事件追踪的记录开销：一次冷连接开锁在一条轨道上记录的事件（扫描、连接、发现服务、写入和开锁区间）。
+ * 记录只写预先分配的数组，gc.alloc.rate.norm 应为 0。
+ */
+@State(Scope.Thread)
+public class TraceBufferBenchmark {
+    private static final int TRACK = 2;
+
+    private final TraceBuffer buffer = new TraceBuffer(4096, System::nanoTime);
+
+    @Benchmark
+    public int coldUnlockEvents() {
+        buffer.asyncBegin(TraceEvent.UNLOCK, TRACK);
+        buffer.begin(TraceEvent.SCAN, TRACK);
+        buffer.instant(TraceEvent.SCAN_RESULT, TRACK, -62);
+        buffer.end(TraceEvent.SCAN, TRACK, 0);
+        buffer.begin(TraceEvent.CONNECT, TRACK);
+        buffer.end(TraceEvent.CONNECT, TRACK, LockTransport.GATT_SUCCESS);
+        buffer.begin(TraceEvent.DISCOVER, TRACK);
+        buffer.end(TraceEvent.DISCOVER, TRACK, LockTransport.GATT_SUCCESS);
+        buffer.begin(TraceEvent.WRITE, TRACK);
+        buffer.end(TraceEvent.WRITE, TRACK, LockTransport.GATT_SUCCESS);
+        buffer.asyncEnd(TraceEvent.UNLOCK, TRACK, 1);
+        return buffer.size();
+    }
+}
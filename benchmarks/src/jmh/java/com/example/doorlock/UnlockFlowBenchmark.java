@@ -0,0 +1,157 @@
+package com.example.doorlock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+
+/**
+ * 连接状态机逻辑：在虚拟时间里跑完整开锁流程，衡量的是控制器和模拟传输层本身的 CPU 与内存开销，
+ * 不包含蓝牙空口时间。
+ */
+public class UnlockFlowBenchmark {
+    private static final long FLOW_TIME = 5000;
+
+    static class Host implements LockController.Host {
+        LockDeviceRecord preferred;
+        int successes;
+
+        @Override
+        public LockDeviceRecord getPreferredDevice(String deviceName) {
+            return preferred;
+        }
+
+        @Override
+        public void onDeviceSeen(String address, String name, int addressType) {
+        }
+
+        @Override
+        public void onConnectSucceeded(String address) {
+        }
+
+        @Override
+        public void onConnectFailed(String address) {
+        }
+
+        @Override
+        public void onLinkParameters(String address, int phy, int mtu) {
+        }
+
+        @Override
+        public void onLinkProfile(String address, LinkProfile profile, int interval, int phy) {
+        }
+
+        @Override
+        public LockDeviceRecord getDevice(String address) {
+            return preferred != null && preferred.getAddress().equalsIgnoreCase(address) ? preferred : null;
+        }
+
+        @Override
+        public void onSchemaResolved(String address, UUID serviceUuid, UUID characteristicUuid,
+                                     boolean writeWithoutResponse) {
+        }
+
+        @Override
+        public void onSchemaInvalid(String address) {
+        }
+
+        @Override
+        public void onPhase(UnlockPhase phase) {
+        }
+
+        @Override
+        public void onUnlockFinished(boolean success, boolean warm, long latencyMs) {
+            if (success) {
+                successes++;
+            }
+        }
+
+        @Override
+        public void onLockStateChanged(boolean unlocked) {
+        }
+
+        @Override
+        public void onMessage(String message) {
+        }
+
+        @Override
+        public void onIdle() {
+        }
+
+        // 与 release 构建一样不拼接日志
+        @Override
+        public boolean isLogging() {
+            return false;
+        }
+
+        @Override
+        public void log(String message) {
+        }
+    }
+
+    private static LockController newController(VirtualScheduler scheduler, Host host, boolean keepWarm) {
+        SimulatedLockTransport lock = new SimulatedLockTransport(scheduler, 1);
+        LockController controller = new LockController(lock, scheduler, host);
+        byte[] frame = UnlockCommandCodec.encodeBinary(450, 300, 0);
+        controller.configure(SimulatedLockTransport.DEFAULT_NAME, NordicUartService.SERVICE_UUID,
+                NordicUartService.RX_CHARACTERISTIC_UUID, keepWarm, 30000, () -> frame);
+        return controller;
+    }
+
+    @Benchmark
+    public int coldScan() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        Host host = new Host();
+        newController(scheduler, host, false).requestUnlock();
+        scheduler.advanceBy(FLOW_TIME);
+        return host.successes;
+    }
+
+    @Benchmark
+    public int directConnect() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        Host host = new Host();
+        host.preferred = new LockDeviceRecord(SimulatedLockTransport.DEFAULT_ADDRESS);
+        newController(scheduler, host, false).requestUnlock();
+        scheduler.advanceBy(FLOW_TIME);
+        return host.successes;
+    }
+
+    // 登记表中缓存了服务结构，连接后直接写入
+    @Benchmark
+    public int cachedSchema() {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        Host host = new Host();
+        host.preferred = new LockDeviceRecord(SimulatedLockTransport.DEFAULT_ADDRESS);
+        host.preferred.setSchema(NordicUartService.SERVICE_UUID, NordicUartService.RX_CHARACTERISTIC_UUID, false);
+        newController(scheduler, host, false).requestUnlock();
+        scheduler.advanceBy(FLOW_TIME);
+        return host.successes;
+    }
+
+    @State(Scope.Thread)
+    public static class WarmState {
+        VirtualScheduler scheduler;
+        Host host;
+        LockController controller;
+
+        @Setup
+        public void setUp() {
+            scheduler = new VirtualScheduler();
+            host = new Host();
+            controller = newController(scheduler, host, true);
+            controller.requestUnlock();
+            scheduler.advanceBy(FLOW_TIME);
+        }
+    }
+
+    // 保持连接时的开锁只有一次写入
+    @Benchmark
+    public int warmWrite(WarmState state) {
+        state.controller.requestUnlock();
+        state.scheduler.advanceBy(100);
+        return state.host.successes;
+    }
+}